@@ -0,0 +1,144 @@
+package io.bitcoinsv.jcl.net.network.bandwidth;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * Configuration of the Bandwidth limits. All the limits are in bytes per second, and ZERO means no limit:
+ *
+ * - global limits: They apply to the sum of the traffic of all the Peers.
+ * - peer limits: They apply to the traffic of each Peer individually (they can be overridden for specific Peers).
+ * - msg type limits: They apply to the outgoing traffic of each type of message (like "tx" or "inv"), summing up all
+ *   the Peers. They are only applied to outgoing traffic, since the type of the incoming bytes is not known until
+ *   they are deserialized. Since the messages sent to a Peer must keep their order, a throttled message also delays
+ *   the messages queued after it for the same Peer.
+ *
+ * The burst allowed by each limit is the amount of bytes of "burstMillis" at that rate.
+ */
+public final class BandwidthConfig {
+
+    /** No limit */
+    public static final long UNLIMITED = 0;
+
+    // Default burst: 1 second
+    private static final long DEFAULT_BURST_MILLIS = 1000;
+
+    private final long globalReadBytesPerSec;
+    private final long globalWriteBytesPerSec;
+    private final long peerReadBytesPerSec;
+    private final long peerWriteBytesPerSec;
+    private final Map<String, Long> msgTypeWriteBytesPerSec;
+    private final long burstMillis;
+
+    public BandwidthConfig(long globalReadBytesPerSec,
+                           long globalWriteBytesPerSec,
+                           long peerReadBytesPerSec,
+                           long peerWriteBytesPerSec,
+                           Map<String, Long> msgTypeWriteBytesPerSec,
+                           long burstMillis) {
+        this.globalReadBytesPerSec = globalReadBytesPerSec;
+        this.globalWriteBytesPerSec = globalWriteBytesPerSec;
+        this.peerReadBytesPerSec = peerReadBytesPerSec;
+        this.peerWriteBytesPerSec = peerWriteBytesPerSec;
+        this.msgTypeWriteBytesPerSec = (msgTypeWriteBytesPerSec == null)
+                ? Collections.emptyMap()
+                : Collections.unmodifiableMap(new HashMap<>(msgTypeWriteBytesPerSec));
+        this.burstMillis = (burstMillis > 0) ? burstMillis : DEFAULT_BURST_MILLIS;
+    }
+
+    /** Returns a Configuration with no limits at all */
+    public static BandwidthConfig unlimited() {
+        return builder().build();
+    }
+
+    public long getGlobalReadBytesPerSec()                  { return this.globalReadBytesPerSec; }
+    public long getGlobalWriteBytesPerSec()                 { return this.globalWriteBytesPerSec; }
+    public long getPeerReadBytesPerSec()                    { return this.peerReadBytesPerSec; }
+    public long getPeerWriteBytesPerSec()                   { return this.peerWriteBytesPerSec; }
+    public Map<String, Long> getMsgTypeWriteBytesPerSec()   { return this.msgTypeWriteBytesPerSec; }
+    public long getBurstMillis()                            { return this.burstMillis; }
+
+    /** Returns the capacity of a Token Bucket for the rate given, according to the burst configured */
+    public long getBurstBytes(long bytesPerSec) {
+        return (bytesPerSec * burstMillis) / 1000;
+    }
+
+    @Override
+    public String toString() {
+        return "BandwidthConfig(globalRead=" + globalReadBytesPerSec + ", globalWrite=" + globalWriteBytesPerSec
+                + ", peerRead=" + peerReadBytesPerSec + ", peerWrite=" + peerWriteBytesPerSec
+                + ", msgTypeWrite=" + msgTypeWriteBytesPerSec + ", burstMillis=" + burstMillis + ")";
+    }
+
+    public BandwidthConfigBuilder toBuilder() {
+        return new BandwidthConfigBuilder()
+                .globalReadBytesPerSec(this.globalReadBytesPerSec)
+                .globalWriteBytesPerSec(this.globalWriteBytesPerSec)
+                .peerReadBytesPerSec(this.peerReadBytesPerSec)
+                .peerWriteBytesPerSec(this.peerWriteBytesPerSec)
+                .msgTypeWriteBytesPerSec(this.msgTypeWriteBytesPerSec)
+                .burstMillis(this.burstMillis);
+    }
+
+    public static BandwidthConfigBuilder builder() {
+        return new BandwidthConfigBuilder();
+    }
+
+    /**
+     * Builder
+     */
+    public static class BandwidthConfigBuilder {
+        private long globalReadBytesPerSec = UNLIMITED;
+        private long globalWriteBytesPerSec = UNLIMITED;
+        private long peerReadBytesPerSec = UNLIMITED;
+        private long peerWriteBytesPerSec = UNLIMITED;
+        private Map<String, Long> msgTypeWriteBytesPerSec = new HashMap<>();
+        private long burstMillis = DEFAULT_BURST_MILLIS;
+
+        BandwidthConfigBuilder() {}
+
+        public BandwidthConfigBuilder globalReadBytesPerSec(long globalReadBytesPerSec) {
+            this.globalReadBytesPerSec = globalReadBytesPerSec;
+            return this;
+        }
+
+        public BandwidthConfigBuilder globalWriteBytesPerSec(long globalWriteBytesPerSec) {
+            this.globalWriteBytesPerSec = globalWriteBytesPerSec;
+            return this;
+        }
+
+        public BandwidthConfigBuilder peerReadBytesPerSec(long peerReadBytesPerSec) {
+            this.peerReadBytesPerSec = peerReadBytesPerSec;
+            return this;
+        }
+
+        public BandwidthConfigBuilder peerWriteBytesPerSec(long peerWriteBytesPerSec) {
+            this.peerWriteBytesPerSec = peerWriteBytesPerSec;
+            return this;
+        }
+
+        public BandwidthConfigBuilder msgTypeWriteBytesPerSec(Map<String, Long> msgTypeWriteBytesPerSec) {
+            this.msgTypeWriteBytesPerSec = new HashMap<>(msgTypeWriteBytesPerSec);
+            return this;
+        }
+
+        public BandwidthConfigBuilder msgTypeWriteBytesPerSec(String msgType, long bytesPerSec) {
+            this.msgTypeWriteBytesPerSec.put(msgType, bytesPerSec);
+            return this;
+        }
+
+        public BandwidthConfigBuilder burstMillis(long burstMillis) {
+            this.burstMillis = burstMillis;
+            return this;
+        }
+
+        public BandwidthConfig build() {
+            return new BandwidthConfig(globalReadBytesPerSec, globalWriteBytesPerSec, peerReadBytesPerSec,
+                    peerWriteBytesPerSec, msgTypeWriteBytesPerSec, burstMillis);
+        }
+    }
+}
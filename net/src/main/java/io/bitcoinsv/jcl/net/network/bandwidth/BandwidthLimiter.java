@@ -0,0 +1,197 @@
+package io.bitcoinsv.jcl.net.network.bandwidth;
+
+import io.bitcoinsv.jcl.net.network.PeerAddress;
+import io.bitcoinsv.jcl.tools.thread.ThreadUtils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * It limits the Bandwidth used when reading/writing bytes from/to the remote Peers, using Token Buckets at different
+ * levels (global, per Peer and per message type), as specified in the BandwidthConfig. It's used by the NIO Streams:
+ *
+ * - Before reading/writing, the Stream asks for the number of bytes allowed at that moment, which is the minimum of
+ *   the bytes available in all the buckets that apply.
+ * - After reading/writing, the Stream consumes the bytes actually read/written from those same buckets.
+ * - If no bytes are allowed, the Stream stops reading/writing (removing the READ/WRITE interest from its Selection
+ *   Key), and schedules itself to resume after the time given by "getReadDelayMillis()"/"getWriteDelayMillis()"
+ *
+ * The limits can be changed at any moment, and they take effect straight away.
+ *
+ * The buckets of a Peer are created when the Peer is registered by "addPeer()" (or given specific limits), and
+ * removed by "removePeer()". The Streams of a Peer with no buckets are only limited by the global and message type
+ * limits, so the bytes still moving after a Peer has been removed don't create its buckets again.
+ */
+public class BandwidthLimiter {
+
+    // Buckets of each Peer:
+    private static class PeerBuckets {
+        final TokenBucket read;
+        final TokenBucket write;
+        boolean overridden;
+        PeerBuckets(TokenBucket read, TokenBucket write) { this.read = read; this.write = write; }
+    }
+
+    private BandwidthConfig config;
+
+    private final TokenBucket globalRead;
+    private final TokenBucket globalWrite;
+    private final Map<PeerAddress, PeerBuckets> peerBuckets = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> msgTypeBuckets = new ConcurrentHashMap<>();
+
+    // Executor used to resume the Streams that have been paused:
+    private ScheduledExecutorService scheduler;
+
+    public BandwidthLimiter(BandwidthConfig config) {
+        this.config = (config != null) ? config : BandwidthConfig.unlimited();
+        this.globalRead = newBucket(this.config.getGlobalReadBytesPerSec());
+        this.globalWrite = newBucket(this.config.getGlobalWriteBytesPerSec());
+        this.config.getMsgTypeWriteBytesPerSec().forEach((msgType, rate) -> msgTypeBuckets.put(msgType, newBucket(rate)));
+    }
+
+    private TokenBucket newBucket(long bytesPerSec) {
+        return new TokenBucket(bytesPerSec, config.getBurstBytes(bytesPerSec));
+    }
+
+    private void reconfigure(TokenBucket bucket, long bytesPerSec) {
+        bucket.reconfigure(bytesPerSec, config.getBurstBytes(bytesPerSec));
+    }
+
+    // It returns the buckets of the Peer, creating them if needed. Only used when registering a Peer:
+    private PeerBuckets getOrCreatePeerBuckets(PeerAddress peerAddress) {
+        return peerBuckets.computeIfAbsent(peerAddress, p -> new PeerBuckets(
+                newBucket(config.getPeerReadBytesPerSec()),
+                newBucket(config.getPeerWriteBytesPerSec())));
+    }
+
+    /**
+     * It updates the Configuration. The global, message type and default Peer limits are replaced by the new ones
+     * (the Peers with specific limits keep them).
+     */
+    public synchronized void updateConfig(BandwidthConfig newConfig) {
+        this.config = newConfig;
+        reconfigure(globalRead, newConfig.getGlobalReadBytesPerSec());
+        reconfigure(globalWrite, newConfig.getGlobalWriteBytesPerSec());
+        for (PeerBuckets buckets : peerBuckets.values()) {
+            if (buckets.overridden) continue;
+            reconfigure(buckets.read, newConfig.getPeerReadBytesPerSec());
+            reconfigure(buckets.write, newConfig.getPeerWriteBytesPerSec());
+        }
+        msgTypeBuckets.keySet().removeIf(msgType -> !newConfig.getMsgTypeWriteBytesPerSec().containsKey(msgType));
+        newConfig.getMsgTypeWriteBytesPerSec().forEach((msgType, rate) -> {
+            TokenBucket bucket = msgTypeBuckets.get(msgType);
+            if (bucket == null) msgTypeBuckets.put(msgType, newBucket(rate));
+            else reconfigure(bucket, rate);
+        });
+    }
+
+    /** It sets specific limits for the Peer given, overriding the default Peer limits */
+    public synchronized void setPeerLimits(PeerAddress peerAddress, long readBytesPerSec, long writeBytesPerSec) {
+        PeerBuckets buckets = getOrCreatePeerBuckets(peerAddress);
+        reconfigure(buckets.read, readBytesPerSec);
+        reconfigure(buckets.write, writeBytesPerSec);
+        buckets.overridden = true;
+    }
+
+    /** It removes the specific limits of the Peer given, so the default Peer limits apply again */
+    public synchronized void resetPeerLimits(PeerAddress peerAddress) {
+        PeerBuckets buckets = peerBuckets.get(peerAddress);
+        if (buckets == null) return;
+        reconfigure(buckets.read, config.getPeerReadBytesPerSec());
+        reconfigure(buckets.write, config.getPeerWriteBytesPerSec());
+        buckets.overridden = false;
+    }
+
+    /** It registers a Peer, once it's connected, so the default Peer limits apply to it */
+    public synchronized void addPeer(PeerAddress peerAddress) {
+        getOrCreatePeerBuckets(peerAddress);
+    }
+
+    /** It removes the buckets of a Peer, once it's disconnected (unless it has specific limits) */
+    public synchronized void removePeer(PeerAddress peerAddress) {
+        PeerBuckets buckets = peerBuckets.get(peerAddress);
+        if (buckets != null && !buckets.overridden) peerBuckets.remove(peerAddress);
+    }
+
+    /** Returns the number of bytes that can be read from the Peer right now */
+    public long getReadAllowance(PeerAddress peerAddress) {
+        long result = globalRead.getAvailable();
+        PeerBuckets buckets = peerBuckets.get(peerAddress);
+        if (buckets != null) result = Math.min(result, buckets.read.getAvailable());
+        return result;
+    }
+
+    /** Returns the number of bytes of the given message type (might be null) that can be written to the Peer right now */
+    public long getWriteAllowance(PeerAddress peerAddress, String msgType) {
+        long result = globalWrite.getAvailable();
+        PeerBuckets buckets = peerBuckets.get(peerAddress);
+        if (buckets != null) result = Math.min(result, buckets.write.getAvailable());
+        TokenBucket msgTypeBucket = (msgType != null) ? msgTypeBuckets.get(msgType) : null;
+        if (msgTypeBucket != null) result = Math.min(result, msgTypeBucket.getAvailable());
+        return result;
+    }
+
+    /** It registers the bytes read from the Peer */
+    public void consumeRead(PeerAddress peerAddress, long numBytes) {
+        globalRead.consume(numBytes);
+        PeerBuckets buckets = peerBuckets.get(peerAddress);
+        if (buckets != null) buckets.read.consume(numBytes);
+    }
+
+    /** It registers the bytes of the given message type (might be null) written to the Peer */
+    public void consumeWrite(PeerAddress peerAddress, String msgType, long numBytes) {
+        globalWrite.consume(numBytes);
+        PeerBuckets buckets = peerBuckets.get(peerAddress);
+        if (buckets != null) buckets.write.consume(numBytes);
+        TokenBucket msgTypeBucket = (msgType != null) ? msgTypeBuckets.get(msgType) : null;
+        if (msgTypeBucket != null) msgTypeBucket.consume(numBytes);
+    }
+
+    /** Returns the millisecs to wait until some bytes can be read from the Peer again */
+    public long getReadDelayMillis(PeerAddress peerAddress) {
+        long result = globalRead.getMillisUntilAvailable();
+        PeerBuckets buckets = peerBuckets.get(peerAddress);
+        if (buckets != null) result = Math.max(result, buckets.read.getMillisUntilAvailable());
+        return result;
+    }
+
+    /** Returns the millisecs to wait until some bytes of the given message type can be written to the Peer again */
+    public long getWriteDelayMillis(PeerAddress peerAddress, String msgType) {
+        long result = globalWrite.getMillisUntilAvailable();
+        PeerBuckets buckets = peerBuckets.get(peerAddress);
+        if (buckets != null) result = Math.max(result, buckets.write.getMillisUntilAvailable());
+        TokenBucket msgTypeBucket = (msgType != null) ? msgTypeBuckets.get(msgType) : null;
+        if (msgTypeBucket != null) result = Math.max(result, msgTypeBucket.getMillisUntilAvailable());
+        return result;
+    }
+
+    /** It runs the task given after the delay, used to resume the Streams that have been paused */
+    public void schedule(Runnable task, long delayMillis) {
+        getScheduler().schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null) scheduler = ThreadUtils.getSingleThreadScheduledExecutorService("JclBandwidthLimiter");
+        return scheduler;
+    }
+
+    /** It stops the executor used to resume the Streams */
+    public synchronized void stop() {
+        if (scheduler != null) scheduler.shutdownNow();
+        scheduler = null;
+    }
+
+    /** Indicates if the Peer has buckets of its own */
+    public boolean containsPeer(PeerAddress peerAddress) {
+        return peerBuckets.containsKey(peerAddress);
+    }
+
+    public synchronized BandwidthConfig getConfig() {
+        return this.config;
+    }
+}
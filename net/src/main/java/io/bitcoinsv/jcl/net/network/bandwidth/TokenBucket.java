@@ -0,0 +1,84 @@
+package io.bitcoinsv.jcl.net.network.bandwidth;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * A Token Bucket, used to limit the rate of bytes read/written. The bucket is refilled at a constant rate (bytes per
+ * second) up to its capacity (the maximum burst), and every byte read/written consumes one token. The bytes can be
+ * consumed even if there are not enough tokens (the bucket goes into "debt"), so a big write is never split in
+ * pieces smaller than needed, but no more bytes are allowed until the debt is paid back.
+ *
+ * A rate of ZERO means no limit.
+ */
+public class TokenBucket {
+
+    // The minimum time we wait when the bucket is empty, so we don't wake up for just a handful of bytes:
+    private static final long MIN_WAIT_MILLIS = 10;
+
+    private long rate;          // bytes per second
+    private long capacity;      // max burst, in bytes
+    private double tokens;
+    private long lastRefillNanos;
+
+    /**
+     * Constructor.
+     * @param rate      Bytes per second. ZERO means no limit
+     * @param capacity  Maximum burst, in bytes. If ZERO, the capacity is the same as the rate (1 second burst)
+     */
+    public TokenBucket(long rate, long capacity) {
+        this.lastRefillNanos = System.nanoTime();
+        reconfigure(rate, capacity);
+    }
+
+    public TokenBucket(long rate) {
+        this(rate, 0);
+    }
+
+    /**
+     * It changes the rate and the capacity of the bucket. The tokens already in the bucket are kept (if the bucket
+     * had no limit so far, it starts full)
+     */
+    public synchronized void reconfigure(long rate, long capacity) {
+        refill();
+        boolean wasUnlimited = (this.rate == 0);
+        this.rate = Math.max(rate, 0);
+        this.capacity = (capacity > 0) ? capacity : this.rate;
+        this.tokens = wasUnlimited ? this.capacity : Math.min(tokens, this.capacity);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        if (rate > 0) {
+            tokens = Math.min(capacity, tokens + ((now - lastRefillNanos) * (double) rate / 1_000_000_000L));
+        }
+        lastRefillNanos = now;
+    }
+
+    /** Returns the number of bytes that can be consumed right now */
+    public synchronized long getAvailable() {
+        if (rate == 0) return Long.MAX_VALUE;
+        refill();
+        return (long) Math.max(tokens, 0);
+    }
+
+    /** It consumes the number of bytes given. The bucket might go into "debt" */
+    public synchronized void consume(long numBytes) {
+        if (rate == 0) return;
+        refill();
+        tokens -= numBytes;
+    }
+
+    /** Returns the number of millisecs to wait until some bytes can be consumed again */
+    public synchronized long getMillisUntilAvailable() {
+        if (rate == 0) return 0;
+        refill();
+        if (tokens >= 1) return 0;
+        long millis = (long) Math.ceil((1 - tokens) * 1000 / rate);
+        return Math.max(millis, MIN_WAIT_MILLIS);
+    }
+
+    public synchronized boolean isUnlimited()   { return rate == 0; }
+    public synchronized long getRate()          { return rate; }
+    public synchronized long getCapacity()      { return capacity; }
+}
@@ -1,5 +1,7 @@
 package io.bitcoinsv.jcl.net.network.config;
 
+import io.bitcoinsv.jcl.net.network.bandwidth.BandwidthConfig;
+
 import java.util.OptionalInt;
 
 /**
@@ -55,4 +57,19 @@ public interface NetworkConfig {
     /** An aproximation of the max size of a message that will be sent/receive by the Net */
     int getMaxMessageSizeAvgInBytes();
 
+    /**
+     * Only relevant for NIO-based implementations. Number of I/O Threads, each one running its own Selector, that
+     * read/write the data of the connections already established. The connections are distributed among them (the
+     * less loaded one takes the next connection), while the main Selector only accepts and opens connections. A value
+     * around the number of cores is a good choice when connected to hundreds of Peers.
+     * If ZERO, all the connections are handled by the main Selector.
+     */
+    int getNumIOThreads();
+
+    /**
+     * Only relevant for NIO-based implementations. Bandwidth limits (global, per Peer and per message type) applied
+     * when reading/writing from/to the remote Peers. They can be changed later on at runtime.
+     */
+    BandwidthConfig getBandwidthConfig();
+
 }
\ No newline at end of file
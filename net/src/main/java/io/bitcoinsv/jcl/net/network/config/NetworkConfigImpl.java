@@ -1,6 +1,7 @@
 package io.bitcoinsv.jcl.net.network.config;
 
 
+import io.bitcoinsv.jcl.net.network.bandwidth.BandwidthConfig;
 import io.bitcoinsv.jcl.tools.handlers.HandlerConfig;
 
 import java.util.OptionalInt;
@@ -24,6 +25,8 @@ public class NetworkConfigImpl extends HandlerConfig implements NetworkConfig {
     private int nioBufferSizeUpgrade;
     private int maxMessageSizeAvgInBytes;
     private boolean blockingOnListeners;
+    private int numIOThreads;
+    private BandwidthConfig bandwidthConfig;
 
     public NetworkConfigImpl(int port,
                              OptionalInt maxSocketConnections,
@@ -36,7 +39,9 @@ public class NetworkConfigImpl extends HandlerConfig implements NetworkConfig {
                              int nioBufferSizeUpperBound,
                              int nioBufferSizeUpgrade,
                              int maxMessageSizeAvgInBytes,
-                             boolean blockingOnListeners) {
+                             boolean blockingOnListeners,
+                             int numIOThreads,
+                             BandwidthConfig bandwidthConfig) {
         this.port = port;
         this.maxSocketConnections = maxSocketConnections;
         this.maxSocketPendingConnections = maxSocketPendingConnections;
@@ -49,6 +54,45 @@ public class NetworkConfigImpl extends HandlerConfig implements NetworkConfig {
         this.nioBufferSizeUpgrade = nioBufferSizeUpgrade;
         this.maxMessageSizeAvgInBytes = maxMessageSizeAvgInBytes;
         this.blockingOnListeners = blockingOnListeners;
+        this.numIOThreads = numIOThreads;
+        this.bandwidthConfig = (bandwidthConfig != null) ? bandwidthConfig : BandwidthConfig.unlimited();
+    }
+
+    public NetworkConfigImpl(int port,
+                             OptionalInt maxSocketConnections,
+                             OptionalInt maxSocketPendingConnections,
+                             OptionalInt timeoutSocketConnection,
+                             OptionalInt timeoutSocketRemoteConfirmation,
+                             OptionalInt timeoutSocketIdle,
+                             int maxSocketConnectionsOpeningAtSameTime,
+                             int nioBufferSizeLowerBound,
+                             int nioBufferSizeUpperBound,
+                             int nioBufferSizeUpgrade,
+                             int maxMessageSizeAvgInBytes,
+                             boolean blockingOnListeners,
+                             int numIOThreads) {
+        this(port, maxSocketConnections, maxSocketPendingConnections, timeoutSocketConnection,
+                timeoutSocketRemoteConfirmation, timeoutSocketIdle, maxSocketConnectionsOpeningAtSameTime,
+                nioBufferSizeLowerBound, nioBufferSizeUpperBound, nioBufferSizeUpgrade, maxMessageSizeAvgInBytes,
+                blockingOnListeners, numIOThreads, BandwidthConfig.unlimited());
+    }
+
+    public NetworkConfigImpl(int port,
+                             OptionalInt maxSocketConnections,
+                             OptionalInt maxSocketPendingConnections,
+                             OptionalInt timeoutSocketConnection,
+                             OptionalInt timeoutSocketRemoteConfirmation,
+                             OptionalInt timeoutSocketIdle,
+                             int maxSocketConnectionsOpeningAtSameTime,
+                             int nioBufferSizeLowerBound,
+                             int nioBufferSizeUpperBound,
+                             int nioBufferSizeUpgrade,
+                             int maxMessageSizeAvgInBytes,
+                             boolean blockingOnListeners) {
+        this(port, maxSocketConnections, maxSocketPendingConnections, timeoutSocketConnection,
+                timeoutSocketRemoteConfirmation, timeoutSocketIdle, maxSocketConnectionsOpeningAtSameTime,
+                nioBufferSizeLowerBound, nioBufferSizeUpperBound, nioBufferSizeUpgrade, maxMessageSizeAvgInBytes,
+                blockingOnListeners, 0);
     }
 
     public static NetworkConfigImplBuilder builder()        { return new NetworkConfigImplBuilder(); }
@@ -64,6 +108,8 @@ public class NetworkConfigImpl extends HandlerConfig implements NetworkConfig {
     public int getNioBufferSizeUpperBound()                 { return this.nioBufferSizeUpperBound; }
     public int getNioBufferSizeUpgrade()                    { return this.nioBufferSizeUpgrade; }
     public int getMaxMessageSizeAvgInBytes()                { return this.maxMessageSizeAvgInBytes; }
+    public int getNumIOThreads()                            { return this.numIOThreads; }
+    public BandwidthConfig getBandwidthConfig()             { return this.bandwidthConfig; }
 
     public NetworkConfigImplBuilder toBuilder() {
         return new NetworkConfigImplBuilder()
@@ -78,7 +124,9 @@ public class NetworkConfigImpl extends HandlerConfig implements NetworkConfig {
                 .nioBufferSizeUpperBound(this.nioBufferSizeUpperBound)
                 .nioBufferSizeUpgrade(this.nioBufferSizeUpgrade)
                 .maxMessageSizeAvgInBytes(this.maxMessageSizeAvgInBytes)
-                .blockingOnListeners(this.blockingOnListeners);
+                .blockingOnListeners(this.blockingOnListeners)
+                .numIOThreads(this.numIOThreads)
+                .bandwidthConfig(this.bandwidthConfig);
     }
 
     /**
@@ -97,6 +145,8 @@ public class NetworkConfigImpl extends HandlerConfig implements NetworkConfig {
         private int nioBufferSizeUpgrade;
         private int maxMessageSizeAvgInBytes;
         private boolean blockingOnListeners;
+        private int numIOThreads;
+        private BandwidthConfig bandwidthConfig;
 
         NetworkConfigImplBuilder() {}
 
@@ -160,6 +210,16 @@ public class NetworkConfigImpl extends HandlerConfig implements NetworkConfig {
             return this;
         }
 
+        public NetworkConfigImpl.NetworkConfigImplBuilder numIOThreads(int numIOThreads) {
+            this.numIOThreads = numIOThreads;
+            return this;
+        }
+
+        public NetworkConfigImpl.NetworkConfigImplBuilder bandwidthConfig(BandwidthConfig bandwidthConfig) {
+            this.bandwidthConfig = bandwidthConfig;
+            return this;
+        }
+
         public NetworkConfigImpl build() {
             return new NetworkConfigImpl(
                     port,
@@ -173,7 +233,9 @@ public class NetworkConfigImpl extends HandlerConfig implements NetworkConfig {
                     nioBufferSizeUpperBound,
                     nioBufferSizeUpgrade,
                     maxMessageSizeAvgInBytes,
-                    blockingOnListeners);
+                    blockingOnListeners,
+                    numIOThreads,
+                    bandwidthConfig);
         }
     }
 }
\ No newline at end of file
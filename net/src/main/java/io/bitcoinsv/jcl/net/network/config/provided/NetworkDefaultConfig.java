@@ -1,5 +1,6 @@
 package io.bitcoinsv.jcl.net.network.config.provided;
 
+import io.bitcoinsv.jcl.net.network.bandwidth.BandwidthConfig;
 import io.bitcoinsv.jcl.net.network.config.NetworkConfigImpl;
 
 import java.util.OptionalInt;
@@ -25,6 +26,8 @@ public class NetworkDefaultConfig extends NetworkConfigImpl {
     private static final int nioBufferSizeUpgrade = 10_000_000;
     private static final int maxMessageSizeAvgInBytes = 1000; // TODO :CAREFUL
     private static final boolean blockingOnListeners = false;
+    private static final int numIOThreads = 0;
+    private static final BandwidthConfig bandwidthConfig = BandwidthConfig.unlimited();
 
     /** Constructor */
     public NetworkDefaultConfig() {
@@ -40,6 +43,8 @@ public class NetworkDefaultConfig extends NetworkConfigImpl {
                 nioBufferSizeUpperBound,
                 nioBufferSizeUpgrade,
                 maxMessageSizeAvgInBytes,
-                blockingOnListeners);
+                blockingOnListeners,
+                numIOThreads,
+                bandwidthConfig);
     }
 }
\ No newline at end of file
@@ -17,6 +17,7 @@ public final class PeerDisconnectedEvent extends P2PEvent {
         DISCONNECTED_BY_LOCAL,                  // generic reason for getting disconnected by Local (JCL)
         DISCONNECTED_BY_LOCAL_BLACKLIST,        // Peer has been blacklisted
         DISCONNECTED_BY_LOCAL_LAZY_DOWNLOAD,    // Remote block doesn't respond to block download requests
+        DISCONNECTED_BY_LOCAL_INVALID_BLOCK,    // Remote Peer has sent a Block that doesn't match its Header
         DISCONNECTED_BY_REMOTE                  // generic reason for getting disconnected by the Remote Peer
     }
 
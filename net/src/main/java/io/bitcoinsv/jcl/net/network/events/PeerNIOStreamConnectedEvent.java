@@ -11,6 +11,9 @@ import io.bitcoinsv.jcl.net.network.streams.nio.NIOStream;
  * An Event triggered when a Peer is Connected.
  * NOTE: This is a LOW-LEVEL Event, only meant to be used by other classes in this library, not by the client, since
  * it controls how the information flows between the Library and the remote Peer.
+ * The Stream does not read any data until "NIOStream.startReading()" is called, so the consumer of this Event must
+ * call it once it has linked itself to the Stream. In this library, that's only done by the MessageHandlerImpl. If
+ * nobody is subscribed to this Event, the Stream starts reading as soon as it's connected.
  */
 public final class PeerNIOStreamConnectedEvent extends P2PEvent {
     private final NIOStream stream;
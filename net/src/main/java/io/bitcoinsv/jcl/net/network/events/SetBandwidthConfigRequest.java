@@ -0,0 +1,41 @@
+package io.bitcoinsv.jcl.net.network.events;
+
+
+import com.google.common.base.Objects;
+import io.bitcoinsv.jcl.net.network.bandwidth.BandwidthConfig;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * An Event that represents a Request to replace the Bandwidth limits (global, default per Peer and per message type)
+ * applied to the connections. The new limits take effect straight away, also for the connections already open.
+ */
+public final class SetBandwidthConfigRequest extends P2PRequest {
+    private BandwidthConfig bandwidthConfig;
+    /** Constructor */
+    public SetBandwidthConfigRequest(BandwidthConfig bandwidthConfig) {
+        this.bandwidthConfig = bandwidthConfig;
+    }
+
+    public BandwidthConfig getBandwidthConfig() {
+        return this.bandwidthConfig;
+    }
+
+    @Override
+    public String toString() {
+        return "SetBandwidthConfigRequest(bandwidthConfig=" + this.bandwidthConfig + ")";
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!super.equals(obj)) { return false; }
+        SetBandwidthConfigRequest other = (SetBandwidthConfigRequest) obj;
+        return Objects.equal(this.bandwidthConfig, other.bandwidthConfig);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(super.hashCode(), bandwidthConfig);
+    }
+}
@@ -0,0 +1,59 @@
+package io.bitcoinsv.jcl.net.network.events;
+
+
+import com.google.common.base.Objects;
+import io.bitcoinsv.jcl.net.network.PeerAddress;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * An Event that represents a Request to set specific Bandwidth limits (in bytes per second, ZERO meaning no limit)
+ * for one Peer, overriding the default Peer limits. If "reset" is true, the specific limits are removed instead, and
+ * the default Peer limits apply again.
+ */
+public final class SetPeerBandwidthRequest extends P2PRequest {
+    private PeerAddress peerAddress;
+    private long readBytesPerSec;
+    private long writeBytesPerSec;
+    private boolean reset;
+
+    /** Constructor. It sets specific limits for the Peer */
+    public SetPeerBandwidthRequest(PeerAddress peerAddress, long readBytesPerSec, long writeBytesPerSec) {
+        this.peerAddress = peerAddress;
+        this.readBytesPerSec = readBytesPerSec;
+        this.writeBytesPerSec = writeBytesPerSec;
+    }
+
+    /** Constructor. It removes the specific limits of the Peer */
+    public SetPeerBandwidthRequest(PeerAddress peerAddress) {
+        this.peerAddress = peerAddress;
+        this.reset = true;
+    }
+
+    public PeerAddress getPeerAddress()     { return this.peerAddress; }
+    public long getReadBytesPerSec()        { return this.readBytesPerSec; }
+    public long getWriteBytesPerSec()       { return this.writeBytesPerSec; }
+    public boolean isReset()                { return this.reset; }
+
+    @Override
+    public String toString() {
+        return "SetPeerBandwidthRequest(peerAddress=" + this.peerAddress + ", readBytesPerSec=" + this.readBytesPerSec
+                + ", writeBytesPerSec=" + this.writeBytesPerSec + ", reset=" + this.reset + ")";
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!super.equals(obj)) { return false; }
+        SetPeerBandwidthRequest other = (SetPeerBandwidthRequest) obj;
+        return Objects.equal(this.peerAddress, other.peerAddress)
+                && Objects.equal(this.readBytesPerSec, other.readBytesPerSec)
+                && Objects.equal(this.writeBytesPerSec, other.writeBytesPerSec)
+                && Objects.equal(this.reset, other.reset);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(super.hashCode(), peerAddress, readBytesPerSec, writeBytesPerSec, reset);
+    }
+}
@@ -2,6 +2,7 @@ package io.bitcoinsv.jcl.net.network.handlers;
 
 import com.google.common.util.concurrent.AbstractExecutionThreadService;
 import io.bitcoinsv.jcl.net.network.PeerAddress;
+import io.bitcoinsv.jcl.net.network.bandwidth.BandwidthLimiter;
 import io.bitcoinsv.jcl.net.network.config.NetworkConfig;
 import io.bitcoinsv.jcl.net.network.config.NetworkConfigImpl;
 import io.bitcoinsv.jcl.net.network.events.*;
@@ -17,8 +18,7 @@ import io.bitcoinsv.jcl.tools.handlers.HandlerConfig;
 import io.bitcoinsv.jcl.net.tools.LoggerUtil;
 
 import io.bitcoinsv.jcl.tools.thread.ThreadUtils;
-import io.bitcoinsv.jcl.tools.thread.TimeoutTask;
-import io.bitcoinsv.jcl.tools.thread.TimeoutTaskBuilder;
+import io.bitcoinsv.jcl.tools.thread.TimerWheel;
 
 import java.io.IOException;
 import java.net.*;
@@ -31,6 +31,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -50,8 +51,27 @@ import static com.google.common.base.Preconditions.checkState;
  * - Any time a new connection arrives, an isntance of a NIO Stream is linked to that Key, and an Event is
  *   triggered containing that Stream, that will be used to communicate with the remote Peer.
  *
- * - This class keeps different list ot keep track of the Pers to connect to or the ones to disconnect from. These
- *   lists are processed in another 2 different Threads, one each.
+ * - The connections to remote Peers are also opened in the main loop: on each pass, it takes as many Peers from the
+ *   "pendingToOpen" list as allowed by the "maxSocketConnectionsOpeningAtSameTime" in the Configuration, and it
+ *   issues a non-blocking connect to each of them. The deadline of each connect is tracked in a Timer Wheel, so
+ *   the connections not confirmed in time are closed without running a Task/Thread for each one of them.
+ *
+ * - The list of Peers to disconnect from is processed in another Thread.
+ *
+ * - The connections that fail are retried after a delay that grows with each consecutive failure of the same Peer
+ *   (exponential backoff), also tracked in a Timer Wheel. Once the delay is over, the Peer goes back to the
+ *   "pendingToOpen" list.
+ *
+ * - The Stream of a new connection does not read any data until "NIOStream.startReading()" is called, so the
+ *   consumer of the "PeerNIOStreamConnectedEvent" can link itself to the Stream before any data arrives. In this
+ *   library that consumer is the MessageHandlerImpl. If nobody is subscribed to that Event (the NetworkHandler is
+ *   used on its own), the Stream starts reading right away. Otherwise, whoever consumes that Event must call
+ *   "startReading()", or no data will ever be read from the Peer.
+ *
+ * - If the "numIOThreads" in the Configuration is higher than ZERO, it runs in "multi-reactor" mode: the main loop
+ *   only accepts and opens connections, and once a connection is established, its Socket is moved to one of the
+ *   I/O Reactors (the one handling less connections at that moment). Each Reactor runs its own Selector in its own
+ *   Thread, and performs all the reading/writing for the connections it owns.
  *
  *
  */
@@ -74,10 +94,62 @@ public class NetworkHandlerImpl extends AbstractExecutionThreadService implement
     class KeyConnectionAttach {
         PeerAddress peerAddress;
         NIOStream stream;
-        boolean started; // set to TRUE when we have received already some bytes from this Peer
+        IOReactor reactor; // I/O Reactor owning this connection (only in multi-reactor mode)
         public KeyConnectionAttach(PeerAddress peerAddress) { this.peerAddress = peerAddress;}
     }
 
+    /**
+     * Inner class that represents an I/O Reactor, used in multi-reactor mode. It runs its own Selector in its own
+     * Thread, and it handles the READ/WRITE keys of the connections assigned to it.
+     * Channels can only be registered in a Selector from its own Thread without blocking, so the registration of new
+     * connections is done through a queue of tasks that is processed after each "select()".
+     */
+    class IOReactor implements Runnable {
+        final int index;
+        final Selector selector;
+        final Queue<Runnable> pendingTasks = new ConcurrentLinkedQueue<>();
+        final AtomicInteger numConns = new AtomicInteger();
+
+        IOReactor(int index) throws IOException {
+            this.index = index;
+            this.selector = SelectorProvider.provider().openSelector();
+        }
+
+        /** Registers the channel in this Reactor, and starts the Peer connection once it's been registered */
+        void register(SocketChannel channel, KeyConnectionAttach keyAttach) {
+            numConns.incrementAndGet();
+            keyAttach.reactor = this;
+            pendingTasks.offer(() -> {
+                try {
+                    SelectionKey key = channel.register(selector, 0, keyAttach);
+                    connKeys.put(keyAttach.peerAddress, key);
+                    startPeerConnection(key);
+                } catch (Exception e) {
+                    // The channel might have been closed in the meantime...
+                    logger.trace(keyAttach.peerAddress, "Error registering the connection in I/O Reactor " + index, e.getMessage());
+                    releaseReactor(keyAttach);
+                    closeChannel(channel);
+                }
+            });
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (isRunning() && selector.isOpen()) {
+                    handleSelectorKeys(selector);
+                    Runnable task;
+                    while ((task = pendingTasks.poll()) != null) task.run();
+                }
+            } catch (Throwable e) {
+                logger.error(e, "Error running the I/O Reactor " + index);
+            } finally {
+                closeAllKeys(selector);
+            }
+        }
+    }
+
     /**
      * Inner class that represents a connection that is in progress: We managed to connect to the remote Peer, but we
      * have not received a Confirmation from their end to establish the connection
@@ -89,11 +161,16 @@ public class NetworkHandlerImpl extends AbstractExecutionThreadService implement
             this.peerAddress = peerAddress;
             this.connTimestamp = System.currentTimeMillis();
         }
-        public boolean hasExpired(long refTimestamp) {
-            return ((System.currentTimeMillis() - connTimestamp) > refTimestamp);
-        }
     }
 
+    // Duration of each tick of the Timer Wheel of connection deadlines, and number of buckets in it:
+    private static final long CONNECT_TIMER_TICK_MS = 50;
+    private static final int CONNECT_TIMER_BUCKETS = 512;
+
+    // Delay before retrying a connection that failed. It's doubled on each consecutive failure of the same Peer:
+    private static final long CONNECT_RETRY_INITIAL_DELAY_MS = 1_000;
+    private static final long CONNECT_RETRY_MAX_DELAY_MS = 120_000;
+
     // Basic Attributes:
     protected String id;
     protected RuntimeConfig runtimeConfig;
@@ -120,8 +197,11 @@ public class NetworkHandlerImpl extends AbstractExecutionThreadService implement
 
     // An executor Service, to trigger jobs in MultiThread...
     ExecutorService jobExecutor = ThreadUtils.getCachedThreadExecutorService("JclNetworkHandler");
-    // An executor for triggering new Connections to remote Peers:
-    ExecutorService newConnsExecutor;
+    // An executor for the I/O Reactors (only in multi-reactor mode):
+    ExecutorService ioExecutor;
+
+    // I/O Reactors (empty if not in multi-reactor mode):
+    private List<IOReactor> ioReactors = new ArrayList<>();
 
     // General State:
     private NetworkHandlerState state;
@@ -140,6 +220,19 @@ public class NetworkHandlerImpl extends AbstractExecutionThreadService implement
     private Set<InetAddress> blacklist = ConcurrentHashMap.newKeySet();
     private Set<PeerAddress> failedConns = ConcurrentHashMap.newKeySet();
 
+    // Selection Key of each connection (in progress or active), whatever the Selector it belongs to:
+    private Map<PeerAddress, SelectionKey> connKeys = new ConcurrentHashMap<>();
+
+    // Deadlines of the "inProgress" connections. Only used from the main loop:
+    private TimerWheel<PeerAddress> connectDeadlines = new TimerWheel<>(CONNECT_TIMER_TICK_MS, CONNECT_TIMER_BUCKETS);
+
+    // Peers whose connection failed, waiting to be retried, and number of consecutive failures of each one:
+    private TimerWheel<PeerAddress> connectRetries = new TimerWheel<>(CONNECT_TIMER_TICK_MS, CONNECT_TIMER_BUCKETS);
+    private Map<PeerAddress, Integer> numConsecutiveFailures = new ConcurrentHashMap<>();
+
+    // Bandwidth limits applied by the Streams of all the connections:
+    private BandwidthLimiter bandwidthLimiter;
+
     // Other useful counters:
     private AtomicLong numConnsFailed = new AtomicLong();
     private AtomicLong numConnsInProgressExpired = new AtomicLong();
@@ -159,8 +252,7 @@ public class NetworkHandlerImpl extends AbstractExecutionThreadService implement
         this.config = netConfig;
         this.peerAddress = localAddress;
         this.logger = new LoggerUtil(id, HANDLER_ID, this.getClass());
-        this.newConnsExecutor = ThreadUtils.getFixedThreadExecutorService("JclNetworkHandlerRemoteConn", netConfig.getMaxSocketConnectionsOpeningAtSameTime());
-
+        this.bandwidthLimiter = new BandwidthLimiter(netConfig.getBandwidthConfig());
     }
 
     @Override
@@ -172,7 +264,7 @@ public class NetworkHandlerImpl extends AbstractExecutionThreadService implement
     @Override
     public void stopConnecting()                    { this.keep_connecting = false; }
     @Override
-    public void resumeConnecting()                  { this.keep_connecting = true;}
+    public void resumeConnecting()                  { this.keep_connecting = true; if (selector != null) selector.wakeup(); }
 
     @Override
     public NetworkHandlerState getState() {
@@ -256,6 +348,10 @@ public class NetworkHandlerImpl extends AbstractExecutionThreadService implement
         if (super.isRunning()) {
             try {
                 lock.writeLock().lock();
+                // The Peers waiting to retry a failed connection are not retried anymore:
+                requests.forEach(r -> {
+                    if (connectRetries.cancel(r.getPeerAddress())) numConsecutiveFailures.remove(r.getPeerAddress());
+                });
                 List<DisconnectPeerRequest> newList = requests.stream()
                         .filter(r -> !pendingToCloseConns.contains(r.getPeerAddress()))
                         .filter(r -> (activeConns.containsKey(r.getPeerAddress()) || pendingToOpenConns.contains(r.getPeerAddress())))
@@ -329,6 +425,11 @@ public class NetworkHandlerImpl extends AbstractExecutionThreadService implement
             // We initialize the Handler:
             selector = SelectorProvider.provider().openSelector();
 
+            // In multi-reactor mode, each I/O Reactor has its own Selector:
+            for (int i = 0; i < config.getNumIOThreads(); i++) {
+                ioReactors.add(new IOReactor(i));
+            }
+
             // if we run in Server-Mode, we configure the Socket to be listening to incoming requests:
             if (server_mode) {
                 SocketAddress serverSocketAddress = new InetSocketAddress(peerAddress.getIp(), peerAddress.getPort());
@@ -361,6 +462,8 @@ public class NetworkHandlerImpl extends AbstractExecutionThreadService implement
         eventBus.subscribe(StopConnectingRequest.class,     e -> onStopConnecting((StopConnectingRequest) e));
         eventBus.subscribe(DisconnectPeersRequest.class,    e -> onDisconnectPeers((DisconnectPeersRequest) e));
         eventBus.subscribe(BlacklistPeerRequest.class,      e -> onBlacklistPeer((BlacklistPeerRequest) e));
+        eventBus.subscribe(SetBandwidthConfigRequest.class, e -> onSetBandwidthConfig((SetBandwidthConfigRequest) e));
+        eventBus.subscribe(SetPeerBandwidthRequest.class,   e -> onSetPeerBandwidth((SetPeerBandwidthRequest) e));
 
     }
 
@@ -395,6 +498,24 @@ public class NetworkHandlerImpl extends AbstractExecutionThreadService implement
         this.blacklist(request.getAddress(), PeersBlacklistedEvent.BlacklistReason.CLIENT);
     }
 
+    private void onSetBandwidthConfig(SetBandwidthConfigRequest request) {
+        logger.info("Bandwidth limits updated: " + request.getBandwidthConfig());
+        this.bandwidthLimiter.updateConfig(request.getBandwidthConfig());
+    }
+
+    private void onSetPeerBandwidth(SetPeerBandwidthRequest request) {
+        if (request.isReset()) {
+            this.bandwidthLimiter.resetPeerLimits(request.getPeerAddress());
+        } else {
+            this.bandwidthLimiter.setPeerLimits(request.getPeerAddress(), request.getReadBytesPerSec(), request.getWriteBytesPerSec());
+        }
+    }
+
+    /** Returns the Bandwidth Limiter used by the Streams of all the connections */
+    public BandwidthLimiter getBandwidthLimiter() {
+        return this.bandwidthLimiter;
+    }
+
     @Override
     public void start() {
         checkState(!super.isRunning(), "The Service is already Running");
@@ -424,10 +545,13 @@ public class NetworkHandlerImpl extends AbstractExecutionThreadService implement
     public void run() {
         logger.info("starting in " + (server_mode? "SERVER" : "CLIENT") + " mode...");
         startConnectionsJobs();
+        startIOReactors();
         try {
             while (isRunning()) {
-                handleSelectorKeys(selector);
-                //logger.trace("TEsting...");
+                handleExpiredConnections();
+                handleConnectionsToRetry();
+                handlePendingToOpenConnections();
+                handleSelectorKeys(selector, CONNECT_TIMER_TICK_MS);
             }
         } catch (Throwable e) {
             logger.error(e, "Error running the NetworkHandlerImpl");
@@ -435,6 +559,8 @@ public class NetworkHandlerImpl extends AbstractExecutionThreadService implement
         } finally {
             stopConnectionsJobs();
             closeAllKeys(selector);
+            stopIOReactors();
+            bandwidthLimiter.stop();
         }
     }
 
@@ -455,6 +581,7 @@ public class NetworkHandlerImpl extends AbstractExecutionThreadService implement
             Thread.sleep(100); // we wait a bit, so Disconnected Events can be triggered...
 
             selector.wakeup();
+            ioReactors.forEach(r -> r.selector.wakeup());
             super.stopAsync();
             super.awaitTerminated(5_000, TimeUnit.MILLISECONDS);
 
@@ -490,11 +617,9 @@ public class NetworkHandlerImpl extends AbstractExecutionThreadService implement
         fileUtils.writeCSV(filePath, this.failedConns);
     }
 
-    /** Processes the pending Connections in a separate Thread */
+    /** Processes the pending Connections to close in a separate Thread */
     private void startConnectionsJobs() {
-        jobExecutor.submit(this::handlePendingToOpenConnections);
         jobExecutor.submit(this::handlePendingToCloseConnections);
-        jobExecutor.submit(this::handleInProgressConnections);
     }
 
     /** Stops the processing of pending Connections (running in a separate Thread) */
@@ -502,6 +627,61 @@ public class NetworkHandlerImpl extends AbstractExecutionThreadService implement
         if (jobExecutor != null) jobExecutor.shutdown();
     }
 
+    /** Starts the I/O Reactors, each one in a separate Thread (only in multi-reactor mode) */
+    private void startIOReactors() {
+        if (ioReactors.isEmpty()) return;
+        logger.info("starting " + ioReactors.size() + " I/O Reactors...");
+        ioExecutor = ThreadUtils.getFixedThreadExecutorService("JclNetworkHandlerIO", ioReactors.size());
+        ioReactors.forEach(r -> ioExecutor.submit(r));
+    }
+
+    /** Stops the I/O Reactors. Each Reactor closes its own Keys before finishing */
+    private void stopIOReactors() {
+        if (ioExecutor == null) return;
+        ioReactors.forEach(r -> r.selector.wakeup());
+        ioExecutor.shutdown();
+    }
+
+    /** Returns the I/O Reactor handling less connections at this moment */
+    private IOReactor getLeastLoadedReactor() {
+        IOReactor result = ioReactors.get(0);
+        for (IOReactor reactor : ioReactors) {
+            if (reactor.numConns.get() < result.numConns.get()) result = reactor;
+        }
+        return result;
+    }
+
+    /**
+     * It moves an established connection from the main Selector to the less loaded I/O Reactor. The key in the main
+     * Selector is cancelled, and the connection is started once the channel has been registered in the Reactor.
+     */
+    private void moveToReactor(SelectionKey key) {
+        KeyConnectionAttach keyAttach = (KeyConnectionAttach) key.attachment();
+        key.cancel();
+        getLeastLoadedReactor().register((SocketChannel) key.channel(), keyAttach);
+    }
+
+    /** It releases the connection from the I/O Reactor owning it, if any */
+    private void releaseReactor(KeyConnectionAttach keyAttach) {
+        try {
+            lock.writeLock().lock();
+            if (keyAttach.reactor != null) {
+                keyAttach.reactor.numConns.decrementAndGet();
+                keyAttach.reactor = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void closeChannel(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ioe) {
+            // Nothing to do, the channel is discarded anyway
+        }
+    }
+
     /**
      * Logic to execute when a Connection to a Remote Peer has failed, so there is actually no connection at all.
      * We just discard and blacklist this Peer.
@@ -519,9 +699,10 @@ public class NetworkHandlerImpl extends AbstractExecutionThreadService implement
             numConnsFailed.incrementAndGet();
 
             // In order to avoid running out of connections, we do NOT blacklist the Peer and we put it back to
-            // the pending pool:
+            // the pending pool, but only after a delay, so a Peer that keeps failing is not retried in a tight loop:
             //blacklist(peerAddress.getIp(), PeersBlacklistedEvent.BlacklistReason.CONNECTION_REJECTED);
-            this.pendingToOpenConns.offer(peerAddress);
+            int numFailures = numConsecutiveFailures.merge(peerAddress, 1, Integer::sum);
+            connectRetries.schedule(peerAddress, getConnectRetryDelay(numFailures));
 
             // We publish the event
             eventBus.publish(new PeerRejectedEvent(peerAddress, reason, detail));
@@ -542,37 +723,49 @@ public class NetworkHandlerImpl extends AbstractExecutionThreadService implement
 
             KeyConnectionAttach keyAttach = (KeyConnectionAttach) key.attachment();
 
+            // The default Peer bandwidth limits apply to this Peer from now on:
+            bandwidthLimiter.addPeer(keyAttach.peerAddress);
+
             // We create the NIOStream and link it to this key (as attachment):
             NIOStream stream = new NIOStream(
                     keyAttach.peerAddress,
                     ThreadUtils.PEER_STREAM_EXECUTOR,
                     this.runtimeConfig,
                     this.config,
-                    key);
+                    key,
+                    this.bandwidthLimiter);
             stream.init();
             keyAttach.stream = stream;
 
             // We add this connection to the list of active ones (not "in Progress" anymore):
             inProgressConns.remove(keyAttach.peerAddress);
+            numConsecutiveFailures.remove(keyAttach.peerAddress);
             activeConns.put(keyAttach.peerAddress, stream);
             logger.trace(keyAttach.peerAddress, "Socket connection established.");
 
-            // We trigger the callbacks, sending the Stream back to the client:
-            eventBus.publish(new PeerConnectedEvent(keyAttach.peerAddress));
+            // The key is not interested in any event until the Stream starts reading (the WRITE interest is set by the
+            // Stream itself when there is something to write):
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_CONNECT);
 
-            eventBus.publish(new PeerNIOStreamConnectedEvent(stream));
+            // We trigger the callbacks, sending the Stream back to the client. The Stream won't read any data until
+            // the client links itself to it and calls "NIOStream.startReading()". If there is no client to link
+            // itself to the Stream, it starts reading right away:
+            eventBus.publish(new PeerConnectedEvent(keyAttach.peerAddress));
 
-            // From now moving forward, this key is ready to READ data:
-            key.interestOps((key.interestOps() | SelectionKey.OP_READ) & ~SelectionKey.OP_CONNECT);
+            if (eventBus.hasSubscribers(PeerNIOStreamConnectedEvent.class)) {
+                eventBus.publish(new PeerNIOStreamConnectedEvent(stream));
+            } else {
+                stream.startReading();
+            }
         } finally {
             lock.writeLock().unlock();
         }
     }
 
     /**
-     * It handles one of the "pendingToOpen" connections. It opens the connection and registers the Key in the
-     * selector. If the connection process takes longer than the limit workingState in the configuration, then we discard
-     * this Peer.
+     * It handles one of the "pendingToOpen" connections. It issues a non-blocking connect and registers the Key in the
+     * selector. The deadline of the connection is registered in the Timer Wheel: If the connection is not confirmed
+     * before the limit set in the configuration, then we discard this Peer.
      * @param peerAddress Peer to connect to
      */
     private void handleConnectionToOpen(PeerAddress peerAddress) {
@@ -588,20 +781,21 @@ public class NetworkHandlerImpl extends AbstractExecutionThreadService implement
 
             boolean isConnected = socketChannel.connect(socketAddress);
             SelectionKey key = (isConnected)
-                    ? socketChannel.register(selector, SelectionKey.OP_READ)
+                    ? socketChannel.register(selector, 0)
                     : socketChannel.register(selector, SelectionKey.OP_CONNECT);
 
             key.attach(new KeyConnectionAttach(peerAddress));
-
+            connKeys.put(peerAddress, key);
 
             if (isConnected) {
                 logger.trace(peerAddress, "Connected, establishing connection...");
-                startPeerConnection(key);
+                if (ioReactors.isEmpty()) startPeerConnection(key);
+                else moveToReactor(key);
 
             } else {
                 logger.trace(peerAddress, "Connected, waiting for remote confirmation...");
+                connectDeadlines.schedule(peerAddress, getConnectTimeout());
             }
-            this.selector.wakeup();
 
         } catch (Exception e) {
             //e.printStackTrace();
@@ -612,117 +806,83 @@ public class NetworkHandlerImpl extends AbstractExecutionThreadService implement
     }
 
     /**
-     * It handles the pending Connections to Open. For each PeerAddress, it tries to open a Socket channel. If
-     * there is a limit in the maximum number of Connections and we reach it, it does nothing.
+     * It handles the pending Connections to Open. It's called from the main loop on each pass, and for each PeerAddress
+     * it issues a non-blocking connect, up to the limit of connections opening at the same time. If there is a limit
+     * in the maximum number of Connections and we reach it, it does nothing.
      */
     private void handlePendingToOpenConnections() {
-        try {
-            // First loop level: This job keeps on forever...
-            while (true) {
-                // We set the limit of connections (Sockets), if any. the number of "inProgress" + "active" connections
-                // cannot be higher than this value.
-                OptionalInt limitNumConns = config.getMaxSocketConnections();
-
-                // We keep track of how many connections we are trying on each iteration...
-                int numConnectionsTried = 0;
-
-                // Second loop level: We loop over the pending Connections...
-                while (true) {
-                    // Basic checks before getting a Peer from the Pool:
-                    // If any of these checks fail, we break the loop (we don't process any more peers)
-                    if (!this.selector.isOpen()) break;
-                    if (!keep_connecting) break;
-                    if (inProgressConns.size() > config.getMaxSocketConnectionsOpeningAtSameTime()) break;
-                    if ((limitNumConns.isPresent()) && (inProgressConns.size() + activeConns.size() >= limitNumConns.getAsInt())) break;
-
-
-                    PeerAddress peerAddress = this.pendingToOpenConns.take();
-                    if (peerAddress == null) continue;
-
-                    // Basic checks after obtaining the Peer from the Pool:
-                    // If any of these checks fail, we just skip to the next Peer
-                    if (activeConns.containsKey(peerAddress)) continue;
-                    if (inProgressConns.containsKey(peerAddress)) continue;
-                    if (blacklist.contains(peerAddress.getIp())) continue;
-
-                    // We handle this connection:
-                    // In case opening the connection takes too long, we wrap it up in a TimeoutTask...
-
-                    logger.trace(peerAddress, "handling connection To open. inProgress: " + this.inProgressConns.size() + " Still pendingToOpen in Queue: " + this.pendingToOpenConns.size());
-                    TimeoutTask connectPeerTask = TimeoutTaskBuilder.newTask()
-                            .threadsHandledBy(newConnsExecutor)
-                            .execute(() -> handleConnectionToOpen(peerAddress))
-                            .waitFor(config.getTimeoutSocketConnection().getAsInt())
-                            .ifTimeoutThenExecute(() -> {
-                                        processConnectionFailed(peerAddress, PeerRejectedEvent.RejectedReason.TIMEOUT,"connection timeout");
-                                        //System.out.println("<<<<< CONNECTION TIMEOUT " + peerAddress.toString() + ", " + Thread.activeCount() + " Threads");
-                                    }
-                            )
-                            .build();
-                    connectPeerTask.execute();
-                    numConnectionsTried++;
-                    // We wait a little bit between connections:
-                    Thread.sleep(50);
-                } // while...
-
-                // In case there are NO more connections pending to Open, We wait until the Queue of Pending
-                // connection has some content, or we are allowed to keep making  connections..
-                while (pendingToOpenConns.size() == 0 || !this.keep_connecting) Thread.sleep(1000);
+        // We set the limit of connections (Sockets), if any. the number of "inProgress" + "active" connections
+        // cannot be higher than this value.
+        OptionalInt limitNumConns = config.getMaxSocketConnections();
+
+        while (true) {
+            // Basic checks before getting a Peer from the Pool:
+            // If any of these checks fail, we break the loop (we don't process any more peers)
+            if (!keep_connecting) break;
+            if (inProgressConns.size() >= config.getMaxSocketConnectionsOpeningAtSameTime()) break;
+            if ((limitNumConns.isPresent()) && (inProgressConns.size() + activeConns.size() >= limitNumConns.getAsInt())) break;
+
+            PeerAddress peerAddress = this.pendingToOpenConns.poll();
+            if (peerAddress == null) break;
+
+            // Basic checks after obtaining the Peer from the Pool:
+            // If any of these checks fail, we just skip to the next Peer
+            if (activeConns.containsKey(peerAddress)) continue;
+            if (inProgressConns.containsKey(peerAddress)) continue;
+            if (blacklist.contains(peerAddress.getIp())) continue;
+
+            logger.trace(peerAddress, "handling connection To open. inProgress: " + this.inProgressConns.size() + " Still pendingToOpen in Queue: " + this.pendingToOpenConns.size());
+            handleConnectionToOpen(peerAddress);
+        } // while...
+    }
 
-                // A little wait between different execution mof this process:
-                Thread.sleep(1000);
+    /**
+     * It handles the in-progress connections which deadline has expired. these connections are already open from our
+     * end, but the remote Peer has not confirmed them (through a CONNECT Key in the KeySelector) in time, so they are
+     * closed and notified as failed.
+     */
+    private void handleExpiredConnections() {
+        List<PeerAddress> expiredConns = connectDeadlines.expire();
+        if (expiredConns.isEmpty()) return;
+        logger.trace("Removing " + expiredConns.size() + " in-progress expired connections");
+        numConnsInProgressExpired.addAndGet(expiredConns.size());
+        for (PeerAddress peerAddress : expiredConns) {
+            SelectionKey key = connKeys.get(peerAddress);
+            if (key != null) closeKey(key, PeerDisconnectedEvent.DisconnectedReason.DISCONNECTED_BY_LOCAL);
+            processConnectionFailed(peerAddress, PeerRejectedEvent.RejectedReason.TIMEOUT, "connection timeout");
+        }
+    }
 
-            } // while...
-        } catch (Throwable th) {
-            th.printStackTrace();
-            //handlerLogger.error(th, th.getMessage());
+    /**
+     * It handles the Peers whose connection failed and whose retry delay is over: they are put back into the
+     * "pendingToOpen" list, unless they have been connected or blacklisted in the meantime.
+     */
+    private void handleConnectionsToRetry() {
+        for (PeerAddress peerAddress : connectRetries.expire()) {
+            if (activeConns.containsKey(peerAddress)) continue;
+            if (blacklist.contains(peerAddress.getIp())) continue;
+            if (pendingToOpenConns.contains(peerAddress)) continue;
+            pendingToOpenConns.offer(peerAddress);
         }
+    }
 
+    /**
+     * Returns the delay before retrying the connection to a Peer that has failed the number of consecutive times
+     * given: it starts at CONNECT_RETRY_INITIAL_DELAY_MS and it's doubled each time, up to CONNECT_RETRY_MAX_DELAY_MS.
+     */
+    private long getConnectRetryDelay(int numFailures) {
+        int exponent = Math.min(numFailures - 1, 16);
+        return Math.min(CONNECT_RETRY_INITIAL_DELAY_MS << exponent, CONNECT_RETRY_MAX_DELAY_MS);
     }
 
     /**
-     * It handles the in-progress connections. these connections are already open from our end, but we are just waiting
-     * for the remote Peer to confirm (through a CONNECT Key in the KeySelector). This method loops over all these
-     * connections and remove those ones that are expired based on our config (timeoutSocketRemoteConfirmation)
-     * NOTE: An expired and remove connection from there might still confirm later on, sending a CONNECT signal to us. In
-     * that case, the connection is still accepted and inserted into the "active" conns.
+     * Returns the deadline for a connection to be established. The "connect" is issued without blocking, so the
+     * deadline covers both the opening of the Socket and the confirmation from the remote Peer.
      */
-    private void handleInProgressConnections() {
-        try {
-            // First loop level: This job keeps on forever...
-            // We keep a temporary list where we keep a reference to those In-Progress Connections that need to be removed
-            // because they have expired...
-            List<PeerAddress> inProgressConnsToRemove = new ArrayList<>();
-            while (true) {
-                // Second loop level: We loop over the InProgress Connections...
-                try {
-                    lock.writeLock().lock();
-                    for (PeerAddress peerAddress : this.inProgressConns.keySet()) {
-                        InProgressConn inProgressConn = this.inProgressConns.get(peerAddress);
-                        if (inProgressConn.hasExpired(this.config.getTimeoutSocketRemoteConfirmation().getAsInt())) {
-                            inProgressConnsToRemove.add(peerAddress);
-                        }
-                    } // for...
-                    // we remove the expired connections...
-                    if (!inProgressConnsToRemove.isEmpty()) {
-                        logger.trace("Removing " + inProgressConnsToRemove.size() + " in-progress expired connections");
-                        numConnsInProgressExpired.addAndGet(inProgressConnsToRemove.size());
-                        inProgressConnsToRemove.forEach(p -> inProgressConns.remove(p));
-                        inProgressConnsToRemove.clear();
-                    }
-                } finally {
-                    lock.writeLock().unlock();
-                }
-                Thread.sleep(2000); // avoid tight loops
-            } // while...
-        } catch (InterruptedException ie) {
-            ie.printStackTrace();
-            throw new RuntimeException(ie);
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new RuntimeException(e);
-        }
+    private long getConnectTimeout() {
+        return config.getTimeoutSocketConnection().orElse(0) + config.getTimeoutSocketRemoteConfirmation().orElse(0);
     }
+
     /**
      * It handles the connections pending to close.
      */
@@ -738,23 +898,17 @@ public class NetworkHandlerImpl extends AbstractExecutionThreadService implement
 
                     // For each connection to closeAndClear, we check that we have already a SelectionKey for it.
                     // If we do, we check the Key, and put back the connection into the "PendingToOpen" Pool...
-
-                    Iterator<SelectionKey> keys = selector.keys().iterator();
-                    while (keys.hasNext()) {
-                        SelectionKey key = keys.next();
-
-                        if (key.attachment() != null) {
-                            KeyConnectionAttach keyAttach = (KeyConnectionAttach) key.attachment();
-                            if (peerAddress.equals(keyAttach.peerAddress)) {
-                                logger.trace(peerAddress, "Removing Key... ");
-                                closeKey(key, disconnectRequest.getReason());
-                                // The Peer is sent back to the pool of connections to Open, so it can be reused later on
-                                // TODO: DISABLED!!!!
-                                //connect(keyAttach.peerAddress); // back to the Pool
-
-                            }
-                        }
-                    } // while...
+                    // NOTE: The Key might belong to the main Selector or to any of the I/O Reactors, so we look it
+                    // up in "connKeys" instead of iterating over the keys of the Selectors, which is not thread-safe.
+
+                    SelectionKey key = connKeys.get(peerAddress);
+                    if (key != null) {
+                        logger.trace(peerAddress, "Removing Key... ");
+                        closeKey(key, disconnectRequest.getReason());
+                        // The Peer is sent back to the pool of connections to Open, so it can be reused later on
+                        // TODO: DISABLED!!!!
+                        //connect(keyAttach.peerAddress); // back to the Pool
+                    }
 
                 } // while...
 
@@ -784,11 +938,19 @@ public class NetworkHandlerImpl extends AbstractExecutionThreadService implement
             key.cancel();
 
             if (keyConnection != null) {
+                connKeys.remove(keyConnection.peerAddress, key);
+                bandwidthLimiter.removePeer(keyConnection.peerAddress);
+                if (keyConnection.reactor != null) {
+                    keyConnection.reactor.numConns.decrementAndGet();
+                    keyConnection.reactor = null;
+                }
                 if (activeConns.containsKey(keyConnection.peerAddress)) {
                     if (keyConnection.stream != null) {
                         // We trigger the Close event down the Stream......
                         logger.trace(keyConnection.stream.getPeerAddress(), "Peer socket closed");
                         keyConnection.stream.input().close(new StreamCloseEvent());
+                        // ...and we discard whatever was pending to be written:
+                        keyConnection.stream.output().close(new StreamCloseEvent());
                     }
                     pendingToCloseConns.remove(keyConnection.peerAddress);
                     inProgressConns.remove(keyConnection.peerAddress);
@@ -813,7 +975,15 @@ public class NetworkHandlerImpl extends AbstractExecutionThreadService implement
      * It performs a loop to handle the Selection Keys.
      */
     private void handleSelectorKeys(Selector selector) throws IOException, InterruptedException {
-        selector.select();
+        handleSelectorKeys(selector, 0);
+    }
+
+    /**
+     * It performs a loop to handle the Selection Keys, waiting for them at most the timeout given (if ZERO, it waits
+     * until there is some Key to handle or the Selector is woken up).
+     */
+    private void handleSelectorKeys(Selector selector, long timeoutMillis) throws IOException, InterruptedException {
+        selector.select(timeoutMillis);
         Iterator<SelectionKey> keyIterator = selector.selectedKeys().iterator();
         while (keyIterator.hasNext()) {
             SelectionKey key = keyIterator.next();
@@ -875,6 +1045,7 @@ public class NetworkHandlerImpl extends AbstractExecutionThreadService implement
             // Whatever happens, we remove this Peer form the "inProgress" Connections:
             if (key.attachment() != null) {
                 inProgressConns.remove(keyConnection.peerAddress);
+                connectDeadlines.cancel(keyConnection.peerAddress);
             }
 
             // Check:
@@ -892,10 +1063,12 @@ public class NetworkHandlerImpl extends AbstractExecutionThreadService implement
             // If we reach this far, we accept the connection:
             SocketChannel socketChannel = (SocketChannel) key.channel();
             if (socketChannel.finishConnect()) {
-                startPeerConnection(key);
+                if (ioReactors.isEmpty()) startPeerConnection(key);
+                else moveToReactor(key);
             } else closeKey(key, PeerDisconnectedEvent.DisconnectedReason.DISCONNECTED_BY_LOCAL);
 
         } catch (ConnectException e) {
+            closeKey(key, PeerDisconnectedEvent.DisconnectedReason.DISCONNECTED_BY_LOCAL);
             processConnectionFailed(((KeyConnectionAttach) key.attachment()).peerAddress, PeerRejectedEvent.RejectedReason.INTERNAL_ERROR, e.getMessage());
             //throw e;
         } finally {
@@ -913,15 +1086,6 @@ public class NetworkHandlerImpl extends AbstractExecutionThreadService implement
         // We read the data from the Peer (through the Stream wrapped out around it) and we run the callbacks:
         //handlerLogger.log(Level.TRACE, "read key...");
         KeyConnectionAttach keyConnection = (KeyConnectionAttach) key.attachment();
-
-        // If these bytes are the FIRST bytes coming from a Peer, we wait a bit JUST IN CASE, so we make sure that
-        // all the events related to this Peer/Stream have been populated properly...
-
-        if (!keyConnection.started) {
-            try { Thread.sleep(50);} catch (InterruptedException ie) {}
-            keyConnection.started = true;
-        }
-
         int numBytesRead = ((NIOInputStream)keyConnection.stream.input()).readFromSocket();
         //logger.trace(numBytesRead + " read from " + ((NIOInputStream) keyConnection.stream.input()).getPeerAddress().toString());
         if (numBytesRead == -1) {
@@ -998,9 +1162,18 @@ public class NetworkHandlerImpl extends AbstractExecutionThreadService implement
 
         logger.trace(socket.getRemoteSocketAddress(), "accepting Connection...");
 
-        SelectionKey clientKey = registerChannel(channel);
         PeerAddress peerAddress = new PeerAddress(socket.getInetAddress(), socket.getPort());
+
+        // In multi-reactor mode, the channel is registered straight away in one of the I/O Reactors, which will
+        // activate the Connection:
+        if (!ioReactors.isEmpty()) {
+            getLeastLoadedReactor().register(channel, new KeyConnectionAttach(peerAddress));
+            return;
+        }
+
+        SelectionKey clientKey = registerChannel(channel);
         clientKey.attach(new KeyConnectionAttach(peerAddress));
+        connKeys.put(peerAddress, clientKey);
 
         // We activate the Connection straight away:
         startPeerConnection(clientKey);
@@ -1013,7 +1186,7 @@ public class NetworkHandlerImpl extends AbstractExecutionThreadService implement
      * @throws IOException If an I/O error occurs in {@link java.nio.channels.SelectableChannel#register(Selector, int)}
      */
     private SelectionKey registerChannel(SocketChannel channel) throws IOException {
-        return channel.register(this.selector, SelectionKey.OP_READ);
+        return channel.register(this.selector, 0);
     }
 
     /**
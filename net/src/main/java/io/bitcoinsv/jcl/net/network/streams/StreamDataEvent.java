@@ -6,9 +6,15 @@ package io.bitcoinsv.jcl.net.network.streams;
  *
  * This event represents a piece of data received by an InputStream, or sent by an OutputStream.
  * - param T: Data type retrieved/sent
+ *
+ * When the data is the serialization of a Message, the type of the Message can also be specified, so the Streams
+ * down the line can treat it differently (like applying a different Bandwidth limit).
  */
 public class StreamDataEvent<T> extends StreamEvent {
     T data;
-    public StreamDataEvent(T data)  { this.data = data; }
-    public T getData()              { return this.data; }
+    String msgType;
+    public StreamDataEvent(T data)                  { this.data = data; }
+    public StreamDataEvent(T data, String msgType)  { this.data = data; this.msgType = msgType; }
+    public T getData()                              { return this.data; }
+    public String getMsgType()                      { return this.msgType; }
 }
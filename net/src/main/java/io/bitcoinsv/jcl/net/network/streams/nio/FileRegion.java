@@ -0,0 +1,71 @@
+package io.bitcoinsv.jcl.net.network.streams.nio;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * A region of a File that is sent to a remote Peer straight from disk. The bytes are transferred using
+ * "FileChannel.transferTo()", so the OS copies them from the File to the Socket without going through the Java heap.
+ *
+ * The transfer might take several calls to "transferTo()" when the Socket is non-blocking, so this class keeps track
+ * of the bytes already transferred.
+ */
+public class FileRegion {
+
+    private final FileChannel channel;
+    private final long position;
+    private final long count;
+    private final boolean closeOnRelease;
+
+    // Number of bytes already transferred:
+    private long transferred = 0;
+
+    /**
+     * Constructor.
+     * @param channel           Channel of the File containing the bytes
+     * @param position          Position in the File of the first byte to transfer
+     * @param count             Number of bytes to transfer
+     * @param closeOnRelease    If TRUE, the channel is closed once the region is released
+     */
+    public FileRegion(FileChannel channel, long position, long count, boolean closeOnRelease) {
+        this.channel = channel;
+        this.position = position;
+        this.count = count;
+        this.closeOnRelease = closeOnRelease;
+    }
+
+    /**
+     * Transfers as many bytes as possible into the target channel, and returns the number of bytes transferred.
+     */
+    public long transferTo(WritableByteChannel target) throws IOException {
+        return transferTo(target, Long.MAX_VALUE);
+    }
+
+    /**
+     * Transfers as many bytes as possible into the target channel, up to the maximum given, and returns the number of
+     * bytes transferred.
+     */
+    public long transferTo(WritableByteChannel target, long maxBytes) throws IOException {
+        long numBytes = channel.transferTo(position + transferred, Math.min(count - transferred, maxBytes), target);
+        transferred += numBytes;
+        return numBytes;
+    }
+
+    /** Releases the resources used by this Region */
+    public void release() {
+        if (!closeOnRelease) return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Nothing to do here, the channel is not used anymore
+        }
+    }
+
+    public boolean hasRemaining()   { return transferred < count; }
+    public long getRemaining()      { return count - transferred; }
+    public long getCount()          { return count; }
+}
@@ -1,6 +1,7 @@
 package io.bitcoinsv.jcl.net.network.streams.nio;
 
 import io.bitcoinsv.jcl.net.network.PeerAddress;
+import io.bitcoinsv.jcl.net.network.bandwidth.BandwidthLimiter;
 import io.bitcoinsv.jcl.net.network.config.NetworkConfig;
 import io.bitcoinsv.jcl.net.network.streams.PeerInputStream;
 import io.bitcoinsv.jcl.net.network.streams.PeerInputStreamImpl;
@@ -15,6 +16,7 @@ import io.bitcoinsv.jcl.net.tools.LoggerUtil;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.util.List;
@@ -65,11 +67,31 @@ public class NIOInputStream extends PeerInputStreamImpl<ByteArrayReader, ByteArr
     private int bufferNormalCapacity;
     private int bufferHighCapacity;
 
+    // Bandwidth limiter (might be null, meaning no limits):
+    private BandwidthLimiter bandwidthLimiter;
+
+    // The READ interest is only set in the Selection Key if the reading has started, and it's neither suspended (see
+    // "suspendReading()") nor paused by the Bandwidth limiter. These flags are only accessed while holding the Lock
+    // of the Selection Key, which is also used by the NIOOutputStream to change the WRITE interest, so the changes
+    // made by different Threads to the interests of the Key are never lost:
+    private boolean readingStarted;
+    private boolean readingSuspended;
+    private boolean readingPaused;
+
     public NIOInputStream(PeerAddress peerAddress,
                           ExecutorService executor,
                           RuntimeConfig runtimeConfig,
                           NetworkConfig networkConfig,
                           SelectionKey key) {
+        this(peerAddress, executor, runtimeConfig, networkConfig, key, null);
+    }
+
+    public NIOInputStream(PeerAddress peerAddress,
+                          ExecutorService executor,
+                          RuntimeConfig runtimeConfig,
+                          NetworkConfig networkConfig,
+                          SelectionKey key,
+                          BandwidthLimiter bandwidthLimiter) {
         super(peerAddress, executor, null);
         this.logger = new LoggerUtil(peerAddress.toString(), this.getClass());
 
@@ -77,6 +99,7 @@ public class NIOInputStream extends PeerInputStreamImpl<ByteArrayReader, ByteArr
         this.networkConfig = networkConfig;
         this.peerAddress = peerAddress;
         this.key = key;
+        this.bandwidthLimiter = bandwidthLimiter;
         this.socketChannel = (SocketChannel) key.channel();
         this.bufferNormalCapacity = Math.min(Math.max(networkConfig.getMaxMessageSizeAvgInBytes(),
                 networkConfig.getNioBufferSizeLowerBound()), networkConfig.getNioBufferSizeUpperBound());
@@ -132,12 +155,91 @@ public class NIOInputStream extends PeerInputStreamImpl<ByteArrayReader, ByteArr
         return result;
     }
 
+    /**
+     * It starts reading data from the Socket, by setting the READ interest in the Selection Key. Until this method is
+     * called, no data is read, so the Streams linked to this one can be set up without losing any data.
+     */
+    public void startReading() {
+        synchronized (key) {
+            readingStarted = true;
+            updateReadInterest();
+        }
+    }
+
+    /**
+     * It suspends the reading from the Socket, until "resumeReading()" is called. Used to apply backpressure when the
+     * data already received is using too much memory.
+     */
+    public void suspendReading() {
+        synchronized (key) {
+            readingSuspended = true;
+            updateReadInterest();
+        }
+    }
+
+    /** It resumes the reading from the Socket, after it's been suspended by "suspendReading()" */
+    public void resumeReading() {
+        synchronized (key) {
+            readingSuspended = false;
+            updateReadInterest();
+        }
+    }
+
+    // It stops reading from the Socket, and resumes after the delay given (only one resume is scheduled at a time)
+    private void pauseReading(long delayMillis) {
+        synchronized (key) {
+            if (readingPaused) return;
+            readingPaused = true;
+            updateReadInterest();
+        }
+        bandwidthLimiter.schedule(this::endPauseReading, delayMillis);
+    }
+
+    private void endPauseReading() {
+        synchronized (key) {
+            readingPaused = false;
+            updateReadInterest();
+        }
+    }
+
+    // It sets or clears the READ interest in the Selection Key, according to the flags. It must be called while
+    // holding the Lock of the Key
+    private void updateReadInterest() {
+        try {
+            if (readingStarted && !readingSuspended && !readingPaused) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+                key.selector().wakeup();
+            } else {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+        } catch (CancelledKeyException e) {
+            // The connection has been closed in the meantime. Nothing to do...
+        }
+    }
+
     public int readFromSocket() throws IOException {
         // We read data from the Buffer and connection verifications:
         try {
             // Before using the Buffer to read data from it, we check if we need to upgrtade/reset it...
             ByteBuffer buffer = getBufferForReading();
-            int read = this.socketChannel.read(buffer);
+
+            // If there is a Bandwidth limit, we read only the bytes allowed. If none is allowed, we stop reading for a
+            // while (the bytes are kept in the Socket buffer, so the remote Peer will eventually slow down):
+            int read;
+            if (bandwidthLimiter != null) {
+                long allowance = bandwidthLimiter.getReadAllowance(peerAddress);
+                if (allowance <= 0) {
+                    pauseReading(bandwidthLimiter.getReadDelayMillis(peerAddress));
+                    return 0;
+                }
+                int limit = buffer.limit();
+                if (allowance < buffer.remaining()) buffer.limit(buffer.position() + (int) allowance);
+                read = this.socketChannel.read(buffer);
+                buffer.limit(limit);
+                if (read > 0) bandwidthLimiter.consumeRead(peerAddress, read);
+            } else {
+                read = this.socketChannel.read(buffer);
+            }
             updateState(read);
 
             //logger.debug(read + " bytes received from " +this.socketChannel.socket().getRemoteSocketAddress());
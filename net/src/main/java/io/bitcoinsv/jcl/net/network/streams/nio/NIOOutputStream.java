@@ -1,6 +1,7 @@
 package io.bitcoinsv.jcl.net.network.streams.nio;
 
 import io.bitcoinsv.jcl.net.network.PeerAddress;
+import io.bitcoinsv.jcl.net.network.bandwidth.BandwidthLimiter;
 import io.bitcoinsv.jcl.net.network.config.NetworkConfig;
 
 import io.bitcoinsv.jcl.net.network.streams.PeerOutputStream;
@@ -9,6 +10,7 @@ import io.bitcoinsv.jcl.net.network.streams.StreamCloseEvent;
 import io.bitcoinsv.jcl.net.network.streams.StreamDataEvent;
 import io.bitcoinsv.jcl.tools.bytes.ByteArrayReader;
 import io.bitcoinsv.jcl.tools.config.RuntimeConfig;
+import io.bitcoinsv.jcl.tools.memory.MemoryBudget;
 import io.bitcoinsv.jcl.net.tools.LoggerUtil;
 
 
@@ -64,14 +66,75 @@ public class NIOOutputStream extends PeerOutputStreamImpl<ByteArrayReader, ByteA
     // When using NIO and Buffers, there is no guarantee that all the bytes are written to the Buffer. Sometimes you
     // write 10 bytes but only 7 have been actually written. So we need to keep track of the bytes pending
     // to write:
-    private long bytesToWriteRemaining = 0;
-    // Here we keep the bytes pending to be written to the Socket:
-    private Queue<ByteBuffer> buffersToWrite = new ConcurrentLinkedQueue<>();
+    private volatile long bytesToWriteRemaining = 0;
+    // Here we keep the bytes pending to be written to the Socket. They might be in memory (ByteBuffers) or still
+    // on disk (FileRegions), so we wrap them both up in the same structure, to keep the order they've been sent:
+    private Queue<PendingWrite> buffersToWrite = new ConcurrentLinkedQueue<>();
+
+    // An item pending to be written to the Socket, up to a maximum number of bytes. It also keeps the type of the
+    // Message it belongs to, if known:
+    private interface PendingWrite {
+        long writeTo(SocketChannel socketChannel, long maxBytes) throws IOException;
+        boolean hasRemaining();
+        String getMsgType();
+        default void release() {}
+    }
+
+    // Bytes in memory:
+    private static class BufferWrite implements PendingWrite {
+        private final ByteBuffer buffer;
+        private final String msgType;
+        BufferWrite(ByteBuffer buffer, String msgType)                      { this.buffer = buffer; this.msgType = msgType; }
+        public boolean hasRemaining()                                       { return buffer.hasRemaining(); }
+        public String getMsgType()                                          { return msgType; }
+        public long writeTo(SocketChannel socketChannel, long maxBytes) throws IOException {
+            if (maxBytes >= buffer.remaining()) return socketChannel.write(buffer);
+            int limit = buffer.limit();
+            buffer.limit(buffer.position() + (int) maxBytes);
+            try {
+                return socketChannel.write(buffer);
+            } finally {
+                buffer.limit(limit);
+            }
+        }
+    }
+
+    // Bytes in a File, transferred from disk directly to the Socket:
+    private static class FileRegionWrite implements PendingWrite {
+        private final FileRegion region;
+        private final String msgType;
+        FileRegionWrite(FileRegion region, String msgType)                  { this.region = region; this.msgType = msgType; }
+        public long writeTo(SocketChannel socketChannel, long maxBytes) throws IOException { return region.transferTo(socketChannel, maxBytes); }
+        public boolean hasRemaining()                                       { return region.hasRemaining(); }
+        public String getMsgType()                                          { return msgType; }
+        public void release()                                               { region.release(); }
+    }
+
+    // Bandwidth limiter (might be null, meaning no limits):
+    private BandwidthLimiter bandwidthLimiter;
+
+    // Account of the bytes pending to be written, in the Memory Budget:
+    private MemoryBudget.Account memoryAccount;
+
+    // If TRUE, the writing has been paused by the Bandwidth limiter, and a Task to resume it is already scheduled.
+    // Only accessed while holding the Lock of the Selection Key (see NIOInputStream):
+    private boolean writingPaused;
+
+    // Once closed, nothing else is written or queued:
+    private boolean closed;
 
     public NIOOutputStream(PeerAddress peerAddress,
                            RuntimeConfig runtimeConfig,
                            NetworkConfig networkConfig,
                            SelectionKey key) {
+        this(peerAddress, runtimeConfig, networkConfig, key, null);
+    }
+
+    public NIOOutputStream(PeerAddress peerAddress,
+                           RuntimeConfig runtimeConfig,
+                           NetworkConfig networkConfig,
+                           SelectionKey key,
+                           BandwidthLimiter bandwidthLimiter) {
         super(peerAddress, null);
         this.logger = new LoggerUtil(peerAddress.toString(), this.getClass());
 
@@ -79,9 +142,12 @@ public class NIOOutputStream extends PeerOutputStreamImpl<ByteArrayReader, ByteA
         this.networkConfig = networkConfig;
         this.peerAddress = peerAddress;
         this.key = key;
+        this.bandwidthLimiter = bandwidthLimiter;
         this.socketChannel = (SocketChannel) key.channel();
 
         this.state = NIOStreamState.builder().build();
+        this.memoryAccount = runtimeConfig.getMemoryBudget().register("writeQueues", peerAddress.toString(),
+                () -> bytesToWriteRemaining, null);
 
     }
 
@@ -97,6 +163,7 @@ public class NIOOutputStream extends PeerOutputStreamImpl<ByteArrayReader, ByteA
     }
 
     public synchronized void send(StreamDataEvent<ByteArrayReader> event) {
+        if (closed) return;
         //logger.trace("Sending " + event.getData().size() + " bytes : " + HEX.encode(event.getData().get()));
         // We get all the data from this Reader and we add it to the buffer of ByteBuffers.
         bytesToWriteRemaining += event.getData().size();
@@ -106,45 +173,119 @@ public class NIOOutputStream extends PeerOutputStreamImpl<ByteArrayReader, ByteA
         ByteArrayReader reader = event.getData();
         while (!reader.isEmpty()) {
             int numBytesToRead = (int) Math.min(BATCH_SIZE, reader.size());
-            buffersToWrite.offer(ByteBuffer.wrap(reader.read(numBytesToRead)));
+            buffersToWrite.offer(new BufferWrite(ByteBuffer.wrap(reader.read(numBytesToRead)), event.getMsgType()));
         }
         //buffersToWrite.offer(ByteBuffer.wrap(event.getData().getFullContentAndClose())); // TODO: CAREFUL
         notifyChannelWritable();
     }
 
-    public void close(StreamCloseEvent event) {
+    /**
+     * Sends the bytes of a File Region to the remote Peer. The bytes are NOT loaded into memory: they are transferred
+     * from the File to the Socket when the Socket is ready for writing, keeping the order with the rest of the data
+     * sent through this Stream.
+     */
+    public synchronized void send(FileRegion region) {
+        send(region, null);
+    }
+
+    /**
+     * Sends the bytes of a File Region to the remote Peer, as part of a Message of the type given (used to apply the
+     * Bandwidth limits for that type of Message, if any)
+     */
+    public synchronized void send(FileRegion region, String msgType) {
+        if (closed) {
+            region.release();
+            return;
+        }
+        bytesToWriteRemaining += region.getRemaining();
+        buffersToWrite.offer(new FileRegionWrite(region, msgType));
+        notifyChannelWritable();
+    }
+
+    // It's synchronized with "writeToSocket()", so nothing is released while it's being written
+    public synchronized void close(StreamCloseEvent event) {
         logger.trace("Closing Stream...");
+        closed = true;
         key.cancel();
+        memoryAccount.close();
+        // Any File still pending to be sent is released:
+        PendingWrite pendingWrite;
+        while ((pendingWrite = buffersToWrite.poll()) != null) pendingWrite.release();
     }
 
+    // The Interests of the Key are changed while holding its Lock, since the NIOInputStream also changes them
     private void notifyChannelWritable() {
-        try {
-            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
-            key.selector().wakeup();
-        } catch (CancelledKeyException e) {
-            logger.trace("Trying to send byte to " + peerAddress + ", but the Key is Cancelled...");
-        } catch (Exception e) {
-            logger.trace("Trying to send byte to " + peerAddress + ", but an Exception was thrown " + e.getMessage());
+        synchronized (key) {
+            // If the writing is paused, it will be enabled when the pause ends:
+            if (writingPaused) return;
+            try {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                key.selector().wakeup();
+            } catch (CancelledKeyException e) {
+                logger.trace("Trying to send byte to " + peerAddress + ", but the Key is Cancelled...");
+            } catch (Exception e) {
+                logger.trace("Trying to send byte to " + peerAddress + ", but an Exception was thrown " + e.getMessage());
+            }
         }
     }
 
     private void notifyChannelNotWritable() {
-        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
-        // Don't bother waking up the selector here, since we're just removing an op, not adding
+        synchronized (key) {
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            // Don't bother waking up the selector here, since we're just removing an op, not adding
+        }
     }
 
+    // It stops writing to the Socket, and resumes after the delay given. Only one resume is scheduled at a time
+    private void pauseWriting(long delayMillis) {
+        synchronized (key) {
+            if (writingPaused) return;
+            try {
+                notifyChannelNotWritable();
+                writingPaused = true;
+            } catch (CancelledKeyException e) {
+                logger.trace("Trying to pause writing to " + peerAddress + ", but the Key is Cancelled...");
+                return;
+            }
+        }
+        bandwidthLimiter.schedule(this::endPauseWriting, delayMillis);
+    }
+
+    private void endPauseWriting() {
+        synchronized (key) {
+            writingPaused = false;
+        }
+        if (!buffersToWrite.isEmpty()) notifyChannelWritable();
+    }
 
     public synchronized int writeToSocket() throws IOException {
         int writeResult = 0;
-        Iterator<ByteBuffer> buffersToWriteIterator = buffersToWrite.iterator();
+        if (closed) return writeResult;
+        Iterator<PendingWrite> buffersToWriteIterator = buffersToWrite.iterator();
         while (buffersToWriteIterator.hasNext()) {
-            ByteBuffer writeBuffer = buffersToWriteIterator.next();
-            int numBytesWritten = socketChannel.write(writeBuffer);
+            PendingWrite pendingWrite = buffersToWriteIterator.next();
+
+            // If there is a Bandwidth limit, we write only the bytes allowed. If none is allowed, we stop writing for
+            // a while:
+            long maxBytes = Long.MAX_VALUE;
+            if (bandwidthLimiter != null) {
+                maxBytes = bandwidthLimiter.getWriteAllowance(peerAddress, pendingWrite.getMsgType());
+                if (maxBytes <= 0) {
+                    pauseWriting(bandwidthLimiter.getWriteDelayMillis(peerAddress, pendingWrite.getMsgType()));
+                    return writeResult;
+                }
+            }
+
+            int numBytesWritten = (int) pendingWrite.writeTo(socketChannel, maxBytes);
+            if (bandwidthLimiter != null) bandwidthLimiter.consumeWrite(peerAddress, pendingWrite.getMsgType(), numBytesWritten);
             updateState(numBytesWritten);
             writeResult += numBytesWritten;
             bytesToWriteRemaining -= numBytesWritten;
 
-            if (!writeBuffer.hasRemaining())  buffersToWriteIterator.remove();
+            if (!pendingWrite.hasRemaining()) {
+                pendingWrite.release();
+                buffersToWriteIterator.remove();
+            }
             else break;
 
         } // while...
@@ -1,6 +1,7 @@
 package io.bitcoinsv.jcl.net.network.streams.nio;
 
 import io.bitcoinsv.jcl.net.network.PeerAddress;
+import io.bitcoinsv.jcl.net.network.bandwidth.BandwidthLimiter;
 import io.bitcoinsv.jcl.net.network.config.NetworkConfig;
 import io.bitcoinsv.jcl.net.network.streams.PeerStream;
 import io.bitcoinsv.jcl.net.network.streams.PeerStreamImpl;
@@ -24,25 +25,33 @@ public class NIOStream extends PeerStreamImpl<ByteArrayReader, ByteArrayReader>
     private NetworkConfig networkConfig;
     private PeerAddress peerAddress;
     private SelectionKey key;
+    private BandwidthLimiter bandwidthLimiter;
 
     public NIOStream(PeerAddress peerAddress, ExecutorService executor,
                      RuntimeConfig runtimeConfig, NetworkConfig networkConfig,
-                     SelectionKey key) {
+                     SelectionKey key, BandwidthLimiter bandwidthLimiter) {
         super(peerAddress, executor, null);
         this.runtimeConfig = runtimeConfig;
         this.networkConfig = networkConfig;
         this.peerAddress = peerAddress;
         this.key = key;
+        this.bandwidthLimiter = bandwidthLimiter;
+    }
+
+    public NIOStream(PeerAddress peerAddress, ExecutorService executor,
+                     RuntimeConfig runtimeConfig, NetworkConfig networkConfig,
+                     SelectionKey key) {
+        this(peerAddress, executor, runtimeConfig, networkConfig, key, null);
     }
 
     @Override
     public NIOInputStream buildInputStream() {
-        return new NIOInputStream(peerAddress, super.executor, runtimeConfig, networkConfig, key);
+        return new NIOInputStream(peerAddress, super.executor, runtimeConfig, networkConfig, key, bandwidthLimiter);
     }
 
     @Override
     public NIOOutputStream buildOutputStream() {
-        return new NIOOutputStream(peerAddress, runtimeConfig, networkConfig, key);
+        return new NIOOutputStream(peerAddress, runtimeConfig, networkConfig, key, bandwidthLimiter);
     }
 
     @Override
@@ -53,6 +62,15 @@ public class NIOStream extends PeerStreamImpl<ByteArrayReader, ByteArrayReader>
                 .build();
     }
 
+    /**
+     * It starts reading data from the remote Peer. It must be called once the Streams that consume the data have
+     * been linked to this one. It's called by the consumer of the "PeerNIOStreamConnectedEvent", which in this
+     * library is the MessageHandlerImpl. The NetworkHandler only calls it if nobody is subscribed to that Event.
+     */
+    public void startReading() {
+        ((NIOInputStream) input()).startReading();
+    }
+
     public PeerAddress getPeerAddress() {
         return this.peerAddress;
     }
@@ -18,7 +18,8 @@ public final class BlockDiscardedEvent extends P2PEvent {
 
     /** Definition of possible reasons why a block might be Discarded during Downloaded */
     public enum DiscardedReason {
-        TIMEOUT // It takes too long to download the bock
+        TIMEOUT,                // It takes too long to download the bock
+        INVALID_MERKLE_ROOT     // The Txs received don't match the Merkle Root in the Block Header
     }
 
     private final String hash;
@@ -0,0 +1,47 @@
+package io.bitcoinsv.jcl.net.protocol.events.control;
+
+
+import com.google.common.base.Objects;
+import io.bitcoinsv.bitcoinjsv.core.Sha256Hash;
+import io.bitcoinsv.jcl.net.network.PeerAddress;
+import io.bitcoinsv.jcl.net.network.events.P2PEvent;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * An Event triggered when a TX Message sent by a Peer is discarded without being deserialized, because the same Tx
+ * has been received already (Seen-Tx filter). No TxMsgReceivedEvent is triggered for it, but the Peer does know
+ * about this Tx, so this Event lets other Handlers keep track of it.
+ */
+public final class DuplicateTxDiscardedEvent extends P2PEvent {
+    private final PeerAddress peerAddress;
+    // Tx Hash (human-readable format)
+    private final Sha256Hash txHash;
+
+    public DuplicateTxDiscardedEvent(PeerAddress peerAddress, Sha256Hash txHash) {
+        this.peerAddress = peerAddress;
+        this.txHash = txHash;
+    }
+
+    public PeerAddress getPeerAddress() { return this.peerAddress; }
+    public Sha256Hash getTxHash()       { return this.txHash; }
+
+    @Override
+    public String toString() {
+        return "DuplicateTxDiscardedEvent(peerAddress=" + this.peerAddress + ", txHash=" + this.txHash + ")";
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!super.equals(obj)) { return false; }
+        DuplicateTxDiscardedEvent other = (DuplicateTxDiscardedEvent) obj;
+        return Objects.equal(this.peerAddress, other.peerAddress)
+                && Objects.equal(this.txHash, other.txHash);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(super.hashCode(), peerAddress, txHash);
+    }
+}
@@ -0,0 +1,48 @@
+package io.bitcoinsv.jcl.net.protocol.events.control;
+
+
+import io.bitcoinsv.jcl.net.network.PeerAddress;
+import io.bitcoinsv.jcl.net.network.events.P2PRequest;
+import io.bitcoinsv.jcl.net.protocol.messages.common.FileStreamRequest;
+
+import java.util.Objects;
+
+/**
+ * @author i.fernandez@nchain.com
+ * Copyright (c) 2018-2020 nChain Ltd
+ *
+ * THE MESSAGE WILL ONLY BE SENT IF THE PEER IS HANDSHAKED
+ */
+public final class SendMsgFileStreamHandshakeRequest extends P2PRequest {
+
+    private final PeerAddress peerAddress;
+    private final FileStreamRequest streamRequest;
+
+    public SendMsgFileStreamHandshakeRequest(PeerAddress peerAddress, FileStreamRequest streamRequest) {
+        this.peerAddress = peerAddress;
+        this.streamRequest = streamRequest;
+    }
+
+    @Override
+    public String toString() {
+        return "SendMsgFileStreamHandshakeRequest[" + super.toString() + "])";
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return super.equals(obj);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(super.hashCode());
+    }
+
+    public PeerAddress getPeerAddress() {
+        return peerAddress;
+    }
+
+    public FileStreamRequest getStreamRequest() {
+        return streamRequest;
+    }
+}
@@ -0,0 +1,66 @@
+package io.bitcoinsv.jcl.net.protocol.events.control;
+
+
+import com.google.common.base.Objects;
+import io.bitcoinsv.bitcoinjsv.core.Sha256Hash;
+import io.bitcoinsv.jcl.net.network.PeerAddress;
+import io.bitcoinsv.jcl.net.network.events.P2PRequest;
+
+import java.util.List;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * A Request to announce Txs to the remote Peers. The Txs are not announced immediately: they are queued for each
+ * Peer, and sent in batched INV Messages by the Tx Announcer Handler.
+ */
+public final class TxsAnnounceRequest extends P2PRequest {
+    // Tx Hashes (human-readable format) to announce
+    private final List<Sha256Hash> txHashes;
+    // Fee of the Txs (Satoshis/KB), checked against the Fee Filter of each Peer. If null, it's not checked
+    private final Long feePerKb;
+    // If specified, the Txs are only announced to this Peer. Otherwise they are announced to all of them
+    private final PeerAddress toThisPeerOnly;
+
+    public TxsAnnounceRequest(List<Sha256Hash> txHashes, Long feePerKb, PeerAddress toThisPeerOnly) {
+        this.txHashes = txHashes;
+        this.feePerKb = feePerKb;
+        this.toThisPeerOnly = toThisPeerOnly;
+    }
+
+    public TxsAnnounceRequest(List<Sha256Hash> txHashes) {
+        this(txHashes, null, null);
+    }
+
+    public List<Sha256Hash> getTxHashes()   { return this.txHashes; }
+    public Long getFeePerKb()               { return this.feePerKb; }
+    public PeerAddress getToThisPeerOnly()  { return this.toThisPeerOnly; }
+
+    @Override
+    public String toString() {
+        String result = "TxsAnnounceRequest(numTxs=" + this.txHashes.size();
+        if (this.feePerKb != null) {
+            result += ", feePerKb: " + this.feePerKb;
+        }
+        if (this.toThisPeerOnly != null) {
+            result += ", toThisPeerOnly: " + this.toThisPeerOnly;
+        }
+        result += ")";
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!super.equals(obj)) { return false; }
+        TxsAnnounceRequest other = (TxsAnnounceRequest) obj;
+        return Objects.equal(this.txHashes, other.txHashes)
+                && Objects.equal(this.feePerKb, other.feePerKb)
+                && Objects.equal(this.toThisPeerOnly, other.toThisPeerOnly);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(super.hashCode(), txHashes, feePerKb, toThisPeerOnly);
+    }
+}
@@ -6,6 +6,7 @@ import io.bitcoinsv.jcl.net.network.events.DisconnectPeerRequest;
 import io.bitcoinsv.jcl.net.network.events.NetStartEvent;
 import io.bitcoinsv.jcl.net.network.events.NetStopEvent;
 import io.bitcoinsv.jcl.net.network.events.PeerDisconnectedEvent;
+import io.bitcoinsv.jcl.net.network.streams.StreamErrorEvent;
 import io.bitcoinsv.jcl.net.protocol.events.control.*;
 import io.bitcoinsv.jcl.net.protocol.events.data.*;
 import io.bitcoinsv.jcl.net.protocol.messages.*;
@@ -14,8 +15,10 @@ import io.bitcoinsv.jcl.net.protocol.events.data.*;
 import io.bitcoinsv.jcl.net.protocol.messages.common.BitcoinMsg;
 import io.bitcoinsv.jcl.net.protocol.messages.common.BitcoinMsgBuilder;
 import io.bitcoinsv.jcl.net.protocol.handlers.message.streams.deserializer.DeserializerStream;
+import io.bitcoinsv.jcl.net.protocol.serialization.largeMsgs.InvalidMerkleRootException;
 import io.bitcoinsv.jcl.tools.config.RuntimeConfig;
 import io.bitcoinsv.jcl.tools.handlers.HandlerImpl;
+import io.bitcoinsv.jcl.tools.memory.MemoryBudget;
 import io.bitcoinsv.jcl.net.tools.LoggerUtil;
 import io.bitcoinsv.jcl.tools.thread.ThreadUtils;
 import io.bitcoinsv.bitcoinjsv.core.Sha256Hash;
@@ -73,6 +76,9 @@ public class BlockDownloaderHandlerImpl extends HandlerImpl<PeerAddress, BlockPe
     private boolean moreDownloadsAllowed = true;
     // If TRUE, we reached the max MB to download at a given time
     private boolean bandwidthRestricted = false;
+    // If TRUE, the Memory Budget is under pressure, so no more downloads are started until it gets back to normal
+    private volatile boolean memoryRestricted = false;
+    private final MemoryBudget.Listener memoryBudgetListener = this::onMemoryPressureChanged;
 
     // We keep track of the Block Download History:
     private BlocksDownloadHistory blocksDownloadHistory;
@@ -185,6 +191,7 @@ public class BlockDownloaderHandlerImpl extends HandlerImpl<PeerAddress, BlockPe
         super.eventBus.subscribe(BlockHeaderDownloadedEvent.class, e -> this.onPartialBlockHeaderMsgReceived((BlockHeaderDownloadedEvent) e));
         super.eventBus.subscribe(BlockTXsDownloadedEvent.class, e -> this.onPartialBlockTxsMsgReceived((BlockTXsDownloadedEvent) e));
         super.eventBus.subscribe(BlockRawTXsDownloadedEvent.class, e -> this.onPartialBlockTxsMsgReceived((BlockRawTXsDownloadedEvent) e));
+        super.eventBus.subscribe(StreamErrorEvent.class, e -> this.onStreamError((StreamErrorEvent) e));
 
         // Download/Cancel requests:
         super.eventBus.subscribe(BlocksDownloadRequest.class, e -> this.download(
@@ -200,6 +207,13 @@ public class BlockDownloaderHandlerImpl extends HandlerImpl<PeerAddress, BlockPe
         super.eventBus.subscribe(InvMsgReceivedEvent.class, e -> this.onInvMsgReceived((InvMsgReceivedEvent) e));
     }
 
+    // Memory Budget Listener:
+    private void onMemoryPressureChanged(boolean underPressure) {
+        this.memoryRestricted = underPressure;
+        if (underPressure) logger.warm("Memory Budget under pressure, no more blocks will be assigned for now...");
+        else logger.info("Memory Budget back to normal, resuming the assignment of blocks...");
+    }
+
     // Returns the total size (in bytes) of all the blocks being downloaded at this moment
     public long getCurrentDownloadingBlocksSize() {
         return this.bigBlocksHeaders.values().stream().mapToLong(h -> h.getTxsSizeInbytes().getValue()).sum();
@@ -306,6 +320,7 @@ public class BlockDownloaderHandlerImpl extends HandlerImpl<PeerAddress, BlockPe
                     .blocksNumDownloadAttempts(blocksPendingManager.getBlockDownloadAttempts())
                     .busyPercentage(percentage)
                     .bandwidthRestricted(this.bandwidthRestricted)
+                    .memoryRestricted(this.memoryRestricted)
                     .blocksDownloadingSize(blocksDownloadingSize)
                     .build();
         } finally {
@@ -378,12 +393,16 @@ public class BlockDownloaderHandlerImpl extends HandlerImpl<PeerAddress, BlockPe
         this.blocksDownloadHistory.start();
         executor.submit(this::jobProcessCheckDownloadingProcess);
 
+        // We stop assigning new blocks while the Memory Budget is under pressure:
+        super.runtimeConfig.getMemoryBudget().addListener(memoryBudgetListener);
+
     }
 
     // Event Handler:
     public void onNetStop(NetStopEvent event) {
         this.blocksDownloadHistory.stop();
         if (this.executor != null) executor.shutdownNow();
+        super.runtimeConfig.getMemoryBudget().removeListener(memoryBudgetListener);
         logger.trace("Stop.");
     }
 
@@ -508,6 +527,22 @@ public class BlockDownloaderHandlerImpl extends HandlerImpl<PeerAddress, BlockPe
         }
     }
 
+    // Event Handler:
+    // The Big Blocks Deserializers verify the Merkle Root of the Block as the Txs are deserialized, and notify an
+    // error instead of the last batch of Txs if it doesn't match. So the Block is never marked as downloaded.
+    public void onStreamError(StreamErrorEvent event) {
+        if (!(event.getException() instanceof InvalidMerkleRootException)) return;
+        try {
+            lock.lock();
+            InvalidMerkleRootException merkleException = (InvalidMerkleRootException) event.getException();
+            String blockHash = merkleException.getBlockHash().toString();
+            BlockPeerInfo peerInfo = handlerInfo.get(event.getPeerAddress());
+            processInvalidBlockReceived(peerInfo, blockHash, merkleException.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
     private boolean isDownloadComplete(String blockHash) {
         boolean result = false;
 
@@ -791,6 +826,32 @@ public class BlockDownloaderHandlerImpl extends HandlerImpl<PeerAddress, BlockPe
         }
     }
 
+    /*
+     * A Block received from a Peer does not match its Header. The Txs of this block notified so far must be discarded,
+     * so we publish a "BlockDiscardedEvent". Then we disconnect from the Peer, which makes the Block go back to the
+     * pending Pool, so it's re-attempted from a different Peer.
+     */
+    private void processInvalidBlockReceived(BlockPeerInfo peerInfo, String blockHash, String detail) {
+        try {
+            lock.lock();
+            logger.warm((peerInfo != null) ? peerInfo.getPeerAddress() : null, "Invalid Block received", blockHash, detail);
+            blocksDownloadHistory.register(blockHash, (peerInfo != null) ? peerInfo.getPeerAddress() : null, "Invalid Block received: " + detail);
+
+            bigBlocksHeaders.remove(blockHash);
+            bigBlocksCurrentTxs.remove(blockHash);
+            bigBlocksCurrentBytes.remove(blockHash);
+
+            super.eventBus.publish(new BlockDiscardedEvent(blockHash, BlockDiscardedEvent.DiscardedReason.INVALID_MERKLE_ROOT));
+
+            if (peerInfo != null) {
+                super.eventBus.publish(new DisconnectPeerRequest(peerInfo.getPeerAddress(),
+                        PeerDisconnectedEvent.DisconnectedReason.DISCONNECTED_BY_LOCAL_INVALID_BLOCK, detail));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
     private void cancelDownload(String blockHash) {
         try {
             lock.tryLock();
@@ -948,8 +1009,8 @@ public class BlockDownloaderHandlerImpl extends HandlerImpl<PeerAddress, BlockPe
                                 int numPeersWorking = getCurrentPeersDownloading();
                                 long totalMBbeingDownloaded = getCurrentDownloadingBlocksSize() / 1_000_000; // convert to MB
                                 this.bandwidthRestricted = totalMBbeingDownloaded >= config.getMaxMBinParallel();
-                                this.moreDownloadsAllowed = (numPeersWorking == 0)
-                                        || ((numPeersWorking < config.getMaxBlocksInParallel()) && !bandwidthRestricted);
+                                this.moreDownloadsAllowed = !memoryRestricted && ((numPeersWorking == 0)
+                                        || ((numPeersWorking < config.getMaxBlocksInParallel()) && !bandwidthRestricted));
 
 
                                 // If we are in PAUSED Mode, we might still need to keep trying to download those blocks
@@ -56,6 +56,9 @@ public final class BlockDownloaderHandlerState extends HandlerState {
     // If FALSE, then the download process is not allowed at the moment in order to prevent bandwith:
     private final boolean bandwidthRestricted;
 
+    // If TRUE, the download of more blocks is not allowed at the moment because the Memory Budget is under pressure:
+    private final boolean memoryRestricted;
+
     private final long blocksDownloadingSize;
 
     public BlockDownloaderHandlerState( BlockDownloaderHandlerConfig config,
@@ -73,6 +76,7 @@ public final class BlockDownloaderHandlerState extends HandlerState {
                                         Map<String, Integer> blocksNumDownloadAttempts,
                                         int busyPercentage,
                                         boolean bandwidthRestricted,
+                                        boolean memoryRestricted,
                                         long blocksDownloadingSize) {
         this.config = config;
         this.downloadingState = downloadingState;
@@ -89,6 +93,7 @@ public final class BlockDownloaderHandlerState extends HandlerState {
         this.blocksNumDownloadAttempts = blocksNumDownloadAttempts;
         this.busyPercentage = busyPercentage;
         this.bandwidthRestricted = bandwidthRestricted;
+        this.memoryRestricted = memoryRestricted;
         this.blocksDownloadingSize = blocksDownloadingSize;
     }
 
@@ -105,6 +110,9 @@ public final class BlockDownloaderHandlerState extends HandlerState {
         if (bandwidthRestricted) {
             result.append("(bandwidth restricted)");
         }
+        if (memoryRestricted) {
+            result.append("(memory restricted)");
+        }
 
         result.append("\nBlocks: ");
         result.append(downloadedBlocks.size() + " downloaded, " + getNumPeersDownloading() + " downloading, " + pendingBlocks.size() + " pending, ");
@@ -187,6 +195,7 @@ public final class BlockDownloaderHandlerState extends HandlerState {
     { return this.blocksHistory;}
 
     public boolean isBandwidthRestricted()      { return bandwidthRestricted; }
+    public boolean isMemoryRestricted()         { return memoryRestricted; }
     public long getBlocksDownloadingSize()      { return blocksDownloadingSize;}
 
     public long getNumPeersDownloading() {
@@ -218,6 +227,7 @@ public final class BlockDownloaderHandlerState extends HandlerState {
                 .blocksNumDownloadAttempts(this.blocksNumDownloadAttempts)
                 .busyPercentage(this.busyPercentage)
                 .bandwidthRestricted(this.bandwidthRestricted)
+                .memoryRestricted(this.memoryRestricted)
                 .blocksDownloadingSize(this.blocksDownloadingSize);
     }
 
@@ -240,6 +250,7 @@ public final class BlockDownloaderHandlerState extends HandlerState {
         private Map<String, Integer> blocksNumDownloadAttempts;
         private int busyPercentage;
         private boolean bandwidthRestricted;
+        private boolean memoryRestricted;
         private long blocksDownloadingSize;
 
         BlockDownloaderHandlerStateBuilder() {
@@ -320,13 +331,18 @@ public final class BlockDownloaderHandlerState extends HandlerState {
             return this;
         }
 
+        public BlockDownloaderHandlerState.BlockDownloaderHandlerStateBuilder memoryRestricted(boolean memoryRestricted) {
+            this.memoryRestricted = memoryRestricted;
+            return this;
+        }
+
         public BlockDownloaderHandlerState.BlockDownloaderHandlerStateBuilder blocksDownloadingSize(long blocksDownloadingSize) {
             this.blocksDownloadingSize = blocksDownloadingSize;
             return this;
         }
 
         public BlockDownloaderHandlerState build() {
-            return new BlockDownloaderHandlerState(config, downloadingState, pendingBlocks, downloadedBlocks, discardedBlocks, pendingToCancelBlocks, cancelledBlocks, blocksInLimbo, blocksHistory, blocksLastActivity, peersInfo, totalReattempts, blocksNumDownloadAttempts, busyPercentage, bandwidthRestricted, blocksDownloadingSize);
+            return new BlockDownloaderHandlerState(config, downloadingState, pendingBlocks, downloadedBlocks, discardedBlocks, pendingToCancelBlocks, cancelledBlocks, blocksInLimbo, blocksHistory, blocksLastActivity, peersInfo, totalReattempts, blocksNumDownloadAttempts, busyPercentage, bandwidthRestricted, memoryRestricted, blocksDownloadingSize);
         }
     }
 }
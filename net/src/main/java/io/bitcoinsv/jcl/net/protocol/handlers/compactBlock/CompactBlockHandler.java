@@ -0,0 +1,26 @@
+package io.bitcoinsv.jcl.net.protocol.handlers.compactBlock;
+
+
+import io.bitcoinsv.jcl.tools.handlers.Handler;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * Operations provided by the Compact Block Handler.
+ * This Handler negotiates the Compact Blocks relay (BIP 152) with the remote Peers, and reconstructs the Blocks
+ * announced as Compact Blocks (CMPCTBLOCK Messages) using the Txs we already know, requesting only the missing ones
+ * (GETBLOCKTXN Messages).
+ *
+ * @see <a href="https://github.com/bitcoin/bips/blob/master/bip-0152.mediawiki">BIP 152</a>
+ */
+public interface CompactBlockHandler extends Handler {
+
+    String HANDLER_ID = "CompactBlock";
+
+    @Override
+    default String getId() { return HANDLER_ID; }
+
+    /** Returns the number of Blocks that are being reconstructed (waiting for some of their Txs) */
+    int getNumBlocksPending();
+}
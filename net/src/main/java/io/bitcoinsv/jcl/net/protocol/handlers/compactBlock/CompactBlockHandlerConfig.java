@@ -0,0 +1,137 @@
+package io.bitcoinsv.jcl.net.protocol.handlers.compactBlock;
+
+
+import io.bitcoinsv.jcl.net.protocol.config.ProtocolBasicConfig;
+import io.bitcoinsv.jcl.tools.handlers.HandlerConfig;
+
+import java.time.Duration;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * It stores the configuration variables needed by the Compact Block Handler.
+ */
+public class CompactBlockHandlerConfig extends HandlerConfig {
+
+    // Default Values:
+    public static final long DEFAULT_COMPACT_BLOCKS_VERSION = 1;
+    public static final boolean DEFAULT_HIGH_BANDWIDTH_RELAYING = true;
+    public static final int DEFAULT_RECENT_TXS_MAX_SIZE = 100_000;
+    public static final Duration DEFAULT_RECENT_TXS_RETENTION = Duration.ofMinutes(30);
+    public static final Duration DEFAULT_RECONSTRUCTION_TIMEOUT = Duration.ofSeconds(30);
+
+    private ProtocolBasicConfig basicConfig;
+
+    // Version of the Compact Blocks Protocol announced in the SENDCMPCT Message:
+    private long compactBlocksVersion = DEFAULT_COMPACT_BLOCKS_VERSION;
+
+    // If true, we ask the Peers to send us new Blocks as Compact Blocks straight away, without announcing them first:
+    private boolean highBandwidthRelaying = DEFAULT_HIGH_BANDWIDTH_RELAYING;
+
+    // Source of the Txs used to reconstruct the Blocks. If not specified, the Txs received recently are used:
+    private CompactBlockTxSource txSource;
+
+    // Max number of Txs and time they are kept in the default Source (only used if "txSource" is not specified):
+    private int recentTxsMaxSize = DEFAULT_RECENT_TXS_MAX_SIZE;
+    private Duration recentTxsRetention = DEFAULT_RECENT_TXS_RETENTION;
+
+    // If the missing Txs of a Block are not received within this time, the Block is requested in full:
+    private Duration reconstructionTimeout = DEFAULT_RECONSTRUCTION_TIMEOUT;
+
+    public CompactBlockHandlerConfig(ProtocolBasicConfig basicConfig,
+                                     Long compactBlocksVersion,
+                                     Boolean highBandwidthRelaying,
+                                     CompactBlockTxSource txSource,
+                                     Integer recentTxsMaxSize,
+                                     Duration recentTxsRetention,
+                                     Duration reconstructionTimeout) {
+        this.basicConfig = basicConfig;
+        if (compactBlocksVersion != null)   this.compactBlocksVersion = compactBlocksVersion;
+        if (highBandwidthRelaying != null)  this.highBandwidthRelaying = highBandwidthRelaying;
+        this.txSource = txSource;
+        if (recentTxsMaxSize != null)       this.recentTxsMaxSize = recentTxsMaxSize;
+        if (recentTxsRetention != null)     this.recentTxsRetention = recentTxsRetention;
+        if (reconstructionTimeout != null)  this.reconstructionTimeout = reconstructionTimeout;
+    }
+
+    public CompactBlockHandlerConfig() {}
+
+    public ProtocolBasicConfig getBasicConfig()     { return this.basicConfig; }
+    public long getCompactBlocksVersion()           { return this.compactBlocksVersion; }
+    public boolean isHighBandwidthRelaying()        { return this.highBandwidthRelaying; }
+    public CompactBlockTxSource getTxSource()       { return this.txSource; }
+    public int getRecentTxsMaxSize()                { return this.recentTxsMaxSize; }
+    public Duration getRecentTxsRetention()         { return this.recentTxsRetention; }
+    public Duration getReconstructionTimeout()      { return this.reconstructionTimeout; }
+
+    public CompactBlockHandlerConfigBuilder toBuilder() {
+        return new CompactBlockHandlerConfigBuilder()
+                .basicConfig(this.basicConfig)
+                .compactBlocksVersion(this.compactBlocksVersion)
+                .highBandwidthRelaying(this.highBandwidthRelaying)
+                .txSource(this.txSource)
+                .recentTxsMaxSize(this.recentTxsMaxSize)
+                .recentTxsRetention(this.recentTxsRetention)
+                .reconstructionTimeout(this.reconstructionTimeout);
+    }
+
+    public static CompactBlockHandlerConfigBuilder builder() {
+        return new CompactBlockHandlerConfigBuilder();
+    }
+
+    /**
+     * Builder
+     */
+    public static class CompactBlockHandlerConfigBuilder {
+        private ProtocolBasicConfig basicConfig;
+        private Long compactBlocksVersion;
+        private Boolean highBandwidthRelaying;
+        private CompactBlockTxSource txSource;
+        private Integer recentTxsMaxSize;
+        private Duration recentTxsRetention;
+        private Duration reconstructionTimeout;
+
+        CompactBlockHandlerConfigBuilder() {}
+
+        public CompactBlockHandlerConfig.CompactBlockHandlerConfigBuilder basicConfig(ProtocolBasicConfig basicConfig) {
+            this.basicConfig = basicConfig;
+            return this;
+        }
+
+        public CompactBlockHandlerConfig.CompactBlockHandlerConfigBuilder compactBlocksVersion(long compactBlocksVersion) {
+            this.compactBlocksVersion = compactBlocksVersion;
+            return this;
+        }
+
+        public CompactBlockHandlerConfig.CompactBlockHandlerConfigBuilder highBandwidthRelaying(boolean highBandwidthRelaying) {
+            this.highBandwidthRelaying = highBandwidthRelaying;
+            return this;
+        }
+
+        public CompactBlockHandlerConfig.CompactBlockHandlerConfigBuilder txSource(CompactBlockTxSource txSource) {
+            this.txSource = txSource;
+            return this;
+        }
+
+        public CompactBlockHandlerConfig.CompactBlockHandlerConfigBuilder recentTxsMaxSize(int recentTxsMaxSize) {
+            this.recentTxsMaxSize = recentTxsMaxSize;
+            return this;
+        }
+
+        public CompactBlockHandlerConfig.CompactBlockHandlerConfigBuilder recentTxsRetention(Duration recentTxsRetention) {
+            this.recentTxsRetention = recentTxsRetention;
+            return this;
+        }
+
+        public CompactBlockHandlerConfig.CompactBlockHandlerConfigBuilder reconstructionTimeout(Duration reconstructionTimeout) {
+            this.reconstructionTimeout = reconstructionTimeout;
+            return this;
+        }
+
+        public CompactBlockHandlerConfig build() {
+            return new CompactBlockHandlerConfig(basicConfig, compactBlocksVersion, highBandwidthRelaying, txSource,
+                    recentTxsMaxSize, recentTxsRetention, reconstructionTimeout);
+        }
+    }
+}
@@ -0,0 +1,554 @@
+package io.bitcoinsv.jcl.net.protocol.handlers.compactBlock;
+
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import io.bitcoinsv.bitcoinjsv.core.Sha256Hash;
+import io.bitcoinsv.jcl.net.network.PeerAddress;
+import io.bitcoinsv.jcl.net.network.events.NetStartEvent;
+import io.bitcoinsv.jcl.net.network.events.NetStopEvent;
+import io.bitcoinsv.jcl.net.network.events.PeerDisconnectedEvent;
+import io.bitcoinsv.jcl.net.protocol.events.control.BlockDownloadedEvent;
+import io.bitcoinsv.jcl.net.protocol.events.control.BlocksDownloadRequest;
+import io.bitcoinsv.jcl.net.protocol.events.control.PeerHandshakedEvent;
+import io.bitcoinsv.jcl.net.protocol.events.control.SendMsgRequest;
+import io.bitcoinsv.jcl.net.protocol.events.data.*;
+import io.bitcoinsv.jcl.net.protocol.messages.*;
+import io.bitcoinsv.jcl.net.protocol.messages.common.BitcoinMsg;
+import io.bitcoinsv.jcl.net.protocol.messages.common.BitcoinMsgBuilder;
+import io.bitcoinsv.jcl.net.protocol.serialization.CompactBlockHeaderMsgSerializer;
+import io.bitcoinsv.jcl.net.protocol.serialization.TxMsgSerializer;
+import io.bitcoinsv.jcl.net.protocol.serialization.common.SerializerContext;
+import io.bitcoinsv.jcl.net.tools.LoggerUtil;
+import io.bitcoinsv.jcl.tools.bytes.ByteArrayWriter;
+import io.bitcoinsv.jcl.tools.bytes.MerkleRootIncremental;
+import io.bitcoinsv.jcl.tools.config.RuntimeConfig;
+import io.bitcoinsv.jcl.tools.events.EventQueueProcessor;
+import io.bitcoinsv.jcl.tools.handlers.HandlerImpl;
+import io.bitcoinsv.jcl.tools.thread.ThreadUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * Implementation of the Compact Block Handler (BIP 152):
+ *
+ * - When a Peer is handshaked, we send a SENDCMPCT Message, so the Peer announces new Blocks as Compact Blocks.
+ * - A Compact Block (CMPCTBLOCK) contains the Block Header, some "prefilled" Txs, and a 6-bytes "short ID" for the
+ *   rest of Txs. The short IDs are matched against the Txs provided by the {@link CompactBlockTxSource} (by default,
+ *   the Txs received recently from the Peers).
+ * - The Txs not found are requested from the same Peer (GETBLOCKTXN), and the Block is completed when they arrive
+ *   (BLOCKTXN).
+ * - Once complete, the Merkle Root is verified, and the same Events as when a whole Block is downloaded are
+ *   published: {@link LiteBlockDownloadedEvent}, {@link BlockHeaderDownloadedEvent}, {@link BlockTXsDownloadedEvent}
+ *   and {@link BlockDownloadedEvent}.
+ * - If the Block can't be reconstructed (the Compact Block is malformed, the Merkle Root does not match, or the
+ *   missing Txs are not received in time), the whole Block is requested through the Block Downloader Handler.
+ * - In high-bandwidth mode several Peers usually announce the same Block. Only the first Compact Block of each Block
+ *   is processed, the rest are ignored (as well as those of the Blocks already downloaded by other means).
+ *
+ * This Handler is NOT included by default in the P2P Service. It's included when its Configuration is provided to
+ * the P2PBuilder.
+ */
+public class CompactBlockHandlerImpl extends HandlerImpl<PeerAddress, CompactBlockPeerInfo> implements CompactBlockHandler {
+
+    // A Short ID is made of the lower 6 bytes of the SipHash of the Tx Hash:
+    private static final long SHORT_ID_MASK = 0xFFFFFFFFFFFFL;
+
+    // Max number of Blocks and time we remember them, so their Compact Blocks are not processed again:
+    private static final int MAX_KNOWN_BLOCKS = 1_000;
+    private static final Duration KNOWN_BLOCKS_RETENTION = Duration.ofHours(1);
+
+    /** A Block being reconstructed */
+    private static class PendingBlock {
+        private final PeerAddress peerAddress;
+        private final CompactBlockHeaderMsg header;
+        private final TxMsg[] txs;
+        private final Sha256Hash[] txHashes;
+        private final List<Integer> missingIndexes;
+        private final Instant startTime = Instant.now();
+
+        PendingBlock(PeerAddress peerAddress, CompactBlockHeaderMsg header, int numTxs) {
+            this.peerAddress = peerAddress;
+            this.header = header;
+            this.txs = new TxMsg[numTxs];
+            this.txHashes = new Sha256Hash[numTxs];
+            this.missingIndexes = new ArrayList<>();
+        }
+    }
+
+    // For logging:
+    private LoggerUtil logger;
+
+    // Configuration:
+    private CompactBlockHandlerConfig config;
+
+    // Source of Txs used to reconstruct the Blocks. If it's the default one, this Handler feeds it:
+    private final CompactBlockTxSource txSource;
+    private final RecentTxsPool recentTxsPool;
+
+    // Blocks waiting for their missing Txs, by Block Hash (human-readable format):
+    private final Map<Sha256Hash, PendingBlock> pendingBlocks = new HashMap<>();
+
+    // Blocks already processed (reconstructed, being reconstructed, requested in full or downloaded by other means):
+    private final Cache<Sha256Hash, Boolean> knownBlocks = CacheBuilder.newBuilder()
+            .maximumSize(MAX_KNOWN_BLOCKS)
+            .expireAfterWrite(KNOWN_BLOCKS_RETENTION.toMillis(), TimeUnit.MILLISECONDS)
+            .build();
+
+    // Counters:
+    private long numCompactBlocksReceived;
+    private long numCompactBlocksIgnored;
+    private long numBlocksReconstructed;
+    private long numBlocksFailed;
+    private long numTxsFromSource;
+    private long numTxsRequested;
+
+    // Lock to access the Pending Blocks:
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // An Executor, to check the Blocks that are not reconstructed in time:
+    private ScheduledExecutorService executor;
+
+    // The Events captured by this Handler will be processed in a separate Thread/s, by an EventQueueProcessor, this
+    // way we won't slow down the rate at which the Events are published and processed in the Bus
+    private EventQueueProcessor eventQueueProcessor;
+
+    /** Constructor */
+    public CompactBlockHandlerImpl(String id, RuntimeConfig runtimeConfig, CompactBlockHandlerConfig config) {
+        super(id, runtimeConfig);
+        this.config = config;
+        this.logger = new LoggerUtil(id, HANDLER_ID, this.getClass());
+        if (config.getTxSource() != null) {
+            this.txSource = config.getTxSource();
+            this.recentTxsPool = null;
+        } else {
+            this.recentTxsPool = new RecentTxsPool(config.getRecentTxsMaxSize(), config.getRecentTxsRetention());
+            this.txSource = this.recentTxsPool;
+        }
+        this.executor = ThreadUtils.getSingleThreadScheduledExecutorService("JclCompactBlockHandler");
+        this.eventQueueProcessor = new EventQueueProcessor("JclCompactBlockHandler", ThreadUtils.getFixedThreadExecutorService("JclCompactBlockHandler-EventsConsumers", 1));
+    }
+
+    // We register this Handler to LISTEN to these Events:
+    private void registerForEvents() {
+
+        this.eventQueueProcessor.addProcessor(NetStartEvent.class, e -> onStart((NetStartEvent) e));
+        this.eventQueueProcessor.addProcessor(NetStopEvent.class, e -> onStop((NetStopEvent) e));
+        this.eventQueueProcessor.addProcessor(PeerHandshakedEvent.class, e -> onPeerHandshaked((PeerHandshakedEvent) e));
+        this.eventQueueProcessor.addProcessor(PeerDisconnectedEvent.class, e -> onPeerDisconnected((PeerDisconnectedEvent) e));
+        this.eventQueueProcessor.addProcessor(SendCompactBlockMsgReceivedEvent.class, e -> onSendCompactBlockMsgReceived((SendCompactBlockMsgReceivedEvent) e));
+        this.eventQueueProcessor.addProcessor(CompactBlockMsgReceivedEvent.class, e -> onCompactBlockMsgReceived((CompactBlockMsgReceivedEvent) e));
+        this.eventQueueProcessor.addProcessor(BlockTxnMsgReceivedEvent.class, e -> onBlockTxnMsgReceived((BlockTxnMsgReceivedEvent) e));
+        this.eventQueueProcessor.addProcessor(BlockDownloadedEvent.class, e -> onBlockDownloaded((BlockDownloadedEvent) e));
+        this.eventQueueProcessor.addProcessor(TxMsgReceivedEvent.class, e -> onTxMsgReceived((TxMsgReceivedEvent) e));
+        this.eventQueueProcessor.addProcessor(TxsBatchMsgReceivedEvent.class, e -> ((TxsBatchMsgReceivedEvent) e).getEvents().forEach(this::onTxMsgReceived));
+
+        super.eventBus.subscribe(NetStartEvent.class, e -> this.eventQueueProcessor.addEvent(e));
+        super.eventBus.subscribe(NetStopEvent.class, e -> this.eventQueueProcessor.addEvent(e));
+        super.eventBus.subscribe(PeerHandshakedEvent.class, e -> this.eventQueueProcessor.addEvent(e));
+        super.eventBus.subscribe(PeerDisconnectedEvent.class, e -> this.eventQueueProcessor.addEvent(e));
+        super.eventBus.subscribe(SendCompactBlockMsgReceivedEvent.class, e -> this.eventQueueProcessor.addEvent(e));
+        super.eventBus.subscribe(CompactBlockMsgReceivedEvent.class, e -> this.eventQueueProcessor.addEvent(e));
+        super.eventBus.subscribe(BlockTxnMsgReceivedEvent.class, e -> this.eventQueueProcessor.addEvent(e));
+        super.eventBus.subscribe(BlockDownloadedEvent.class, e -> this.eventQueueProcessor.addEvent(e));
+
+        // The Txs are only needed if we are feeding the default Tx Source:
+        if (recentTxsPool != null) {
+            super.eventBus.subscribe(TxMsgReceivedEvent.class, e -> this.eventQueueProcessor.addEvent(e));
+            super.eventBus.subscribe(TxsBatchMsgReceivedEvent.class, e -> this.eventQueueProcessor.addEvent(e));
+        }
+
+        this.eventQueueProcessor.start();
+    }
+
+    @Override
+    public void init() {
+        registerForEvents();
+    }
+
+    // Event Handler
+    public void onStart(NetStartEvent event) {
+        logger.trace("Starting...");
+        this.executor.scheduleAtFixedRate(this::jobCheckTimeouts, 1, 1, TimeUnit.SECONDS);
+    }
+
+    // Event Handler
+    public void onStop(NetStopEvent event) {
+        this.executor.shutdownNow();
+        this.eventQueueProcessor.stop();
+        logger.trace("Stop.");
+    }
+
+    // Event Handler:
+    public void onPeerHandshaked(PeerHandshakedEvent event) {
+        handlerInfo.put(event.getPeerAddress(), new CompactBlockPeerInfo(event.getPeerAddress()));
+        // We ask the Peer to use Compact Blocks:
+        SendCompactBlockMsg msg = SendCompactBlockMsg.builder()
+                .highBandwidthRelaying(config.isHighBandwidthRelaying())
+                .version(config.getCompactBlocksVersion())
+                .build();
+        BitcoinMsg<SendCompactBlockMsg> btcMsg = new BitcoinMsgBuilder<>(config.getBasicConfig(), msg).build();
+        super.eventBus.publish(new SendMsgRequest(event.getPeerAddress(), btcMsg));
+    }
+
+    // Event Handler:
+    public void onPeerDisconnected(PeerDisconnectedEvent event) {
+        handlerInfo.remove(event.getPeerAddress());
+    }
+
+    // Event Handler:
+    public void onSendCompactBlockMsgReceived(SendCompactBlockMsgReceivedEvent event) {
+        CompactBlockPeerInfo peerInfo = getOrWaitForHandlerInfo(event.getPeerAddress());
+        if (peerInfo == null) return;
+        SendCompactBlockMsg msg = event.getBtcMsg().getBody();
+        peerInfo.setCompactBlocksSettings(msg.isHighBandwidthRelaying(), msg.getVersion());
+    }
+
+    // Event Handler:
+    public void onTxMsgReceived(TxMsgReceivedEvent event) {
+        TxMsg txMsg = event.getBtcMsg().getBody();
+        recentTxsPool.add(txMsg.getHash().orElseGet(() -> calculateHash(txMsg)), txMsg);
+    }
+
+    // Event Handler:
+    public void onCompactBlockMsgReceived(CompactBlockMsgReceivedEvent event) {
+        PeerAddress peerAddress = event.getPeerAddress();
+        Sha256Hash blockHash = null;
+        try {
+            CompactBlockMsg compactBlock = event.getBtcMsg().getBody();
+            Sha256Hash hash = Sha256Hash.wrapReversed(compactBlock.getHeader().getHash().getHashBytes());
+            lock.lock();
+            try {
+                numCompactBlocksReceived++;
+                // If this Block is already known, another Peer got here first:
+                if (knownBlocks.asMap().putIfAbsent(hash, Boolean.TRUE) != null) {
+                    numCompactBlocksIgnored++;
+                    logger.trace(peerAddress, "Compact Block ignored, Block already known", hash);
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            blockHash = hash;
+
+            PendingBlock block = new PendingBlock(peerAddress, compactBlock.getHeader(), getNumTxs(compactBlock));
+            int numTxsFound = fillTxs(compactBlock, block);
+            for (int i = 0; i < block.txs.length; i++) {
+                if (block.txs[i] == null) block.missingIndexes.add(i);
+            }
+
+            lock.lock();
+            try {
+                numTxsFromSource += numTxsFound;
+                if (!block.missingIndexes.isEmpty()) {
+                    numTxsRequested += block.missingIndexes.size();
+                    pendingBlocks.put(blockHash, block);
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            logger.trace(peerAddress, "Compact Block received", blockHash, numTxsFound + " txs found, "
+                    + block.missingIndexes.size() + " missing");
+
+            if (block.missingIndexes.isEmpty()) processBlockCompleted(blockHash, block);
+            else requestMissingTxs(block);
+        } catch (Throwable th) {
+            // Whatever the error (a malformed Compact Block included), we fall back to the whole Block:
+            logger.error(th, "Error processing Compact Block");
+            if (blockHash != null) {
+                removePendingBlock(blockHash, peerAddress);
+                processBlockFailed(blockHash, peerAddress, "Error processing Compact Block: " + th.getMessage());
+            }
+        }
+    }
+
+    // Event Handler:
+    public void onBlockTxnMsgReceived(BlockTxnMsgReceivedEvent event) {
+        BlockTxnMsg blockTxn = event.getBtcMsg().getBody();
+        Sha256Hash blockHash = Sha256Hash.wrapReversed(blockTxn.getBlockHash().getHashBytes());
+        PendingBlock block = removePendingBlock(blockHash, event.getPeerAddress());
+        if (block == null) return;
+
+        try {
+            // The Txs come in the same order we requested them:
+            List<TxMsg> txs = blockTxn.getTransactions();
+            if (txs.size() != block.missingIndexes.size()) {
+                processBlockFailed(blockHash, block.peerAddress, "Wrong number of Txs received (" + txs.size()
+                        + " received, " + block.missingIndexes.size() + " expected)");
+                return;
+            }
+            for (int i = 0; i < txs.size(); i++) {
+                int index = block.missingIndexes.get(i);
+                TxMsg txMsg = txs.get(i);
+                block.txs[index] = txMsg;
+                block.txHashes[index] = txMsg.getHash().orElseGet(() -> calculateHash(txMsg));
+            }
+            processBlockCompleted(blockHash, block);
+        } catch (Throwable th) {
+            logger.error(th, "Error processing Block Txs");
+            processBlockFailed(blockHash, block.peerAddress, "Error processing Block Txs: " + th.getMessage());
+        }
+    }
+
+    // Event Handler:
+    public void onBlockDownloaded(BlockDownloadedEvent event) {
+        // If the Block has been downloaded by other means, we don't need to reconstruct it anymore:
+        Sha256Hash blockHash = event.getBlockHeader().getHash();
+        lock.lock();
+        try {
+            knownBlocks.put(blockHash, Boolean.TRUE);
+            pendingBlocks.remove(blockHash);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // It returns the number of Txs in the Compact Block, checking it's not beyond the size of an array
+    private int getNumTxs(CompactBlockMsg compactBlock) {
+        long numTxs = (long) compactBlock.getShortTxIds().size() + compactBlock.getPrefilledTransactions().size();
+        if (numTxs > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Too many Txs in Compact Block: " + numTxs);
+        return (int) numTxs;
+    }
+
+    // It places the Prefilled Txs and the Txs taken from the Source in their position in the Block, and returns the
+    // number of Txs found in the Source. If the indexes of the Compact Block are not valid, an Exception is thrown.
+    private int fillTxs(CompactBlockMsg compactBlock, PendingBlock block) {
+        int numTxs = block.txs.length;
+
+        // The Prefilled Txs come first. Their indexes are "differentially encoded" (relative to the previous one), so
+        // they are always increasing. We check each one is within the Block (a VarInt bigger than a signed long is
+        // negative, and the sum is done in a long so it can't overflow):
+        long index = -1;
+        for (PrefilledTxMsg prefilledTx : compactBlock.getPrefilledTransactions()) {
+            long indexDiff = prefilledTx.getIndex().getValue();
+            if (indexDiff < 0 || index + indexDiff + 1 >= numTxs)
+                throw new IllegalArgumentException("Prefilled Tx index out of bounds (" + numTxs + " txs in Block)");
+            index += indexDiff + 1;
+            block.txs[(int) index] = prefilledTx.getTransaction();
+            block.txHashes[(int) index] = prefilledTx.getTransaction().getHash().orElseGet(() -> calculateHash(prefilledTx.getTransaction()));
+        }
+
+        // We assign each Short ID to its position in the Block, in the positions not taken by the Prefilled Txs.
+        // If 2 Txs in the Block have the same Short ID, we can't tell them apart, so we request them both:
+        Map<Long, Integer> shortIdsPositions = new HashMap<>();
+        Set<Long> shortIdsCollisions = new HashSet<>();
+        int position = 0;
+        for (Long shortId : compactBlock.getShortTxIds()) {
+            while (position < numTxs && block.txs[position] != null) position++;
+            if (position >= numTxs)
+                throw new IllegalArgumentException("Short ID position out of bounds (" + numTxs + " txs in Block)");
+            if (shortIdsPositions.putIfAbsent(shortId, position) != null) shortIdsCollisions.add(shortId);
+            position++;
+        }
+        shortIdsCollisions.forEach(shortIdsPositions::remove);
+
+        // We look for the Txs in the Source:
+        int numTxsFound = 0;
+        if (!shortIdsPositions.isEmpty()) {
+            HashFunction sipHash = getShortIdsHashFunction(compactBlock);
+            for (Map.Entry<Sha256Hash, TxMsg> tx : txSource.getTxs().entrySet()) {
+                long shortId = sipHash.hashBytes(tx.getKey().getReversedBytes()).asLong() & SHORT_ID_MASK;
+                Integer txPosition = shortIdsPositions.get(shortId);
+                if (txPosition != null && block.txs[txPosition] == null) {
+                    block.txs[txPosition] = tx.getValue();
+                    block.txHashes[txPosition] = tx.getKey();
+                    numTxsFound++;
+                    if (numTxsFound == shortIdsPositions.size()) break;
+                }
+            }
+        }
+        return numTxsFound;
+    }
+
+    // It removes the Block from the pending ones and returns it, only if it was requested from this Peer
+    private PendingBlock removePendingBlock(Sha256Hash blockHash, PeerAddress peerAddress) {
+        lock.lock();
+        try {
+            PendingBlock block = pendingBlocks.get(blockHash);
+            if (block == null || !block.peerAddress.equals(peerAddress)) return null;
+            return pendingBlocks.remove(blockHash);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // It returns the function used to calculate the Short IDs of the Txs in this Compact Block: a SipHash-2-4, whose
+    // keys are taken from the single-SHA256 of the Block Header and the nonce
+    private HashFunction getShortIdsHashFunction(CompactBlockMsg compactBlock) {
+        SerializerContext serializerContext = SerializerContext.builder()
+                .protocolBasicConfig(config.getBasicConfig())
+                .build();
+        ByteArrayWriter writer = new ByteArrayWriter();
+        CompactBlockHeaderMsgSerializer.getInstance().serialize(serializerContext, compactBlock.getHeader(), writer);
+        writer.writeUint64LE(compactBlock.getNonce());
+        byte[] keyHash = Sha256Hash.of(writer.reader().getFullContentAndClose()).getBytes();
+        ByteBuffer keyBuffer = ByteBuffer.wrap(keyHash).order(ByteOrder.LITTLE_ENDIAN);
+        return Hashing.sipHash24(keyBuffer.getLong(0), keyBuffer.getLong(8));
+    }
+
+    // The Hash of the Tx is only calculated during Deserialization if specified in the Configuration:
+    private Sha256Hash calculateHash(TxMsg txMsg) {
+        SerializerContext serializerContext = SerializerContext.builder()
+                .protocolBasicConfig(config.getBasicConfig())
+                .build();
+        ByteArrayWriter writer = new ByteArrayWriter();
+        TxMsgSerializer.getInstance().serialize(serializerContext, txMsg, writer);
+        return Sha256Hash.wrapReversed(Sha256Hash.twiceOf(writer.reader().getFullContentAndClose()).getBytes());
+    }
+
+    // It requests the Txs we don't have from the Peer that sent the Compact Block
+    private void requestMissingTxs(PendingBlock block) {
+        // The indexes are "differentially encoded" (relative to the previous one):
+        List<VarIntMsg> indexes = new ArrayList<>();
+        int previousIndex = -1;
+        for (Integer index : block.missingIndexes) {
+            indexes.add(VarIntMsg.builder().value(index - previousIndex - 1).build());
+            previousIndex = index;
+        }
+        GetBlockTxnMsg msg = GetBlockTxnMsg.builder()
+                .blockHash(block.header.getHash())
+                .indexesLength(VarIntMsg.builder().value(indexes.size()).build())
+                .indexes(indexes)
+                .build();
+        BitcoinMsg<GetBlockTxnMsg> btcMsg = new BitcoinMsgBuilder<>(config.getBasicConfig(), msg).build();
+        super.eventBus.publish(new SendMsgRequest(block.peerAddress, btcMsg));
+    }
+
+    // All the Txs of the Block are available: we verify and publish it, the same way as a whole Block downloaded
+    private void processBlockCompleted(Sha256Hash blockHash, PendingBlock block) {
+        MerkleRootIncremental merkleRoot = new MerkleRootIncremental();
+        Arrays.stream(block.txHashes).forEach(merkleRoot::add);
+        Sha256Hash expectedRoot = Sha256Hash.wrapReversed(block.header.getMerkleRoot().getHashBytes());
+        if (!expectedRoot.equals(merkleRoot.getMerkleRoot())) {
+            // Some Tx taken from the Source has the same Short ID as the right one...
+            processBlockFailed(blockHash, block.peerAddress, "Merkle Root mismatch");
+            return;
+        }
+
+        List<TxMsg> txs = Arrays.asList(block.txs);
+        long txsSizeInBytes = txs.stream().mapToLong(TxMsg::getLengthInBytes).sum();
+        BlockHeaderMsg blockHeader = BlockHeaderMsg.builder()
+                .hash(blockHash)
+                .version(block.header.getVersion())
+                .prevBlockHash(block.header.getPrevBlockHash())
+                .merkleRoot(block.header.getMerkleRoot())
+                .creationTimestamp(block.header.getCreationTimestamp())
+                .difficultyTarget(block.header.getDifficultyTarget())
+                .nonce(block.header.getNonce())
+                .transactionCount(txs.size())
+                .build();
+        BlockMsg blockMsg = BlockMsg.builder().blockHeader(blockHeader).transactionMsgs(txs).build();
+        BitcoinMsg<BlockMsg> blockBtcMsg = new BitcoinMsgBuilder<>(config.getBasicConfig(), blockMsg).build();
+        Duration reconstructionTime = Duration.between(block.startTime, Instant.now());
+
+        super.eventBus.publish(new LiteBlockDownloadedEvent(block.peerAddress, blockBtcMsg, reconstructionTime));
+
+        PartialBlockHeaderMsg partialHeaderMsg = PartialBlockHeaderMsg.builder()
+                .blockHeader(blockHeader)
+                .txsSizeInBytes(txsSizeInBytes)
+                .blockTxsFormat(PartialBlockHeaderMsg.BlockTxsFormat.DESERIALIZED)
+                .build();
+        BitcoinMsg<PartialBlockHeaderMsg> partialHeaderBtcMsg = new BitcoinMsgBuilder<>(config.getBasicConfig(), partialHeaderMsg).build();
+        super.eventBus.publish(new BlockHeaderDownloadedEvent(block.peerAddress, partialHeaderBtcMsg));
+
+        PartialBlockTXsMsg partialBlockTxsMsg = PartialBlockTXsMsg.builder()
+                .blockHeader(blockHeader)
+                .txs(txs)
+                .txsOrdersNumber(0)
+                .build();
+        BitcoinMsg<PartialBlockTXsMsg> partialBlockTxsBtcMsg = new BitcoinMsgBuilder<>(config.getBasicConfig(), partialBlockTxsMsg).build();
+        super.eventBus.publish(new BlockTXsDownloadedEvent(block.peerAddress, partialBlockTxsBtcMsg));
+
+        super.eventBus.publish(new BlockDownloadedEvent(block.peerAddress, blockHeader, reconstructionTime,
+                blockHeader.getLengthInBytes() + txsSizeInBytes));
+
+        lock.lock();
+        try {
+            numBlocksReconstructed++;
+        } finally {
+            lock.unlock();
+        }
+        logger.debug(block.peerAddress, "Block reconstructed from Compact Block", blockHash);
+    }
+
+    // The Block can't be reconstructed: we request the whole Block instead
+    private void processBlockFailed(Sha256Hash blockHash, PeerAddress peerAddress, String reason) {
+        lock.lock();
+        try {
+            numBlocksFailed++;
+        } finally {
+            lock.unlock();
+        }
+        logger.debug(peerAddress, "Compact Block not reconstructed, requesting whole Block", blockHash, reason);
+        super.eventBus.publish(new BlocksDownloadRequest(List.of(blockHash.toString()), true, null, peerAddress));
+    }
+
+    // This Job checks the Blocks whose missing Txs have not been received in time
+    private void jobCheckTimeouts() {
+        try {
+            Map<Sha256Hash, PendingBlock> blocksExpired = new HashMap<>();
+            lock.lock();
+            try {
+                Instant now = Instant.now();
+                Iterator<Map.Entry<Sha256Hash, PendingBlock>> it = pendingBlocks.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<Sha256Hash, PendingBlock> entry = it.next();
+                    if (Duration.between(entry.getValue().startTime, now).compareTo(config.getReconstructionTimeout()) > 0) {
+                        blocksExpired.put(entry.getKey(), entry.getValue());
+                        it.remove();
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            blocksExpired.forEach((hash, block) -> processBlockFailed(hash, block.peerAddress, "Missing Txs not received in time"));
+        } catch (Throwable th) {
+            logger.error(th, "Error checking the Compact Blocks timeouts");
+        }
+    }
+
+    @Override
+    public int getNumBlocksPending() {
+        lock.lock();
+        try {
+            return pendingBlocks.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public CompactBlockHandlerConfig getConfig() {
+        return this.config;
+    }
+
+    public CompactBlockHandlerState getState() {
+        lock.lock();
+        try {
+            return CompactBlockHandlerState.builder()
+                    .numCompactBlocksReceived(numCompactBlocksReceived)
+                    .numCompactBlocksIgnored(numCompactBlocksIgnored)
+                    .numBlocksReconstructed(numBlocksReconstructed)
+                    .numBlocksFailed(numBlocksFailed)
+                    .numTxsFromSource(numTxsFromSource)
+                    .numTxsRequested(numTxsRequested)
+                    .numBlocksPending(pendingBlocks.size())
+                    .build();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package io.bitcoinsv.jcl.net.protocol.handlers.compactBlock;
+
+
+import io.bitcoinsv.jcl.tools.handlers.HandlerState;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * This event stores the state of the Compact Block Handler at a point in time.
+ */
+public final class CompactBlockHandlerState extends HandlerState {
+    private final long numCompactBlocksReceived;    // CMPCTBLOCK Messages received
+    private final long numCompactBlocksIgnored;     // CMPCTBLOCK Messages of Blocks already known or being processed
+    private final long numBlocksReconstructed;      // Blocks fully reconstructed and published
+    private final long numBlocksFailed;             // Blocks not reconstructed (timeout or wrong Txs), requested in full
+    private final long numTxsFromSource;            // Txs taken from the Tx Source
+    private final long numTxsRequested;             // Txs requested from the Peers (GETBLOCKTXN)
+    private final long numBlocksPending;            // Blocks currently waiting for some of their Txs
+
+    CompactBlockHandlerState(long numCompactBlocksReceived, long numCompactBlocksIgnored, long numBlocksReconstructed,
+                             long numBlocksFailed, long numTxsFromSource, long numTxsRequested, long numBlocksPending) {
+        this.numCompactBlocksReceived = numCompactBlocksReceived;
+        this.numCompactBlocksIgnored = numCompactBlocksIgnored;
+        this.numBlocksReconstructed = numBlocksReconstructed;
+        this.numBlocksFailed = numBlocksFailed;
+        this.numTxsFromSource = numTxsFromSource;
+        this.numTxsRequested = numTxsRequested;
+        this.numBlocksPending = numBlocksPending;
+    }
+
+    public long getNumCompactBlocksReceived()   { return this.numCompactBlocksReceived; }
+    public long getNumCompactBlocksIgnored()    { return this.numCompactBlocksIgnored; }
+    public long getNumBlocksReconstructed()     { return this.numBlocksReconstructed; }
+    public long getNumBlocksFailed()            { return this.numBlocksFailed; }
+    public long getNumTxsFromSource()           { return this.numTxsFromSource; }
+    public long getNumTxsRequested()            { return this.numTxsRequested; }
+    public long getNumBlocksPending()           { return this.numBlocksPending; }
+
+    @Override
+    public String toString() {
+        return "CompactBlock-Handler State: " + numCompactBlocksReceived + " compact blocks received ("
+                + numCompactBlocksIgnored + " ignored), " + numBlocksReconstructed + " reconstructed, " + numBlocksFailed + " failed, " + numBlocksPending
+                + " pending, " + numTxsFromSource + " txs from source, " + numTxsRequested + " txs requested";
+    }
+
+    public CompactBlockHandlerStateBuilder toBuilder() {
+        return new CompactBlockHandlerStateBuilder()
+                .numCompactBlocksReceived(this.numCompactBlocksReceived)
+                .numCompactBlocksIgnored(this.numCompactBlocksIgnored)
+                .numBlocksReconstructed(this.numBlocksReconstructed)
+                .numBlocksFailed(this.numBlocksFailed)
+                .numTxsFromSource(this.numTxsFromSource)
+                .numTxsRequested(this.numTxsRequested)
+                .numBlocksPending(this.numBlocksPending);
+    }
+
+    public static CompactBlockHandlerStateBuilder builder() {
+        return new CompactBlockHandlerStateBuilder();
+    }
+
+    /**
+     * Builder
+     */
+    public static class CompactBlockHandlerStateBuilder {
+        private long numCompactBlocksReceived;
+        private long numCompactBlocksIgnored;
+        private long numBlocksReconstructed;
+        private long numBlocksFailed;
+        private long numTxsFromSource;
+        private long numTxsRequested;
+        private long numBlocksPending;
+
+        CompactBlockHandlerStateBuilder() {}
+
+        public CompactBlockHandlerState.CompactBlockHandlerStateBuilder numCompactBlocksReceived(long numCompactBlocksReceived) {
+            this.numCompactBlocksReceived = numCompactBlocksReceived;
+            return this;
+        }
+
+        public CompactBlockHandlerState.CompactBlockHandlerStateBuilder numCompactBlocksIgnored(long numCompactBlocksIgnored) {
+            this.numCompactBlocksIgnored = numCompactBlocksIgnored;
+            return this;
+        }
+
+        public CompactBlockHandlerState.CompactBlockHandlerStateBuilder numBlocksReconstructed(long numBlocksReconstructed) {
+            this.numBlocksReconstructed = numBlocksReconstructed;
+            return this;
+        }
+
+        public CompactBlockHandlerState.CompactBlockHandlerStateBuilder numBlocksFailed(long numBlocksFailed) {
+            this.numBlocksFailed = numBlocksFailed;
+            return this;
+        }
+
+        public CompactBlockHandlerState.CompactBlockHandlerStateBuilder numTxsFromSource(long numTxsFromSource) {
+            this.numTxsFromSource = numTxsFromSource;
+            return this;
+        }
+
+        public CompactBlockHandlerState.CompactBlockHandlerStateBuilder numTxsRequested(long numTxsRequested) {
+            this.numTxsRequested = numTxsRequested;
+            return this;
+        }
+
+        public CompactBlockHandlerState.CompactBlockHandlerStateBuilder numBlocksPending(long numBlocksPending) {
+            this.numBlocksPending = numBlocksPending;
+            return this;
+        }
+
+        public CompactBlockHandlerState build() {
+            return new CompactBlockHandlerState(numCompactBlocksReceived, numCompactBlocksIgnored, numBlocksReconstructed,
+                    numBlocksFailed, numTxsFromSource, numTxsRequested, numBlocksPending);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package io.bitcoinsv.jcl.net.protocol.handlers.compactBlock;
+
+
+import io.bitcoinsv.jcl.net.network.PeerAddress;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * This class stores information for each Peer that is needed by the Compact Block Handler: the Compact Blocks
+ * settings announced by the Peer in its SENDCMPCT Message (if any).
+ */
+public class CompactBlockPeerInfo {
+    private final PeerAddress peerAddress;
+    private boolean compactBlocksSupported;
+    private boolean highBandwidthRelaying;
+    private long compactBlocksVersion;
+
+    /** Constructor */
+    public CompactBlockPeerInfo(PeerAddress peerAddress) {
+        this.peerAddress = peerAddress;
+    }
+
+    /** It registers the settings sent by the Peer in a SENDCMPCT Message */
+    protected synchronized void setCompactBlocksSettings(boolean highBandwidthRelaying, long version) {
+        this.compactBlocksSupported = true;
+        this.highBandwidthRelaying = highBandwidthRelaying;
+        this.compactBlocksVersion = version;
+    }
+
+    public PeerAddress getPeerAddress()                     { return this.peerAddress; }
+    public synchronized boolean isCompactBlocksSupported()  { return this.compactBlocksSupported; }
+    public synchronized boolean isHighBandwidthRelaying()   { return this.highBandwidthRelaying; }
+    public synchronized long getCompactBlocksVersion()      { return this.compactBlocksVersion; }
+
+    @Override
+    public String toString() {
+        return peerAddress + " : " + (compactBlocksSupported
+                ? "compact blocks v" + compactBlocksVersion + (highBandwidthRelaying ? " (high-bandwidth)" : "")
+                : "no compact blocks");
+    }
+}
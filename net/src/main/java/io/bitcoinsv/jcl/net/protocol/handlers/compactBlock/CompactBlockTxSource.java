@@ -0,0 +1,25 @@
+package io.bitcoinsv.jcl.net.protocol.handlers.compactBlock;
+
+
+import io.bitcoinsv.bitcoinjsv.core.Sha256Hash;
+import io.bitcoinsv.jcl.net.protocol.messages.TxMsg;
+
+import java.util.Map;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * A Source of the Txs that can be used to reconstruct a Compact Block. Any Tx of the Block that is not provided by
+ * this Source is requested from the remote Peer.
+ *
+ * @see RecentTxsPool
+ */
+public interface CompactBlockTxSource {
+
+    /**
+     * Returns the Txs available, indexed by their Hash (human-readable format). The Map returned is only read, and
+     * it might be iterated over completely, so it should be a view of the Source and not a copy.
+     */
+    Map<Sha256Hash, TxMsg> getTxs();
+}
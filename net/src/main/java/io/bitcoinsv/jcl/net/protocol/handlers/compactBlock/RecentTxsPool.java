@@ -0,0 +1,51 @@
+package io.bitcoinsv.jcl.net.protocol.handlers.compactBlock;
+
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.bitcoinsv.bitcoinjsv.core.Sha256Hash;
+import io.bitcoinsv.jcl.net.protocol.messages.TxMsg;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * Default Source of Txs used by the Compact Block Handler: It stores the most recent Txs received from the remote
+ * Peers. The oldest Txs are removed when the max size is reached, or when they've been stored longer than the
+ * retention time.
+ */
+public class RecentTxsPool implements CompactBlockTxSource {
+
+    private final Cache<Sha256Hash, TxMsg> txs;
+
+    /** Constructor */
+    public RecentTxsPool(int maxSize, Duration retention) {
+        this.txs = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(retention.toMillis(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /** It stores a Tx. The Hash is the Tx Hash in human-readable format */
+    public void add(Sha256Hash txHash, TxMsg txMsg) {
+        txs.put(txHash, txMsg);
+    }
+
+    /** It removes a Tx */
+    public void remove(Sha256Hash txHash) {
+        txs.invalidate(txHash);
+    }
+
+    public long size() {
+        return txs.size();
+    }
+
+    @Override
+    public Map<Sha256Hash, TxMsg> getTxs() {
+        return txs.asMap();
+    }
+}
@@ -0,0 +1,28 @@
+package io.bitcoinsv.jcl.net.protocol.handlers.inventory;
+
+
+import io.bitcoinsv.bitcoinjsv.core.Sha256Hash;
+import io.bitcoinsv.jcl.tools.handlers.Handler;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * Operations provided by the Inventory Handler.
+ * This Handler keeps track of the Items (Txs) announced by the remote Peers (INV Messages), and requests each one of
+ * them from only one Peer at a time (GETDATA Messages), falling back to the next Peer that announced it if the first
+ * one does not send it in time.
+ */
+public interface InventoryHandler extends Handler {
+
+    String HANDLER_ID = "Inventory";
+
+    @Override
+    default String getId() { return HANDLER_ID; }
+
+    /** Indicates if the Item (Tx Hash, human-readable format) has been requested and not received yet */
+    boolean isInFlight(Sha256Hash itemHash);
+
+    /** Returns the number of Peers that have announced this Item (Tx Hash, human-readable format) */
+    int getNumAnnouncers(Sha256Hash itemHash);
+}
@@ -0,0 +1,168 @@
+package io.bitcoinsv.jcl.net.protocol.handlers.inventory;
+
+
+import io.bitcoinsv.jcl.net.protocol.config.ProtocolBasicConfig;
+import io.bitcoinsv.jcl.tools.handlers.HandlerConfig;
+
+import java.time.Duration;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * It stores the configuration variables needed by the Inventory Handler.
+ */
+public class InventoryHandlerConfig extends HandlerConfig {
+
+    // Default Values:
+    public static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(60);
+    public static final Duration DEFAULT_BATCH_INTERVAL = Duration.ofMillis(100);
+    public static final Duration DEFAULT_RECEIVED_ITEMS_RETENTION = Duration.ofMinutes(10);
+    public static final int DEFAULT_MAX_IN_FLIGHT_PER_PEER = 5_000;
+    public static final int DEFAULT_MAX_ITEMS_PER_GETDATA = 1_000;
+    public static final int DEFAULT_MAX_ANNOUNCERS_PER_ITEM = 8;
+    public static final Duration DEFAULT_PENDING_ITEMS_RETENTION = Duration.ofMinutes(10);
+    public static final int DEFAULT_MAX_ITEMS_PENDING = 500_000;
+
+    private ProtocolBasicConfig basicConfig;
+
+    // If an Item is not received within this time after being requested, it's requested from the next Peer:
+    private Duration requestTimeout = DEFAULT_REQUEST_TIMEOUT;
+
+    // The Items to request from a Peer are accumulated, and sent in a single GETDATA Message with this frequency:
+    private Duration batchInterval = DEFAULT_BATCH_INTERVAL;
+
+    // The Items received are remembered during this time, so they are not requested again if they are re-announced:
+    private Duration receivedItemsRetention = DEFAULT_RECEIVED_ITEMS_RETENTION;
+
+    // Maximum number of Items requested from a Peer and not received yet:
+    private int maxInFlightPerPeer = DEFAULT_MAX_IN_FLIGHT_PER_PEER;
+
+    // Maximum number of Items in a single GETDATA Message:
+    private int maxItemsPerGetData = DEFAULT_MAX_ITEMS_PER_GETDATA;
+
+    // Maximum number of Peers we keep track of for each Item (to fall back to):
+    private int maxAnnouncersPerItem = DEFAULT_MAX_ANNOUNCERS_PER_ITEM;
+
+    // The Items announced and not received are dropped after this time, even if there are still Peers to request them from:
+    private Duration pendingItemsRetention = DEFAULT_PENDING_ITEMS_RETENTION;
+
+    // Maximum number of Items announced and not received yet. Beyond this, the oldest ones are dropped:
+    private int maxItemsPending = DEFAULT_MAX_ITEMS_PENDING;
+
+    public InventoryHandlerConfig(ProtocolBasicConfig basicConfig,
+                                  Duration requestTimeout,
+                                  Duration batchInterval,
+                                  Duration receivedItemsRetention,
+                                  Integer maxInFlightPerPeer,
+                                  Integer maxItemsPerGetData,
+                                  Integer maxAnnouncersPerItem,
+                                  Duration pendingItemsRetention,
+                                  Integer maxItemsPending) {
+        this.basicConfig = basicConfig;
+        if (requestTimeout != null)         this.requestTimeout = requestTimeout;
+        if (batchInterval != null)          this.batchInterval = batchInterval;
+        if (receivedItemsRetention != null) this.receivedItemsRetention = receivedItemsRetention;
+        if (maxInFlightPerPeer != null)     this.maxInFlightPerPeer = maxInFlightPerPeer;
+        if (maxItemsPerGetData != null)     this.maxItemsPerGetData = maxItemsPerGetData;
+        if (maxAnnouncersPerItem != null)   this.maxAnnouncersPerItem = maxAnnouncersPerItem;
+        if (pendingItemsRetention != null)  this.pendingItemsRetention = pendingItemsRetention;
+        if (maxItemsPending != null)        this.maxItemsPending = maxItemsPending;
+    }
+
+    public InventoryHandlerConfig() {}
+
+    public ProtocolBasicConfig getBasicConfig()     { return this.basicConfig; }
+    public Duration getRequestTimeout()             { return this.requestTimeout; }
+    public Duration getBatchInterval()              { return this.batchInterval; }
+    public Duration getReceivedItemsRetention()     { return this.receivedItemsRetention; }
+    public int getMaxInFlightPerPeer()              { return this.maxInFlightPerPeer; }
+    public int getMaxItemsPerGetData()              { return this.maxItemsPerGetData; }
+    public int getMaxAnnouncersPerItem()            { return this.maxAnnouncersPerItem; }
+    public Duration getPendingItemsRetention()      { return this.pendingItemsRetention; }
+    public int getMaxItemsPending()                 { return this.maxItemsPending; }
+
+    public InventoryHandlerConfigBuilder toBuilder() {
+        return new InventoryHandlerConfigBuilder()
+                .basicConfig(this.basicConfig)
+                .requestTimeout(this.requestTimeout)
+                .batchInterval(this.batchInterval)
+                .receivedItemsRetention(this.receivedItemsRetention)
+                .maxInFlightPerPeer(this.maxInFlightPerPeer)
+                .maxItemsPerGetData(this.maxItemsPerGetData)
+                .maxAnnouncersPerItem(this.maxAnnouncersPerItem)
+                .pendingItemsRetention(this.pendingItemsRetention)
+                .maxItemsPending(this.maxItemsPending);
+    }
+
+    public static InventoryHandlerConfigBuilder builder() {
+        return new InventoryHandlerConfigBuilder();
+    }
+
+    /**
+     * Builder
+     */
+    public static class InventoryHandlerConfigBuilder {
+        private ProtocolBasicConfig basicConfig;
+        private Duration requestTimeout;
+        private Duration batchInterval;
+        private Duration receivedItemsRetention;
+        private Integer maxInFlightPerPeer;
+        private Integer maxItemsPerGetData;
+        private Integer maxAnnouncersPerItem;
+        private Duration pendingItemsRetention;
+        private Integer maxItemsPending;
+
+        InventoryHandlerConfigBuilder() {}
+
+        public InventoryHandlerConfig.InventoryHandlerConfigBuilder basicConfig(ProtocolBasicConfig basicConfig) {
+            this.basicConfig = basicConfig;
+            return this;
+        }
+
+        public InventoryHandlerConfig.InventoryHandlerConfigBuilder requestTimeout(Duration requestTimeout) {
+            this.requestTimeout = requestTimeout;
+            return this;
+        }
+
+        public InventoryHandlerConfig.InventoryHandlerConfigBuilder batchInterval(Duration batchInterval) {
+            this.batchInterval = batchInterval;
+            return this;
+        }
+
+        public InventoryHandlerConfig.InventoryHandlerConfigBuilder receivedItemsRetention(Duration receivedItemsRetention) {
+            this.receivedItemsRetention = receivedItemsRetention;
+            return this;
+        }
+
+        public InventoryHandlerConfig.InventoryHandlerConfigBuilder maxInFlightPerPeer(int maxInFlightPerPeer) {
+            this.maxInFlightPerPeer = maxInFlightPerPeer;
+            return this;
+        }
+
+        public InventoryHandlerConfig.InventoryHandlerConfigBuilder maxItemsPerGetData(int maxItemsPerGetData) {
+            this.maxItemsPerGetData = maxItemsPerGetData;
+            return this;
+        }
+
+        public InventoryHandlerConfig.InventoryHandlerConfigBuilder maxAnnouncersPerItem(int maxAnnouncersPerItem) {
+            this.maxAnnouncersPerItem = maxAnnouncersPerItem;
+            return this;
+        }
+
+        public InventoryHandlerConfig.InventoryHandlerConfigBuilder pendingItemsRetention(Duration pendingItemsRetention) {
+            this.pendingItemsRetention = pendingItemsRetention;
+            return this;
+        }
+
+        public InventoryHandlerConfig.InventoryHandlerConfigBuilder maxItemsPending(int maxItemsPending) {
+            this.maxItemsPending = maxItemsPending;
+            return this;
+        }
+
+        public InventoryHandlerConfig build() {
+            return new InventoryHandlerConfig(basicConfig, requestTimeout, batchInterval, receivedItemsRetention,
+                    maxInFlightPerPeer, maxItemsPerGetData, maxAnnouncersPerItem, pendingItemsRetention, maxItemsPending);
+        }
+    }
+}
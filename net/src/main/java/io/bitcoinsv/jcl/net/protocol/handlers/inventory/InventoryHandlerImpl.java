@@ -0,0 +1,411 @@
+package io.bitcoinsv.jcl.net.protocol.handlers.inventory;
+
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import io.bitcoinsv.bitcoinjsv.core.Sha256Hash;
+import io.bitcoinsv.jcl.net.network.PeerAddress;
+import io.bitcoinsv.jcl.net.network.events.NetStartEvent;
+import io.bitcoinsv.jcl.net.network.events.NetStopEvent;
+import io.bitcoinsv.jcl.net.network.events.PeerDisconnectedEvent;
+import io.bitcoinsv.jcl.net.protocol.events.control.DuplicateTxDiscardedEvent;
+import io.bitcoinsv.jcl.net.protocol.events.control.PeerHandshakedEvent;
+import io.bitcoinsv.jcl.net.protocol.events.control.SendMsgRequest;
+import io.bitcoinsv.jcl.net.protocol.events.data.*;
+import io.bitcoinsv.jcl.net.protocol.messages.*;
+import io.bitcoinsv.jcl.net.protocol.messages.common.BitcoinMsg;
+import io.bitcoinsv.jcl.net.protocol.messages.common.BitcoinMsgBuilder;
+import io.bitcoinsv.jcl.net.protocol.serialization.TxMsgSerializer;
+import io.bitcoinsv.jcl.net.protocol.serialization.common.SerializerContext;
+import io.bitcoinsv.jcl.net.tools.LoggerUtil;
+import io.bitcoinsv.jcl.tools.bytes.ByteArrayWriter;
+import io.bitcoinsv.jcl.tools.config.RuntimeConfig;
+import io.bitcoinsv.jcl.tools.events.EventQueueProcessor;
+import io.bitcoinsv.jcl.tools.handlers.HandlerImpl;
+import io.bitcoinsv.jcl.tools.thread.ThreadUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * Implementation of the Inventory Handler.
+ * When we are connected to many Peers, the same Tx is usually announced (INV) by most of them. If we request it
+ * (GETDATA) from all of them, we'll receive the same Tx many times. This Handler coordinates those requests:
+ *
+ * - It keeps track of the Peers that have announced each Tx, in the order they did it.
+ * - Each Tx is requested from ONE Peer only (the first one that announced it and has room for more requests).
+ * - If that Peer does not send the Tx within the "requestTimeout", or replies with a NOTFOUND, the Tx is requested
+ *   from the next Peer that announced it. If there are no more Peers, the Tx is dropped.
+ * - The Txs to request from a Peer are accumulated, and sent in a single GETDATA Message every "batchInterval".
+ * - Once a Tx is received, it's remembered for a while, so it's not requested again if it's re-announced.
+ * - The Txs announced and not received are dropped after the "pendingItemsRetention", or if there are more than
+ *   "maxItemsPending" of them (the oldest ones first).
+ *
+ * Only Txs are coordinated by this Handler (the Blocks are already managed by the BlockDownloader Handler). This
+ * Handler is NOT included by default in the P2P Service, since it changes the behaviour of the Service (GETDATA
+ * messages are sent automatically). It's included when its Configuration is provided to the P2PBuilder.
+ */
+public class InventoryHandlerImpl extends HandlerImpl<PeerAddress, InventoryPeerInfo> implements InventoryHandler {
+
+    /** Information about each Item announced and not received yet */
+    private static class ItemInfo {
+        private final InventoryVectorMsg item;
+        private final Set<PeerAddress> announcers = new LinkedHashSet<>();
+        private final Set<PeerAddress> peersTried = new HashSet<>();
+        private PeerAddress requestedFrom;
+        private Instant requestedTime;
+
+        ItemInfo(InventoryVectorMsg item) { this.item = item; }
+    }
+
+    // For logging:
+    private LoggerUtil logger;
+
+    // Configuration:
+    private InventoryHandlerConfig config;
+
+    // Items announced and not received yet:
+    private final Cache<Sha256Hash, ItemInfo> items;
+
+    // Items received recently:
+    private final Cache<Sha256Hash, Boolean> itemsReceived;
+
+    // Counters:
+    private long numAnnouncements;
+    private long numRequested;
+    private long numReceived;
+    private long numTimeouts;
+    private long numNotFound;
+    private long numDropped;
+
+    // Lock to access the Items and the Peers info:
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // An Executor, to send the GETDATA Messages and check the timeouts in a different Thread:
+    private ScheduledExecutorService executor;
+
+    // The Events captured by this Handler will be processed in a separate Thread/s, by an EventQueueProcessor, this
+    // way we won't slow down the rate at which the Events are published and processed in the Bus
+    private EventQueueProcessor eventQueueProcessor;
+
+    /** Constructor */
+    public InventoryHandlerImpl(String id, RuntimeConfig runtimeConfig, InventoryHandlerConfig config) {
+        super(id, runtimeConfig);
+        this.config = config;
+        this.logger = new LoggerUtil(id, HANDLER_ID, this.getClass());
+        this.itemsReceived = CacheBuilder.newBuilder()
+                .expireAfterWrite(config.getReceivedItemsRetention().toMillis(), TimeUnit.MILLISECONDS)
+                .build();
+        this.items = CacheBuilder.newBuilder()
+                .concurrencyLevel(1)
+                .expireAfterWrite(config.getPendingItemsRetention().toMillis(), TimeUnit.MILLISECONDS)
+                .maximumSize(config.getMaxItemsPending())
+                .removalListener(this::onItemEvicted)
+                .build();
+        this.executor = ThreadUtils.getSingleThreadScheduledExecutorService("JclInventoryHandler");
+        this.eventQueueProcessor = new EventQueueProcessor("JclInventoryHandler", ThreadUtils.getFixedThreadExecutorService("JclInventoryHandler-EventsConsumers", 1));
+    }
+
+    // We register this Handler to LISTEN to these Events:
+    private void registerForEvents() {
+
+        this.eventQueueProcessor.addProcessor(NetStartEvent.class, e -> onStart((NetStartEvent) e));
+        this.eventQueueProcessor.addProcessor(NetStopEvent.class, e -> onStop((NetStopEvent) e));
+        this.eventQueueProcessor.addProcessor(PeerHandshakedEvent.class, e -> onPeerHandshaked((PeerHandshakedEvent) e));
+        this.eventQueueProcessor.addProcessor(PeerDisconnectedEvent.class, e -> onPeerDisconnected((PeerDisconnectedEvent) e));
+        this.eventQueueProcessor.addProcessor(InvMsgReceivedEvent.class, e -> onInvMsgReceived((InvMsgReceivedEvent) e));
+        this.eventQueueProcessor.addProcessor(NotFoundMsgReceivedEvent.class, e -> onNotFoundMsgReceived((NotFoundMsgReceivedEvent) e));
+        this.eventQueueProcessor.addProcessor(TxMsgReceivedEvent.class, e -> onTxMsgReceived((TxMsgReceivedEvent) e));
+        this.eventQueueProcessor.addProcessor(RawTxMsgReceivedEvent.class, e -> onRawTxMsgReceived((RawTxMsgReceivedEvent) e));
+        this.eventQueueProcessor.addProcessor(TxsBatchMsgReceivedEvent.class, e -> ((TxsBatchMsgReceivedEvent) e).getEvents().forEach(this::onTxMsgReceived));
+        this.eventQueueProcessor.addProcessor(RawTxsBatchMsgReceivedEvent.class, e -> ((RawTxsBatchMsgReceivedEvent) e).getEvents().forEach(this::onRawTxMsgReceived));
+        this.eventQueueProcessor.addProcessor(DuplicateTxDiscardedEvent.class, e -> onDuplicateTxDiscarded((DuplicateTxDiscardedEvent) e));
+
+        super.eventBus.subscribe(NetStartEvent.class, e -> this.eventQueueProcessor.addEvent(e));
+        super.eventBus.subscribe(NetStopEvent.class, e -> this.eventQueueProcessor.addEvent(e));
+        super.eventBus.subscribe(PeerHandshakedEvent.class, e -> this.eventQueueProcessor.addEvent(e));
+        super.eventBus.subscribe(PeerDisconnectedEvent.class, e -> this.eventQueueProcessor.addEvent(e));
+        super.eventBus.subscribe(InvMsgReceivedEvent.class, e -> this.eventQueueProcessor.addEvent(e));
+        super.eventBus.subscribe(NotFoundMsgReceivedEvent.class, e -> this.eventQueueProcessor.addEvent(e));
+        super.eventBus.subscribe(TxMsgReceivedEvent.class, e -> this.eventQueueProcessor.addEvent(e));
+        super.eventBus.subscribe(RawTxMsgReceivedEvent.class, e -> this.eventQueueProcessor.addEvent(e));
+        super.eventBus.subscribe(TxsBatchMsgReceivedEvent.class, e -> this.eventQueueProcessor.addEvent(e));
+        super.eventBus.subscribe(RawTxsBatchMsgReceivedEvent.class, e -> this.eventQueueProcessor.addEvent(e));
+        super.eventBus.subscribe(DuplicateTxDiscardedEvent.class, e -> this.eventQueueProcessor.addEvent(e));
+
+        this.eventQueueProcessor.start();
+    }
+
+    @Override
+    public void init() {
+        registerForEvents();
+    }
+
+    // Event Handler
+    public void onStart(NetStartEvent event) {
+        logger.trace("Starting...");
+        long intervalMillis = config.getBatchInterval().toMillis();
+        this.executor.scheduleAtFixedRate(this::jobSendRequests, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Event Handler
+    public void onStop(NetStopEvent event) {
+        this.executor.shutdownNow();
+        this.eventQueueProcessor.stop();
+        logger.trace("Stop.");
+    }
+
+    // Event Handler:
+    public void onPeerHandshaked(PeerHandshakedEvent event) {
+        handlerInfo.put(event.getPeerAddress(), new InventoryPeerInfo(event.getPeerAddress()));
+    }
+
+    // Event Handler:
+    public void onPeerDisconnected(PeerDisconnectedEvent event) {
+        lock.lock();
+        try {
+            handlerInfo.remove(event.getPeerAddress());
+            // The Items requested from this Peer are requested from the next ones:
+            for (ItemInfo itemInfo : new ArrayList<>(items.asMap().values())) {
+                if (event.getPeerAddress().equals(itemInfo.requestedFrom)) {
+                    releaseRequest(itemInfo);
+                    requestItem(itemInfo);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Event Handler:
+    public void onInvMsgReceived(InvMsgReceivedEvent event) {
+        PeerAddress peerAddress = event.getPeerAddress();
+        // We make sure the Peer is registered...
+        if (getOrWaitForHandlerInfo(peerAddress) == null) return;
+        lock.lock();
+        try {
+            for (InventoryVectorMsg item : event.getBtcMsg().getBody().getInvVectorList()) {
+                if (item.getType() != InventoryVectorMsg.VectorType.MSG_TX) continue;
+                numAnnouncements++;
+                Sha256Hash itemHash = Sha256Hash.wrapReversed(item.getHashMsg().getHashBytes());
+                if (itemsReceived.getIfPresent(itemHash) != null) continue;
+
+                ItemInfo itemInfo = items.asMap().computeIfAbsent(itemHash, h -> new ItemInfo(item));
+                if (itemInfo.announcers.size() < config.getMaxAnnouncersPerItem()) itemInfo.announcers.add(peerAddress);
+                if (itemInfo.requestedFrom == null) requestItem(itemInfo);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Event Handler:
+    public void onNotFoundMsgReceived(NotFoundMsgReceivedEvent event) {
+        lock.lock();
+        try {
+            for (InventoryVectorMsg item : event.getBtcMsg().getBody().getInvVectorList()) {
+                ItemInfo itemInfo = items.getIfPresent(Sha256Hash.wrapReversed(item.getHashMsg().getHashBytes()));
+                if (itemInfo != null && event.getPeerAddress().equals(itemInfo.requestedFrom)) {
+                    numNotFound++;
+                    releaseRequest(itemInfo);
+                    requestItem(itemInfo);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Event Handler:
+    public void onTxMsgReceived(TxMsgReceivedEvent event) {
+        TxMsg txMsg = event.getBtcMsg().getBody();
+        onItemReceived(txMsg.getHash().orElseGet(() -> calculateHash(txMsg)));
+    }
+
+    // Event Handler:
+    public void onRawTxMsgReceived(RawTxMsgReceivedEvent event) {
+        onItemReceived(event.getBtcMsg().getBody().getHash());
+    }
+
+    // Event Handler:
+    // A duplicate Tx discarded before deserializing it has been received all the same
+    public void onDuplicateTxDiscarded(DuplicateTxDiscardedEvent event) {
+        onItemReceived(event.getTxHash());
+    }
+
+    // The Hash of the Tx is calculated during the Deserialization when this Handler is used (see
+    // "MessageHandlerConfig.isTxHashesEnabled()"), so this is only a fallback for Txs not coming from the wire:
+    private Sha256Hash calculateHash(TxMsg txMsg) {
+        SerializerContext serializerContext = SerializerContext.builder()
+                .protocolBasicConfig(config.getBasicConfig())
+                .build();
+        ByteArrayWriter writer = new ByteArrayWriter();
+        TxMsgSerializer.getInstance().serialize(serializerContext, txMsg, writer);
+        return Sha256Hash.wrapReversed(Sha256Hash.twiceOf(writer.reader().getFullContentAndClose()).getBytes());
+    }
+
+    private void onItemReceived(Sha256Hash itemHash) {
+        lock.lock();
+        try {
+            itemsReceived.put(itemHash, Boolean.TRUE);
+            ItemInfo itemInfo = items.asMap().remove(itemHash);
+            if (itemInfo != null && itemInfo.requestedFrom != null) {
+                numReceived++;
+                InventoryPeerInfo peerInfo = handlerInfo.get(itemInfo.requestedFrom);
+                if (peerInfo != null) peerInfo.releaseRequest();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // It registers that an Item expired or evicted from the Cache of Items pending is dropped.
+    // NOTE: Guava notifies the removal in the Thread accessing the Cache, so it always runs within the lock
+    private void onItemEvicted(RemovalNotification<Sha256Hash, ItemInfo> notification) {
+        if (!notification.wasEvicted()) return;
+        ItemInfo itemInfo = notification.getValue();
+        if (itemInfo.requestedFrom != null) {
+            InventoryPeerInfo peerInfo = handlerInfo.get(itemInfo.requestedFrom);
+            if (peerInfo != null) peerInfo.releaseRequest();
+        }
+        numDropped++;
+        logger.trace("Item dropped, not received in time", itemInfo.item);
+    }
+
+    // It registers that the Item is not expected from the Peer it was requested from anymore.
+    // NOTE: It must be called within the lock
+    private void releaseRequest(ItemInfo itemInfo) {
+        if (itemInfo.requestedFrom == null) return;
+        InventoryPeerInfo peerInfo = handlerInfo.get(itemInfo.requestedFrom);
+        if (peerInfo != null) peerInfo.releaseRequest();
+        itemInfo.peersTried.add(itemInfo.requestedFrom);
+        itemInfo.requestedFrom = null;
+        itemInfo.requestedTime = null;
+    }
+
+    // It assigns the Item to the first Peer that announced it, has not been tried yet and has room for more requests.
+    // If all of them are busy, the Item waits until the next execution of the Job. If there are no more Peers left,
+    // the Item is dropped.
+    // NOTE: It must be called within the lock
+    private void requestItem(ItemInfo itemInfo) {
+        boolean candidatesLeft = false;
+        for (PeerAddress peerAddress : itemInfo.announcers) {
+            if (itemInfo.peersTried.contains(peerAddress)) continue;
+            InventoryPeerInfo peerInfo = handlerInfo.get(peerAddress);
+            if (peerInfo == null) continue;
+            candidatesLeft = true;
+            if (peerInfo.getNumInFlight() >= config.getMaxInFlightPerPeer()) continue;
+            peerInfo.addRequest(itemInfo.item);
+            itemInfo.requestedFrom = peerAddress;
+            itemInfo.requestedTime = Instant.now();
+            numRequested++;
+            return;
+        }
+        if (!candidatesLeft) {
+            items.invalidate(Sha256Hash.wrapReversed(itemInfo.item.getHashMsg().getHashBytes()));
+            numDropped++;
+            logger.trace("Item dropped, no more Peers to request it from", itemInfo.item);
+        }
+    }
+
+    /**
+     * This Job runs every "batchInterval": It checks the Items that have not been received in time (requesting them
+     * from other Peers), and sends the GETDATA Messages with the Items pending to request from each Peer.
+     */
+    private void jobSendRequests() {
+        try {
+            Map<PeerAddress, List<InventoryVectorMsg>> requestsToSend = new HashMap<>();
+            lock.lock();
+            try {
+                // The Items expired are dropped:
+                items.cleanUp();
+                Instant now = Instant.now();
+                for (ItemInfo itemInfo : new ArrayList<>(items.asMap().values())) {
+                    if (itemInfo.requestedFrom == null) {
+                        requestItem(itemInfo);
+                    } else if (Duration.between(itemInfo.requestedTime, now).compareTo(config.getRequestTimeout()) > 0) {
+                        numTimeouts++;
+                        releaseRequest(itemInfo);
+                        requestItem(itemInfo);
+                    }
+                }
+                for (InventoryPeerInfo peerInfo : handlerInfo.values()) {
+                    if (peerInfo.getNumPendingRequests() > 0)
+                        requestsToSend.put(peerInfo.getPeerAddress(), peerInfo.extractPendingRequests());
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            // We send the GETDATA Messages outside the lock:
+            requestsToSend.forEach(this::sendGetData);
+        } catch (Throwable th) {
+            logger.error(th, "Error sending the Inventory requests");
+        }
+    }
+
+    // It sends the Items to the Peer, in as many GETDATA messages as needed
+    private void sendGetData(PeerAddress peerAddress, List<InventoryVectorMsg> itemsToRequest) {
+        int maxItems = config.getMaxItemsPerGetData();
+        for (int i = 0; i < itemsToRequest.size(); i += maxItems) {
+            List<InventoryVectorMsg> batch = itemsToRequest.subList(i, Math.min(i + maxItems, itemsToRequest.size()));
+            GetdataMsg msg = GetdataMsg.builder().invVectorList(new ArrayList<>(batch)).build();
+            BitcoinMsg<GetdataMsg> btcMsg = new BitcoinMsgBuilder<>(config.getBasicConfig(), msg).build();
+            super.eventBus.publish(new SendMsgRequest(peerAddress, btcMsg));
+        }
+        logger.trace(peerAddress, itemsToRequest.size() + " items requested");
+    }
+
+    @Override
+    public boolean isInFlight(Sha256Hash itemHash) {
+        lock.lock();
+        try {
+            ItemInfo itemInfo = items.getIfPresent(itemHash);
+            return (itemInfo != null) && (itemInfo.requestedFrom != null);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getNumAnnouncers(Sha256Hash itemHash) {
+        lock.lock();
+        try {
+            ItemInfo itemInfo = items.getIfPresent(itemHash);
+            return (itemInfo == null) ? 0 : itemInfo.announcers.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public InventoryHandlerConfig getConfig() {
+        return this.config;
+    }
+
+    public InventoryHandlerState getState() {
+        lock.lock();
+        try {
+            long numItemsInFlight = items.asMap().values().stream().filter(i -> i.requestedFrom != null).count();
+            return InventoryHandlerState.builder()
+                    .numAnnouncements(numAnnouncements)
+                    .numRequested(numRequested)
+                    .numReceived(numReceived)
+                    .numTimeouts(numTimeouts)
+                    .numNotFound(numNotFound)
+                    .numDropped(numDropped)
+                    .numItemsPending(items.asMap().size())
+                    .numItemsInFlight(numItemsInFlight)
+                    .build();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
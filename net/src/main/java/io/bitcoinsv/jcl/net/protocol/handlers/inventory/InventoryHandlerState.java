@@ -0,0 +1,133 @@
+package io.bitcoinsv.jcl.net.protocol.handlers.inventory;
+
+
+import io.bitcoinsv.jcl.tools.handlers.HandlerState;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * This event stores the state of the Inventory Handler at a point in time.
+ * The Inventory Handler keeps track of the Items announced by the remote Peers, and requests each one of them from
+ * a single Peer at a time.
+ */
+public final class InventoryHandlerState extends HandlerState {
+    private final long numAnnouncements;        // Items announced (including repeated announcements)
+    private final long numRequested;            // Items requested (including re-requests after a timeout)
+    private final long numReceived;             // Items requested and received (hits)
+    private final long numTimeouts;             // Items not received in time
+    private final long numNotFound;             // Items the Peer replied with a NOTFOUND
+    private final long numDropped;              // Items given up, since no more Peers announced them
+    private final long numItemsPending;         // Items currently tracked (waiting to be requested or received)
+    private final long numItemsInFlight;        // Items currently requested and not received yet
+
+    InventoryHandlerState(long numAnnouncements, long numRequested, long numReceived, long numTimeouts,
+                          long numNotFound, long numDropped, long numItemsPending, long numItemsInFlight) {
+        this.numAnnouncements = numAnnouncements;
+        this.numRequested = numRequested;
+        this.numReceived = numReceived;
+        this.numTimeouts = numTimeouts;
+        this.numNotFound = numNotFound;
+        this.numDropped = numDropped;
+        this.numItemsPending = numItemsPending;
+        this.numItemsInFlight = numItemsInFlight;
+    }
+
+    public long getNumAnnouncements()   { return this.numAnnouncements; }
+    public long getNumRequested()       { return this.numRequested; }
+    public long getNumReceived()        { return this.numReceived; }
+    public long getNumTimeouts()        { return this.numTimeouts; }
+    public long getNumNotFound()        { return this.numNotFound; }
+    public long getNumDropped()         { return this.numDropped; }
+    public long getNumItemsPending()    { return this.numItemsPending; }
+    public long getNumItemsInFlight()   { return this.numItemsInFlight; }
+
+    /** Percentage (0-1) of the requests sent that were answered with the Item */
+    public double getHitRatio() {
+        return (numRequested == 0) ? 0 : (double) numReceived / numRequested;
+    }
+
+    @Override
+    public String toString() {
+        return "Inventory-Handler State: " + numAnnouncements + " announcements, " + numRequested + " requested, "
+                + numReceived + " received, " + numTimeouts + " timeouts, " + numNotFound + " not found, "
+                + numDropped + " dropped, " + numItemsPending + " pending, " + numItemsInFlight + " in flight";
+    }
+
+    public InventoryHandlerStateBuilder toBuilder() {
+        return new InventoryHandlerStateBuilder()
+                .numAnnouncements(this.numAnnouncements)
+                .numRequested(this.numRequested)
+                .numReceived(this.numReceived)
+                .numTimeouts(this.numTimeouts)
+                .numNotFound(this.numNotFound)
+                .numDropped(this.numDropped)
+                .numItemsPending(this.numItemsPending)
+                .numItemsInFlight(this.numItemsInFlight);
+    }
+
+    public static InventoryHandlerStateBuilder builder() {
+        return new InventoryHandlerStateBuilder();
+    }
+
+    /**
+     * Builder
+     */
+    public static class InventoryHandlerStateBuilder {
+        private long numAnnouncements;
+        private long numRequested;
+        private long numReceived;
+        private long numTimeouts;
+        private long numNotFound;
+        private long numDropped;
+        private long numItemsPending;
+        private long numItemsInFlight;
+
+        InventoryHandlerStateBuilder() {}
+
+        public InventoryHandlerState.InventoryHandlerStateBuilder numAnnouncements(long numAnnouncements) {
+            this.numAnnouncements = numAnnouncements;
+            return this;
+        }
+
+        public InventoryHandlerState.InventoryHandlerStateBuilder numRequested(long numRequested) {
+            this.numRequested = numRequested;
+            return this;
+        }
+
+        public InventoryHandlerState.InventoryHandlerStateBuilder numReceived(long numReceived) {
+            this.numReceived = numReceived;
+            return this;
+        }
+
+        public InventoryHandlerState.InventoryHandlerStateBuilder numTimeouts(long numTimeouts) {
+            this.numTimeouts = numTimeouts;
+            return this;
+        }
+
+        public InventoryHandlerState.InventoryHandlerStateBuilder numNotFound(long numNotFound) {
+            this.numNotFound = numNotFound;
+            return this;
+        }
+
+        public InventoryHandlerState.InventoryHandlerStateBuilder numDropped(long numDropped) {
+            this.numDropped = numDropped;
+            return this;
+        }
+
+        public InventoryHandlerState.InventoryHandlerStateBuilder numItemsPending(long numItemsPending) {
+            this.numItemsPending = numItemsPending;
+            return this;
+        }
+
+        public InventoryHandlerState.InventoryHandlerStateBuilder numItemsInFlight(long numItemsInFlight) {
+            this.numItemsInFlight = numItemsInFlight;
+            return this;
+        }
+
+        public InventoryHandlerState build() {
+            return new InventoryHandlerState(numAnnouncements, numRequested, numReceived, numTimeouts, numNotFound,
+                    numDropped, numItemsPending, numItemsInFlight);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package io.bitcoinsv.jcl.net.protocol.handlers.inventory;
+
+import io.bitcoinsv.jcl.net.network.PeerAddress;
+import io.bitcoinsv.jcl.net.protocol.messages.InventoryVectorMsg;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * This class stores information for each Peer that is needed by the Inventory Handler: The Items to request from it
+ * in the next GETDATA Message, and the number of Items requested and not received yet.
+ * This class is NOT thread-safe, the Handler takes care of the synchronization.
+ */
+public class InventoryPeerInfo {
+    private final PeerAddress peerAddress;
+    private List<InventoryVectorMsg> pendingRequests = new ArrayList<>();
+    private int numInFlight;
+
+    /** Constructor */
+    public InventoryPeerInfo(PeerAddress peerAddress) {
+        this.peerAddress = peerAddress;
+    }
+
+    /** It adds an Item to request from this Peer in the next GETDATA Message */
+    protected void addRequest(InventoryVectorMsg item) {
+        pendingRequests.add(item);
+        numInFlight++;
+    }
+
+    /** It registers that an Item requested from this Peer is not in flight anymore */
+    protected void releaseRequest() {
+        numInFlight = Math.max(numInFlight - 1, 0);
+    }
+
+    /** It returns the Items to request from this Peer, and clears them */
+    protected List<InventoryVectorMsg> extractPendingRequests() {
+        List<InventoryVectorMsg> result = pendingRequests;
+        pendingRequests = new ArrayList<>();
+        return result;
+    }
+
+    public PeerAddress getPeerAddress()     { return this.peerAddress; }
+    public int getNumInFlight()             { return this.numInFlight; }
+    public int getNumPendingRequests()      { return this.pendingRequests.size(); }
+
+    @Override
+    public String toString() {
+        return peerAddress + " : " + numInFlight + " in flight, " + pendingRequests.size() + " pending to request";
+    }
+}
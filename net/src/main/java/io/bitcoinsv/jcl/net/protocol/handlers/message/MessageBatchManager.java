@@ -2,6 +2,7 @@ package io.bitcoinsv.jcl.net.protocol.handlers.message;
 
 import io.bitcoinsv.jcl.net.protocol.events.data.*;
 import io.bitcoinsv.jcl.net.protocol.events.data.*;
+import io.bitcoinsv.jcl.tools.memory.MemoryBudget;
 
 import java.time.Duration;
 import java.time.Instant;
@@ -34,13 +35,25 @@ class MessageBatchManager<E extends MsgReceivedEvent> {
     private Class<E> msgClass;
     private MessageBatchConfig config;
     private List<E> events = new ArrayList<>();
-    private int currentEventsSize = 0;
+    private volatile int currentEventsSize = 0;
     private Instant timestamp = Instant.now();
+    private MemoryBudget.Account memoryAccount;
 
-    /** Constructor. It assigns the MessagesBatch config */
-    public MessageBatchManager(Class<E> msgClass, MessageBatchConfig config) {
+    /**
+     * Constructor. It assigns the MessagesBatch config, and registers the size of the Batch in the Memory Budget
+     * (if provided)
+     */
+    public MessageBatchManager(Class<E> msgClass, MessageBatchConfig config, MemoryBudget memoryBudget) {
         this.msgClass = msgClass;
         this.config = config;
+        if (memoryBudget != null) {
+            this.memoryAccount = memoryBudget.register("msgBatches", msgClass.getSimpleName(), () -> currentEventsSize, null);
+        }
+    }
+
+    /** It removes the size of the Batch from the Memory Budget. Called when the Batch is not used anymore */
+    public void close() {
+        if (memoryAccount != null) memoryAccount.close();
     }
 
     /** It indicates if a Batch can be extracted, according to the Configuration */
@@ -3,6 +3,7 @@ package io.bitcoinsv.jcl.net.protocol.handlers.message;
 import io.bitcoinsv.jcl.net.network.PeerAddress;
 import io.bitcoinsv.jcl.net.protocol.messages.common.BitcoinMsg;
 import io.bitcoinsv.jcl.net.protocol.messages.common.BodyMessage;
+import io.bitcoinsv.jcl.net.protocol.messages.common.FileStreamRequest;
 import io.bitcoinsv.jcl.net.protocol.messages.common.StreamRequest;
 import io.bitcoinsv.jcl.tools.handlers.Handler;
 
@@ -34,6 +35,9 @@ public interface MessageHandler extends Handler {
     /** Streams the given message to the peer, NOTE: this assumes the checksum has been pre-calculated */
     void stream(PeerAddress peerAddress, StreamRequest streamRequest);
 
+    /** Streams the given message to the peer straight from a File, NOTE: this assumes the checksum has been pre-calculated */
+    void stream(PeerAddress peerAddress, FileStreamRequest streamRequest);
+
     /** Broadcasts a Message to all connected Peers */
     void broadcast(BitcoinMsg<?> btcMessage);
 
@@ -51,12 +51,19 @@ public final class MessageHandlerConfig extends HandlerConfig {
      */
     private boolean verifyChecksum = true; // default
 
+    /**
+     * If TRUE, then the Hash of the incoming TXs is calculated while they are deserialized, out of the same bytes read
+     * from the wire, so the TxMsg received by the rest of the Handlers already contains it (see "TxMsg.getHash()").
+     */
+    private boolean txHashesEnabled = false; // default
+
     MessageHandlerConfig(ProtocolBasicConfig basicConfig,
                          MessagePreSerializer preSerializer,
                          DeserializerConfig deserializerConfig,
                          boolean rawTxsEnabled,
                          HashMap<Class, MessageBatchConfig> msgBatchConfigs,
-                         boolean verifyChecksum
+                         boolean verifyChecksum,
+                         boolean txHashesEnabled
     ) {
         if (basicConfig != null)
             this.basicConfig = basicConfig;
@@ -68,6 +75,7 @@ public final class MessageHandlerConfig extends HandlerConfig {
         this.rawTxsEnabled = rawTxsEnabled;
         this.msgBatchConfigs = msgBatchConfigs;
         this.verifyChecksum = verifyChecksum;
+        this.txHashesEnabled = txHashesEnabled;
     }
 
     public ProtocolBasicConfig getBasicConfig()                     { return this.basicConfig; }
@@ -76,6 +84,7 @@ public final class MessageHandlerConfig extends HandlerConfig {
     public boolean isRawTxsEnabled()                                { return this.rawTxsEnabled; }
     public HashMap<Class, MessageBatchConfig> getMsgBatchConfigs()  { return this.msgBatchConfigs;}
     public boolean isVerifyChecksum()                               { return this.verifyChecksum;}
+    public boolean isTxHashesEnabled()                              { return this.txHashesEnabled;}
 
     @Override
     public String toString() {
@@ -83,7 +92,8 @@ public final class MessageHandlerConfig extends HandlerConfig {
                 + ", preSerializer=" + this.getPreSerializer() + ", deserializerConfig="
                 + this.getDeserializerConfig()
                 + ", msgBatchConfigs=" + msgBatchConfigs
-                + ", verifyChecksum=" + this.verifyChecksum + ")";
+                + ", verifyChecksum=" + this.verifyChecksum
+                + ", txHashesEnabled=" + this.txHashesEnabled + ")";
     }
 
     public MessageHandlerConfigBuilder toBuilder() {
@@ -93,7 +103,8 @@ public final class MessageHandlerConfig extends HandlerConfig {
                 .deserializerConfig(this.deserializerConfig)
                 .rawTxsEnabled(rawTxsEnabled)
                 .msgBatchConfigs(this.msgBatchConfigs)
-                .verifyChecksum(this.verifyChecksum);
+                .verifyChecksum(this.verifyChecksum)
+                .txHashesEnabled(this.txHashesEnabled);
     }
 
     public static MessageHandlerConfigBuilder builder() {
@@ -110,6 +121,7 @@ public final class MessageHandlerConfig extends HandlerConfig {
         private boolean rawTxsEnabled = false;
         private HashMap<Class, MessageBatchConfig> msgBatchConfigs = new HashMap<>();
         private boolean verifyChecksum = true; // default
+        private boolean txHashesEnabled = false; // default
 
         MessageHandlerConfigBuilder() { }
 
@@ -163,8 +175,13 @@ public final class MessageHandlerConfig extends HandlerConfig {
             return this;
         }
 
+        public MessageHandlerConfig.MessageHandlerConfigBuilder txHashesEnabled(boolean txHashesEnabled) {
+            this.txHashesEnabled = txHashesEnabled;
+            return this;
+        }
+
         public MessageHandlerConfig build() {
-            return new MessageHandlerConfig(basicConfig, preSerializer, deserializerConfig, rawTxsEnabled, msgBatchConfigs, verifyChecksum);
+            return new MessageHandlerConfig(basicConfig, preSerializer, deserializerConfig, rawTxsEnabled, msgBatchConfigs, verifyChecksum, txHashesEnabled);
         }
     }
 }
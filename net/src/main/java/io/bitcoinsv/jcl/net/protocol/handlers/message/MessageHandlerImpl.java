@@ -9,6 +9,10 @@ import io.bitcoinsv.jcl.net.network.streams.StreamDataEvent;
 import io.bitcoinsv.jcl.net.network.streams.StreamErrorEvent;
 
 import io.bitcoinsv.jcl.net.network.streams.StreamMessageErrorEvent;
+import io.bitcoinsv.jcl.net.network.streams.PeerOutputStream;
+import io.bitcoinsv.jcl.net.network.streams.nio.FileRegion;
+import io.bitcoinsv.jcl.net.network.streams.nio.NIOOutputStream;
+import io.bitcoinsv.jcl.net.protocol.config.ProtocolBasicConfig;
 import io.bitcoinsv.jcl.net.protocol.config.ProtocolVersion;
 import io.bitcoinsv.jcl.net.protocol.events.control.*;
 import io.bitcoinsv.jcl.net.protocol.events.data.MsgReceivedBatchEvent;
@@ -16,19 +20,25 @@ import io.bitcoinsv.jcl.net.protocol.events.data.MsgReceivedEvent;
 import io.bitcoinsv.jcl.net.protocol.messages.ByteStreamMsg;
 import io.bitcoinsv.jcl.net.protocol.messages.HeaderMsg;
 import io.bitcoinsv.jcl.net.protocol.messages.common.*;
+import io.bitcoinsv.jcl.net.protocol.serialization.HeaderMsgSerializer;
 import io.bitcoinsv.jcl.net.protocol.serialization.common.MsgSerializersFactory;
+import io.bitcoinsv.jcl.net.protocol.serialization.common.SerializerContext;
 import io.bitcoinsv.jcl.net.protocol.handlers.message.streams.MessageStream;
 import io.bitcoinsv.jcl.net.protocol.handlers.message.streams.deserializer.Deserializer;
 import io.bitcoinsv.jcl.net.protocol.handlers.message.streams.deserializer.DeserializerStream;
 import io.bitcoinsv.jcl.net.protocol.serialization.largeMsgs.MsgPartDeserializationErrorEvent;
 import io.bitcoinsv.jcl.tools.bytes.ByteArrayBuffer;
+import io.bitcoinsv.jcl.tools.bytes.ByteArrayReader;
+import io.bitcoinsv.jcl.tools.bytes.ByteArrayWriter;
 import io.bitcoinsv.jcl.tools.config.RuntimeConfig;
 import io.bitcoinsv.jcl.tools.events.Event;
 import io.bitcoinsv.jcl.tools.handlers.HandlerImpl;
 import io.bitcoinsv.jcl.net.tools.LoggerUtil;
 import io.bitcoinsv.jcl.tools.thread.ThreadUtils;
 
+import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
@@ -79,7 +89,7 @@ public class MessageHandlerImpl extends HandlerImpl<PeerAddress, MessagePeerInfo
         super(id, runtimeConfig);
         this.config = config;
         this.logger = new LoggerUtil(id, HANDLER_ID, this.getClass());
-        this.deserializer = Deserializer.getInstance(runtimeConfig, config.getDeserializerConfig());
+        this.deserializer = new Deserializer(runtimeConfig, config.getDeserializerConfig());
 
         // In case the TxRawEnabled is TRUE, we update the MsgSerializersFactory, overriding some serializers
         // with their RAW Versions:
@@ -96,7 +106,7 @@ public class MessageHandlerImpl extends HandlerImpl<PeerAddress, MessagePeerInfo
         broadcastExecutor = ThreadUtils.getCachedThreadExecutorService("jclBroadcaster", 4);
 
         // If some Batch Config has been specified, we instantiate the classes to keep track of their state:
-        this.config.getMsgBatchConfigs().entrySet().forEach(entry -> msgsBatchManagers.put(entry.getKey(), new MessageBatchManager(entry.getKey(), entry.getValue())));
+        this.config.getMsgBatchConfigs().entrySet().forEach(entry -> msgsBatchManagers.put(entry.getKey(), new MessageBatchManager(entry.getKey(), entry.getValue(), runtimeConfig.getMemoryBudget())));
 
     }
 
@@ -121,6 +131,7 @@ public class MessageHandlerImpl extends HandlerImpl<PeerAddress, MessagePeerInfo
         super.eventBus.subscribe(BroadcastMsgBodyHandshakedRequest.class, e -> onBroadcastMsgBodyHandshaked((BroadcastMsgBodyHandshakedRequest) e));
         super.eventBus.subscribe(SendMsgListHandshakeRequest.class,     e -> onSendMsgListHandshakeReq((SendMsgListHandshakeRequest) e));
         this.eventBus.subscribe(SendMsgStreamHandshakeRequest.class,    e -> onSendMsgStreamHandshakeRequest((SendMsgStreamHandshakeRequest) e));
+        this.eventBus.subscribe(SendMsgFileStreamHandshakeRequest.class, e -> onSendMsgFileStreamHandshakeRequest((SendMsgFileStreamHandshakeRequest) e));
 
         super.eventBus.subscribe(StreamErrorEvent.class,                e -> onStreamError((StreamErrorEvent) e));
         super.eventBus.subscribe(StreamCorruptedDataEvent.class,        e -> onCorruptedData((StreamCorruptedDataEvent) e));
@@ -138,6 +149,7 @@ public class MessageHandlerImpl extends HandlerImpl<PeerAddress, MessagePeerInfo
     // Event Handler:
     private void onNetStop(NetStopEvent event) {
         this.msgBatchesExecutor.shutdownNow();
+        this.msgsBatchManagers.values().forEach(MessageBatchManager::close);
         logger.trace("Stop.");
     }
 
@@ -204,6 +216,8 @@ public class MessageHandlerImpl extends HandlerImpl<PeerAddress, MessagePeerInfo
         // if a Pre-Serializer has been set, we inject it into this Stream:
         if (config.getPreSerializer() != null)
             ((DeserializerStream) msgStream.input()).setPreSerializer(config.getPreSerializer());
+        // The TXs discarded by the Seen-Tx filter are not published as TxMsgReceivedEvents, but we notify them:
+        ((DeserializerStream) msgStream.input()).onDuplicateTx(txHash -> this.eventBus.publish(new DuplicateTxDiscardedEvent(peerAddress, txHash)));
 
         // We use this Stream to build a MessagePeerInfo and add it to our pool...
         handlerInfo.put(event.getStream().getPeerAddress(), new MessagePeerInfo(msgStream));
@@ -211,6 +225,9 @@ public class MessageHandlerImpl extends HandlerImpl<PeerAddress, MessagePeerInfo
         // We publish the message to the Bus:
         eventBus.publish(new PeerMsgReadyEvent(msgStream));
 
+        // Now that the whole chain of Streams is linked, we can start reading data from the Peer:
+        event.getStream().startReading();
+
         logger.trace(event.getStream().getPeerAddress(), "Stream Connected");
     }
     // Event Handler:
@@ -340,6 +357,15 @@ public class MessageHandlerImpl extends HandlerImpl<PeerAddress, MessagePeerInfo
         }
     }
 
+    private void onSendMsgFileStreamHandshakeRequest(SendMsgFileStreamHandshakeRequest request) {
+        MessagePeerInfo messagePeerInfo = this.handlerInfo.get(request.getPeerAddress());
+        if ((messagePeerInfo != null) && messagePeerInfo.isHandshaked()) {
+            stream(request.getPeerAddress(), request.getStreamRequest());
+        } else {
+            closeQuietly(request.getStreamRequest());
+        }
+    }
+
     @Override
     public void init() {
         registerForEvents();
@@ -443,6 +469,93 @@ public class MessageHandlerImpl extends HandlerImpl<PeerAddress, MessagePeerInfo
     }
 
 
+    /**
+     * This method sends a message whose payload is stored in a File. The Header is built and serialized in memory, but
+     * the payload is transferred from the File directly to the Socket (using "FileChannel.transferTo()"), so it's never
+     * loaded into the Java heap, no matter how big it is.
+     *
+     * If the Stream of this Peer is not physically connected to a Socket (it's not a NIO Stream), the payload is read
+     * from the File and sent in batches instead.
+     */
+    @Override
+    public void stream(PeerAddress peerAddress, FileStreamRequest streamRequest) {
+        synchronized (peerAddress.toString().intern()) {
+            MessagePeerInfo messagePeerInfo = handlerInfo.get(peerAddress);
+            if (messagePeerInfo == null) {
+                logger.trace(peerAddress, " Request to Stream File Discarded (unknown Peer)");
+                closeQuietly(streamRequest);
+                return;
+            }
+            logger.trace(peerAddress, "Streaming file to peer...");
+
+            // We build the Header. For messages >= 4GB the checksum is not used (always ZERO):
+            ProtocolBasicConfig basicConfig = config.getBasicConfig();
+            HeaderMsg.HeaderMsgBuilder headerBuilder = HeaderMsg.builder().magic(basicConfig.getMagicPackage());
+            if (streamRequest.getLen() >= basicConfig.getThresholdSizeExtMsgs()) {
+                headerBuilder.command(HeaderMsg.EXT_COMMAND)
+                        .length(HeaderMsg.EXT_LENGTH)
+                        .checksum(0)
+                        .extCommand(streamRequest.getMsgType())
+                        .extLength(streamRequest.getLen());
+            } else {
+                headerBuilder.command(streamRequest.getMsgType())
+                        .length(streamRequest.getLen())
+                        .checksum(streamRequest.getChecksum());
+            }
+            ByteArrayWriter headerWriter = new ByteArrayWriter();
+            SerializerContext serializerContext = SerializerContext.builder().protocolBasicConfig(basicConfig).build();
+            HeaderMsgSerializer.getInstance().serialize(serializerContext, headerBuilder.build(), headerWriter);
+
+            // The Header and the payload are sent directly to the Stream connected to the Peer, skipping the
+            // Serializer, since they are already raw bytes:
+            PeerOutputStream<ByteArrayReader> output = messagePeerInfo.getStream().getStreamOrigin().output();
+            output.send(new StreamDataEvent<>(headerWriter.reader(), streamRequest.getMsgType()));
+
+            FileRegion fileRegion = new FileRegion(streamRequest.getChannel(), streamRequest.getPosition(), streamRequest.getLen(), true);
+            if (output instanceof NIOOutputStream) {
+                ((NIOOutputStream) output).send(fileRegion, streamRequest.getMsgType());
+            } else {
+                sendFileInBatches(output, streamRequest);
+                fileRegion.release();
+            }
+
+            logger.trace(peerAddress, streamRequest.getMsgType() + " Msg streamed to peer from file");
+
+            updateState(0, 1);
+        }
+    }
+
+    // It reads the payload of the File Request in batches and sends them to the Output Stream given
+    private void sendFileInBatches(PeerOutputStream<ByteArrayReader> output, FileStreamRequest streamRequest) {
+        final int BATCH_SIZE = 1_000_000; // 1MB
+        try {
+            long position = streamRequest.getPosition();
+            long endPosition = streamRequest.getPosition() + streamRequest.getLen();
+            while (position < endPosition) {
+                ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BATCH_SIZE, endPosition - position));
+                while (buffer.hasRemaining()) {
+                    int numBytesRead = streamRequest.getChannel().read(buffer, position + buffer.position());
+                    if (numBytesRead < 0) throw new IOException("Unexpected end of File");
+                }
+                output.send(new StreamDataEvent<>(new ByteArrayReader(buffer.array())));
+                position += buffer.capacity();
+            }
+        } catch (IOException e) {
+            // The Header has already been sent, so the Peer would be left with a corrupt Stream. We disconnect it:
+            logger.error(e, output.getPeerAddress(), "Error streaming File to Peer, disconnecting...");
+            super.eventBus.publish(new DisconnectPeerRequest(output.getPeerAddress(), "Error streaming File to Peer"));
+        }
+    }
+
+    // Closes the File of the Request given, when its not going to be streamed
+    private void closeQuietly(FileStreamRequest streamRequest) {
+        try {
+            streamRequest.getChannel().close();
+        } catch (IOException e) {
+            // Nothing to do here
+        }
+    }
+
     @Override
     public void broadcast(BitcoinMsg<?> btcMessage) {
         handlerInfo.values().forEach(p -> broadcastExecutor.submit(() -> send(p.getStream().getPeerAddress(), btcMessage)));
@@ -64,6 +64,11 @@ public class MessageStream extends PeerStreamImpl<Message, ByteArrayReader> {
         return new SerializerStream(streamOrigin.output(), messageConfig, parentLogger);
     }
 
+    /** Returns the Stream this MessageStream is wrapping up, which is the one physically connected to the Peer */
+    public PeerStream<ByteArrayReader> getStreamOrigin() {
+        return this.streamOrigin;
+    }
+
     @Override
     public MessageStreamState getState() {
         return MessageStreamState.builder()
@@ -3,6 +3,8 @@ package io.bitcoinsv.jcl.net.protocol.handlers.message.streams.deserializer;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import io.bitcoinsv.bitcoinjsv.core.Sha256Hash;
 import io.bitcoinsv.jcl.net.protocol.messages.HeaderMsg;
 import io.bitcoinsv.jcl.net.protocol.messages.common.BodyMessage;
 import io.bitcoinsv.jcl.net.protocol.messages.common.Message;
@@ -16,7 +18,9 @@ import io.bitcoinsv.jcl.tools.bytes.ByteArrayReader;
 import io.bitcoinsv.jcl.tools.bytes.ByteArrayReaderOptimized;
 import io.bitcoinsv.jcl.tools.bytes.ByteArrayReaderRealTime;
 import io.bitcoinsv.jcl.tools.config.RuntimeConfig;
+import io.bitcoinsv.jcl.tools.memory.MemoryBudget;
 
+import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
@@ -42,36 +46,51 @@ import java.util.function.Consumer;
  * NOTE: For small messages, this class uses an internal CACHE where those messages are stored and reused. This cache
  * is implemented using the GUAVA CACHE Api. The parameters to determin wether a message is 2cacheable" or not (not all
  * of them are) is determiend by the DEserialzierConfig class.
- *
+ * The Cache is content-addressed: a message is identified by its command and the double-SHA256 of its body, so the
+ * same message received from different Peers is only deserialized once, and different messages are never mixed up
+ * (which could happen if only the 4-bytes checksum in the Header was used). Each MessageHandler (one per P2P
+ * instance) uses its own Deserializer, so the Cache is not shared between different P2P instances.
  */
 public class Deserializer {
 
     /**
-     * Key of the Items stored in the Cache for small messages.
-     * It contain several fields, but only the CHECKSUM field is used as a Key (that's why the 'Equals' and 'hasCode'
-     * only use that field). The rest of fields are needed to "deserialize" the items into the cache when they are not there
-     * (in this case "loading" an item means to deserialize it, so we need the Deserialization Context, the
-     * byteArrayReader and the Header of the Message we are about to deserialize...
+     * Key of the Items stored in the Cache for small messages: the Command of the Message and the double-SHA256 of
+     * its body. The length of the body is also kept, so the Cache can weigh the Items.
      */
-    class CacheMsgKey {
-        private HeaderMsg headerMsg;
-        private DeserializerContext desContext;
-        private ByteArrayReader reader;
-
-        public CacheMsgKey(HeaderMsg headerMsg, DeserializerContext desContext, ByteArrayReader reader) {
-            this.headerMsg = headerMsg;
-            this.desContext = desContext;
-            this.reader = reader;
+    static class CacheMsgKey {
+        private final String command;
+        private final Sha256Hash bodyHash;
+        private final int bodyLength;
+
+        CacheMsgKey(String command, Sha256Hash bodyHash, int bodyLength) {
+            this.command = command.toUpperCase();
+            this.bodyHash = bodyHash;
+            this.bodyLength = bodyLength;
+        }
+
+        CacheMsgKey(String command, byte[] body) {
+            this(command, Sha256Hash.twiceOf(body), body.length);
         }
 
+        int getBodyLength() { return this.bodyLength; }
+
         @Override public boolean equals(Object obj) {
-            return (obj != null) && (headerMsg.getChecksum() == (((CacheMsgKey) obj).headerMsg.getChecksum()));
+            if (this == obj) return true;
+            if (!(obj instanceof CacheMsgKey)) return false;
+            CacheMsgKey other = (CacheMsgKey) obj;
+            return command.equals(other.command) && bodyHash.equals(other.bodyHash);
         }
-        @Override public int hashCode() { return Long.hashCode(headerMsg.getChecksum()); }
+        @Override public int hashCode() { return Objects.hash(command, bodyHash); }
     }
 
+    // Approximate overhead (in bytes) of each Item in the Cache, on top of the body of the Message:
+    private static final int CACHE_ITEM_OVERHEAD_BYTES = 100;
+
     private Cache<CacheMsgKey, BodyMessage> cache;
 
+    // Filter of the Txs already received, shared by all the Streams using this Deserializer (null if disabled):
+    private SeenTxFilter seenTxFilter;
+
 
     // Object instance (Singleton) and configuration:
     private static Deserializer instance;
@@ -80,27 +99,37 @@ public class Deserializer {
 
 
     /** Constructor */
-    protected Deserializer(RuntimeConfig runtimeConfig, DeserializerConfig config) {
+    public Deserializer(RuntimeConfig runtimeConfig, DeserializerConfig config) {
         this.runtimeConfig = runtimeConfig;
         this.config = config;
 
         // Guava Cache Configuration:
-        // NOTE: The Configuration based on the totalSizeInBytes has been removed, since its not accurate (the
-        // size is measured based on the serialized version of messages, but the java classes take way more space)
-        CacheBuilder cacheBuilder = CacheBuilder.newBuilder();
-
-        // Maximum Cache size based on number of messages stored:
-        cacheBuilder.maximumSize(config.getMaxCacheSizeInNumMsgs());
-
-        // A message gets removed after some time idle:
-        cacheBuilder.expireAfterAccess(config.getCacheExpirationTime().toMillis(), TimeUnit.MILLISECONDS);
+        // Maximum Cache size: If a maximum number of messages has been specified, that one is used (each message
+        // weighs 1). Otherwise the size is measured in bytes (based on the serialized version of the messages, the
+        // java classes take more space, so the value in the configuration should be set accordingly):
+        boolean sizeInNumMsgs = config.getMaxCacheSizeInNumMsgs() != null;
+        long maxWeight = sizeInNumMsgs ? config.getMaxCacheSizeInNumMsgs() : config.getMaxCacheSizeInBytes();
+        Weigher<CacheMsgKey, BodyMessage> weigher = sizeInNumMsgs
+                ? (key, msg) -> 1
+                : (key, msg) -> key.getBodyLength() + CACHE_ITEM_OVERHEAD_BYTES;
+
+        CacheBuilder<CacheMsgKey, BodyMessage> cacheBuilder = CacheBuilder.newBuilder()
+                .maximumWeight(maxWeight)
+                .weigher(weigher)
+                // A message gets removed after some time idle:
+                .expireAfterAccess(config.getCacheExpirationTime().toMillis(), TimeUnit.MILLISECONDS);
 
         if (config.isGenerateStats()) cacheBuilder.recordStats();
-        this.cache = cacheBuilder.<CacheMsgKey, Message>build();
+        this.cache = cacheBuilder.build();
+
+        if (config.isSeenTxFilterEnabled())
+            this.seenTxFilter = new SeenTxFilter(config.getSeenTxFilterWindow(), config.getSeenTxFilterMaxSize());
     }
 
     /**
-     * It returns a single instance of this Class (Singleton)
+     * It returns a single instance of this Class (Singleton).
+     * NOTE: The instance is shared by all the P2P instances in the same JVM. Use the Constructor instead to get a Cache
+     * per P2P instance.
      */
     public static Deserializer getInstance(RuntimeConfig runtimeConfig, DeserializerConfig config) {
         if (instance == null) {
@@ -112,8 +141,8 @@ public class Deserializer {
     }
 
     /** Expensive Operation. It deserializes a Message from the pipeline using the Bitcoin Serializers */
-    private BodyMessage deserialize(CacheMsgKey key) {
-        return BitcoinMsgSerializerImpl.getInstance().deserializeBody(key.desContext, key.headerMsg, key.reader);
+    private BodyMessage deserializeBody(HeaderMsg headerMsg, DeserializerContext desContext, ByteArrayReader reader) {
+        return BitcoinMsgSerializerImpl.getInstance().deserializeBody(desContext, headerMsg, reader);
     }
 
     /**
@@ -131,24 +160,33 @@ public class Deserializer {
      * @throws Exception
      */
     public BodyMessage deserialize(HeaderMsg headerMsg, DeserializerContext desContext, ByteArrayReader reader) throws Exception {
-        BodyMessage result = null;
+        return deserialize(headerMsg, desContext, reader, null);
+    }
 
-        // We build the Cache-Key for this Message...
-        CacheMsgKey key = new CacheMsgKey(headerMsg, desContext, reader);
+    /**
+     * Same as above, but if the double-SHA256 of the body has been calculated already (the Seen-Tx filter needs it
+     * for Txs), it can be provided, so it's not calculated again to build the Cache-Key.
+     *
+     * @param bodyHash      double-SHA256 of the body of the Message, or null if it's not known yet
+     */
+    public BodyMessage deserialize(HeaderMsg headerMsg, DeserializerContext desContext, ByteArrayReader reader,
+                                   Sha256Hash bodyHash) throws Exception {
+        BodyMessage result = null;
 
         // We only use the Cache if the cache is enabled AND the requested message is "cacheable"...
         boolean isCacheable = config.isCacheEnabled() && config.getMessagesToCache().contains(headerMsg.getMsgCommand().toUpperCase()) &&
                 (headerMsg.getMsgLength() < config.getCacheMaxMsgSizeInBytes());
 
         if (isCacheable) {
-            result = cache.getIfPresent(key);
-            if (result != null)
-                // we read and discard the bytes from the pipeline...
-                reader.read((int) headerMsg.getMsgLength());
-            else
-                result = cache.get(key, () -> deserialize(key));
+            // We read the body from the pipeline and build the Cache-Key out of its hash. If the Message is not in
+            // the Cache, it's deserialized from the same bytes...
+            byte[] body = reader.read((int) headerMsg.getMsgLength());
+            CacheMsgKey key = (bodyHash != null)
+                    ? new CacheMsgKey(headerMsg.getMsgCommand(), bodyHash, body.length)
+                    : new CacheMsgKey(headerMsg.getMsgCommand(), body);
+            result = cache.get(key, () -> deserializeBody(headerMsg, desContext, new ByteArrayReader(body)));
         }
-        else result = deserialize(key);
+        else result = deserializeBody(headerMsg, desContext, reader);
 
         // we reset the Reader now that it's done... (needed by the OptimizedReader)
         if (reader instanceof ByteArrayReaderOptimized)
@@ -176,6 +214,17 @@ public class Deserializer {
     public Message deserializeLarge(HeaderMsg headerMsg, DeserializerContext desContext, ByteArrayReader reader,
                                     Consumer<MsgPartDeserializationErrorEvent> onErrorHandler,
                                     Consumer<MsgPartDeserializedEvent> onPartDeserializedHandler) throws Exception {
+        return deserializeLarge(headerMsg, desContext, reader, onErrorHandler, onPartDeserializedHandler, null);
+    }
+
+    /**
+     * Same as above, but the bytes of each batch being built by the Large Deserializer are registered in the Memory
+     * Account given (until the batch is returned)
+     */
+    public Message deserializeLarge(HeaderMsg headerMsg, DeserializerContext desContext, ByteArrayReader reader,
+                                    Consumer<MsgPartDeserializationErrorEvent> onErrorHandler,
+                                    Consumer<MsgPartDeserializedEvent> onPartDeserializedHandler,
+                                    MemoryBudget.Account batchesMemoryAccount) throws Exception {
         Message result = null;
 
         // we adjust the Reader, using an version Optimized for Large Messages:
@@ -189,6 +238,7 @@ public class Deserializer {
         largeMsgDeserializer.setPartialMsgSize(config.getPartialSerializationMsgSize());
         largeMsgDeserializer.onError(onErrorHandler);
         largeMsgDeserializer.onDeserialized(onPartDeserializedHandler);
+        largeMsgDeserializer.setMemoryAccount(batchesMemoryAccount);
 
         // Adn we run it. This call is blocking
         largeMsgDeserializer.deserializeBody(desContext, headerMsg, reader);
@@ -219,6 +269,9 @@ public class Deserializer {
         cache.cleanUp();
     }
 
+    /** Returns the filter of Txs already received, or null if it's disabled */
+    public SeenTxFilter getSeenTxFilter() { return this.seenTxFilter; }
+
     /** Returns the Configuration */
     public DeserializerConfig getConfig() { return this.config;}
 }
\ No newline at end of file
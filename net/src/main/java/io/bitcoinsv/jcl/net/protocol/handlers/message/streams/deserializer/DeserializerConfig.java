@@ -38,15 +38,17 @@ public final class DeserializerConfig {
     /** If disabled, no cache is used at all */
     private boolean cacheEnabled = true;
 
-    /** Maximum Size of the Cache (in Bytes) */
     /**
-     * THIS PARAMETER IS NO LONGER SUPPORTED BY JCL-NET.
-     * It's still here though, in case we want to re-enable it in the future.
+     * Maximum Size of the Cache (in Bytes). The size of each message is measured by its serialized size, so the real
+     * memory used by the Cache is higher.
      */
     private Long maxCacheSizeInBytes = 10_000_000L; // 10 MB
 
-    /** Maximum Size of the Cache (in number of Messages cached) */
-    private Long maxCacheSizeInNumMsgs = 50L;
+    /**
+     * Maximum Size of the Cache (in number of Messages cached). If set, it takes precedence over
+     * "maxCacheSizeInBytes". Not set by default.
+     */
+    private Long maxCacheSizeInNumMsgs;
 
     /** If an Item is idle for longer than this, it gets cleared from the cache */
     private Duration cacheExpirationTime = Duration.ofMinutes(10);
@@ -61,6 +63,7 @@ public final class DeserializerConfig {
     private static final String[] DEFAULT_MSGS_TO_CACHE = {
             HeadersMsg.MESSAGE_TYPE.toUpperCase(),
             TxMsg.MESSAGE_TYPE.toUpperCase(),
+            InvMessage.MESSAGE_TYPE.toUpperCase(),
             BlockHeaderMsg.MESSAGE_TYPE.toUpperCase(),
             CompactBlockMsg.MESSAGE_TYPE.toUpperCase(),
             BlockTxnMsg.MESSAGE_TYPE.toUpperCase()
@@ -69,6 +72,18 @@ public final class DeserializerConfig {
     /** If the Message is NOT part of this List, then it won't be cached */
     private Set<String> messagesToCache = new HashSet<>(Arrays.asList(DEFAULT_MSGS_TO_CACHE));
 
+    /**
+     * If enabled, the TX Messages already received (from any Peer) are dropped before being deserialized, so they are
+     * only notified once. Disabled by default.
+     */
+    private boolean seenTxFilterEnabled = false;
+
+    /** Time a Tx is remembered by the Seen-Tx filter (approx.) */
+    private Duration seenTxFilterWindow = Duration.ofMinutes(10);
+
+    /** Maximum number of Txs remembered by the Seen-Tx filter */
+    private int seenTxFilterMaxSize = 500_000;
+
     public DeserializerConfig(Integer bufferInitialSizeInBytes,
                               Integer minBytesPerSecForLargeMessages,
                               Boolean cacheEnabled,
@@ -78,7 +93,10 @@ public final class DeserializerConfig {
                               Long maxMsgSizeInBytes,
                               Boolean generateStats,
                               Set<String> messagesToCache,
-                              int partialSerializationMsgSize) {
+                              int partialSerializationMsgSize,
+                              Boolean seenTxFilterEnabled,
+                              Duration seenTxFilterWindow,
+                              Integer seenTxFilterMaxSize) {
         if (bufferInitialSizeInBytes != null)       this.bufferInitialSizeInBytes = bufferInitialSizeInBytes;
         if (minBytesPerSecForLargeMessages != null) this.minBytesPerSecForLargeMessages = minBytesPerSecForLargeMessages;
         if (cacheEnabled != null)                   this.cacheEnabled = cacheEnabled;
@@ -89,6 +107,24 @@ public final class DeserializerConfig {
         if (generateStats != null)                  this.generateStats = generateStats;
         if (messagesToCache != null)                this.messagesToCache = messagesToCache;
         this.partialSerializationMsgSize = partialSerializationMsgSize;
+        if (seenTxFilterEnabled != null)            this.seenTxFilterEnabled = seenTxFilterEnabled;
+        if (seenTxFilterWindow != null)             this.seenTxFilterWindow = seenTxFilterWindow;
+        if (seenTxFilterMaxSize != null)            this.seenTxFilterMaxSize = seenTxFilterMaxSize;
+    }
+
+    public DeserializerConfig(Integer bufferInitialSizeInBytes,
+                              Integer minBytesPerSecForLargeMessages,
+                              Boolean cacheEnabled,
+                              Long maxCacheSizeInBytes,
+                              Long maxCacheSizeInNumMsgs,
+                              Duration expirationTime,
+                              Long maxMsgSizeInBytes,
+                              Boolean generateStats,
+                              Set<String> messagesToCache,
+                              int partialSerializationMsgSize) {
+        this(bufferInitialSizeInBytes, minBytesPerSecForLargeMessages, cacheEnabled, maxCacheSizeInBytes,
+                maxCacheSizeInNumMsgs, expirationTime, maxMsgSizeInBytes, generateStats, messagesToCache,
+                partialSerializationMsgSize, null, null, null);
     }
 
     public static DeserializerConfigBuilder builder()   { return new DeserializerConfigBuilder(); }
@@ -102,16 +138,21 @@ public final class DeserializerConfig {
     public boolean isGenerateStats()                    { return this.generateStats; }
     public Set<String> getMessagesToCache()             { return this.messagesToCache; }
     public int getPartialSerializationMsgSize()         { return this.partialSerializationMsgSize;}
+    public boolean isSeenTxFilterEnabled()              { return this.seenTxFilterEnabled; }
+    public Duration getSeenTxFilterWindow()             { return this.seenTxFilterWindow; }
+    public int getSeenTxFilterMaxSize()                 { return this.seenTxFilterMaxSize; }
 
     @Override
     public String toString() {
         return "DeserializerConfig(bufferInitialSizeInBytes=" + bufferInitialSizeInBytes
                 + ",minBytesPerSecForLargeMessages=" + minBytesPerSecForLargeMessages
                 + ", maxCacheSizeInBytes=" + this.maxCacheSizeInBytes
+                + ", maxCacheSizeInNumMsgs=" + this.maxCacheSizeInNumMsgs
                 + ", maxMsgSizeInBytes=" + this.cacheMaxMsgSizeInBytes
                 + ", generateStats=" + this.generateStats
                 + ", messagesToCache=" + this.messagesToCache
                 + ", partialSerializationMsgSize=" + this.partialSerializationMsgSize
+                + ", seenTxFilterEnabled=" + this.seenTxFilterEnabled
                 + ")";
     }
 
@@ -126,7 +167,10 @@ public final class DeserializerConfig {
                 .cacheExpirationTime(this.cacheExpirationTime)
                 .generateStats(this.generateStats)
                 .messagesToCache(this.messagesToCache)
-                .partialSerializationMsgSize(this.partialSerializationMsgSize);
+                .partialSerializationMsgSize(this.partialSerializationMsgSize)
+                .seenTxFilterEnabled(this.seenTxFilterEnabled)
+                .seenTxFilterWindow(this.seenTxFilterWindow)
+                .seenTxFilterMaxSize(this.seenTxFilterMaxSize);
     }
 
     /**
@@ -143,6 +187,9 @@ public final class DeserializerConfig {
         private boolean generateStats;
         private Set<String> messagesToCache;
         private int partialSerializationMsgSize = DEFAULT_PARTIAL_SERIALIZATION_MSG_SIZE;
+        private Boolean seenTxFilterEnabled;
+        private Duration seenTxFilterWindow;
+        private Integer seenTxFilterMaxSize;
 
         DeserializerConfigBuilder() { }
 
@@ -197,6 +244,21 @@ public final class DeserializerConfig {
             return this;
         }
 
+        public DeserializerConfig.DeserializerConfigBuilder seenTxFilterEnabled(boolean seenTxFilterEnabled) {
+            this.seenTxFilterEnabled = seenTxFilterEnabled;
+            return this;
+        }
+
+        public DeserializerConfig.DeserializerConfigBuilder seenTxFilterWindow(Duration seenTxFilterWindow) {
+            this.seenTxFilterWindow = seenTxFilterWindow;
+            return this;
+        }
+
+        public DeserializerConfig.DeserializerConfigBuilder seenTxFilterMaxSize(int seenTxFilterMaxSize) {
+            this.seenTxFilterMaxSize = seenTxFilterMaxSize;
+            return this;
+        }
+
         public DeserializerConfig build() {
             return new DeserializerConfig(
                     bufferInitialSizeInBytes,
@@ -208,7 +270,10 @@ public final class DeserializerConfig {
                     maxMsgSizeInBytes,
                     generateStats,
                     messagesToCache,
-                    partialSerializationMsgSize);
+                    partialSerializationMsgSize,
+                    seenTxFilterEnabled,
+                    seenTxFilterWindow,
+                    seenTxFilterMaxSize);
         }
     }
 }
@@ -1,11 +1,13 @@
 package io.bitcoinsv.jcl.net.protocol.handlers.message.streams.deserializer;
 
 
+import io.bitcoinsv.bitcoinjsv.core.Sha256Hash;
 import io.bitcoinsv.jcl.net.network.streams.*;
 import io.bitcoinsv.jcl.net.network.streams.nio.NIOInputStream;
 import io.bitcoinsv.jcl.net.protocol.handlers.message.MessageHandlerConfig;
 import io.bitcoinsv.jcl.net.protocol.handlers.message.MessagePreSerializer;
 import io.bitcoinsv.jcl.net.protocol.messages.HeaderMsg;
+import io.bitcoinsv.jcl.net.protocol.messages.TxMsg;
 import io.bitcoinsv.jcl.net.protocol.messages.VersionMsg;
 import io.bitcoinsv.jcl.net.protocol.messages.common.BitcoinMsg;
 import io.bitcoinsv.jcl.net.protocol.messages.common.BodyMessage;
@@ -21,6 +23,7 @@ import io.bitcoinsv.jcl.tools.bytes.ByteArrayConfig;
 import io.bitcoinsv.jcl.tools.bytes.ByteArrayReader;
 import io.bitcoinsv.jcl.tools.bytes.ByteArrayWriter;
 import io.bitcoinsv.jcl.tools.config.RuntimeConfig;
+import io.bitcoinsv.jcl.tools.memory.MemoryBudget;
 import io.bitcoinsv.jcl.net.tools.LoggerUtil;
 
 import java.io.UnsupportedEncodingException;
@@ -76,7 +79,7 @@ public class DeserializerStream extends PeerInputStreamImpl<ByteArrayReader, Mes
     // State of this Stream. This variable contains all the information about whats going on at any time
     // Along the execution of this Stream this state wil be updated any time we receive new bytes, or we
     // deserialize different arts of the incoming message.
-    DeserializerStreamState state; // immutable Class
+    volatile DeserializerStreamState state; // immutable Class
 
     // For loggin:
     private LoggerUtil logger;
@@ -88,6 +91,10 @@ public class DeserializerStream extends PeerInputStreamImpl<ByteArrayReader, Mes
     // We use this ByteArrayBuffer to store the incoming bytes:
     private ByteArrayBuffer buffer;
 
+    // Accounts in the Memory Budget: the bytes in our buffer, and the batches of Big Messages being built:
+    private MemoryBudget.Account bufferMemoryAccount;
+    private MemoryBudget.Account batchesMemoryAccount;
+
     // Executor used to trigger real-time deserializers for big Messages:
     private ExecutorService bigMsgsDeserializersExecutor;
 
@@ -99,15 +106,18 @@ public class DeserializerStream extends PeerInputStreamImpl<ByteArrayReader, Mes
     // If set, this object will be triggered BEFORE the Deserialization process...
     private MessagePreSerializer preSerializer;
 
+    // If set, it's notified with the Hash (human-readable format) of each TX discarded by the Seen-Tx filter...
+    private Consumer<Sha256Hash> onDuplicateTxHandler;
+
     // This is the component responsible for deserializing the normal/small messages. It implements an internal CACHE
     //, so if several EQUALS messages are coming down the wire, they wil be taking from the cache instead, which
     // speeds things up a bit.
     // Big Messages are Deserialized the regular way, this class is NOT used for that.
 
-    // This class is STATIC, so there is ONLY ONE CACHE FOR ALL Streams, so all the incoming data from all the
-    // remote Peers will be using the same Cache
+    // The same instance is shared by all the Streams of the same P2P instance, so all the incoming data from all the
+    // remote Peers will be using the same Cache (and the same Seen-Tx filter, if enabled)
 
-    private static Deserializer deserializer;
+    private Deserializer deserializer;
 
     // If this Stream is closed by the remote Peer, we activate this FLAG:
     private boolean streamClosed = false;
@@ -135,6 +145,23 @@ public class DeserializerStream extends PeerInputStreamImpl<ByteArrayReader, Mes
         // We initialize the Deserializer
         this.deserializer = deserializer;
 
+        // We register our memory in the Memory Budget. If the Budget gets under pressure, the reading from the Socket
+        // might be suspended until the bytes in our buffer are consumed:
+        MemoryBudget memoryBudget = runtimeConfig.getMemoryBudget();
+        MemoryBudget.Pausable pausable = (source instanceof NIOInputStream)
+                ? new MemoryBudget.Pausable() {
+                    public void pause()  { ((NIOInputStream) source).suspendReading(); }
+                    public void resume() { ((NIOInputStream) source).resumeReading(); }
+                    public long getDrainableBytes(long usage) { return getBufferDrainableBytes(usage); }
+                }
+                : null;
+        this.bufferMemoryAccount = memoryBudget.register("deserializerBuffers", source.getPeerAddress().toString(), buffer::size, pausable);
+        this.batchesMemoryAccount = memoryBudget.register("bigMsgsBatches", source.getPeerAddress().toString());
+        super.onClose(e -> {
+            bufferMemoryAccount.close();
+            batchesMemoryAccount.close();
+        });
+
         // logger:
         this.logger = (parentLogger == null)
                 ? new LoggerUtil(this.getPeerAddress().toString(), this.getClass())
@@ -153,6 +180,19 @@ public class DeserializerStream extends PeerInputStreamImpl<ByteArrayReader, Mes
                 bigMsgsDeserializersExecutor, new LoggerUtil("Deserializer", DeserializerStream.class));
     }
 
+    /*
+     * Returns how many of the bytes in the buffer are consumed without reading more bytes from the Peer. Only the
+     * bytes of a Message being deserialized in real-time are consumed that way: otherwise the buffer only holds an
+     * incomplete Header or Message (the complete ones are deserialized as soon as they arrive), which can not be
+     * consumed until the rest of it arrives.
+     */
+    private long getBufferDrainableBytes(long bufferSize) {
+        DeserializerStreamState currentState = this.state;
+        boolean deserializingInRealTime = currentState.getTreadState().dedicatedThreadRunning()
+                || currentState.getProcessState() == DeserializerStreamState.ProcessingBytesState.DESERIALIZING_BODY;
+        return deserializingInRealTime ? bufferSize : 0;
+    }
+
     @Override
     public void onClose(Consumer<? extends StreamCloseEvent> eventHandler) {
         super.onClose(eventHandler);
@@ -270,6 +310,8 @@ public class DeserializerStream extends PeerInputStreamImpl<ByteArrayReader, Mes
                     .maxBytesToRead(headerMsg.getMsgLength())
                     .insideVersionMsg(headerMsg.getMsgCommand().equalsIgnoreCase(VersionMsg.MESSAGE_TYPE))
                     .calculateChecksum( messageHandlerConfig.isVerifyChecksum())
+                    .calculateHashes(messageHandlerConfig.isTxHashesEnabled()
+                            && headerMsg.getMsgCommand().equalsIgnoreCase(TxMsg.MESSAGE_TYPE))
                     .build();
 
             // We instantiate a ByteArrayReader that will be used to read the bytes from the buffer during deserialization
@@ -323,9 +365,32 @@ public class DeserializerStream extends PeerInputStreamImpl<ByteArrayReader, Mes
                     stateAfterOK.set(stateResult);
                 };
                 // And then we call the Deserializer...
-                deserializer.deserializeLarge(headerMsg, desContext, byteReader, onErrorHandler, onPartDeserializedHandler);
+                deserializer.deserializeLarge(headerMsg, desContext, byteReader, onErrorHandler, onPartDeserializedHandler, batchesMemoryAccount);
 
             } else {
+                // If the Seen-Tx filter is enabled and this Tx has been received already (from this or any other Peer),
+                // we discard its bytes without deserializing it...
+                // The Hash of the Tx is calculated only once, and reused by the Deserializer to look up its Cache.
+                SeenTxFilter seenTxFilter = deserializer.getSeenTxFilter();
+                Sha256Hash txBodyHash = null;
+                if (seenTxFilter != null && headerMsg.getMsgCommand().equalsIgnoreCase(TxMsg.MESSAGE_TYPE)) {
+                    txBodyHash = Sha256Hash.twiceOf(byteReader.get((int) headerMsg.getMsgLength()));
+                    boolean duplicate = seenTxFilter.isSeen(txBodyHash);
+                    resultBuilder.numTxsChecked(state.getNumTxsChecked() + 1);
+                    if (duplicate) {
+                        byteReader.read((int) headerMsg.getMsgLength());
+                        trace(isThisADedicatedThread, "Duplicate TX discarded.");
+                        if (onDuplicateTxHandler != null)
+                            onDuplicateTxHandler.accept(Sha256Hash.wrapReversed(txBodyHash.getBytes()));
+                        return resultBuilder
+                                .numDuplicateTxs(state.getNumDuplicateTxs() + 1)
+                                .processState(DeserializerStreamState.ProcessingBytesState.SEEKING_HEAD)
+                                .workToDoInBuffer(byteReader.size() > 0)
+                                .currentMsgBytesReceived(0)
+                                .build();
+                    }
+                }
+
                 // This a normal (not-realTime) Deserialization. Art this moment, we also triggered a BytesReceivedEvent,
                 // if enabled...
                 // If the Pre-Serializer is set, we trigger it now...
@@ -344,7 +409,9 @@ public class DeserializerStream extends PeerInputStreamImpl<ByteArrayReader, Mes
                 }
                 // The whole message is deserialized
                 //System.out.println("Deserializing regular message, length: " + headerMsg);
-                BodyMessage bodyMsg = deserializer.deserialize(headerMsg, desContext, byteReader);
+                BodyMessage bodyMsg = deserializer.deserialize(headerMsg, desContext, byteReader, txBodyHash);
+                // The Tx is only registered in the Seen-Tx filter once it's been deserialized successfully:
+                if (txBodyHash != null) seenTxFilter.markSeen(txBodyHash);
                 BitcoinMsg<?> bitcoinMsg = new BitcoinMsg<>(headerMsg, bodyMsg);
                 // We notify it...
                 DeserializerStreamState stateResult = this.processOK(isThisADedicatedThread, bitcoinMsg, state);
@@ -651,6 +718,10 @@ public class DeserializerStream extends PeerInputStreamImpl<ByteArrayReader, Mes
         this.preSerializer = preSerializer;
     }
 
+    public void onDuplicateTx(Consumer<Sha256Hash> onDuplicateTxHandler) {
+        this.onDuplicateTxHandler = onDuplicateTxHandler;
+    }
+
     /**
      * @return Command name (by checking this {@link #state}'s {@link HeaderMsg}) if itss present, otherwise {@code null}
      */
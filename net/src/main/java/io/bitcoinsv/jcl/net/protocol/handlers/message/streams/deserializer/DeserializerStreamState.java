@@ -86,8 +86,12 @@ public class DeserializerStreamState extends StreamState {
     // State of the Deserializer, including Cache info...
     private DeserializerState deserializerState = DeserializerState.builder().build();
 
+    // Number of TX Messages checked against the Seen-Tx filter, and the ones dropped as duplicates:
+    private long numTxsChecked;
+    private long numDuplicateTxs;
 
-    public DeserializerStreamState(ProcessingBytesState processState, ThreadState treadState, HeaderMsg currentHeaderMsg, Message currentBodyMsg, BitcoinMsg<?> currentBitcoinMsg, Long currentMsgBytesReceived, Boolean workToDoInBuffer, Long reminingBytestoIgnore, BigInteger numMsgs, DeserializerState deserializerState) {
+
+    public DeserializerStreamState(ProcessingBytesState processState, ThreadState treadState, HeaderMsg currentHeaderMsg, Message currentBodyMsg, BitcoinMsg<?> currentBitcoinMsg, Long currentMsgBytesReceived, Boolean workToDoInBuffer, Long reminingBytestoIgnore, BigInteger numMsgs, DeserializerState deserializerState, Long numTxsChecked, Long numDuplicateTxs) {
         if (processState != null)               this.processState = processState;
         if (treadState != null)                 this.treadState = treadState;
         this.currentHeaderMsg = currentHeaderMsg;
@@ -98,6 +102,8 @@ public class DeserializerStreamState extends StreamState {
         if (reminingBytestoIgnore != null)      this.reminingBytestoIgnore = reminingBytestoIgnore;
         if (numMsgs != null)                    this.numMsgs = numMsgs;
         if (deserializerState != null)          this.deserializerState = deserializerState;
+        if (numTxsChecked != null)              this.numTxsChecked = numTxsChecked;
+        if (numDuplicateTxs != null)            this.numDuplicateTxs = numDuplicateTxs;
     }
 
     public ProcessingBytesState getProcessState()   { return this.processState; }
@@ -110,9 +116,16 @@ public class DeserializerStreamState extends StreamState {
     public Message getCurrentBodyMsg()              { return this.currentBodyMsg; }
     public BitcoinMsg<?> getCurrentBitcoinMsg()     { return this.currentBitcoinMsg; }
     public long getCurrentMsgBytesReceived()        { return this.currentMsgBytesReceived; }
+    public long getNumTxsChecked()                  { return this.numTxsChecked; }
+    public long getNumDuplicateTxs()                { return this.numDuplicateTxs; }
+
+    /** Returns the percentage (0-1) of the TX Messages from this Peer that were duplicates */
+    public double getDuplicateTxRate() {
+        return (numTxsChecked == 0) ? 0 : (double) numDuplicateTxs / numTxsChecked;
+    }
 
     public DeserializerStreamStateBuilder toBuilder() {
-        return new DeserializerStreamStateBuilder().processState(this.processState).treadState(this.treadState).currentHeaderMsg(this.currentHeaderMsg).currentBodyMsg(this.currentBodyMsg).currentBitcoinMsg(this.currentBitcoinMsg).currentMsgBytesReceived(this.currentMsgBytesReceived).workToDoInBuffer(this.workToDoInBuffer).reminingBytestoIgnore(this.reminingBytestoIgnore).numMsgs(this.numMsgs).deserializerState(this.deserializerState);
+        return new DeserializerStreamStateBuilder().processState(this.processState).treadState(this.treadState).currentHeaderMsg(this.currentHeaderMsg).currentBodyMsg(this.currentBodyMsg).currentBitcoinMsg(this.currentBitcoinMsg).currentMsgBytesReceived(this.currentMsgBytesReceived).workToDoInBuffer(this.workToDoInBuffer).reminingBytestoIgnore(this.reminingBytestoIgnore).numMsgs(this.numMsgs).deserializerState(this.deserializerState).numTxsChecked(this.numTxsChecked).numDuplicateTxs(this.numDuplicateTxs);
     }
 
     public static DeserializerStreamStateBuilder builder() {
@@ -134,6 +147,8 @@ public class DeserializerStreamState extends StreamState {
         private Long reminingBytestoIgnore;
         private BigInteger numMsgs;
         private DeserializerState deserializerState;
+        private Long numTxsChecked;
+        private Long numDuplicateTxs;
 
         DeserializerStreamStateBuilder() {
         }
@@ -188,8 +203,18 @@ public class DeserializerStreamState extends StreamState {
             return this;
         }
 
+        public DeserializerStreamState.DeserializerStreamStateBuilder numTxsChecked(long numTxsChecked) {
+            this.numTxsChecked = numTxsChecked;
+            return this;
+        }
+
+        public DeserializerStreamState.DeserializerStreamStateBuilder numDuplicateTxs(long numDuplicateTxs) {
+            this.numDuplicateTxs = numDuplicateTxs;
+            return this;
+        }
+
         public DeserializerStreamState build() {
-            return new DeserializerStreamState(processState, treadState, currentHeaderMsg, currentBodyMsg, currentBitcoinMsg, currentMsgBytesReceived, workToDoInBuffer, reminingBytestoIgnore, numMsgs, deserializerState);
+            return new DeserializerStreamState(processState, treadState, currentHeaderMsg, currentBodyMsg, currentBitcoinMsg, currentMsgBytesReceived, workToDoInBuffer, reminingBytestoIgnore, numMsgs, deserializerState, numTxsChecked, numDuplicateTxs);
         }
     }
 }
@@ -0,0 +1,92 @@
+package io.bitcoinsv.jcl.net.protocol.handlers.message.streams.deserializer;
+
+import io.bitcoinsv.bitcoinjsv.core.Sha256Hash;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * A rolling filter of the Transactions already received, shared by all the DeserializerStreams of the same P2P
+ * instance. It's consulted before a TX Message is deserialized, so the duplicates (the same Tx relayed by different
+ * Peers) can be dropped without deserializing them. A Tx is only registered in the filter once it's been
+ * deserialized successfully, so a Tx that failed to deserialize is not dropped if it's received again.
+ *
+ * The filter is exact (no false positives): The Tx Hashes are stored in 2 generations (current and previous). When
+ * the current generation gets older than half the time window, or it reaches half the maximum size, it becomes the
+ * previous one and the old previous one is discarded. So a Tx is remembered for at least half the time window, and
+ * at most for the whole time window.
+ */
+public class SeenTxFilter {
+
+    private final long generationMillis;
+    private final int maxGenerationSize;
+
+    private Set<Sha256Hash> currentGeneration = new HashSet<>();
+    private Set<Sha256Hash> previousGeneration = new HashSet<>();
+    private long currentGenerationStart = System.currentTimeMillis();
+
+    // Counters:
+    private final AtomicLong numTxsChecked = new AtomicLong();
+    private final AtomicLong numDuplicates = new AtomicLong();
+
+    /**
+     * Constructor.
+     * @param window    Time a Tx is remembered (approx.)
+     * @param maxSize   Maximum number of Tx Hashes stored
+     */
+    public SeenTxFilter(Duration window, int maxSize) {
+        this.generationMillis = Math.max(window.toMillis() / 2, 1);
+        this.maxGenerationSize = Math.max(maxSize / 2, 1);
+    }
+
+    // It discards the previous generation if the current one is too old or too big:
+    private void rotateIfNeeded() {
+        long now = System.currentTimeMillis();
+        if ((now - currentGenerationStart) >= generationMillis || currentGeneration.size() >= maxGenerationSize) {
+            previousGeneration = currentGeneration;
+            currentGeneration = new HashSet<>();
+            currentGenerationStart = now;
+        }
+    }
+
+    /**
+     * It checks if the Tx has been seen already. The Tx is NOT registered (see {@link #markSeen(Sha256Hash)}).
+     * @param txHash    Hash of the Tx (double-SHA256 of its content)
+     * @return          true if the Tx has been seen already (it's a duplicate)
+     */
+    public synchronized boolean isSeen(Sha256Hash txHash) {
+        numTxsChecked.incrementAndGet();
+        rotateIfNeeded();
+        boolean duplicate = currentGeneration.contains(txHash) || previousGeneration.contains(txHash);
+        if (duplicate) numDuplicates.incrementAndGet();
+        return duplicate;
+    }
+
+    /**
+     * It registers the Tx, so it's considered a duplicate from now on. It must be called once the Tx has been
+     * deserialized successfully.
+     * @param txHash    Hash of the Tx (double-SHA256 of its content)
+     */
+    public synchronized void markSeen(Sha256Hash txHash) {
+        rotateIfNeeded();
+        currentGeneration.add(txHash);
+    }
+
+    /** Returns the number of Tx Hashes currently stored */
+    public synchronized int size() {
+        return currentGeneration.size() + previousGeneration.size();
+    }
+
+    public long getNumTxsChecked()  { return this.numTxsChecked.get(); }
+    public long getNumDuplicates()  { return this.numDuplicates.get(); }
+
+    @Override
+    public String toString() {
+        return "SeenTxFilter(size=" + size() + ", txsChecked=" + getNumTxsChecked() + ", duplicates=" + getNumDuplicates() + ")";
+    }
+}
@@ -81,7 +81,7 @@ public class SerializerStream extends PeerOutputStreamImpl<Message, ByteArrayRea
                     BitcoinMsgSerializerImpl.getInstance().serialize(
                             serializerContext,
                             bitcoinMsg
-                    )));
+                    ), bitcoinMsg.getHeader().getMsgCommand()));
         } else {
             MessageSerializer serializer = MsgSerializersFactory.getSerializer(data.getData().getMessageType());
             ByteArrayWriter writer = new ByteArrayWriter();
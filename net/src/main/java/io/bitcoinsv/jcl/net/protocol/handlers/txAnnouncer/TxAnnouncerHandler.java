@@ -0,0 +1,21 @@
+package io.bitcoinsv.jcl.net.protocol.handlers.txAnnouncer;
+
+
+import io.bitcoinsv.jcl.tools.handlers.Handler;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * Operations provided by the Tx Announcer Handler.
+ * This Handler batches the outgoing announcements of Txs to the remote Peers (see
+ * {@link io.bitcoinsv.jcl.net.protocol.events.control.TxsAnnounceRequest}): the Txs are queued for each Peer and
+ * sent in INV Messages at random intervals.
+ */
+public interface TxAnnouncerHandler extends Handler {
+
+    String HANDLER_ID = "TxAnnouncer";
+
+    @Override
+    default String getId() { return HANDLER_ID; }
+}
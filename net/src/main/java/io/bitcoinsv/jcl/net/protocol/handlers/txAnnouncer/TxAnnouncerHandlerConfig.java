@@ -0,0 +1,127 @@
+package io.bitcoinsv.jcl.net.protocol.handlers.txAnnouncer;
+
+
+import io.bitcoinsv.jcl.net.protocol.config.ProtocolBasicConfig;
+import io.bitcoinsv.jcl.tools.handlers.HandlerConfig;
+
+import java.time.Duration;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * It stores the configuration variables needed by the Tx Announcer Handler.
+ */
+public class TxAnnouncerHandlerConfig extends HandlerConfig {
+
+    // Default Values:
+    public static final Duration DEFAULT_CHECK_INTERVAL = Duration.ofMillis(100);
+    public static final Duration DEFAULT_ANNOUNCEMENT_INTERVAL = Duration.ofMillis(500);
+    public static final int DEFAULT_MAX_ITEMS_PER_INV = 50_000;
+    public static final int DEFAULT_MAX_KNOWN_ITEMS_PER_PEER = 50_000;
+    public static final int DEFAULT_MAX_PENDING_ANNOUNCEMENTS_PER_PEER = 100_000;
+
+    private ProtocolBasicConfig basicConfig;
+
+    // Frequency the Handler checks if the announcement time of any Peer has come:
+    private Duration checkInterval = DEFAULT_CHECK_INTERVAL;
+
+    // The Txs to announce to a Peer are accumulated, and sent in INV Messages at random intervals with this average
+    // ("trickling"), so the announcements are batched and the origin of a Tx is harder to guess:
+    private Duration announcementInterval = DEFAULT_ANNOUNCEMENT_INTERVAL;
+
+    // Maximum number of Items in a single INV Message (50.000 is the Protocol limit):
+    private int maxItemsPerInv = DEFAULT_MAX_ITEMS_PER_INV;
+
+    // Maximum number of Txs we remember for each Peer as "known" by it, so they are not announced to it again:
+    private int maxKnownItemsPerPeer = DEFAULT_MAX_KNOWN_ITEMS_PER_PEER;
+
+    // Maximum number of Txs waiting to be announced to a Peer. If the queue is full, new Txs are not announced to it:
+    private int maxPendingAnnouncementsPerPeer = DEFAULT_MAX_PENDING_ANNOUNCEMENTS_PER_PEER;
+
+    public TxAnnouncerHandlerConfig(ProtocolBasicConfig basicConfig,
+                                    Duration checkInterval,
+                                    Duration announcementInterval,
+                                    Integer maxItemsPerInv,
+                                    Integer maxKnownItemsPerPeer,
+                                    Integer maxPendingAnnouncementsPerPeer) {
+        this.basicConfig = basicConfig;
+        if (checkInterval != null)                  this.checkInterval = checkInterval;
+        if (announcementInterval != null)           this.announcementInterval = announcementInterval;
+        if (maxItemsPerInv != null)                 this.maxItemsPerInv = maxItemsPerInv;
+        if (maxKnownItemsPerPeer != null)           this.maxKnownItemsPerPeer = maxKnownItemsPerPeer;
+        if (maxPendingAnnouncementsPerPeer != null) this.maxPendingAnnouncementsPerPeer = maxPendingAnnouncementsPerPeer;
+    }
+
+    public TxAnnouncerHandlerConfig() {}
+
+    public ProtocolBasicConfig getBasicConfig()         { return this.basicConfig; }
+    public Duration getCheckInterval()                  { return this.checkInterval; }
+    public Duration getAnnouncementInterval()           { return this.announcementInterval; }
+    public int getMaxItemsPerInv()                      { return this.maxItemsPerInv; }
+    public int getMaxKnownItemsPerPeer()                { return this.maxKnownItemsPerPeer; }
+    public int getMaxPendingAnnouncementsPerPeer()      { return this.maxPendingAnnouncementsPerPeer; }
+
+    public TxAnnouncerHandlerConfigBuilder toBuilder() {
+        return new TxAnnouncerHandlerConfigBuilder()
+                .basicConfig(this.basicConfig)
+                .checkInterval(this.checkInterval)
+                .announcementInterval(this.announcementInterval)
+                .maxItemsPerInv(this.maxItemsPerInv)
+                .maxKnownItemsPerPeer(this.maxKnownItemsPerPeer)
+                .maxPendingAnnouncementsPerPeer(this.maxPendingAnnouncementsPerPeer);
+    }
+
+    public static TxAnnouncerHandlerConfigBuilder builder() {
+        return new TxAnnouncerHandlerConfigBuilder();
+    }
+
+    /**
+     * Builder
+     */
+    public static class TxAnnouncerHandlerConfigBuilder {
+        private ProtocolBasicConfig basicConfig;
+        private Duration checkInterval;
+        private Duration announcementInterval;
+        private Integer maxItemsPerInv;
+        private Integer maxKnownItemsPerPeer;
+        private Integer maxPendingAnnouncementsPerPeer;
+
+        TxAnnouncerHandlerConfigBuilder() {}
+
+        public TxAnnouncerHandlerConfig.TxAnnouncerHandlerConfigBuilder basicConfig(ProtocolBasicConfig basicConfig) {
+            this.basicConfig = basicConfig;
+            return this;
+        }
+
+        public TxAnnouncerHandlerConfig.TxAnnouncerHandlerConfigBuilder checkInterval(Duration checkInterval) {
+            this.checkInterval = checkInterval;
+            return this;
+        }
+
+        public TxAnnouncerHandlerConfig.TxAnnouncerHandlerConfigBuilder announcementInterval(Duration announcementInterval) {
+            this.announcementInterval = announcementInterval;
+            return this;
+        }
+
+        public TxAnnouncerHandlerConfig.TxAnnouncerHandlerConfigBuilder maxItemsPerInv(int maxItemsPerInv) {
+            this.maxItemsPerInv = maxItemsPerInv;
+            return this;
+        }
+
+        public TxAnnouncerHandlerConfig.TxAnnouncerHandlerConfigBuilder maxKnownItemsPerPeer(int maxKnownItemsPerPeer) {
+            this.maxKnownItemsPerPeer = maxKnownItemsPerPeer;
+            return this;
+        }
+
+        public TxAnnouncerHandlerConfig.TxAnnouncerHandlerConfigBuilder maxPendingAnnouncementsPerPeer(int maxPendingAnnouncementsPerPeer) {
+            this.maxPendingAnnouncementsPerPeer = maxPendingAnnouncementsPerPeer;
+            return this;
+        }
+
+        public TxAnnouncerHandlerConfig build() {
+            return new TxAnnouncerHandlerConfig(basicConfig, checkInterval, announcementInterval, maxItemsPerInv,
+                    maxKnownItemsPerPeer, maxPendingAnnouncementsPerPeer);
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package io.bitcoinsv.jcl.net.protocol.handlers.txAnnouncer;
+
+
+import io.bitcoinsv.bitcoinjsv.core.Sha256Hash;
+import io.bitcoinsv.jcl.net.network.PeerAddress;
+import io.bitcoinsv.jcl.net.network.events.NetStartEvent;
+import io.bitcoinsv.jcl.net.network.events.NetStopEvent;
+import io.bitcoinsv.jcl.net.network.events.PeerDisconnectedEvent;
+import io.bitcoinsv.jcl.net.protocol.events.control.DuplicateTxDiscardedEvent;
+import io.bitcoinsv.jcl.net.protocol.events.control.PeerHandshakedEvent;
+import io.bitcoinsv.jcl.net.protocol.events.control.SendMsgRequest;
+import io.bitcoinsv.jcl.net.protocol.events.control.TxsAnnounceRequest;
+import io.bitcoinsv.jcl.net.protocol.events.data.*;
+import io.bitcoinsv.jcl.net.protocol.messages.*;
+import io.bitcoinsv.jcl.net.protocol.messages.common.BitcoinMsg;
+import io.bitcoinsv.jcl.net.protocol.messages.common.BitcoinMsgBuilder;
+import io.bitcoinsv.jcl.net.protocol.serialization.TxMsgSerializer;
+import io.bitcoinsv.jcl.net.protocol.serialization.common.SerializerContext;
+import io.bitcoinsv.jcl.net.tools.LoggerUtil;
+import io.bitcoinsv.jcl.tools.bytes.ByteArrayWriter;
+import io.bitcoinsv.jcl.tools.config.RuntimeConfig;
+import io.bitcoinsv.jcl.tools.events.EventQueueProcessor;
+import io.bitcoinsv.jcl.tools.handlers.HandlerImpl;
+import io.bitcoinsv.jcl.tools.thread.ThreadUtils;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * Implementation of the Tx Announcer Handler.
+ * It takes care of the outgoing announcements of Txs (Txs relay), triggered by a {@link TxsAnnounceRequest}:
+ *
+ * - The Txs to announce are queued for each Peer, instead of sending one INV Message per Tx and Peer. The queue of
+ *   each Peer is bounded ("maxPendingAnnouncementsPerPeer"), the Txs that don't fit in it are not announced.
+ * - The queue of each Peer is sent at random intervals ("announcementInterval" on average), in as few INV Messages
+ *   as possible (up to "maxItemsPerInv" Items each).
+ * - A Tx is not announced to a Peer that already knows about it (because the Peer announced it to us, sent it to us,
+ *   or we already announced it), or if its Fee is below the Fee Filter set by the Peer (FEEFILTER Message).
+ *
+ * This Handler is independent of the Inventory Handler (which coordinates the incoming GETDATA requests). It's NOT
+ * included by default in the P2P Service. It's included when its Configuration is provided to the P2PBuilder, and
+ * the TxsAnnounceRequests can only be submitted if it's been included.
+ */
+public class TxAnnouncerHandlerImpl extends HandlerImpl<PeerAddress, TxAnnouncerPeerInfo> implements TxAnnouncerHandler {
+
+    // For logging:
+    private LoggerUtil logger;
+
+    // Configuration:
+    private TxAnnouncerHandlerConfig config;
+
+    // Counters:
+    private long numTxsAnnounced;
+    private long numTxsNotAnnounced;
+    private long numTxsDropped;
+    private long numInvMsgsSent;
+
+    // Lock to access the Peers info:
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // An Executor, to send the INV Messages in a different Thread:
+    private ScheduledExecutorService executor;
+
+    // The Events captured by this Handler will be processed in a separate Thread/s, by an EventQueueProcessor, this
+    // way we won't slow down the rate at which the Events are published and processed in the Bus
+    private EventQueueProcessor eventQueueProcessor;
+
+    /** Constructor */
+    public TxAnnouncerHandlerImpl(String id, RuntimeConfig runtimeConfig, TxAnnouncerHandlerConfig config) {
+        super(id, runtimeConfig);
+        this.config = config;
+        this.logger = new LoggerUtil(id, HANDLER_ID, this.getClass());
+        this.executor = ThreadUtils.getSingleThreadScheduledExecutorService("JclTxAnnouncerHandler");
+        this.eventQueueProcessor = new EventQueueProcessor("JclTxAnnouncerHandler", ThreadUtils.getFixedThreadExecutorService("JclTxAnnouncerHandler-EventsConsumers", 1));
+    }
+
+    // We register this Handler to LISTEN to these Events:
+    private void registerForEvents() {
+
+        this.eventQueueProcessor.addProcessor(NetStartEvent.class, e -> onStart((NetStartEvent) e));
+        this.eventQueueProcessor.addProcessor(NetStopEvent.class, e -> onStop((NetStopEvent) e));
+        this.eventQueueProcessor.addProcessor(PeerHandshakedEvent.class, e -> onPeerHandshaked((PeerHandshakedEvent) e));
+        this.eventQueueProcessor.addProcessor(PeerDisconnectedEvent.class, e -> onPeerDisconnected((PeerDisconnectedEvent) e));
+        this.eventQueueProcessor.addProcessor(InvMsgReceivedEvent.class, e -> onInvMsgReceived((InvMsgReceivedEvent) e));
+        this.eventQueueProcessor.addProcessor(TxMsgReceivedEvent.class, e -> onTxMsgReceived((TxMsgReceivedEvent) e));
+        this.eventQueueProcessor.addProcessor(RawTxMsgReceivedEvent.class, e -> onRawTxMsgReceived((RawTxMsgReceivedEvent) e));
+        this.eventQueueProcessor.addProcessor(TxsBatchMsgReceivedEvent.class, e -> ((TxsBatchMsgReceivedEvent) e).getEvents().forEach(this::onTxMsgReceived));
+        this.eventQueueProcessor.addProcessor(RawTxsBatchMsgReceivedEvent.class, e -> ((RawTxsBatchMsgReceivedEvent) e).getEvents().forEach(this::onRawTxMsgReceived));
+        this.eventQueueProcessor.addProcessor(DuplicateTxDiscardedEvent.class, e -> onDuplicateTxDiscarded((DuplicateTxDiscardedEvent) e));
+        this.eventQueueProcessor.addProcessor(FeeMsgReceivedEvent.class, e -> onFeeMsgReceived((FeeMsgReceivedEvent) e));
+        this.eventQueueProcessor.addProcessor(TxsAnnounceRequest.class, e -> onTxsAnnounceRequest((TxsAnnounceRequest) e));
+
+        super.eventBus.subscribe(NetStartEvent.class, e -> this.eventQueueProcessor.addEvent(e));
+        super.eventBus.subscribe(NetStopEvent.class, e -> this.eventQueueProcessor.addEvent(e));
+        super.eventBus.subscribe(PeerHandshakedEvent.class, e -> this.eventQueueProcessor.addEvent(e));
+        super.eventBus.subscribe(PeerDisconnectedEvent.class, e -> this.eventQueueProcessor.addEvent(e));
+        super.eventBus.subscribe(InvMsgReceivedEvent.class, e -> this.eventQueueProcessor.addEvent(e));
+        super.eventBus.subscribe(TxMsgReceivedEvent.class, e -> this.eventQueueProcessor.addEvent(e));
+        super.eventBus.subscribe(RawTxMsgReceivedEvent.class, e -> this.eventQueueProcessor.addEvent(e));
+        super.eventBus.subscribe(TxsBatchMsgReceivedEvent.class, e -> this.eventQueueProcessor.addEvent(e));
+        super.eventBus.subscribe(RawTxsBatchMsgReceivedEvent.class, e -> this.eventQueueProcessor.addEvent(e));
+        super.eventBus.subscribe(DuplicateTxDiscardedEvent.class, e -> this.eventQueueProcessor.addEvent(e));
+        super.eventBus.subscribe(FeeMsgReceivedEvent.class, e -> this.eventQueueProcessor.addEvent(e));
+        super.eventBus.subscribe(TxsAnnounceRequest.class, e -> this.eventQueueProcessor.addEvent(e));
+
+        this.eventQueueProcessor.start();
+    }
+
+    @Override
+    public void init() {
+        registerForEvents();
+    }
+
+    // Event Handler
+    public void onStart(NetStartEvent event) {
+        logger.trace("Starting...");
+        long intervalMillis = config.getCheckInterval().toMillis();
+        this.executor.scheduleAtFixedRate(this::jobSendAnnouncements, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Event Handler
+    public void onStop(NetStopEvent event) {
+        this.executor.shutdownNow();
+        this.eventQueueProcessor.stop();
+        logger.trace("Stop.");
+    }
+
+    // Event Handler:
+    public void onPeerHandshaked(PeerHandshakedEvent event) {
+        TxAnnouncerPeerInfo peerInfo = new TxAnnouncerPeerInfo(event.getPeerAddress(), config.getMaxKnownItemsPerPeer());
+        peerInfo.setNextAnnouncementTime(nextAnnouncementTime());
+        lock.lock();
+        try {
+            handlerInfo.put(event.getPeerAddress(), peerInfo);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Event Handler:
+    public void onPeerDisconnected(PeerDisconnectedEvent event) {
+        lock.lock();
+        try {
+            handlerInfo.remove(event.getPeerAddress());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Event Handler:
+    public void onInvMsgReceived(InvMsgReceivedEvent event) {
+        TxAnnouncerPeerInfo peerInfo = getOrWaitForHandlerInfo(event.getPeerAddress());
+        if (peerInfo == null) return;
+        lock.lock();
+        try {
+            for (InventoryVectorMsg item : event.getBtcMsg().getBody().getInvVectorList()) {
+                if (item.getType() != InventoryVectorMsg.VectorType.MSG_TX) continue;
+                peerInfo.addKnownItem(Sha256Hash.wrapReversed(item.getHashMsg().getHashBytes()));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Event Handler:
+    public void onTxMsgReceived(TxMsgReceivedEvent event) {
+        TxMsg txMsg = event.getBtcMsg().getBody();
+        onItemKnown(event.getPeerAddress(), txMsg.getHash().orElseGet(() -> calculateHash(txMsg)));
+    }
+
+    // Event Handler:
+    public void onRawTxMsgReceived(RawTxMsgReceivedEvent event) {
+        onItemKnown(event.getPeerAddress(), event.getBtcMsg().getBody().getHash());
+    }
+
+    // Event Handler:
+    public void onDuplicateTxDiscarded(DuplicateTxDiscardedEvent event) {
+        onItemKnown(event.getPeerAddress(), event.getTxHash());
+    }
+
+    // Event Handler:
+    public void onFeeMsgReceived(FeeMsgReceivedEvent event) {
+        TxAnnouncerPeerInfo peerInfo = getOrWaitForHandlerInfo(event.getPeerAddress());
+        if (peerInfo == null) return;
+        lock.lock();
+        try {
+            peerInfo.setFeeFilter(event.getBtcMsg().getBody().getFee());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Event Handler:
+    public void onTxsAnnounceRequest(TxsAnnounceRequest request) {
+        lock.lock();
+        try {
+            Collection<TxAnnouncerPeerInfo> peers = (request.getToThisPeerOnly() == null)
+                    ? handlerInfo.values()
+                    : Optional.ofNullable(handlerInfo.get(request.getToThisPeerOnly())).map(List::of).orElse(List.of());
+            for (TxAnnouncerPeerInfo peerInfo : peers) {
+                for (Sha256Hash txHash : request.getTxHashes()) {
+                    if (!peerInfo.shouldAnnounce(txHash, request.getFeePerKb())) numTxsNotAnnounced++;
+                    else if (peerInfo.getNumPendingAnnouncements() >= config.getMaxPendingAnnouncementsPerPeer()) numTxsDropped++;
+                    else if (peerInfo.addAnnouncement(txHash)) numTxsAnnounced++;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // It registers that the Peer knows about the Tx (it's sent it to us)
+    private void onItemKnown(PeerAddress peerAddress, Sha256Hash itemHash) {
+        lock.lock();
+        try {
+            TxAnnouncerPeerInfo peerInfo = handlerInfo.get(peerAddress);
+            if (peerInfo != null) peerInfo.addKnownItem(itemHash);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // The Hash of the Tx is only calculated during Deserialization if specified in the Configuration:
+    private Sha256Hash calculateHash(TxMsg txMsg) {
+        SerializerContext serializerContext = SerializerContext.builder()
+                .protocolBasicConfig(config.getBasicConfig())
+                .build();
+        ByteArrayWriter writer = new ByteArrayWriter();
+        TxMsgSerializer.getInstance().serialize(serializerContext, txMsg, writer);
+        return Sha256Hash.wrapReversed(Sha256Hash.twiceOf(writer.reader().getFullContentAndClose()).getBytes());
+    }
+
+    // It returns the next time the pending announcements will be sent to a Peer. The intervals follow an exponential
+    // distribution with an average of "announcementInterval", so they can't be predicted
+    private Instant nextAnnouncementTime() {
+        double random = ThreadLocalRandom.current().nextDouble();
+        long intervalMillis = (long) (-Math.log(1.0 - random) * config.getAnnouncementInterval().toMillis());
+        return Instant.now().plusMillis(intervalMillis);
+    }
+
+    /**
+     * This Job runs every "checkInterval": It sends the INV Messages with the Txs pending to announce to those Peers
+     * whose announcement time has come.
+     */
+    private void jobSendAnnouncements() {
+        try {
+            Map<PeerAddress, List<Sha256Hash>> announcementsToSend = new HashMap<>();
+            lock.lock();
+            try {
+                Instant now = Instant.now();
+                for (TxAnnouncerPeerInfo peerInfo : handlerInfo.values()) {
+                    if (now.isAfter(peerInfo.getNextAnnouncementTime())) {
+                        if (peerInfo.getNumPendingAnnouncements() > 0)
+                            announcementsToSend.put(peerInfo.getPeerAddress(), peerInfo.extractPendingAnnouncements());
+                        peerInfo.setNextAnnouncementTime(nextAnnouncementTime());
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            // We send the INV Messages outside the lock:
+            announcementsToSend.forEach(this::sendInv);
+        } catch (Throwable th) {
+            logger.error(th, "Error sending the Txs announcements");
+        }
+    }
+
+    // It announces the Txs to the Peer, in as many INV messages as needed
+    private void sendInv(PeerAddress peerAddress, List<Sha256Hash> txHashes) {
+        int maxItems = config.getMaxItemsPerInv();
+        for (int i = 0; i < txHashes.size(); i += maxItems) {
+            List<InventoryVectorMsg> items = new ArrayList<>();
+            for (Sha256Hash txHash : txHashes.subList(i, Math.min(i + maxItems, txHashes.size()))) {
+                items.add(InventoryVectorMsg.builder()
+                        .type(InventoryVectorMsg.VectorType.MSG_TX)
+                        .hashMsg(HashMsg.builder().hash(txHash.getReversedBytes()).build())
+                        .build());
+            }
+            InvMessage msg = InvMessage.builder().invVectorMsgList(items).build();
+            BitcoinMsg<InvMessage> btcMsg = new BitcoinMsgBuilder<>(config.getBasicConfig(), msg).build();
+            super.eventBus.publish(new SendMsgRequest(peerAddress, btcMsg));
+            lock.lock();
+            try {
+                numInvMsgsSent++;
+            } finally {
+                lock.unlock();
+            }
+        }
+        logger.trace(peerAddress, txHashes.size() + " txs announced");
+    }
+
+    public TxAnnouncerHandlerConfig getConfig() {
+        return this.config;
+    }
+
+    public TxAnnouncerHandlerState getState() {
+        lock.lock();
+        try {
+            long numTxsPending = handlerInfo.values().stream().mapToLong(TxAnnouncerPeerInfo::getNumPendingAnnouncements).sum();
+            return TxAnnouncerHandlerState.builder()
+                    .numTxsAnnounced(numTxsAnnounced)
+                    .numTxsNotAnnounced(numTxsNotAnnounced)
+                    .numTxsDropped(numTxsDropped)
+                    .numTxsPending(numTxsPending)
+                    .numInvMsgsSent(numInvMsgsSent)
+                    .build();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
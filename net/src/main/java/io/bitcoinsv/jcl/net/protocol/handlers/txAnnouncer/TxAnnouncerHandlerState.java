@@ -0,0 +1,95 @@
+package io.bitcoinsv.jcl.net.protocol.handlers.txAnnouncer;
+
+
+import io.bitcoinsv.jcl.tools.handlers.HandlerState;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * This event stores the state of the Tx Announcer Handler at a point in time.
+ */
+public final class TxAnnouncerHandlerState extends HandlerState {
+    private final long numTxsAnnounced;         // Txs announced to remote Peers (one per Peer)
+    private final long numTxsNotAnnounced;      // Txs not announced to a Peer (already known by it or below its Fee Filter)
+    private final long numTxsDropped;           // Txs not announced to a Peer because its queue was full
+    private final long numTxsPending;           // Txs currently waiting to be announced (one per Peer)
+    private final long numInvMsgsSent;          // INV Messages sent to remote Peers
+
+    TxAnnouncerHandlerState(long numTxsAnnounced, long numTxsNotAnnounced, long numTxsDropped, long numTxsPending,
+                            long numInvMsgsSent) {
+        this.numTxsAnnounced = numTxsAnnounced;
+        this.numTxsNotAnnounced = numTxsNotAnnounced;
+        this.numTxsDropped = numTxsDropped;
+        this.numTxsPending = numTxsPending;
+        this.numInvMsgsSent = numInvMsgsSent;
+    }
+
+    public long getNumTxsAnnounced()    { return this.numTxsAnnounced; }
+    public long getNumTxsNotAnnounced() { return this.numTxsNotAnnounced; }
+    public long getNumTxsDropped()      { return this.numTxsDropped; }
+    public long getNumTxsPending()      { return this.numTxsPending; }
+    public long getNumInvMsgsSent()     { return this.numInvMsgsSent; }
+
+    @Override
+    public String toString() {
+        return "TxAnnouncer-Handler State: " + numTxsAnnounced + " txs announced in " + numInvMsgsSent + " INVs, "
+                + numTxsNotAnnounced + " not announced, " + numTxsDropped + " dropped, " + numTxsPending + " pending";
+    }
+
+    public TxAnnouncerHandlerStateBuilder toBuilder() {
+        return new TxAnnouncerHandlerStateBuilder()
+                .numTxsAnnounced(this.numTxsAnnounced)
+                .numTxsNotAnnounced(this.numTxsNotAnnounced)
+                .numTxsDropped(this.numTxsDropped)
+                .numTxsPending(this.numTxsPending)
+                .numInvMsgsSent(this.numInvMsgsSent);
+    }
+
+    public static TxAnnouncerHandlerStateBuilder builder() {
+        return new TxAnnouncerHandlerStateBuilder();
+    }
+
+    /**
+     * Builder
+     */
+    public static class TxAnnouncerHandlerStateBuilder {
+        private long numTxsAnnounced;
+        private long numTxsNotAnnounced;
+        private long numTxsDropped;
+        private long numTxsPending;
+        private long numInvMsgsSent;
+
+        TxAnnouncerHandlerStateBuilder() {}
+
+        public TxAnnouncerHandlerState.TxAnnouncerHandlerStateBuilder numTxsAnnounced(long numTxsAnnounced) {
+            this.numTxsAnnounced = numTxsAnnounced;
+            return this;
+        }
+
+        public TxAnnouncerHandlerState.TxAnnouncerHandlerStateBuilder numTxsNotAnnounced(long numTxsNotAnnounced) {
+            this.numTxsNotAnnounced = numTxsNotAnnounced;
+            return this;
+        }
+
+        public TxAnnouncerHandlerState.TxAnnouncerHandlerStateBuilder numTxsDropped(long numTxsDropped) {
+            this.numTxsDropped = numTxsDropped;
+            return this;
+        }
+
+        public TxAnnouncerHandlerState.TxAnnouncerHandlerStateBuilder numTxsPending(long numTxsPending) {
+            this.numTxsPending = numTxsPending;
+            return this;
+        }
+
+        public TxAnnouncerHandlerState.TxAnnouncerHandlerStateBuilder numInvMsgsSent(long numInvMsgsSent) {
+            this.numInvMsgsSent = numInvMsgsSent;
+            return this;
+        }
+
+        public TxAnnouncerHandlerState build() {
+            return new TxAnnouncerHandlerState(numTxsAnnounced, numTxsNotAnnounced, numTxsDropped, numTxsPending,
+                    numInvMsgsSent);
+        }
+    }
+}
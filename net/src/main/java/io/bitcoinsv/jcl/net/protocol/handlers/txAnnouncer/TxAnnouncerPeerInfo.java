@@ -0,0 +1,77 @@
+package io.bitcoinsv.jcl.net.protocol.handlers.txAnnouncer;
+
+import io.bitcoinsv.bitcoinjsv.core.Sha256Hash;
+import io.bitcoinsv.jcl.net.network.PeerAddress;
+
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * This class stores information for each Peer that is needed by the Tx Announcer Handler: the Txs to announce to
+ * this Peer in the next INV Message, the Txs this Peer already knows about (so they are not announced to it again),
+ * and the Fee Filter it has set.
+ * This class is NOT thread-safe, the Handler takes care of the synchronization.
+ */
+public class TxAnnouncerPeerInfo {
+    private final PeerAddress peerAddress;
+
+    // Txs to announce to this Peer in the next INV Message:
+    private Set<Sha256Hash> pendingAnnouncements = new LinkedHashSet<>();
+    // Txs this Peer already knows about (announced by it or to it). The oldest ones are forgotten:
+    private final Set<Sha256Hash> knownItems;
+    // Minimum Fee (Satoshis/KB) of the Txs this Peer wants to be announced (from the FEEFILTER Message):
+    private Long feeFilter;
+    // Next time the pending announcements will be sent to this Peer:
+    private Instant nextAnnouncementTime = Instant.now();
+
+    /** Constructor */
+    public TxAnnouncerPeerInfo(PeerAddress peerAddress, int maxKnownItems) {
+        this.peerAddress = peerAddress;
+        this.knownItems = Collections.newSetFromMap(new LinkedHashMap<Sha256Hash, Boolean>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Sha256Hash, Boolean> eldest) {
+                return size() > maxKnownItems;
+            }
+        });
+    }
+
+    /** It registers that this Peer knows about this Tx */
+    protected void addKnownItem(Sha256Hash itemHash) {
+        knownItems.add(itemHash);
+    }
+
+    /** Indicates if the Tx should be announced to this Peer: it does not know about it, and its Fee is high enough */
+    protected boolean shouldAnnounce(Sha256Hash itemHash, Long feePerKb) {
+        if (feeFilter != null && feePerKb != null && feePerKb < feeFilter) return false;
+        return !knownItems.contains(itemHash);
+    }
+
+    /** It adds a Tx to announce to this Peer in the next INV Message. It returns false if it was queued already */
+    protected boolean addAnnouncement(Sha256Hash itemHash) {
+        knownItems.add(itemHash);
+        return pendingAnnouncements.add(itemHash);
+    }
+
+    /** It returns the Txs to announce to this Peer, and clears them */
+    protected List<Sha256Hash> extractPendingAnnouncements() {
+        List<Sha256Hash> result = new ArrayList<>(pendingAnnouncements);
+        pendingAnnouncements = new LinkedHashSet<>();
+        return result;
+    }
+
+    protected void setFeeFilter(Long feeFilter)                         { this.feeFilter = feeFilter; }
+    protected void setNextAnnouncementTime(Instant nextAnnouncementTime) { this.nextAnnouncementTime = nextAnnouncementTime; }
+
+    public PeerAddress getPeerAddress()         { return this.peerAddress; }
+    public int getNumPendingAnnouncements()     { return this.pendingAnnouncements.size(); }
+    public Long getFeeFilter()                  { return this.feeFilter; }
+    public Instant getNextAnnouncementTime()    { return this.nextAnnouncementTime; }
+
+    @Override
+    public String toString() {
+        return peerAddress + " : " + pendingAnnouncements.size() + " pending to announce";
+    }
+}
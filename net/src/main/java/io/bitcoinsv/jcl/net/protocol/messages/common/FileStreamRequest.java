@@ -0,0 +1,37 @@
+package io.bitcoinsv.jcl.net.protocol.messages.common;
+
+import java.nio.channels.FileChannel;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * A Request to send a Message whose payload is stored in a File (like a Block stored in the BlockStorePosix). The
+ * payload is transferred from the File directly to the Socket, so it's never loaded into the Java heap. Only the
+ * Header of the Message is built in memory, so the checksum of the payload must be provided (it's ignored for
+ * messages bigger than 4GB).
+ *
+ * The FileChannel is closed once the payload has been sent, or if the Peer disconnects before that.
+ */
+public class FileStreamRequest {
+
+    private final String msgType;
+    private final FileChannel channel;
+    private final long position;
+    private final long len;
+    private final long checksum;
+
+    public FileStreamRequest(String msgType, FileChannel channel, long position, long len, long checksum) {
+        this.msgType = msgType;
+        this.channel = channel;
+        this.position = position;
+        this.len = len;
+        this.checksum = checksum;
+    }
+
+    public String getMsgType()      { return msgType; }
+    public FileChannel getChannel() { return channel; }
+    public long getPosition()       { return position; }
+    public long getLen()            { return len; }
+    public long getChecksum()       { return checksum; }
+}
@@ -17,6 +17,10 @@ import java.util.ArrayList;
  * Copyright (c) 2018-2020 nChain Ltd
  */
 public class CompactBlockMsgSerializer implements MessageSerializer<CompactBlockMsg> {
+    // The lists are pre-allocated up to this size. The real size comes from the peer, so we don't trust it beyond
+    // that, the lists will grow if there are more items:
+    private static final int MAX_INITIAL_CAPACITY = 100_000;
+
     private static CompactBlockMsgSerializer instance;
 
     public static CompactBlockMsgSerializer getInstance() {
@@ -28,6 +32,10 @@ public class CompactBlockMsgSerializer implements MessageSerializer<CompactBlock
         return instance;
     }
 
+    private static int initialCapacity(long numItems) {
+        return (int) Math.max(0, Math.min(numItems, MAX_INITIAL_CAPACITY));
+    }
+
     @Override
     public CompactBlockMsg deserialize(DeserializerContext context, ByteArrayReader byteReader) {
         // First we deserialize the Block Header:
@@ -37,14 +45,14 @@ public class CompactBlockMsgSerializer implements MessageSerializer<CompactBlock
 
         // read number of short transaction id and short transaction ids
         var shortIdsLength = VarIntMsgSerializer.getInstance().deserialize(context, byteReader);
-        var shortTxIds = new ArrayList<Long>((short) shortIdsLength.getValue());
+        var shortTxIds = new ArrayList<Long>(initialCapacity(shortIdsLength.getValue()));
         for (int i = 0; i < shortIdsLength.getValue(); i++) {
             shortTxIds.add(byteReader.readInt48LE());
         }
 
         // read number of prefilled transactions and transactions
         var prefilledTxnLength = VarIntMsgSerializer.getInstance().deserialize(context, byteReader);
-        var prefilledTransactions = new ArrayList<PrefilledTxMsg>((short) prefilledTxnLength.getValue());
+        var prefilledTransactions = new ArrayList<PrefilledTxMsg>(initialCapacity(prefilledTxnLength.getValue()));
         for (int i = 0; i < prefilledTxnLength.getValue(); i++) {
             prefilledTransactions.add(PrefilledTxMsgSerializer.getInstance().deserialize(context, byteReader));
         }
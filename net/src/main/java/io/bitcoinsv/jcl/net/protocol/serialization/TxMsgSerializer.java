@@ -8,6 +8,7 @@ import io.bitcoinsv.jcl.net.protocol.serialization.common.MessageSerializer;
 import io.bitcoinsv.jcl.net.protocol.serialization.common.SerializerContext;
 import io.bitcoinsv.jcl.tools.bytes.ByteArrayReader;
 import io.bitcoinsv.jcl.tools.bytes.ByteArrayWriter;
+import io.bitcoinsv.jcl.tools.bytes.Sha256HashIncremental;
 import io.bitcoinsv.bitcoinjsv.core.Sha256Hash;
 
 import java.util.ArrayList;
@@ -28,6 +29,43 @@ public class TxMsgSerializer implements MessageSerializer<TxMsg> {
     private static final TxInputMsgSerializer txInputMessageSerializer    = TxInputMsgSerializer.getInstance();
     private static final TxOutputMsgSerializer txOutputMessageSerializer   = TxOutputMsgSerializer.getInstance();
 
+    /**
+     * A Reader that feeds all the bytes consumed from the original Reader into a Hash, so the Hash of the Tx can be
+     * calculated from the same bytes read from the wire, instead of serializing the Tx again after deserializing it.
+     */
+    private static class HashingReader extends ByteArrayReader {
+        private final ByteArrayReader reader;
+        private final Sha256HashIncremental hash = new Sha256HashIncremental();
+
+        HashingReader(ByteArrayReader reader) {
+            super(reader);
+            this.reader = reader;
+        }
+
+        @Override
+        public byte[] read(int length) {
+            byte[] result = reader.read(length);
+            hash.add(result);
+            bytesReadCount += length;
+            return result;
+        }
+
+        @Override
+        public byte[] get(int length)               { return reader.get(length); }
+        @Override
+        public byte[] get(long offset, int length)  { return reader.get(offset, length); }
+        @Override
+        public long size()                          { return reader.size(); }
+        @Override
+        public boolean isEmpty()                    { return reader.isEmpty(); }
+
+        Sha256Hash hash() {
+            // Since this Hash is stored in a Field that is NOT part of the real message and
+            // its only a convenience field, we are storing it in the human-readable way (reversed)
+            return Sha256Hash.wrapReversed(hash.hashTwice());
+        }
+    }
+
     private TxMsgSerializer() {}
 
     public static TxMsgSerializer getInstance(){
@@ -40,10 +78,13 @@ public class TxMsgSerializer implements MessageSerializer<TxMsg> {
         return instance;
     }
 
-    // TODO: CHECK PERFORMANCE WHEN CALCULATING THE HASH!!!!!!!!
     @Override
     public TxMsg deserialize(DeserializerContext context, ByteArrayReader byteReader) {
 
+        // We only calculate the Hash if it is specified. The bytes are hashed as they are read:
+        HashingReader hashingReader = context.isCalculateHashes() ? new HashingReader(byteReader) : null;
+        if (hashingReader != null) byteReader = hashingReader;
+
         // We deserialize the Tx the usual way...
         long version = byteReader.readUint32();
         VarIntMsg txInCount = varIntMsgSerializer.deserialize(context, byteReader);
@@ -67,26 +108,8 @@ public class TxMsgSerializer implements MessageSerializer<TxMsg> {
                 .version(version)
                 .tx_in(txInputMessage)
                 .tx_out(txOutputMessage)
-                .lockTime(locktime);
-
-        // We only calculate the Hash if it is specified.
-        if (context.isCalculateHashes()) {
-            // To calculate the TX Hash, we need to Serialize the TX itself...
-            SerializerContext serializerContext = SerializerContext.builder()
-                    .protocolBasicConfig(context.getProtocolBasicConfig())
-                    .insideVersionMsg(context.isInsideVersionMsg())
-                    .build();
-            ByteArrayWriter writer = new ByteArrayWriter();
-
-            TxMsg tx = txBuilder.build();
-            serialize(serializerContext, tx, writer);
-
-            byte[] txBytes = writer.reader().getFullContentAndClose();
-            // Since this Hash is stored in a Field that is NOT part of the real message and
-            // its only a convenience field, we are storing it in the human-readable way (reversed)
-            Sha256Hash txHash = Sha256Hash.wrapReversed(Sha256Hash.twiceOf(txBytes).getBytes());
-            txBuilder.hash(Optional.of(txHash));
-        } else txBuilder.hash(Optional.empty());
+                .lockTime(locktime)
+                .hash((hashingReader != null) ? Optional.of(hashingReader.hash()) : Optional.empty());
 
         return txBuilder.build();
     }
@@ -7,7 +7,9 @@ import io.bitcoinsv.jcl.net.protocol.messages.*;
 import io.bitcoinsv.jcl.net.protocol.serialization.BlockHeaderMsgSerializer;
 import io.bitcoinsv.jcl.net.protocol.serialization.TxMsgSerializer;
 import io.bitcoinsv.jcl.net.protocol.serialization.common.DeserializerContext;
+import io.bitcoinsv.bitcoinjsv.core.Sha256Hash;
 import io.bitcoinsv.jcl.tools.bytes.ByteArrayReader;
+import io.bitcoinsv.jcl.tools.bytes.MerkleRootIncremental;
 import org.slf4j.Logger;
 
 import java.time.Duration;
@@ -24,6 +26,10 @@ import java.util.concurrent.ExecutorService;
  * behaviour consists of deserializing "small" parts of the Block and notify them using the convenience methods
  * "notify" provided by the parent Class. Those notifications will trigger callbacks that previously must have been
  * fed by the client of this class.
+ *
+ * If the Tx Hashes are calculated during the Deserialization (see "DeserializerContext.isCalculateHashes()"), the
+ * Merkle Root of the Block is also calculated incrementally. If it doesn't match the one in the Block Header, an
+ * "InvalidMerkleRootException" is notified instead of the last batch of Txs.
  */
 public class BigBlockDeserializer extends LargeMessageDeserializerImpl {
 
@@ -69,11 +75,19 @@ public class BigBlockDeserializer extends LargeMessageDeserializerImpl {
             int currentBatchSize = 0;
             Instant deserializingTime = Instant.now();
 
+            // We calculate the Merkle Root as we go (if the Tx Hashes are available), to verify it at the end:
+            MerkleRootIncremental merkleRoot = context.isCalculateHashes() ? new MerkleRootIncremental() : null;
+
             for (int i = 0; i < numTxs; i++) {
                 TxMsg txMsg = TxMsgSerializer.getInstance().deserialize(context, byteReader);
                 currentBatchSize += txMsg.getLengthInBytes();
                 txList.add(txMsg);
-                if (i > 0 && currentBatchSize > super.partialMsgSize) {
+                addPartialMsgBytes(txMsg.getLengthInBytes());
+                if (merkleRoot != null) {
+                    merkleRoot.add(txMsg.getHash().get());
+                }
+                // The Batch containing the last Tx is always notified after the loop, once the Merkle Root is verified
+                if (i > 0 && i < numTxs - 1 && currentBatchSize > super.partialMsgSize) {
                     // We notify about a new Batch of TX Deserialized...
                     log.trace("Batch of " + txList.size() + " Txs deserialized :: "
                             + currentBatchSize + " bytes, "
@@ -92,6 +106,12 @@ public class BigBlockDeserializer extends LargeMessageDeserializerImpl {
                     txsOrderNumber++;
                 }
             } // for...
+
+            // All the Txs have been deserialized. We verify the Merkle Root before notifying the last Batch:
+            if (merkleRoot != null) {
+                verifyMerkleRoot(merkleRoot);
+            }
+
             // In case we still have some TXs without being notified, we do it now...
             if (txList.size() > 0)
                 notifyDeserialization(PartialBlockTXsMsg.builder()
@@ -105,4 +125,14 @@ public class BigBlockDeserializer extends LargeMessageDeserializerImpl {
             notifyError(e);
         }
     }
+
+    // Checks that the Txs deserialized match the Merkle Root of the Block Header. If they don't, an Exception is thrown
+    private void verifyMerkleRoot(MerkleRootIncremental merkleRoot) {
+        Sha256Hash expectedRoot = Sha256Hash.wrapReversed(blockHeader.getMerkleRoot().getHashBytes());
+        Sha256Hash calculatedRoot = merkleRoot.getMerkleRoot();
+        if (!expectedRoot.equals(calculatedRoot)) {
+            throw new InvalidMerkleRootException(blockHeader.getHash(), expectedRoot, calculatedRoot,
+                    "Merkle Root mismatch (" + calculatedRoot + " calculated, " + expectedRoot + " expected)");
+        }
+    }
 }
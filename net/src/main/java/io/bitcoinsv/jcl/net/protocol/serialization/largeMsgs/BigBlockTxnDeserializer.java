@@ -45,7 +45,9 @@ public class BigBlockTxnDeserializer extends LargeMessageDeserializerImpl {
 
         List<TxMsg> transactions = new ArrayList<>();
         for (int i = 0; i < numOfTxs; i++) {
-            transactions.add(TxMsgSerializer.getInstance().deserialize(context, byteReader));
+            TxMsg txMsg = TxMsgSerializer.getInstance().deserialize(context, byteReader);
+            transactions.add(txMsg);
+            addPartialMsgBytes(txMsg.getLengthInBytes());
 
             if (transactions.size() == batchSize) {
                 notifyDeserialization(
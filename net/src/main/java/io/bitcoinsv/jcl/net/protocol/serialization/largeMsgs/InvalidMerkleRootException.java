@@ -0,0 +1,32 @@
+package io.bitcoinsv.jcl.net.protocol.serialization.largeMsgs;
+
+
+import io.bitcoinsv.bitcoinjsv.core.Sha256Hash;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * Exception notified by the Big Blocks Deserializers when the Txs received don't match the Merkle Root of the Block
+ * Header, or their number doesn't match the number of Txs in the Block. It's notified before the last batch of Txs,
+ * so the Block is never considered fully downloaded.
+ */
+public class InvalidMerkleRootException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Sha256Hash blockHash;
+    private final Sha256Hash expectedMerkleRoot;
+    private final Sha256Hash calculatedMerkleRoot;
+
+    public InvalidMerkleRootException(Sha256Hash blockHash, Sha256Hash expectedMerkleRoot, Sha256Hash calculatedMerkleRoot, String detail) {
+        super("Invalid Block " + blockHash + ": " + detail);
+        this.blockHash = blockHash;
+        this.expectedMerkleRoot = expectedMerkleRoot;
+        this.calculatedMerkleRoot = calculatedMerkleRoot;
+    }
+
+    public Sha256Hash getBlockHash()            { return this.blockHash; }
+    public Sha256Hash getExpectedMerkleRoot()   { return this.expectedMerkleRoot; }
+    public Sha256Hash getCalculatedMerkleRoot() { return this.calculatedMerkleRoot; }
+}
@@ -3,6 +3,7 @@ package io.bitcoinsv.jcl.net.protocol.serialization.largeMsgs;
 import io.bitcoinsv.jcl.net.protocol.messages.HeaderMsg;
 import io.bitcoinsv.jcl.net.protocol.serialization.common.DeserializerContext;
 import io.bitcoinsv.jcl.tools.bytes.ByteArrayReader;
+import io.bitcoinsv.jcl.tools.memory.MemoryBudget;
 
 import java.util.function.Consumer;
 
@@ -31,6 +32,12 @@ public interface LargeMessageDeserializer {
      */
     void setMinSpeedBytesPerSec(int minSpeedBytesPerSec);
 
+    /**
+     * If set, the bytes of each partial message being built are registered in this Memory Account, and released
+     * once the partial message is returned
+     */
+    void setMemoryAccount(MemoryBudget.Account memoryAccount);
+
     /**
      * It starts the Deserialization. The different Results will be notified through the callbacks fed in the
      * "onDeserialized" methods.
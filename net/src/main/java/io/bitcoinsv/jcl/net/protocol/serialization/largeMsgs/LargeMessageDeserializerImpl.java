@@ -5,6 +5,7 @@ import io.bitcoinsv.jcl.net.protocol.messages.common.Message;
 import io.bitcoinsv.jcl.tools.bytes.ByteArrayReader;
 import io.bitcoinsv.jcl.tools.bytes.ByteArrayReaderRealTime;
 import io.bitcoinsv.jcl.tools.events.EventBus;
+import io.bitcoinsv.jcl.tools.memory.MemoryBudget;
 
 import java.util.concurrent.ExecutorService;
 import java.util.function.Consumer;
@@ -32,6 +33,10 @@ public abstract class LargeMessageDeserializerImpl implements LargeMessageDeseri
     // uses this property for the chunks/btches of Txs returned.
     protected Integer partialMsgSize;
 
+    // If set, the bytes of the partial message being built are registered here until it's notified:
+    private MemoryBudget.Account memoryAccount;
+    private long partialMsgBytes;
+
     /** Constructor. The ServiceExecutor will be used to trigger the callbacks in a different Thread */
     public LargeMessageDeserializerImpl(ExecutorService executor) {
         this.eventBus = EventBus.builder().executor(executor).build();
@@ -52,6 +57,11 @@ public abstract class LargeMessageDeserializerImpl implements LargeMessageDeseri
         this.minSpeedBytesPerSec = minSpeedBytesPerSec;
     }
 
+    @Override
+    public void setMemoryAccount(MemoryBudget.Account memoryAccount) {
+        this.memoryAccount = memoryAccount;
+    }
+
     @Override
     public void onDeserialized(Consumer<MsgPartDeserializedEvent> eventHandler) {
         eventBus.subscribe(MsgPartDeserializedEvent.class, eventHandler);
@@ -65,11 +75,27 @@ public abstract class LargeMessageDeserializerImpl implements LargeMessageDeseri
     // Convenience method to call when we ned to notify something has been deserialized
     public void notifyDeserialization(Message message) {
         eventBus.publish(new MsgPartDeserializedEvent<>(message));
+        releasePartialMsgBytes();
     }
 
     // Convenience method to call when we need to notify about an error
     public void notifyError(Exception e) {
         eventBus.publish(new MsgPartDeserializationErrorEvent(e));
+        releasePartialMsgBytes();
+    }
+
+    // Convenience method to call when some bytes are added to the partial message being built
+    protected void addPartialMsgBytes(long numBytes) {
+        if (memoryAccount == null) return;
+        memoryAccount.add(numBytes);
+        partialMsgBytes += numBytes;
+    }
+
+    // The partial message has been returned, so its bytes are not ours anymore
+    private void releasePartialMsgBytes() {
+        if (memoryAccount == null) return;
+        memoryAccount.release(partialMsgBytes);
+        partialMsgBytes = 0;
     }
 
     // Returns the minimum Speed (bytes/Sec), if specified
@@ -6,7 +6,9 @@ import io.bitcoinsv.jcl.net.protocol.messages.*;
 import io.bitcoinsv.jcl.net.protocol.serialization.BlockHeaderMsgSerializer;
 import io.bitcoinsv.jcl.net.protocol.serialization.RawBlockMsgSerializer;
 import io.bitcoinsv.jcl.net.protocol.serialization.common.DeserializerContext;
+import io.bitcoinsv.bitcoinjsv.core.Sha256Hash;
 import io.bitcoinsv.jcl.tools.bytes.ByteArrayReader;
+import io.bitcoinsv.jcl.tools.bytes.MerkleRootIncremental;
 import org.slf4j.Logger;
 
 import java.util.ArrayList;
@@ -21,6 +23,9 @@ import java.util.concurrent.ExecutorService;
  * behaviour consists of deserializing "small" parts of the Block and notify them using the convenience methods
  * "notify" provided by the parent Class. Those notifications will trigger callbacks that previously must have been
  * fed by the client of this class. All notifications will contain Raw Tx Data.
+ *
+ * The Merkle Root of the Block is calculated incrementally as the Txs are deserialized. If it doesn't match the one
+ * in the Block Header, an "InvalidMerkleRootException" is notified instead of the last batch of Txs.
  */
 public class RawBigBlockDeserializer extends LargeMessageDeserializerImpl {
 
@@ -73,11 +78,21 @@ public class RawBigBlockDeserializer extends LargeMessageDeserializerImpl {
             //record each tx in this batch
             List<RawTxMsg> rawTxBatch = new ArrayList<>();
 
+            // We calculate the Merkle Root as we go, to verify it when the last Tx arrives:
+            MerkleRootIncremental merkleRoot = new MerkleRootIncremental();
+            long numTxs = blockHeader.getTransactionCount().getValue();
+
             while (totalBytesRemaining > 0) {
 
                 RawTxMsg tx = rawBlockMsgSerializer.deserializeNextTx(context, byteReader);
                 long totalBytesInTx = tx.getLengthInBytes();
 
+                merkleRoot.add(tx.getHash());
+                if (merkleRoot.getNumHashes() > numTxs) {
+                    throw new InvalidMerkleRootException(blockHeader.getHash(), null, null,
+                            "more Txs than specified in the Header (" + numTxs + ")");
+                }
+
                 //if we have enough space then add it
                 if(totalSizeInBatch + totalBytesInTx <= super.partialMsgSize){
                     totalSizeInBatch += totalBytesInTx;
@@ -106,10 +121,14 @@ public class RawBigBlockDeserializer extends LargeMessageDeserializerImpl {
                     }
 
                 }
+                addPartialMsgBytes(totalBytesInTx);
 
                 totalBytesRemaining -= totalBytesInTx;
             }
 
+            // All the Txs have been deserialized. We verify the Merkle Root before notifying the last Batch:
+            verifyMerkleRoot(merkleRoot, numTxs);
+
             //flush any remaining txs
             if(rawTxBatch.size() > 0){
                 //push the batch down the pipeline
@@ -131,4 +150,18 @@ public class RawBigBlockDeserializer extends LargeMessageDeserializerImpl {
             th.printStackTrace();
         }
     }
+
+    // Checks that the Txs deserialized match the Block Header. If they don't, an Exception is thrown
+    private void verifyMerkleRoot(MerkleRootIncremental merkleRoot, long numTxs) {
+        Sha256Hash expectedRoot = Sha256Hash.wrapReversed(blockHeader.getMerkleRoot().getHashBytes());
+        Sha256Hash calculatedRoot = merkleRoot.getMerkleRoot();
+        if (merkleRoot.getNumHashes() != numTxs) {
+            throw new InvalidMerkleRootException(blockHeader.getHash(), expectedRoot, calculatedRoot,
+                    merkleRoot.getNumHashes() + " Txs received, " + numTxs + " expected");
+        }
+        if (!expectedRoot.equals(calculatedRoot)) {
+            throw new InvalidMerkleRootException(blockHeader.getHash(), expectedRoot, calculatedRoot,
+                    "Merkle Root mismatch (" + calculatedRoot + " calculated, " + expectedRoot + " expected)");
+        }
+    }
 }
@@ -23,6 +23,15 @@ import io.bitcoinsv.jcl.net.protocol.handlers.handshake.HandshakeHandlerImpl;
 import io.bitcoinsv.jcl.net.protocol.handlers.message.MessageHandler;
 import io.bitcoinsv.jcl.net.protocol.handlers.message.MessageHandlerConfig;
 import io.bitcoinsv.jcl.net.protocol.handlers.message.MessageHandlerImpl;
+import io.bitcoinsv.jcl.net.protocol.handlers.compactBlock.CompactBlockHandler;
+import io.bitcoinsv.jcl.net.protocol.handlers.compactBlock.CompactBlockHandlerConfig;
+import io.bitcoinsv.jcl.net.protocol.handlers.compactBlock.CompactBlockHandlerImpl;
+import io.bitcoinsv.jcl.net.protocol.handlers.inventory.InventoryHandler;
+import io.bitcoinsv.jcl.net.protocol.handlers.inventory.InventoryHandlerConfig;
+import io.bitcoinsv.jcl.net.protocol.handlers.inventory.InventoryHandlerImpl;
+import io.bitcoinsv.jcl.net.protocol.handlers.txAnnouncer.TxAnnouncerHandler;
+import io.bitcoinsv.jcl.net.protocol.handlers.txAnnouncer.TxAnnouncerHandlerConfig;
+import io.bitcoinsv.jcl.net.protocol.handlers.txAnnouncer.TxAnnouncerHandlerImpl;
 import io.bitcoinsv.jcl.net.protocol.handlers.pingPong.PingPongHandler;
 import io.bitcoinsv.jcl.net.protocol.handlers.pingPong.PingPongHandlerConfig;
 import io.bitcoinsv.jcl.net.protocol.handlers.pingPong.PingPongHandlerImpl;
@@ -140,6 +149,15 @@ public class P2PBuilder {
 
     public P2PBuilder config(BlockDownloaderHandlerConfig config) { return config(BlockDownloaderHandler.HANDLER_ID, config);}
 
+    /** The Inventory Handler is NOT included by default. It's only included if its Configuration is provided */
+    public P2PBuilder config(InventoryHandlerConfig config) { return config(InventoryHandler.HANDLER_ID, config);}
+
+    /** The Tx Announcer Handler is NOT included by default. It's only included if its Configuration is provided */
+    public P2PBuilder config(TxAnnouncerHandlerConfig config) { return config(TxAnnouncerHandler.HANDLER_ID, config);}
+
+    /** The Compact Block Handler is NOT included by default. It's only included if its Configuration is provided */
+    public P2PBuilder config(CompactBlockHandlerConfig config) { return config(CompactBlockHandler.HANDLER_ID, config);}
+
     /** It sets up a specific configuration for a specific protocol Handler, overwritting the default one (if any) */
     public P2PBuilder config(String handlerId, HandlerConfig handlerConfig) {
         checkState(this.protocolConfig != null, "a global Configuration must be specified first");
@@ -192,7 +210,15 @@ public class P2PBuilder {
 
             // Message Handler...
             MessageHandlerConfig messageConfig =  (MessageHandlerConfig) handlerConfigs.get(MessageHandler.HANDLER_ID);
-            messageConfig = messageConfig.toBuilder().basicConfig(this.basicConfig).build();
+            // The Handlers that keep track of the Txs received need their Hashes, so they are calculated during the
+            // Deserialization if any of them is included:
+            boolean txHashesNeeded = handlerConfigs.containsKey(InventoryHandler.HANDLER_ID)
+                    || handlerConfigs.containsKey(TxAnnouncerHandler.HANDLER_ID)
+                    || handlerConfigs.containsKey(CompactBlockHandler.HANDLER_ID);
+            messageConfig = messageConfig.toBuilder()
+                    .basicConfig(this.basicConfig)
+                    .txHashesEnabled(messageConfig.isTxHashesEnabled() || txHashesNeeded)
+                    .build();
             Handler messageHandler = new MessageHandlerImpl(id, runtimeConfig, messageConfig);
             result.put(messageHandler.getId(), messageHandler);
 
@@ -226,6 +252,30 @@ public class P2PBuilder {
             Handler blockHandler = new BlockDownloaderHandlerImpl(id, runtimeConfig, blockConfig);
             result.put(blockHandler.getId(), blockHandler);
 
+            // Inventory Handler (optional)...
+            InventoryHandlerConfig inventoryConfig = (InventoryHandlerConfig) handlerConfigs.get(InventoryHandler.HANDLER_ID);
+            if (inventoryConfig != null) {
+                inventoryConfig = inventoryConfig.toBuilder().basicConfig(this.basicConfig).build();
+                Handler inventoryHandler = new InventoryHandlerImpl(id, runtimeConfig, inventoryConfig);
+                result.put(inventoryHandler.getId(), inventoryHandler);
+            }
+
+            // Tx Announcer Handler (optional)...
+            TxAnnouncerHandlerConfig txAnnouncerConfig = (TxAnnouncerHandlerConfig) handlerConfigs.get(TxAnnouncerHandler.HANDLER_ID);
+            if (txAnnouncerConfig != null) {
+                txAnnouncerConfig = txAnnouncerConfig.toBuilder().basicConfig(this.basicConfig).build();
+                Handler txAnnouncerHandler = new TxAnnouncerHandlerImpl(id, runtimeConfig, txAnnouncerConfig);
+                result.put(txAnnouncerHandler.getId(), txAnnouncerHandler);
+            }
+
+            // Compact Block Handler (optional)...
+            CompactBlockHandlerConfig compactBlockConfig = (CompactBlockHandlerConfig) handlerConfigs.get(CompactBlockHandler.HANDLER_ID);
+            if (compactBlockConfig != null) {
+                compactBlockConfig = compactBlockConfig.toBuilder().basicConfig(this.basicConfig).build();
+                Handler compactBlockHandler = new CompactBlockHandlerImpl(id, runtimeConfig, compactBlockConfig);
+                result.put(compactBlockHandler.getId(), compactBlockHandler);
+            }
+
         } catch (Exception e) {
             e.printStackTrace();
             throw new RuntimeException(e);
@@ -1,12 +1,15 @@
 package io.bitcoinsv.jcl.net.protocol.wrapper;
 
 
+import io.bitcoinsv.bitcoinjsv.core.Sha256Hash;
 import io.bitcoinsv.jcl.net.network.PeerAddress;
+import io.bitcoinsv.jcl.net.network.bandwidth.BandwidthConfig;
 import io.bitcoinsv.jcl.net.network.events.*;
 import io.bitcoinsv.jcl.net.network.events.PeerDisconnectedEvent.DisconnectedReason;
 import io.bitcoinsv.jcl.net.protocol.events.control.*;
 import io.bitcoinsv.jcl.net.protocol.messages.common.BitcoinMsg;
 import io.bitcoinsv.jcl.net.protocol.messages.common.BodyMessage;
+import io.bitcoinsv.jcl.net.protocol.messages.common.FileStreamRequest;
 import io.bitcoinsv.jcl.net.protocol.messages.common.StreamRequest;
 import io.bitcoinsv.jcl.tools.events.Event;
 import io.bitcoinsv.jcl.tools.events.EventBus;
@@ -290,6 +293,19 @@ public class P2PRequestHandler {
         public SendMsgStreamHandshakeRequest buildRequest() { return new SendMsgStreamHandshakeRequest(peerAddress, streamRequest); }
     }
 
+    /** A Builder for SendMsgFileStreamHandshakeRequest */
+    public class SendMsgFileStreamHandshakeRequestBuilder extends RequestBuilder {
+        private PeerAddress peerAddress;
+        private FileStreamRequest streamRequest;
+
+        public SendMsgFileStreamHandshakeRequestBuilder(PeerAddress peerAddress, FileStreamRequest streamRequest) {
+            this.peerAddress = peerAddress;
+            this.streamRequest = streamRequest;
+        }
+
+        public SendMsgFileStreamHandshakeRequest buildRequest() { return new SendMsgFileStreamHandshakeRequest(peerAddress, streamRequest); }
+    }
+
 
     /** A Builder for BroadcastMsgRequest */
     public class BroadcastMsgRequestBuilder extends RequestBuilder {
@@ -323,6 +339,9 @@ public class P2PRequestHandler {
         public SendMsgStreamHandshakeRequestBuilder stream(PeerAddress peerAddress, StreamRequest streamRequest) {
             return new SendMsgStreamHandshakeRequestBuilder(peerAddress, streamRequest);
         }
+        public SendMsgFileStreamHandshakeRequestBuilder stream(PeerAddress peerAddress, FileStreamRequest streamRequest) {
+            return new SendMsgFileStreamHandshakeRequestBuilder(peerAddress, streamRequest);
+        }
         public BroadcastMsgRequestBuilder broadcast(BitcoinMsg<?> btcMsg) {
             return new BroadcastMsgRequestBuilder(btcMsg);
         }
@@ -427,10 +446,104 @@ public class P2PRequestHandler {
         public BlocksDownloadPauseRequest buildRequest() { return new BlocksDownloadPauseRequest();}
     }
 
+    /** A Builder for SetBandwidthConfigRequest */
+    public class SetBandwidthConfigRequestBuilder extends RequestBuilder {
+        private BandwidthConfig bandwidthConfig;
+
+        public SetBandwidthConfigRequestBuilder(BandwidthConfig bandwidthConfig)  { this.bandwidthConfig = bandwidthConfig; }
+        public SetBandwidthConfigRequest buildRequest()                           { return new SetBandwidthConfigRequest(bandwidthConfig); }
+    }
+
+    /** A Builder for SetPeerBandwidthRequest */
+    public class SetPeerBandwidthRequestBuilder extends RequestBuilder {
+        private PeerAddress peerAddress;
+        private long readBytesPerSec;
+        private long writeBytesPerSec;
+        private boolean reset;
+
+        public SetPeerBandwidthRequestBuilder(PeerAddress peerAddress, long readBytesPerSec, long writeBytesPerSec) {
+            this.peerAddress = peerAddress;
+            this.readBytesPerSec = readBytesPerSec;
+            this.writeBytesPerSec = writeBytesPerSec;
+        }
+        public SetPeerBandwidthRequestBuilder(PeerAddress peerAddress) {
+            this.peerAddress = peerAddress;
+            this.reset = true;
+        }
+        public SetPeerBandwidthRequest buildRequest() {
+            return (reset)
+                    ? new SetPeerBandwidthRequest(peerAddress)
+                    : new SetPeerBandwidthRequest(peerAddress, readBytesPerSec, writeBytesPerSec);
+        }
+    }
+
+    /**
+     * A convenience Class for Requests related to the Bandwidth limits
+     */
+    public class BandwidthRequestBuilder {
+        public SetBandwidthConfigRequestBuilder setLimits(BandwidthConfig bandwidthConfig) {
+            return new SetBandwidthConfigRequestBuilder(bandwidthConfig);
+        }
+        public SetPeerBandwidthRequestBuilder setPeerLimits(PeerAddress peerAddress, long readBytesPerSec, long writeBytesPerSec) {
+            return new SetPeerBandwidthRequestBuilder(peerAddress, readBytesPerSec, writeBytesPerSec);
+        }
+        public SetPeerBandwidthRequestBuilder resetPeerLimits(PeerAddress peerAddress) {
+            return new SetPeerBandwidthRequestBuilder(peerAddress);
+        }
+    }
+
+
+    /**
+     * A Builder for Requests to announce Txs to the remote Peers
+     */
+    public class TxsToAnnounceRequestBuilder extends RequestBuilder {
+        private List<Sha256Hash> txHashes;
+        private Long feePerKb;
+        private PeerAddress toThisPeerOnly;
+
+        public TxsToAnnounceRequestBuilder(List<Sha256Hash> txHashes) { this.txHashes = txHashes; }
+
+        public TxsToAnnounceRequestBuilder withFeePerKb(long feePerKb) {
+            this.feePerKb = feePerKb;
+            return this;
+        }
+
+        public TxsToAnnounceRequestBuilder toThisPeerOnly(PeerAddress toThisPeerOnly) {
+            this.toThisPeerOnly = toThisPeerOnly;
+            return this;
+        }
+
+        public TxsAnnounceRequest buildRequest() {
+            return new TxsAnnounceRequest(txHashes, feePerKb, toThisPeerOnly);
+        }
+
+        // If the Tx Announcer Handler is not running, nobody would pick up this Request:
+        @Override
+        public void submit() {
+            if (!eventBus.hasSubscribers(TxsAnnounceRequest.class))
+                throw new IllegalStateException("Txs can not be announced: the Tx Announcer Handler is not configured");
+            super.submit();
+        }
+    }
+
+    /**
+     * A convenience Class for Requests related to Txs Relay. These Requests are processed by the Tx Announcer Handler,
+     * so they can only be submitted if that Handler has been configured.
+     */
+    public class TxsRequestBuilder {
+        public TxsToAnnounceRequestBuilder announce(Sha256Hash txHash) {
+            return new TxsToAnnounceRequestBuilder(Arrays.asList(txHash));
+        }
+        public TxsToAnnounceRequestBuilder announce(List<Sha256Hash> txHashes) {
+            return new TxsToAnnounceRequestBuilder(txHashes);
+        }
+    }
 
     // Definition of the built-in Request Handlers:
     public final PeersRequestBuilder            PEERS   = new PeersRequestBuilder();
     public final MsgsRequestBuilder             MSGS    = new MsgsRequestBuilder();
     public final BlocksDownloadRequestBuilder   BLOCKS  = new BlocksDownloadRequestBuilder();
+    public final BandwidthRequestBuilder        BANDWIDTH = new BandwidthRequestBuilder();
+    public final TxsRequestBuilder              TXS     = new TxsRequestBuilder();
 
 }
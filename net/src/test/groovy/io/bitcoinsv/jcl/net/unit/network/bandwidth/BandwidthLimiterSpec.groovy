@@ -0,0 +1,113 @@
+package io.bitcoinsv.jcl.net.unit.network.bandwidth
+
+import io.bitcoinsv.jcl.net.network.PeerAddress
+import io.bitcoinsv.jcl.net.network.bandwidth.BandwidthConfig
+import io.bitcoinsv.jcl.net.network.bandwidth.BandwidthLimiter
+import io.bitcoinsv.jcl.net.network.bandwidth.TokenBucket
+import spock.lang.Specification
+
+/**
+ * Testing class for the Token Buckets and the Bandwidth Limiter
+ */
+class BandwidthLimiterSpec extends Specification {
+
+    /**
+     * We check that a Token Bucket starts full, goes into debt when consuming more than available, and refills over
+     * time at the rate configured.
+     */
+    def "testing Token Bucket consuming and refilling"() {
+        given:
+            TokenBucket bucket = new TokenBucket(10_000)
+        when:
+            long availableAtStart = bucket.getAvailable()
+            bucket.consume(15_000)
+            long availableInDebt = bucket.getAvailable()
+            long waitInDebt = bucket.getMillisUntilAvailable()
+            Thread.sleep(1000)
+            long availableAfterWait = bucket.getAvailable()
+        then:
+            availableAtStart == 10_000
+            availableInDebt == 0
+            waitInDebt > 0
+            availableAfterWait < 10_000
+            new TokenBucket(0).getAvailable() == Long.MAX_VALUE
+    }
+
+    /**
+     * We check that the allowance for a Peer is the minimum of all the limits that apply to it, and that the
+     * Peer-specific limits override the default ones
+     */
+    def "testing allowance with global, peer and msg type limits"() {
+        given:
+            PeerAddress peer1 = PeerAddress.localhost(8001)
+            PeerAddress peer2 = PeerAddress.localhost(8002)
+            BandwidthConfig config = BandwidthConfig.builder()
+                .globalWriteBytesPerSec(100_000)
+                .peerReadBytesPerSec(20_000)
+                .peerWriteBytesPerSec(50_000)
+                .msgTypeWriteBytesPerSec("inv", 5_000)
+                .build()
+            BandwidthLimiter limiter = new BandwidthLimiter(config)
+            limiter.addPeer(peer1)
+            limiter.addPeer(peer2)
+        when:
+            long readAllowance = limiter.getReadAllowance(peer1)
+            long writeAllowance = limiter.getWriteAllowance(peer1, "tx")
+            long invAllowance = limiter.getWriteAllowance(peer1, "inv")
+            limiter.consumeWrite(peer1, "tx", 50_000)
+            long writeAllowanceAfter = limiter.getWriteAllowance(peer1, "tx")
+            long writeAllowancePeer2 = limiter.getWriteAllowance(peer2, "tx")
+            limiter.setPeerLimits(peer2, 1_000, 0)
+            long readAllowancePeer2 = limiter.getReadAllowance(peer2)
+            limiter.resetPeerLimits(peer2)
+            long readAllowancePeer2Reset = limiter.getReadAllowance(peer2)
+        then:
+            readAllowance == 20_000
+            writeAllowance == 50_000
+            invAllowance == 5_000
+            writeAllowanceAfter < 1_000
+            writeAllowancePeer2 == 50_000
+            readAllowancePeer2 == 1_000
+            readAllowancePeer2Reset <= 20_000
+            readAllowancePeer2Reset >= 1_000
+    }
+
+    /**
+     * We check that the limits can be changed at runtime, and removed altogether
+     */
+    def "testing reconfiguration"() {
+        given:
+            PeerAddress peer = PeerAddress.localhost(8001)
+            BandwidthLimiter limiter = new BandwidthLimiter(BandwidthConfig.unlimited())
+        when:
+            long allowanceUnlimited = limiter.getReadAllowance(peer)
+            limiter.updateConfig(BandwidthConfig.builder().globalReadBytesPerSec(1_000).build())
+            long allowanceLimited = limiter.getReadAllowance(peer)
+            limiter.updateConfig(BandwidthConfig.unlimited())
+            long allowanceUnlimitedAgain = limiter.getReadAllowance(peer)
+        then:
+            allowanceUnlimited == Long.MAX_VALUE
+            allowanceLimited == 1_000
+            allowanceUnlimitedAgain == Long.MAX_VALUE
+    }
+
+    /**
+     * We check that once a Peer is removed, the bytes still read/written for it are not limited by (and don't
+     * create again) its own buckets
+     */
+    def "testing Peer removed"() {
+        given:
+            PeerAddress peer = PeerAddress.localhost(8001)
+            BandwidthLimiter limiter = new BandwidthLimiter(BandwidthConfig.builder().peerReadBytesPerSec(1_000).build())
+        when:
+            limiter.addPeer(peer)
+            long allowanceRegistered = limiter.getReadAllowance(peer)
+            limiter.removePeer(peer)
+            limiter.consumeRead(peer, 500)
+            long allowanceRemoved = limiter.getReadAllowance(peer)
+        then:
+            allowanceRegistered == 1_000
+            allowanceRemoved == Long.MAX_VALUE
+            !limiter.containsPeer(peer)
+    }
+}
@@ -5,9 +5,13 @@ import io.bitcoinsv.jcl.net.network.config.NetworkConfig
 import io.bitcoinsv.jcl.net.network.config.provided.NetworkDefaultConfig
 import io.bitcoinsv.jcl.net.network.events.PeerConnectedEvent
 import io.bitcoinsv.jcl.net.network.events.PeerDisconnectedEvent
+import io.bitcoinsv.jcl.net.network.events.PeerNIOStreamConnectedEvent
 import io.bitcoinsv.jcl.net.network.events.PeerRejectedEvent
 import io.bitcoinsv.jcl.net.network.handlers.NetworkHandler
 import io.bitcoinsv.jcl.net.network.handlers.NetworkHandlerImpl
+import io.bitcoinsv.jcl.net.network.streams.StreamDataEvent
+import io.bitcoinsv.jcl.net.network.streams.nio.NIOStream
+import io.bitcoinsv.jcl.tools.bytes.ByteArrayReader
 import io.bitcoinsv.jcl.tools.config.RuntimeConfig
 import io.bitcoinsv.jcl.tools.config.provided.RuntimeConfigDefault
 import io.bitcoinsv.jcl.tools.events.EventBus
@@ -18,6 +22,8 @@ import spock.lang.Specification
 
 import java.util.concurrent.ExecutorService
 import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
 
 @Slf4j
 class ConnectionHandlerTest extends Specification {
@@ -94,6 +100,134 @@ class ConnectionHandlerTest extends Specification {
             clientDisconnected.get()
     }
 
+    /**
+     * Testing connections between a Server and several Clients, all of them running in multi-reactor mode (the
+     * connections are handled by several I/O Reactors, each one with its own Selector)
+     */
+    def "testing Server-Client Connections OK in multi-reactor mode"() {
+        given:
+            final int NUM_CLIENTS = 3
+            RuntimeConfig runtimeConfig = new RuntimeConfigDefault()
+            runtimeConfig = runtimeConfig.toBuilder()
+                    .fileUtils(new FileUtilsBuilder().build())
+                    .build()
+            NetworkConfig networkConfig = new NetworkDefaultConfig().toBuilder()
+                    .numIOThreads(2)
+                    .build()
+
+            // Server:
+            EventBus serverEventBus = EventBus.builder().executor(ThreadUtils.getSingleThreadExecutorService("Server-EventBus-")).build()
+            NetworkHandler server = new NetworkHandlerImpl("server", runtimeConfig, networkConfig, PeerAddress.localhost(0))
+            server.useEventBus(serverEventBus)
+
+            // Clients:
+            List<NetworkHandler> clients = new ArrayList<>()
+            for (int i = 0; i < NUM_CLIENTS; i++) {
+                EventBus clientEventBus = EventBus.builder().executor(ThreadUtils.getSingleThreadExecutorService("Client-EventBus-" + i)).build()
+                NetworkHandler client = new NetworkHandlerImpl("client" + i, runtimeConfig, networkConfig, PeerAddress.localhost(0))
+                client.useEventBus(clientEventBus)
+                clients.add(client)
+            }
+
+            // We keep track of the events in these variables:
+            AtomicInteger serverNumConnected = new AtomicInteger()
+            AtomicInteger serverNumDisconnected = new AtomicInteger()
+            serverEventBus.subscribe(PeerConnectedEvent.class, { e -> serverNumConnected.incrementAndGet() })
+            serverEventBus.subscribe(PeerDisconnectedEvent.class, { e -> serverNumDisconnected.incrementAndGet() })
+
+        when:
+            server.startServer()
+            clients.forEach({ c -> c.start() })
+            clients.forEach({ c -> c.connect(server.getPeerAddress()) })
+            Thread.sleep(1_000)
+            int numActiveConns = server.getState().getNumActiveConns()
+            clients.forEach({ c -> c.disconnect(server.getPeerAddress()) })
+            Thread.sleep(1_000)
+            server.stop()
+            clients.forEach({ c -> c.stop() })
+        then:
+            serverNumConnected.get() == NUM_CLIENTS
+            numActiveConns == NUM_CLIENTS
+            serverNumDisconnected.get() == NUM_CLIENTS
+    }
+
+    /**
+     * Testing a Server used on its own, with nobody consuming the Streams of its connections: The Streams start
+     * reading as soon as they are connected, so the Server detects when the Client closes the connection.
+     */
+    def "testing Server reading with no Stream consumer"() {
+        given:
+            RuntimeConfig runtimeConfig = new RuntimeConfigDefault()
+            NetworkConfig networkConfig = new NetworkDefaultConfig()
+            EventBus serverEventBus = EventBus.builder().executor(ThreadUtils.getSingleThreadExecutorService("Server-EventBus-")).build()
+            EventBus clientEventBus = EventBus.builder().executor(ThreadUtils.getSingleThreadExecutorService("Client-EventBus-")).build()
+            NetworkHandler server = new NetworkHandlerImpl("server", runtimeConfig, networkConfig, PeerAddress.localhost(0))
+            server.useEventBus(serverEventBus)
+            NetworkHandler client = new NetworkHandlerImpl("client", runtimeConfig, networkConfig, PeerAddress.localhost(0))
+            client.useEventBus(clientEventBus)
+
+            AtomicBoolean serverDisconnected = new AtomicBoolean(false)
+            serverEventBus.subscribe(PeerDisconnectedEvent.class, { e -> serverDisconnected.set(true) })
+
+        when:
+            server.startServer()
+            client.start()
+            client.connect(server.getPeerAddress())
+            Thread.sleep(1_000)
+            client.disconnect(server.getPeerAddress())
+            Thread.sleep(1_000)
+            // The disconnection is detected by the Server before it stops:
+            boolean serverDisconnectedBeforeStop = serverDisconnected.get()
+            server.stop()
+            client.stop()
+        then:
+            serverDisconnectedBeforeStop
+    }
+
+    /**
+     * Testing a Server used on its own, with a consumer of the Streams of its connections: The consumer links itself
+     * to the Stream and then calls "startReading()", so it receives all the data sent by the Client.
+     */
+    def "testing Server-Client data received by the Stream consumer"() {
+        given:
+            RuntimeConfig runtimeConfig = new RuntimeConfigDefault()
+            NetworkConfig networkConfig = new NetworkDefaultConfig()
+            EventBus serverEventBus = EventBus.builder().executor(ThreadUtils.getSingleThreadExecutorService("Server-EventBus-")).build()
+            EventBus clientEventBus = EventBus.builder().executor(ThreadUtils.getSingleThreadExecutorService("Client-EventBus-")).build()
+            NetworkHandler server = new NetworkHandlerImpl("server", runtimeConfig, networkConfig, PeerAddress.localhost(0))
+            server.useEventBus(serverEventBus)
+            NetworkHandler client = new NetworkHandlerImpl("client", runtimeConfig, networkConfig, PeerAddress.localhost(0))
+            client.useEventBus(clientEventBus)
+
+            // The Server links itself to the Stream before it starts reading:
+            AtomicInteger numBytesReceived = new AtomicInteger()
+            serverEventBus.subscribe(PeerNIOStreamConnectedEvent.class, { e ->
+                NIOStream stream = ((PeerNIOStreamConnectedEvent) e).getStream()
+                stream.input().onData({ d -> numBytesReceived.addAndGet((int) d.getData().size()) })
+                stream.startReading()
+            })
+
+            // The Client keeps the Stream, to send data through it:
+            AtomicReference<NIOStream> clientStream = new AtomicReference<>()
+            clientEventBus.subscribe(PeerNIOStreamConnectedEvent.class, { e ->
+                NIOStream stream = ((PeerNIOStreamConnectedEvent) e).getStream()
+                stream.startReading()
+                clientStream.set(stream)
+            })
+
+        when:
+            server.startServer()
+            client.start()
+            client.connect(server.getPeerAddress())
+            Thread.sleep(1_000)
+            clientStream.get().output().send(new StreamDataEvent<ByteArrayReader>(new ByteArrayReader(new byte[100])))
+            Thread.sleep(1_000)
+            server.stop()
+            client.stop()
+        then:
+            numBytesReceived.get() == 100
+    }
+
     /**
      * Testing that the right events are triggered when a connection is refused
      */
@@ -133,5 +267,31 @@ class ConnectionHandlerTest extends Specification {
             clientRejected.get()
     }
 
+    /**
+     * Testing that a connection that keeps failing is retried after a delay that grows with each failure, instead of
+     * being retried straight away
+     */
+    def "testing Failed Connection - retried with backoff"() {
+        given:
+            RuntimeConfig runtimeConfig = new RuntimeConfigDefault()
+            NetworkConfig networkConfig = new NetworkDefaultConfig()
+            EventBus clientEventBus = EventBus.builder().executor(ThreadUtils.getSingleThreadExecutorService("Client-EventBus-")).build()
+            NetworkHandler client = new NetworkHandlerImpl("client", runtimeConfig, networkConfig, PeerAddress.localhost(0))
+            client.useEventBus(clientEventBus)
+
+            AtomicInteger numRejections = new AtomicInteger()
+            clientEventBus.subscribe(PeerRejectedEvent.class, { e -> numRejections.incrementAndGet() })
+
+        when:
+            client.start()
+            client.connect(PeerAddress.fromIp("127.0.0.1:8100")) // dummy port
+            // The first attempt fails straight away, then it's retried after 1 sec, and then after 2 more secs:
+            Thread.sleep(2_500)
+            client.stop()
+        then:
+            numRejections.get() >= 2
+            numRejections.get() <= 3
+    }
+
 
 }
@@ -5,6 +5,7 @@ import io.bitcoinsv.bitcoinjsv.bitcoin.api.base.Tx
 import io.bitcoinsv.bitcoinjsv.bitcoin.api.base.TxOutPoint
 import io.bitcoinsv.bitcoinjsv.bitcoin.api.base.TxOutput
 import io.bitcoinsv.bitcoinjsv.core.Sha256Hash
+import io.bitcoinsv.bitcoinjsv.core.Utils
 import io.bitcoinsv.bitcoinjsv.params.MainNetParams
 import io.bitcoinsv.bitcoinjsv.params.Net
 import io.bitcoinsv.jcl.net.network.handlers.NetworkHandler
@@ -27,6 +28,7 @@ import io.bitcoinsv.jcl.net.protocol.messages.TxOutPointMsg
 import io.bitcoinsv.jcl.net.protocol.messages.TxOutputMsg
 import io.bitcoinsv.jcl.net.protocol.messages.common.BitcoinMsg
 import io.bitcoinsv.jcl.net.protocol.messages.common.BitcoinMsgBuilder
+import io.bitcoinsv.jcl.net.protocol.messages.common.FileStreamRequest
 import io.bitcoinsv.jcl.net.protocol.messages.common.StreamRequest
 import io.bitcoinsv.jcl.net.protocol.serialization.BlockMsgSerializer
 import io.bitcoinsv.jcl.net.protocol.serialization.common.BitcoinMsgSerializer
@@ -40,6 +42,10 @@ import io.bitcoinsv.jcl.tools.bytes.ByteArrayWriter
 import io.bitcoinsv.jcl.tools.common.TestingUtils
 import spock.lang.Specification
 
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
 import java.time.Duration
 import java.util.concurrent.atomic.AtomicBoolean
 import java.util.stream.Stream
@@ -175,4 +181,104 @@ class BlockStreamTest extends Specification {
         }
 
     }
+
+    def "Testing Client/Server can stream blocks from a File"() {
+        given:
+        // We disable the Handlers we dont need for this Test:
+        ProtocolConfig protocolConfig = ProtocolConfigBuilder.get(new MainNetParams(Net.MAINNET))
+
+        P2P server = new P2PBuilder("server")
+                .config(protocolConfig)
+                .serverPort(0) // Random Port
+                .excludeHandler(PingPongHandler.HANDLER_ID)
+                .excludeHandler(DiscoveryHandler.HANDLER_ID)
+                .excludeHandler(BlacklistHandler.HANDLER_ID)
+                .build()
+
+        P2P client = new P2PBuilder("client")
+                .config(protocolConfig)
+                .excludeHandler(PingPongHandler.HANDLER_ID)
+                .excludeHandler(DiscoveryHandler.HANDLER_ID)
+                .excludeHandler(BlacklistHandler.HANDLER_ID)
+                .build()
+
+        int totalTxsInBlock = 100
+
+        when:
+        server.startServer()
+        client.start()
+
+        Thread.sleep(1000)
+        client.REQUESTS.PEERS.connect(server.getPeerAddress()).submit()
+        Thread.sleep(1000)
+
+        //listen for block received on the server
+        BlockMsg receivedBlockMsg = null;
+        server.EVENTS.MSGS.BLOCK.forEach({ e ->
+            receivedBlockMsg = e.getBtcMsg().getBody()
+        })
+
+        //serialize a random block and store it in a File
+        BlockMsg blockMsg = buildBlockMsg(totalTxsInBlock)
+        SerializerContext context = SerializerContext.builder()
+                .protocolBasicConfig(protocolConfig.getBasicConfig())
+                .build()
+        ByteArrayWriter byteArrayWriter = new ByteArrayWriter()
+        new BlockMsgSerializer().serialize(context, blockMsg, byteArrayWriter)
+        byte[] blockBytes = byteArrayWriter.reader().getFullContentAndClose()
+
+        Path blockFile = Files.createTempFile("block", ".bin")
+        Files.write(blockFile, blockBytes)
+
+        //build the stream request and send down the pipeline, the payload is sent straight from the file
+        FileChannel channel = FileChannel.open(blockFile, StandardOpenOption.READ)
+        long checksum = Utils.readUint32(Sha256Hash.hashTwice(blockBytes), 0)
+        FileStreamRequest streamRequest = new FileStreamRequest(BlockMsg.MESSAGE_TYPE, channel, 0, blockBytes.length, checksum)
+        client.REQUESTS.MSGS.stream(server.getPeerAddress(), streamRequest).submit()
+
+        //wait for the server to receive the request
+        Thread.sleep(3000)
+
+        server.stop()
+        client.stop()
+        Files.deleteIfExists(blockFile)
+
+        then:
+        receivedBlockMsg != null
+        receivedBlockMsg.getBlockHeader().toBean() == blockMsg.getBlockHeader().toBean()
+        receivedBlockMsg.getTransactionMsg().size() == totalTxsInBlock
+        !channel.isOpen()
+    }
+
+    // Builds a Block Msg with random Txs
+    private BlockMsg buildBlockMsg(int numTxs) {
+        HeaderReadOnly block = TestingUtils.buildBlock()
+        List<TxMsg> txMsgList = new ArrayList<>()
+        for (int i = 0; i < numTxs; i++) {
+            Tx tx = TestingUtils.buildTx()
+            List<TxInputMsg> txInputMsgs = new ArrayList<>()
+            tx.getInputs().forEach({ txInput ->
+                TxOutPoint outPoint = txInput.getOutpoint()
+                TxOutPointMsg txOutPointMsg = new TxOutPointMsg(HashMsg.builder().hash(outPoint.getHash().getReversedBytes()).build(), outPoint.getIndex())
+                txInputMsgs.add(new TxInputMsg(txOutPointMsg, txInput.getScriptBytes(), txInput.getSequenceNumber()))
+            })
+            List<TxOutputMsg> txOutputMsgs = new ArrayList<>()
+            tx.getOutputs().forEach({ txOutput ->
+                txOutputMsgs.add(new TxOutputMsg(txOutput.getValue().getValue(), txOutput.getScriptBytes()))
+            })
+            txMsgList.add(new TxMsg(Optional.empty(), tx.getVersion(), txInputMsgs, txOutputMsgs, tx.getLockTime(), new byte[0], 0))
+        }
+
+        BlockHeaderMsg blockHeaderMsg = BlockHeaderMsg.builder()
+                .difficultyTarget(block.getDifficultyTarget())
+                .creationTimestamp(block.getTime())
+                .prevBlockHash(HashMsg.builder().hash(block.getPrevBlockHash().getReversedBytes()).build())
+                .merkleRoot(HashMsg.builder().hash(block.getMerkleRoot().getReversedBytes()).build())
+                .nonce(block.getNonce())
+                .version(block.getVersion())
+                .transactionCount(txMsgList.size())
+                .build()
+
+        return BlockMsg.builder().blockHeader(blockHeaderMsg).transactionMsgs(txMsgList).build()
+    }
 }
@@ -0,0 +1,135 @@
+package io.bitcoinsv.jcl.net.unit.network.streams
+
+import io.bitcoinsv.jcl.net.network.PeerAddress
+import io.bitcoinsv.jcl.net.network.bandwidth.BandwidthConfig
+import io.bitcoinsv.jcl.net.network.bandwidth.BandwidthLimiter
+import io.bitcoinsv.jcl.net.network.config.provided.NetworkDefaultConfig
+import io.bitcoinsv.jcl.net.network.streams.StreamCloseEvent
+import io.bitcoinsv.jcl.net.network.streams.StreamDataEvent
+import io.bitcoinsv.jcl.net.network.streams.nio.NIOInputStream
+import io.bitcoinsv.jcl.net.network.streams.nio.NIOOutputStream
+import io.bitcoinsv.jcl.tools.bytes.ByteArrayReader
+import io.bitcoinsv.jcl.tools.config.provided.RuntimeConfigDefault
+import spock.lang.Specification
+
+import java.nio.channels.SelectionKey
+import java.nio.channels.Selector
+import java.nio.channels.ServerSocketChannel
+import java.nio.channels.SocketChannel
+import java.util.concurrent.Executors
+
+/**
+ * Testing class for the Interests of the Selection Key set by the NIO Streams, when the reading or writing is
+ * suspended by the Memory Budget or paused by the Bandwidth limiter.
+ */
+class NIOStreamInterestOpsSpec extends Specification {
+
+    private ServerSocketChannel server
+    private SocketChannel client
+    private SocketChannel serverSide
+    private Selector selector
+    private SelectionKey key
+
+    // It connects a Socket to a local Server, and registers it (with no interests) in a Selector
+    def setup() {
+        server = ServerSocketChannel.open()
+        server.bind(new InetSocketAddress("localhost", 0))
+        client = SocketChannel.open(server.getLocalAddress())
+        serverSide = server.accept()
+        client.configureBlocking(false)
+        selector = Selector.open()
+        key = client.register(selector, 0)
+    }
+
+    def cleanup() {
+        [client, serverSide, server, selector].each { c -> c.close() }
+    }
+
+    private boolean isReading() {
+        return (key.interestOps() & SelectionKey.OP_READ) != 0
+    }
+
+    private boolean isWriting() {
+        return (key.interestOps() & SelectionKey.OP_WRITE) != 0
+    }
+
+    /**
+     * We test that once the reading is suspended, it's not enabled again when a pause of the Bandwidth limiter ends,
+     * only when it's resumed.
+     */
+    def "testing reading suspended while paused by the Bandwidth limiter"() {
+        given:
+            PeerAddress peer = PeerAddress.localhost(8001)
+            BandwidthLimiter limiter = new BandwidthLimiter(BandwidthConfig.builder().peerReadBytesPerSec(10_000).build())
+            limiter.addPeer(peer)
+            NIOInputStream stream = new NIOInputStream(peer, Executors.newSingleThreadExecutor(), new RuntimeConfigDefault(),
+                    new NetworkDefaultConfig(), key, limiter)
+        when:
+            boolean readingBeforeStart = isReading()
+            stream.startReading()
+            boolean readingAfterStart = isReading()
+
+            // The Peer has used more than its allowance, so the reading is paused for ~200 millisecs:
+            limiter.consumeRead(peer, 12_000)
+            stream.readFromSocket()
+            boolean readingWhilePaused = isReading()
+
+            // The reading is suspended before the pause ends:
+            stream.suspendReading()
+            Thread.sleep(600)
+            boolean readingAfterPause = isReading()
+
+            stream.resumeReading()
+            boolean readingAfterResume = isReading()
+        then:
+            !readingBeforeStart
+            readingAfterStart
+            !readingWhilePaused
+            !readingAfterPause
+            readingAfterResume
+        cleanup:
+            limiter.stop()
+    }
+
+    /**
+     * We test that while the writing is paused by the Bandwidth limiter, sending more data does not enable the writing
+     * again, and that it's enabled when the pause ends. Once the Stream is closed, nothing else is written.
+     */
+    def "testing writing paused by the Bandwidth limiter and closed"() {
+        given:
+            PeerAddress peer = PeerAddress.localhost(8002)
+            BandwidthLimiter limiter = new BandwidthLimiter(BandwidthConfig.builder().peerWriteBytesPerSec(10_000).build())
+            limiter.addPeer(peer)
+            NIOOutputStream stream = new NIOOutputStream(peer, new RuntimeConfigDefault(), new NetworkDefaultConfig(), key, limiter)
+        when:
+            // The Peer has used more than its allowance, so the writing is paused for ~200 millisecs:
+            limiter.consumeWrite(peer, null, 12_000)
+            stream.send(new StreamDataEvent<ByteArrayReader>(new ByteArrayReader(new byte[100])))
+            boolean writingAfterFirstSend = isWriting()
+            int bytesWrittenWhilePaused = stream.writeToSocket()
+            boolean writingWhilePaused = isWriting()
+
+            // More data sent during the pause:
+            stream.send(new StreamDataEvent<ByteArrayReader>(new ByteArrayReader(new byte[100])))
+            stream.writeToSocket()
+            boolean writingAfterSecondSend = isWriting()
+
+            Thread.sleep(600)
+            boolean writingAfterPause = isWriting()
+            int bytesWrittenAfterPause = stream.writeToSocket()
+
+            stream.close(new StreamCloseEvent())
+            stream.send(new StreamDataEvent<ByteArrayReader>(new ByteArrayReader(new byte[100])))
+            int bytesWrittenAfterClose = stream.writeToSocket()
+        then:
+            writingAfterFirstSend
+            bytesWrittenWhilePaused == 0
+            !writingWhilePaused
+            !writingAfterSecondSend
+            writingAfterPause
+            bytesWrittenAfterPause == 200
+            bytesWrittenAfterClose == 0
+        cleanup:
+            limiter.stop()
+    }
+}
@@ -0,0 +1,349 @@
+package io.bitcoinsv.jcl.net.unit.protocol.handlers.compactBlock
+
+import com.google.common.hash.Hashing
+import io.bitcoinsv.bitcoinjsv.core.Sha256Hash
+import io.bitcoinsv.bitcoinjsv.core.Utils
+import io.bitcoinsv.bitcoinjsv.params.MainNetParams
+import io.bitcoinsv.bitcoinjsv.params.Net
+import io.bitcoinsv.jcl.net.network.PeerAddress
+import io.bitcoinsv.jcl.net.network.events.NetStartEvent
+import io.bitcoinsv.jcl.net.network.events.NetStopEvent
+import io.bitcoinsv.jcl.net.protocol.config.ProtocolBasicConfig
+import io.bitcoinsv.jcl.net.protocol.config.ProtocolConfigBuilder
+import io.bitcoinsv.jcl.net.protocol.events.control.BlockDownloadedEvent
+import io.bitcoinsv.jcl.net.protocol.events.control.BlocksDownloadRequest
+import io.bitcoinsv.jcl.net.protocol.events.control.PeerHandshakedEvent
+import io.bitcoinsv.jcl.net.protocol.events.control.SendMsgRequest
+import io.bitcoinsv.jcl.net.protocol.events.data.BlockTxnMsgReceivedEvent
+import io.bitcoinsv.jcl.net.protocol.events.data.CompactBlockMsgReceivedEvent
+import io.bitcoinsv.jcl.net.protocol.events.data.LiteBlockDownloadedEvent
+import io.bitcoinsv.jcl.net.protocol.handlers.compactBlock.CompactBlockHandlerConfig
+import io.bitcoinsv.jcl.net.protocol.handlers.compactBlock.CompactBlockHandlerImpl
+import io.bitcoinsv.jcl.net.protocol.handlers.compactBlock.CompactBlockHandlerState
+import io.bitcoinsv.jcl.net.protocol.handlers.compactBlock.CompactBlockTxSource
+import io.bitcoinsv.jcl.net.protocol.messages.*
+import io.bitcoinsv.jcl.net.protocol.messages.common.BitcoinMsg
+import io.bitcoinsv.jcl.net.protocol.messages.common.BitcoinMsgBuilder
+import io.bitcoinsv.jcl.net.protocol.serialization.TxMsgSerializer
+import io.bitcoinsv.jcl.net.protocol.serialization.common.DeserializerContext
+import io.bitcoinsv.jcl.net.protocol.serialization.common.SerializerContext
+import io.bitcoinsv.jcl.net.unit.protocol.serialization.TxMsgSerializerSpec
+import io.bitcoinsv.jcl.tools.bytes.ByteArrayReader
+import io.bitcoinsv.jcl.tools.bytes.ByteArrayWriter
+import io.bitcoinsv.jcl.tools.bytes.MerkleRootIncremental
+import io.bitcoinsv.jcl.tools.config.provided.RuntimeConfigDefault
+import io.bitcoinsv.jcl.tools.events.EventBus
+import io.bitcoinsv.jcl.tools.thread.ThreadUtils
+import spock.lang.Specification
+
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.security.MessageDigest
+import java.time.Duration
+
+/**
+ * Testing class for the Compact Block Handler
+ */
+class CompactBlockHandlerSpec extends Specification {
+
+    // Fields of the Header of the Compact Block used in the tests:
+    private static final long BLOCK_VERSION = 1
+    private static final long BLOCK_TIMESTAMP = 1600000000
+    private static final long BLOCK_BITS = 0x1d00ffff
+    private static final long BLOCK_NONCE = 1
+    private static final long COMPACT_BLOCK_NONCE = 12345
+
+    private static final ProtocolBasicConfig BASIC_CONFIG = ProtocolConfigBuilder.get(new MainNetParams(Net.MAINNET)).getBasicConfig()
+
+    // It returns the Hash of the Tx, in human-readable format
+    private static Sha256Hash txHash(TxMsg txMsg) {
+        ByteArrayWriter writer = new ByteArrayWriter()
+        TxMsgSerializer.getInstance().serialize(SerializerContext.builder().protocolBasicConfig(BASIC_CONFIG).build(), txMsg, writer)
+        return Sha256Hash.wrapReversed(Sha256Hash.twiceOf(writer.reader().getFullContentAndClose()).getBytes())
+    }
+
+    // It returns the Short ID of a Tx (BIP 152), calculated straight from the definition: the SipHash-2-4 keys are
+    // the first 2 little-endian 64-bit integers of the single-SHA256 of the 80-bytes Block Header + the nonce (LE)
+    private static long shortId(byte[] merkleRoot, Sha256Hash txHash) {
+        ByteBuffer headerAndNonce = ByteBuffer.allocate(88).order(ByteOrder.LITTLE_ENDIAN)
+        headerAndNonce.putInt((int) BLOCK_VERSION)
+        headerAndNonce.put(new byte[32])
+        headerAndNonce.put(merkleRoot)
+        headerAndNonce.putInt((int) BLOCK_TIMESTAMP)
+        headerAndNonce.putInt((int) BLOCK_BITS)
+        headerAndNonce.putInt((int) BLOCK_NONCE)
+        headerAndNonce.putLong(COMPACT_BLOCK_NONCE)
+        byte[] keyHash = MessageDigest.getInstance("SHA-256").digest(headerAndNonce.array())
+        ByteBuffer key = ByteBuffer.wrap(keyHash).order(ByteOrder.LITTLE_ENDIAN)
+        return Hashing.sipHash24(key.getLong(0), key.getLong(8)).hashBytes(txHash.getReversedBytes()).asLong() & 0xFFFFFFFFFFFFL
+    }
+
+    // It returns 3 different Txs
+    private static List<TxMsg> buildTxs() {
+        DeserializerContext desContext = DeserializerContext.builder().protocolBasicConfig(BASIC_CONFIG).build()
+        TxMsg refTx = TxMsgSerializer.getInstance().deserialize(desContext, new ByteArrayReader(Utils.HEX.decode(TxMsgSerializerSpec.REF_MSG)))
+        return (0..2).collect { i -> refTx.toBuilder().lockTime(i).build() }
+    }
+
+    // It builds the Compact Block of a Block with the Txs given: the first Tx is prefilled (with the index given) and
+    // the rest are sent as Short IDs
+    private static CompactBlockMsg buildCompactBlock(HashMsg blockHash, List<TxMsg> txs, long prefilledIndex) {
+        MerkleRootIncremental merkleRoot = new MerkleRootIncremental()
+        txs.each { tx -> merkleRoot.add(txHash(tx)) }
+        byte[] merkleRootBytes = merkleRoot.getMerkleRoot().getReversedBytes()
+        CompactBlockHeaderMsg header = CompactBlockHeaderMsg.builder()
+            .hash(blockHash)
+            .version(BLOCK_VERSION)
+            .prevBlockHash(HashMsg.builder().hash(Sha256Hash.ZERO_HASH.getBytes()).build())
+            .merkleRoot(HashMsg.builder().hash(merkleRootBytes).build())
+            .creationTimestamp(BLOCK_TIMESTAMP)
+            .difficultyTarget(BLOCK_BITS)
+            .nonce(BLOCK_NONCE)
+            .build()
+        PrefilledTxMsg prefilledTx = PrefilledTxMsg.builder()
+            .index(VarIntMsg.builder().value(prefilledIndex).build())
+            .transaction(txs[0])
+            .build()
+        return CompactBlockMsg.builder()
+            .header(header)
+            .nonce(COMPACT_BLOCK_NONCE)
+            .shortTxIds(txs.subList(1, txs.size()).collect { tx -> shortId(merkleRootBytes, txHash(tx)) })
+            .prefilledTransactions([prefilledTx])
+            .build()
+    }
+
+    // It builds the Handler, using the Txs given as the Tx Source
+    private static CompactBlockHandlerImpl buildHandler(EventBus eventBus, List<TxMsg> txsInSource, Duration reconstructionTimeout) {
+        Map<Sha256Hash, TxMsg> txs = txsInSource.collectEntries { tx -> [(txHash(tx)): tx] }
+        CompactBlockTxSource txSource = { -> txs } as CompactBlockTxSource
+        CompactBlockHandlerConfig config = CompactBlockHandlerConfig.builder()
+            .basicConfig(BASIC_CONFIG)
+            .txSource(txSource)
+            .reconstructionTimeout(reconstructionTimeout)
+            .build()
+        CompactBlockHandlerImpl handler = new CompactBlockHandlerImpl("test", new RuntimeConfigDefault(), config)
+        handler.useEventBus(eventBus)
+        handler.init()
+        return handler
+    }
+
+    /**
+     * We test that the SipHash-2-4 implementation used gives the result of the reference test vector (SipHash paper,
+     * Appendix A), so the Short IDs calculated in these tests can be trusted.
+     */
+    def "testing SipHash-2-4 reference vector"() {
+        given:
+            byte[] message = (0..14).collect { i -> (byte) i } as byte[]
+        when:
+            long result = Hashing.sipHash24(0x0706050403020100L, 0x0f0e0d0c0b0a0908L).hashBytes(message).asLong()
+        then:
+            result == 0xa129ca6149be45e5L
+    }
+
+    /**
+     * We test that a Block with 3 Txs is reconstructed from a Compact Block: the first Tx is prefilled, the second one
+     * is taken from the Tx Source, and the third one is requested from the Peer.
+     */
+    def "testing Block reconstruction"() {
+        given:
+            List<TxMsg> txs = buildTxs()
+            EventBus eventBus = new EventBus(ThreadUtils.getSingleThreadExecutorService("CompactBlockTestBus"))
+            // The Tx Source only contains the second Tx:
+            CompactBlockHandlerImpl handler = buildHandler(eventBus, [txs[1]], null)
+
+            // We keep track of the Messages sent and the Blocks published:
+            List<BitcoinMsg> msgsSent = Collections.synchronizedList(new ArrayList<>())
+            List<LiteBlockDownloadedEvent> blocksPublished = Collections.synchronizedList(new ArrayList<>())
+            List<BlockDownloadedEvent> blocksDownloaded = Collections.synchronizedList(new ArrayList<>())
+            eventBus.subscribe(SendMsgRequest.class, { e -> msgsSent.add(e.getBtcMsg()) })
+            eventBus.subscribe(LiteBlockDownloadedEvent.class, { e -> blocksPublished.add(e) })
+            eventBus.subscribe(BlockDownloadedEvent.class, { e -> blocksDownloaded.add(e) })
+
+            PeerAddress peer = PeerAddress.localhost(8001)
+            HashMsg blockHash = HashMsg.builder().hash(Sha256Hash.of("block".getBytes()).getBytes()).build()
+            CompactBlockMsg compactBlock = buildCompactBlock(blockHash, txs, 0)
+        when:
+            eventBus.publish(new NetStartEvent(null))
+            eventBus.publish(new PeerHandshakedEvent(peer, null))
+            eventBus.publish(new CompactBlockMsgReceivedEvent(peer, new BitcoinMsgBuilder<>(BASIC_CONFIG, compactBlock).build()))
+            Thread.sleep(500)
+
+            // The third Tx has been requested:
+            SendCompactBlockMsg sendCmpctMsg = (SendCompactBlockMsg) msgsSent[0].getBody()
+            GetBlockTxnMsg getBlockTxnMsg = (GetBlockTxnMsg) msgsSent[1].getBody()
+            int numBlocksPending = handler.getNumBlocksPending()
+
+            // The Peer sends it:
+            BlockTxnMsg blockTxnMsg = BlockTxnMsg.builder().blockHash(blockHash).transactions([txs[2]]).build()
+            eventBus.publish(new BlockTxnMsgReceivedEvent(peer, new BitcoinMsgBuilder<>(BASIC_CONFIG, blockTxnMsg).build()))
+            Thread.sleep(500)
+            CompactBlockHandlerState state = handler.getState()
+            eventBus.publish(new NetStopEvent())
+        then:
+            sendCmpctMsg.isHighBandwidthRelaying()
+            sendCmpctMsg.getVersion() == 1
+            getBlockTxnMsg.getIndexes().collect { i -> i.getValue() } == [2]
+            numBlocksPending == 1
+            blocksPublished.size() == 1
+            blocksPublished[0].getBlock().getBody().getTransactionMsg() == txs
+            blocksDownloaded.size() == 1
+            blocksDownloaded[0].getBlockHeader().getHash() == Sha256Hash.wrapReversed(blockHash.getHashBytes())
+            state.numCompactBlocksReceived == 1
+            state.numBlocksReconstructed == 1
+            state.numTxsFromSource == 1
+            state.numTxsRequested == 1
+            state.numBlocksFailed == 0
+            state.numBlocksPending == 0
+    }
+
+    /**
+     * We test that when several Peers announce the same Block, only the first Compact Block is processed, and the
+     * Block is published only once, even if the other Peers send the Compact Block again once it's been completed.
+     */
+    def "testing Compact Blocks of the same Block from several Peers"() {
+        given:
+            List<TxMsg> txs = buildTxs()
+            EventBus eventBus = new EventBus(ThreadUtils.getSingleThreadExecutorService("CompactBlockTestBus"))
+            CompactBlockHandlerImpl handler = buildHandler(eventBus, [txs[1]], null)
+
+            List<SendMsgRequest> getBlockTxnRequests = Collections.synchronizedList(new ArrayList<>())
+            List<BlockDownloadedEvent> blocksDownloaded = Collections.synchronizedList(new ArrayList<>())
+            eventBus.subscribe(SendMsgRequest.class, { e -> if (e.getBtcMsg().getBody() instanceof GetBlockTxnMsg) getBlockTxnRequests.add(e) })
+            eventBus.subscribe(BlockDownloadedEvent.class, { e -> blocksDownloaded.add(e) })
+
+            PeerAddress peer1 = PeerAddress.localhost(8001)
+            PeerAddress peer2 = PeerAddress.localhost(8002)
+            HashMsg blockHash = HashMsg.builder().hash(Sha256Hash.of("block".getBytes()).getBytes()).build()
+            CompactBlockMsg compactBlock = buildCompactBlock(blockHash, txs, 0)
+            BlockTxnMsg blockTxnMsg = BlockTxnMsg.builder().blockHash(blockHash).transactions([txs[2]]).build()
+        when:
+            eventBus.publish(new NetStartEvent(null))
+            eventBus.publish(new PeerHandshakedEvent(peer1, null))
+            eventBus.publish(new PeerHandshakedEvent(peer2, null))
+            eventBus.publish(new CompactBlockMsgReceivedEvent(peer1, new BitcoinMsgBuilder<>(BASIC_CONFIG, compactBlock).build()))
+            eventBus.publish(new CompactBlockMsgReceivedEvent(peer2, new BitcoinMsgBuilder<>(BASIC_CONFIG, compactBlock).build()))
+            Thread.sleep(500)
+
+            // The Txs sent by the second Peer are ignored, since they were requested from the first one:
+            eventBus.publish(new BlockTxnMsgReceivedEvent(peer2, new BitcoinMsgBuilder<>(BASIC_CONFIG, blockTxnMsg).build()))
+            Thread.sleep(200)
+            int numBlocksPendingAfterPeer2 = handler.getNumBlocksPending()
+            eventBus.publish(new BlockTxnMsgReceivedEvent(peer1, new BitcoinMsgBuilder<>(BASIC_CONFIG, blockTxnMsg).build()))
+            Thread.sleep(500)
+
+            // The Block is complete. A Compact Block received now is ignored too:
+            eventBus.publish(new CompactBlockMsgReceivedEvent(peer2, new BitcoinMsgBuilder<>(BASIC_CONFIG, compactBlock).build()))
+            Thread.sleep(500)
+            CompactBlockHandlerState state = handler.getState()
+            eventBus.publish(new NetStopEvent())
+        then:
+            getBlockTxnRequests.size() == 1
+            getBlockTxnRequests[0].getPeerAddress() == peer1
+            numBlocksPendingAfterPeer2 == 1
+            blocksDownloaded.size() == 1
+            blocksDownloaded[0].getPeerAddress() == peer1
+            state.numCompactBlocksReceived == 3
+            state.numCompactBlocksIgnored == 2
+            state.numBlocksReconstructed == 1
+            state.numBlocksPending == 0
+    }
+
+    /**
+     * We test that a malformed Compact Block (a prefilled Tx out of the Block) is not reconstructed, and the whole
+     * Block is requested (preferably from the same Peer) instead.
+     */
+    def "testing malformed Compact Block"() {
+        given:
+            List<TxMsg> txs = buildTxs()
+            EventBus eventBus = new EventBus(ThreadUtils.getSingleThreadExecutorService("CompactBlockTestBus"))
+            CompactBlockHandlerImpl handler = buildHandler(eventBus, [], null)
+            List<BlocksDownloadRequest> blocksRequested = Collections.synchronizedList(new ArrayList<>())
+            eventBus.subscribe(BlocksDownloadRequest.class, { e -> blocksRequested.add(e) })
+
+            PeerAddress peer = PeerAddress.localhost(8001)
+            HashMsg blockHash = HashMsg.builder().hash(Sha256Hash.of("block".getBytes()).getBytes()).build()
+        when:
+            eventBus.publish(new NetStartEvent(null))
+            eventBus.publish(new PeerHandshakedEvent(peer, null))
+            eventBus.publish(new CompactBlockMsgReceivedEvent(peer, new BitcoinMsgBuilder<>(BASIC_CONFIG, buildCompactBlock(blockHash, txs, prefilledIndex)).build()))
+            Thread.sleep(500)
+            CompactBlockHandlerState state = handler.getState()
+            eventBus.publish(new NetStopEvent())
+        then:
+            blocksRequested.size() == 1
+            blocksRequested[0].getBlockHashes() == [Sha256Hash.wrapReversed(blockHash.getHashBytes()).toString()]
+            blocksRequested[0].getFromThisPeerPreferably() == peer
+            state.numBlocksFailed == 1
+            state.numBlocksReconstructed == 0
+            state.numBlocksPending == 0
+        where:
+            // Beyond the end of the Block, way beyond, and a VarInt bigger than a signed long:
+            prefilledIndex << [3, Integer.MAX_VALUE, -1]
+    }
+
+    /**
+     * We test that if the Peer does not send the right number of Txs requested, the whole Block is requested instead.
+     */
+    def "testing fallback on wrong Txs received"() {
+        given:
+            List<TxMsg> txs = buildTxs()
+            EventBus eventBus = new EventBus(ThreadUtils.getSingleThreadExecutorService("CompactBlockTestBus"))
+            CompactBlockHandlerImpl handler = buildHandler(eventBus, [txs[1]], null)
+            List<BlocksDownloadRequest> blocksRequested = Collections.synchronizedList(new ArrayList<>())
+            eventBus.subscribe(BlocksDownloadRequest.class, { e -> blocksRequested.add(e) })
+
+            PeerAddress peer = PeerAddress.localhost(8001)
+            HashMsg blockHash = HashMsg.builder().hash(Sha256Hash.of("block".getBytes()).getBytes()).build()
+        when:
+            eventBus.publish(new NetStartEvent(null))
+            eventBus.publish(new PeerHandshakedEvent(peer, null))
+            eventBus.publish(new CompactBlockMsgReceivedEvent(peer, new BitcoinMsgBuilder<>(BASIC_CONFIG, buildCompactBlock(blockHash, txs, 0)).build()))
+            Thread.sleep(500)
+            // Only 1 Tx has been requested, but the Peer sends 2:
+            BlockTxnMsg blockTxnMsg = BlockTxnMsg.builder().blockHash(blockHash).transactions([txs[1], txs[2]]).build()
+            eventBus.publish(new BlockTxnMsgReceivedEvent(peer, new BitcoinMsgBuilder<>(BASIC_CONFIG, blockTxnMsg).build()))
+            Thread.sleep(500)
+            CompactBlockHandlerState state = handler.getState()
+            eventBus.publish(new NetStopEvent())
+        then:
+            blocksRequested.size() == 1
+            blocksRequested[0].getFromThisPeerPreferably() == peer
+            state.numBlocksFailed == 1
+            state.numBlocksReconstructed == 0
+            state.numBlocksPending == 0
+    }
+
+    /**
+     * We test that if the Peer does not send the Txs requested in time, the whole Block is requested instead.
+     */
+    def "testing fallback after timeout"() {
+        given:
+            List<TxMsg> txs = buildTxs()
+            EventBus eventBus = new EventBus(ThreadUtils.getSingleThreadExecutorService("CompactBlockTestBus"))
+            CompactBlockHandlerImpl handler = buildHandler(eventBus, [], Duration.ofMillis(500))
+            List<BlocksDownloadRequest> blocksRequested = Collections.synchronizedList(new ArrayList<>())
+            eventBus.subscribe(BlocksDownloadRequest.class, { e -> blocksRequested.add(e) })
+
+            PeerAddress peer = PeerAddress.localhost(8001)
+            HashMsg blockHash = HashMsg.builder().hash(Sha256Hash.of("block".getBytes()).getBytes()).build()
+        when:
+            eventBus.publish(new NetStartEvent(null))
+            eventBus.publish(new PeerHandshakedEvent(peer, null))
+            eventBus.publish(new CompactBlockMsgReceivedEvent(peer, new BitcoinMsgBuilder<>(BASIC_CONFIG, buildCompactBlock(blockHash, txs, 0)).build()))
+            Thread.sleep(200)
+            int numBlocksPending = handler.getNumBlocksPending()
+            boolean requestedBeforeTimeout = !blocksRequested.isEmpty()
+            // The timeouts are checked every second:
+            Thread.sleep(2000)
+            CompactBlockHandlerState state = handler.getState()
+            eventBus.publish(new NetStopEvent())
+        then:
+            numBlocksPending == 1
+            !requestedBeforeTimeout
+            blocksRequested.size() == 1
+            blocksRequested[0].getFromThisPeerPreferably() == peer
+            state.numTxsRequested == 2
+            state.numBlocksFailed == 1
+            state.numBlocksPending == 0
+    }
+}
@@ -0,0 +1,213 @@
+package io.bitcoinsv.jcl.net.unit.protocol.handlers.inventory
+
+import io.bitcoinsv.bitcoinjsv.core.Sha256Hash
+import io.bitcoinsv.bitcoinjsv.core.Utils
+import io.bitcoinsv.bitcoinjsv.params.MainNetParams
+import io.bitcoinsv.bitcoinjsv.params.Net
+import io.bitcoinsv.jcl.net.network.PeerAddress
+import io.bitcoinsv.jcl.net.network.events.NetStartEvent
+import io.bitcoinsv.jcl.net.network.events.NetStopEvent
+import io.bitcoinsv.jcl.net.protocol.config.ProtocolBasicConfig
+import io.bitcoinsv.jcl.net.protocol.config.ProtocolConfigBuilder
+import io.bitcoinsv.jcl.net.protocol.events.control.DuplicateTxDiscardedEvent
+import io.bitcoinsv.jcl.net.protocol.events.control.PeerHandshakedEvent
+import io.bitcoinsv.jcl.net.protocol.events.control.SendMsgRequest
+import io.bitcoinsv.jcl.net.protocol.events.data.InvMsgReceivedEvent
+import io.bitcoinsv.jcl.net.protocol.events.data.RawTxMsgReceivedEvent
+import io.bitcoinsv.jcl.net.protocol.handlers.inventory.InventoryHandlerConfig
+import io.bitcoinsv.jcl.net.protocol.handlers.inventory.InventoryHandlerImpl
+import io.bitcoinsv.jcl.net.protocol.handlers.inventory.InventoryHandlerState
+import io.bitcoinsv.jcl.net.protocol.messages.GetdataMsg
+import io.bitcoinsv.jcl.net.protocol.messages.HashMsg
+import io.bitcoinsv.jcl.net.protocol.messages.InvMessage
+import io.bitcoinsv.jcl.net.protocol.messages.InventoryVectorMsg
+import io.bitcoinsv.jcl.net.protocol.messages.RawTxMsg
+import io.bitcoinsv.jcl.net.protocol.messages.common.BitcoinMsg
+import io.bitcoinsv.jcl.net.protocol.messages.common.BitcoinMsgBuilder
+import io.bitcoinsv.jcl.net.unit.protocol.serialization.TxMsgSerializerSpec
+import io.bitcoinsv.jcl.tools.config.provided.RuntimeConfigDefault
+import io.bitcoinsv.jcl.tools.events.EventBus
+import io.bitcoinsv.jcl.tools.thread.ThreadUtils
+import spock.lang.Specification
+
+import java.time.Duration
+
+/**
+ * Testing class for the Inventory Handler
+ */
+class InventoryHandlerSpec extends Specification {
+
+    /**
+     * We test that a Tx announced by 2 Peers is only requested from the first one, and that it's requested from the
+     * second one after the first one does not send it in time.
+     */
+    def "testing request from one Peer and fallback after timeout"() {
+        given:
+            ProtocolBasicConfig basicConfig = ProtocolConfigBuilder.get(new MainNetParams(Net.MAINNET)).getBasicConfig()
+            InventoryHandlerConfig config = InventoryHandlerConfig.builder()
+                .basicConfig(basicConfig)
+                .requestTimeout(Duration.ofMillis(500))
+                .batchInterval(Duration.ofMillis(50))
+                .build()
+            EventBus eventBus = new EventBus(ThreadUtils.getSingleThreadExecutorService("InventoryTestBus"))
+            InventoryHandlerImpl handler = new InventoryHandlerImpl("test", new RuntimeConfigDefault(), config)
+            handler.useEventBus(eventBus)
+            handler.init()
+
+            // We keep track of the GETDATA Messages sent to each Peer:
+            Map<PeerAddress, List<InventoryVectorMsg>> itemsRequested = Collections.synchronizedMap(new HashMap<>())
+            eventBus.subscribe(SendMsgRequest.class, { e ->
+                GetdataMsg getdataMsg = (GetdataMsg) e.getBtcMsg().getBody()
+                itemsRequested.computeIfAbsent(e.getPeerAddress(), { p -> new ArrayList<>() }).addAll(getdataMsg.getInvVectorList())
+            })
+
+            PeerAddress peer1 = PeerAddress.localhost(8001)
+            PeerAddress peer2 = PeerAddress.localhost(8002)
+
+            // The Tx, and the INV announcing it:
+            RawTxMsg rawTx = new RawTxMsg(Utils.HEX.decode(TxMsgSerializerSpec.REF_MSG), 0)
+            Sha256Hash txHash = rawTx.getHash()
+            InventoryVectorMsg item = InventoryVectorMsg.builder()
+                .type(InventoryVectorMsg.VectorType.MSG_TX)
+                .hashMsg(HashMsg.builder().hash(txHash.getReversedBytes()).build())
+                .build()
+            BitcoinMsg<InvMessage> invMsg = new BitcoinMsgBuilder<>(basicConfig, InvMessage.builder().invVectorMsgList(Arrays.asList(item)).build()).build()
+        when:
+            eventBus.publish(new NetStartEvent(null))
+            eventBus.publish(new PeerHandshakedEvent(peer1, null))
+            eventBus.publish(new PeerHandshakedEvent(peer2, null))
+            Thread.sleep(100)
+            eventBus.publish(new InvMsgReceivedEvent(peer1, invMsg))
+            eventBus.publish(new InvMsgReceivedEvent(peer2, invMsg))
+            Thread.sleep(300)
+
+            // Only the first Peer has been asked:
+            boolean requestedFromPeer1 = itemsRequested.containsKey(peer1)
+            boolean requestedFromPeer2 = itemsRequested.containsKey(peer2)
+            boolean inFlight = handler.isInFlight(txHash)
+            int numAnnouncers = handler.getNumAnnouncers(txHash)
+
+            // After the timeout, it's requested from the second one, which sends it:
+            Thread.sleep(400)
+            boolean requestedFromPeer2AfterTimeout = itemsRequested.containsKey(peer2)
+            eventBus.publish(new RawTxMsgReceivedEvent(peer2, new BitcoinMsgBuilder<>(basicConfig, rawTx).build()))
+            Thread.sleep(200)
+
+            // If it's announced again, it's not requested anymore:
+            eventBus.publish(new InvMsgReceivedEvent(peer1, invMsg))
+            Thread.sleep(200)
+            InventoryHandlerState state = handler.getState()
+            eventBus.publish(new NetStopEvent())
+        then:
+            requestedFromPeer1
+            !requestedFromPeer2
+            inFlight
+            numAnnouncers == 2
+            requestedFromPeer2AfterTimeout
+            itemsRequested.get(peer1) == [item]
+            itemsRequested.get(peer2) == [item]
+            state.numAnnouncements == 3
+            state.numRequested == 2
+            state.numTimeouts == 1
+            state.numReceived == 1
+            state.numItemsPending == 0
+            !handler.isInFlight(txHash)
+    }
+
+    /**
+     * We test that a Tx discarded as a duplicate by the Seen-Tx filter is considered received from the Peer it was
+     * requested from, so it's not requested again after the timeout.
+     */
+    def "testing duplicate Tx discarded"() {
+        given:
+            ProtocolBasicConfig basicConfig = ProtocolConfigBuilder.get(new MainNetParams(Net.MAINNET)).getBasicConfig()
+            InventoryHandlerConfig config = InventoryHandlerConfig.builder()
+                .basicConfig(basicConfig)
+                .requestTimeout(Duration.ofMillis(300))
+                .batchInterval(Duration.ofMillis(50))
+                .build()
+            EventBus eventBus = new EventBus(ThreadUtils.getSingleThreadExecutorService("InventoryTestBus"))
+            InventoryHandlerImpl handler = new InventoryHandlerImpl("test", new RuntimeConfigDefault(), config)
+            handler.useEventBus(eventBus)
+            handler.init()
+
+            PeerAddress peer1 = PeerAddress.localhost(8001)
+            Sha256Hash txHash = Sha256Hash.of("tx".getBytes())
+            InventoryVectorMsg item = InventoryVectorMsg.builder()
+                .type(InventoryVectorMsg.VectorType.MSG_TX)
+                .hashMsg(HashMsg.builder().hash(txHash.getReversedBytes()).build())
+                .build()
+            BitcoinMsg<InvMessage> invMsg = new BitcoinMsgBuilder<>(basicConfig, InvMessage.builder().invVectorMsgList(Arrays.asList(item)).build()).build()
+        when:
+            eventBus.publish(new NetStartEvent(null))
+            eventBus.publish(new PeerHandshakedEvent(peer1, null))
+            Thread.sleep(100)
+            eventBus.publish(new InvMsgReceivedEvent(peer1, invMsg))
+            Thread.sleep(100)
+            boolean inFlight = handler.isInFlight(txHash)
+            eventBus.publish(new DuplicateTxDiscardedEvent(peer1, txHash))
+            Thread.sleep(600)
+            InventoryHandlerState state = handler.getState()
+            eventBus.publish(new NetStopEvent())
+        then:
+            inFlight
+            !handler.isInFlight(txHash)
+            state.numReceived == 1
+            state.numTimeouts == 0
+            state.numItemsPending == 0
+    }
+
+    /**
+     * We test that the Items pending are bounded: Beyond "maxItemsPending" the oldest ones are dropped, and they are
+     * also dropped after the "pendingItemsRetention". The requests of the Items dropped are released, so the Peer can
+     * be asked for other Items.
+     */
+    def "testing pending Items dropped"() {
+        given:
+            ProtocolBasicConfig basicConfig = ProtocolConfigBuilder.get(new MainNetParams(Net.MAINNET)).getBasicConfig()
+            InventoryHandlerConfig config = InventoryHandlerConfig.builder()
+                .basicConfig(basicConfig)
+                .batchInterval(Duration.ofMillis(50))
+                .maxInFlightPerPeer(1)
+                .maxItemsPending(2)
+                .pendingItemsRetention(Duration.ofMillis(400))
+                .build()
+            EventBus eventBus = new EventBus(ThreadUtils.getSingleThreadExecutorService("InventoryTestBus"))
+            InventoryHandlerImpl handler = new InventoryHandlerImpl("test", new RuntimeConfigDefault(), config)
+            handler.useEventBus(eventBus)
+            handler.init()
+
+            PeerAddress peer1 = PeerAddress.localhost(8001)
+            List<Sha256Hash> txHashes = (1..3).collect { i -> Sha256Hash.of(("tx" + i).getBytes()) }
+            List<InventoryVectorMsg> items = txHashes.collect { txHash -> InventoryVectorMsg.builder()
+                .type(InventoryVectorMsg.VectorType.MSG_TX)
+                .hashMsg(HashMsg.builder().hash(txHash.getReversedBytes()).build())
+                .build()
+            }
+            BitcoinMsg<InvMessage> invMsg = new BitcoinMsgBuilder<>(basicConfig, InvMessage.builder().invVectorMsgList(items).build()).build()
+        when:
+            eventBus.publish(new NetStartEvent(null))
+            eventBus.publish(new PeerHandshakedEvent(peer1, null))
+            Thread.sleep(100)
+
+            // The first Tx is requested, and dropped when the third one is announced. Its request is released, so
+            // another one is requested:
+            eventBus.publish(new InvMsgReceivedEvent(peer1, invMsg))
+            Thread.sleep(200)
+            InventoryHandlerState stateAfterInv = handler.getState()
+            int numAnnouncersFirstTx = handler.getNumAnnouncers(txHashes[0])
+
+            // The rest are dropped after the retention time:
+            Thread.sleep(600)
+            InventoryHandlerState stateAfterRetention = handler.getState()
+            eventBus.publish(new NetStopEvent())
+        then:
+            stateAfterInv.numItemsPending == 2
+            stateAfterInv.numDropped == 1
+            numAnnouncersFirstTx == 0
+            stateAfterInv.numRequested == 2
+            stateAfterInv.numItemsInFlight == 1
+            stateAfterRetention.numItemsPending == 0
+            stateAfterRetention.numDropped == 3
+    }
+}
@@ -317,4 +317,34 @@ class DeserializerSpec extends Specification {
         then:
             cacheSize <= MAX_CACHE_SIZE_IN_NUM_MSGS
     }
+
+    /**
+     * We test that the Cache is keyed by the content of the Messages: different messages are never returned in place
+     * of each other, and the size of the Cache in bytes is kept under the limit
+     */
+    def "testing Cache keyed by content and sized in bytes"() {
+        int NUM_MSGS = 20
+        given:
+            ProtocolBasicConfig protocolConfig = new ProtocolBSVMainConfig().basicConfig
+
+            // All the messages are different:
+            List<BitcoinMsg> msgsFromP2P = new ArrayList<>()
+            for (int i = 0; i < NUM_MSGS; i++) msgsFromP2P.add(buildHeadersMsg(protocolConfig, 10, false))
+            long msgSize = msgsFromP2P.get(0).header.getMsgLength()
+
+            // The Cache can only keep around half of the messages:
+            DeserializerConfig cacheConfig = DeserializerConfig.builder()
+                .maxCacheSizeInBytes((msgSize + 100) * (NUM_MSGS.intdiv(2)))
+                .generateStats(true)
+                .build()
+            Deserializer cache = new Deserializer(new RuntimeConfigDefault(), cacheConfig)
+        when:
+            List<BitcoinMsg> messagesFromCache = deserializeWithCache(protocolConfig, serializeMessages(protocolConfig, msgsFromP2P), cache)
+            DeserializerState cacheState = cache.getState()
+        then:
+            msgsFromP2P.equals(messagesFromCache)
+            cacheState.numLoads == NUM_MSGS
+            cacheState.numHits == 0
+            cache.getCacheSize() <= NUM_MSGS.intdiv(2)
+    }
 }
@@ -6,13 +6,16 @@ import io.bitcoinsv.jcl.net.protocol.config.ProtocolConfigBuilder
 import io.bitcoinsv.jcl.net.protocol.handlers.message.streams.deserializer.Deserializer
 import io.bitcoinsv.jcl.net.protocol.handlers.message.streams.deserializer.DeserializerConfig
 import io.bitcoinsv.jcl.net.protocol.handlers.message.streams.deserializer.DeserializerStream
+import io.bitcoinsv.jcl.net.protocol.messages.RawTxMsg
 import io.bitcoinsv.jcl.net.protocol.messages.VersionAckMsg
 import io.bitcoinsv.jcl.net.protocol.messages.common.BitcoinMsg
+import io.bitcoinsv.jcl.net.unit.protocol.serialization.TxMsgSerializerSpec
 import io.bitcoinsv.jcl.net.unit.protocol.tools.MsgTest
 import io.bitcoinsv.jcl.tools.bytes.ByteArrayReader
 import io.bitcoinsv.jcl.tools.config.RuntimeConfig
 import io.bitcoinsv.jcl.tools.config.provided.RuntimeConfigDefault
 
+import io.bitcoinsv.bitcoinjsv.core.Sha256Hash
 import io.bitcoinsv.bitcoinjsv.core.Utils
 import io.bitcoinsv.bitcoinjsv.params.MainNetParams
 import io.bitcoinsv.bitcoinjsv.params.Net
@@ -20,6 +23,7 @@ import spock.lang.Specification
 
 import java.util.concurrent.ExecutorService
 import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
 import java.util.concurrent.atomic.AtomicReference
 
 /**
@@ -59,4 +63,50 @@ class DeserializerStreamSpec extends Specification {
             // We check the Deserialized Msg is the same as the original one:
             msgReceived.get().equals(msg)
     }
+
+    /**
+     * We test that when the Seen-Tx filter is enabled, a TX received from 2 different Peers is only deserialized and
+     * notified once, and the duplicate is counted in the State of the Stream of the second Peer and notified
+     */
+    def "Testing Deserializer Seen-Tx filter"() {
+        given:
+            RuntimeConfig runtimeConfig = new RuntimeConfigDefault()
+            ProtocolConfig protocolConfig = ProtocolConfigBuilder.get(new MainNetParams(Net.MAINNET))
+            ExecutorService eventBusExecutor = Executors.newSingleThreadExecutor()
+            ExecutorService dedicatedConnExecutor = Executors.newSingleThreadExecutor()
+
+            // Both Streams share the same Deserializer, so they share the same filter:
+            DeserializerConfig deserializerConfig = DeserializerConfig.builder().seenTxFilterEnabled(true).build()
+            Deserializer deserializer = new Deserializer(runtimeConfig, deserializerConfig)
+            MsgTest.DummyPeerStreamSource source1 = MsgTest.getDummyStreamSource()
+            MsgTest.DummyPeerStreamSource source2 = MsgTest.getDummyStreamSource()
+            DeserializerStream stream1 = new DeserializerStream(eventBusExecutor, source1, runtimeConfig, protocolConfig.getMessageConfig(), deserializer, dedicatedConnExecutor)
+            DeserializerStream stream2 = new DeserializerStream(eventBusExecutor, source2, runtimeConfig, protocolConfig.getMessageConfig(), deserializer, dedicatedConnExecutor)
+
+            // We count the Msgs Deserialized:
+            AtomicInteger numMsgsReceived = new AtomicInteger()
+            stream1.onData({ e -> numMsgsReceived.incrementAndGet()})
+            stream2.onData({ e -> numMsgsReceived.incrementAndGet()})
+
+            // We keep track of the Duplicates notified:
+            List<Sha256Hash> duplicatesNotified = Collections.synchronizedList(new ArrayList<>())
+            stream1.onDuplicateTx({ h -> duplicatesNotified.add(h)})
+            stream2.onDuplicateTx({ h -> duplicatesNotified.add(h)})
+            Sha256Hash txHash = new RawTxMsg(Utils.HEX.decode(TxMsgSerializerSpec.REF_MSG), 0).getHash()
+        when:
+            source1.send(new StreamDataEvent<ByteArrayReader>(new ByteArrayReader(Utils.HEX.decode(TxMsgSerializerSpec.REF_MSG_FULL))))
+            Thread.sleep(100)
+            // The same Tx, followed by another Msg to check that the bytes after the duplicate are still processed:
+            source2.send(new StreamDataEvent<ByteArrayReader>(new ByteArrayReader(Utils.HEX.decode(TxMsgSerializerSpec.REF_MSG_FULL + MsgTest.VERSION_ACK_HEX))))
+            Thread.sleep(100)
+        then:
+            numMsgsReceived.get() == 2
+            stream1.getState().getNumTxsChecked() == 1
+            stream1.getState().getNumDuplicateTxs() == 0
+            stream2.getState().getNumTxsChecked() == 1
+            stream2.getState().getNumDuplicateTxs() == 1
+            stream2.getState().getDuplicateTxRate() == 1.0
+            deserializer.getSeenTxFilter().getNumDuplicates() == 1
+            duplicatesNotified == [txHash]
+    }
 }
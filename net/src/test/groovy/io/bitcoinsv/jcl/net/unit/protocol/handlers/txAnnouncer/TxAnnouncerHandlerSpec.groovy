@@ -0,0 +1,158 @@
+package io.bitcoinsv.jcl.net.unit.protocol.handlers.txAnnouncer
+
+import io.bitcoinsv.bitcoinjsv.core.Sha256Hash
+import io.bitcoinsv.bitcoinjsv.params.MainNetParams
+import io.bitcoinsv.bitcoinjsv.params.Net
+import io.bitcoinsv.jcl.net.network.PeerAddress
+import io.bitcoinsv.jcl.net.network.events.NetStartEvent
+import io.bitcoinsv.jcl.net.network.events.NetStopEvent
+import io.bitcoinsv.jcl.net.protocol.config.ProtocolBasicConfig
+import io.bitcoinsv.jcl.net.protocol.config.ProtocolConfigBuilder
+import io.bitcoinsv.jcl.net.protocol.events.control.PeerHandshakedEvent
+import io.bitcoinsv.jcl.net.protocol.events.control.SendMsgRequest
+import io.bitcoinsv.jcl.net.protocol.events.control.TxsAnnounceRequest
+import io.bitcoinsv.jcl.net.protocol.events.data.FeeMsgReceivedEvent
+import io.bitcoinsv.jcl.net.protocol.events.data.InvMsgReceivedEvent
+import io.bitcoinsv.jcl.net.protocol.handlers.txAnnouncer.TxAnnouncerHandlerConfig
+import io.bitcoinsv.jcl.net.protocol.handlers.txAnnouncer.TxAnnouncerHandlerImpl
+import io.bitcoinsv.jcl.net.protocol.handlers.txAnnouncer.TxAnnouncerHandlerState
+import io.bitcoinsv.jcl.net.protocol.messages.FeeFilterMsg
+import io.bitcoinsv.jcl.net.protocol.messages.HashMsg
+import io.bitcoinsv.jcl.net.protocol.messages.InvMessage
+import io.bitcoinsv.jcl.net.protocol.messages.InventoryVectorMsg
+import io.bitcoinsv.jcl.net.protocol.messages.common.BitcoinMsg
+import io.bitcoinsv.jcl.net.protocol.messages.common.BitcoinMsgBuilder
+import io.bitcoinsv.jcl.net.protocol.wrapper.P2PRequestHandler
+import io.bitcoinsv.jcl.tools.config.provided.RuntimeConfigDefault
+import io.bitcoinsv.jcl.tools.events.EventBus
+import io.bitcoinsv.jcl.tools.thread.ThreadUtils
+import spock.lang.Specification
+
+import java.time.Duration
+
+/**
+ * Testing class for the Tx Announcer Handler
+ */
+class TxAnnouncerHandlerSpec extends Specification {
+
+    /**
+     * We test that the Txs to announce are batched in a single INV Message per Peer, and that they are not announced
+     * to Peers that already know them or whose Fee Filter is higher than their Fee.
+     */
+    def "testing batched announcements"() {
+        given:
+            ProtocolBasicConfig basicConfig = ProtocolConfigBuilder.get(new MainNetParams(Net.MAINNET)).getBasicConfig()
+            TxAnnouncerHandlerConfig config = TxAnnouncerHandlerConfig.builder()
+                .basicConfig(basicConfig)
+                .checkInterval(Duration.ofMillis(50))
+                .announcementInterval(Duration.ofMillis(100))
+                .build()
+            EventBus eventBus = new EventBus(ThreadUtils.getSingleThreadExecutorService("TxAnnouncerTestBus"))
+            TxAnnouncerHandlerImpl handler = new TxAnnouncerHandlerImpl("test", new RuntimeConfigDefault(), config)
+            handler.useEventBus(eventBus)
+            handler.init()
+
+            // We keep track of the INV Messages sent to each Peer:
+            Map<PeerAddress, List<InvMessage>> invsSent = Collections.synchronizedMap(new HashMap<>())
+            eventBus.subscribe(SendMsgRequest.class, { e ->
+                if (e.getBtcMsg().getBody() instanceof InvMessage)
+                    invsSent.computeIfAbsent(e.getPeerAddress(), { p -> new ArrayList<>() }).add((InvMessage) e.getBtcMsg().getBody())
+            })
+
+            PeerAddress peer1 = PeerAddress.localhost(8001)
+            PeerAddress peer2 = PeerAddress.localhost(8002)
+            PeerAddress peer3 = PeerAddress.localhost(8003)
+
+            Sha256Hash txA = Sha256Hash.of("txA".getBytes())
+            Sha256Hash txB = Sha256Hash.of("txB".getBytes())
+            InventoryVectorMsg itemA = InventoryVectorMsg.builder()
+                .type(InventoryVectorMsg.VectorType.MSG_TX)
+                .hashMsg(HashMsg.builder().hash(txA.getReversedBytes()).build())
+                .build()
+            InventoryVectorMsg itemB = InventoryVectorMsg.builder()
+                .type(InventoryVectorMsg.VectorType.MSG_TX)
+                .hashMsg(HashMsg.builder().hash(txB.getReversedBytes()).build())
+                .build()
+            BitcoinMsg<InvMessage> invMsg = new BitcoinMsgBuilder<>(basicConfig, InvMessage.builder().invVectorMsgList(Arrays.asList(itemA)).build()).build()
+            BitcoinMsg<FeeFilterMsg> feeMsg = new BitcoinMsgBuilder<>(basicConfig, FeeFilterMsg.builder().fee(1000).build()).build()
+        when:
+            eventBus.publish(new NetStartEvent(null))
+            eventBus.publish(new PeerHandshakedEvent(peer1, null))
+            eventBus.publish(new PeerHandshakedEvent(peer2, null))
+            eventBus.publish(new PeerHandshakedEvent(peer3, null))
+            Thread.sleep(100)
+
+            // Peer1 already knows about txA, and Peer2 does not want Txs paying less than 1000 sats/KB:
+            eventBus.publish(new InvMsgReceivedEvent(peer1, invMsg))
+            eventBus.publish(new FeeMsgReceivedEvent(peer2, feeMsg))
+            Thread.sleep(100)
+
+            // We announce both Txs, twice:
+            eventBus.publish(new TxsAnnounceRequest(Arrays.asList(txA, txB), 500, null))
+            eventBus.publish(new TxsAnnounceRequest(Arrays.asList(txA, txB), 500, null))
+            Thread.sleep(1500)
+            TxAnnouncerHandlerState state = handler.getState()
+            eventBus.publish(new NetStopEvent())
+        then:
+            invsSent.get(peer1).size() == 1
+            invsSent.get(peer1).get(0).getInvVectorList() == [itemB]
+            !invsSent.containsKey(peer2)
+            invsSent.get(peer3).size() == 1
+            invsSent.get(peer3).get(0).getInvVectorList() == [itemA, itemB]
+            state.numTxsAnnounced == 3
+            state.numTxsNotAnnounced == 9
+            state.numInvMsgsSent == 2
+    }
+
+    /**
+     * We test that the queue of Txs to announce to a Peer is bounded, and the Txs that don't fit are not announced.
+     */
+    def "testing pending announcements bounded"() {
+        given:
+            ProtocolBasicConfig basicConfig = ProtocolConfigBuilder.get(new MainNetParams(Net.MAINNET)).getBasicConfig()
+            TxAnnouncerHandlerConfig config = TxAnnouncerHandlerConfig.builder()
+                .basicConfig(basicConfig)
+                .checkInterval(Duration.ofMillis(50))
+                .announcementInterval(Duration.ofMillis(100))
+                .maxPendingAnnouncementsPerPeer(5)
+                .build()
+            EventBus eventBus = new EventBus(ThreadUtils.getSingleThreadExecutorService("TxAnnouncerTestBus"))
+            TxAnnouncerHandlerImpl handler = new TxAnnouncerHandlerImpl("test", new RuntimeConfigDefault(), config)
+            handler.useEventBus(eventBus)
+            handler.init()
+
+            // We keep track of the Txs announced:
+            List<InventoryVectorMsg> itemsAnnounced = Collections.synchronizedList(new ArrayList<>())
+            eventBus.subscribe(SendMsgRequest.class, { e -> itemsAnnounced.addAll(((InvMessage) e.getBtcMsg().getBody()).getInvVectorList()) })
+
+            PeerAddress peer1 = PeerAddress.localhost(8001)
+            List<Sha256Hash> txHashes = (1..8).collect { i -> Sha256Hash.of(("tx" + i).getBytes()) }
+        when:
+            eventBus.publish(new NetStartEvent(null))
+            eventBus.publish(new PeerHandshakedEvent(peer1, null))
+            Thread.sleep(100)
+            // We announce all the Txs at once, so they can't be sent before the queue is full:
+            eventBus.publish(new TxsAnnounceRequest(txHashes))
+            Thread.sleep(1500)
+            TxAnnouncerHandlerState state = handler.getState()
+            eventBus.publish(new NetStopEvent())
+        then:
+            itemsAnnounced.size() == 5
+            state.numTxsAnnounced == 5
+            state.numTxsDropped == 3
+            state.numTxsPending == 0
+    }
+
+    /**
+     * We test that the Txs can not be announced if the Tx Announcer Handler has not been configured.
+     */
+    def "testing announcements without the Handler"() {
+        given:
+            EventBus eventBus = new EventBus(ThreadUtils.getSingleThreadExecutorService("TxAnnouncerTestBus"))
+            P2PRequestHandler requestHandler = new P2PRequestHandler(eventBus)
+        when:
+            requestHandler.TXS.announce(Sha256Hash.of("tx".getBytes())).submit()
+        then:
+            thrown(IllegalStateException)
+    }
+}
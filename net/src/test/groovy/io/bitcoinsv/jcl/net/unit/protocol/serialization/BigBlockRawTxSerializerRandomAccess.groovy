@@ -16,6 +16,7 @@ import io.bitcoinsv.jcl.net.protocol.serialization.largeMsgs.RawBigBlockDeserial
 import io.bitcoinsv.jcl.tools.bytes.ByteArrayReader
 import io.bitcoinsv.jcl.tools.bytes.ByteArrayReaderRealTime
 import io.bitcoinsv.jcl.tools.bytes.ByteArrayWriter
+import io.bitcoinsv.jcl.tools.bytes.MerkleRootIncremental
 import io.bitcoinsv.bitcoinjsv.core.Utils
 import spock.lang.Specification
 
@@ -90,13 +91,21 @@ class BigBlockRawTxSerializerRandomAccess extends Specification {
             // The HEX calculated previously still needs the Block Header before that. Now that we have the Txs already
             // Serialized, we use them to populate the block Header:
 
+            // The Merkle Root of the Block must match the Txs:
+            ByteArrayWriter singleTxWriter = new ByteArrayWriter()
+            TxMsgSerializer.getInstance().serialize(serContext, txMsg, singleTxWriter)
+            Sha256Hash txHash = Sha256Hash.wrapReversed(Sha256Hash.hashTwice(singleTxWriter.reader().getFullContent()))
+            MerkleRootIncremental merkleRoot = new MerkleRootIncremental()
+            for (int i = 0; i < NUM_TXS; i++) merkleRoot.add(txHash)
+            HashMsg merkleRootMsg = new HashMsg.HashMsgBuilder().hash(merkleRoot.getMerkleRoot().getReversedBytes()).build()
+
             // we serialize a Block Header:
             BlockHeaderMsg blockHeaderMsg = new BlockHeaderMsg.BlockHeaderMsgBuilder()
                 .version(1)
                 .hash(Sha256Hash.ZERO_HASH)
                 .creationTimestamp(1)
                 .difficultyTarget(1)
-                .merkleRoot(zeroHashMsg)
+                .merkleRoot(merkleRootMsg)
                 .nonce(1)
                 .prevBlockHash(zeroHashMsg)
                 .transactionCount(NUM_TXS)
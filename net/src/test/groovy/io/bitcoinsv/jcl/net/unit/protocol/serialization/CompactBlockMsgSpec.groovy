@@ -140,4 +140,35 @@ class CompactBlockMsgSpec extends Specification {
             byteInterval | delayMs
             10           | 5
     }
+
+    def "Testing CompactBlockMsg with more than 32767 short Ids"() {
+        given:
+            ProtocolConfig config = ProtocolConfigBuilder.get(new MainNetParams(Net.MAINNET))
+            SerializerContext serializerContext = SerializerContext.builder()
+                .protocolBasicConfig(config.getBasicConfig())
+                .build()
+            DeserializerContext deserializerContext = DeserializerContext.builder()
+                .protocolBasicConfig(config.getBasicConfig())
+                .build()
+
+            CompactBlockMsgSerializer serializer = CompactBlockMsgSerializer.getInstance()
+            CompactBlockMsg compactBlockMsg = serializer.deserialize(deserializerContext, new ByteArrayReader(Utils.HEX.decode(COMPACT_BLOCK_BYTES)))
+
+            List<Long> shortTxIds = (0..<40_000).collect { i -> (long) i }
+            CompactBlockMsg bigCompactBlockMsg = CompactBlockMsg.builder()
+                .header(compactBlockMsg.getHeader())
+                .nonce(compactBlockMsg.getNonce())
+                .shortTxIds(shortTxIds)
+                .prefilledTransactions(Collections.emptyList())
+                .build()
+
+        when:
+            ByteArrayWriter byteWriter = new ByteArrayWriter()
+            serializer.serialize(serializerContext, bigCompactBlockMsg, byteWriter)
+            CompactBlockMsg msg = serializer.deserialize(deserializerContext, byteWriter.reader())
+
+        then:
+            msg.getShortTxIds() == shortTxIds
+            msg.getPrefilledTransactions().isEmpty()
+    }
 }
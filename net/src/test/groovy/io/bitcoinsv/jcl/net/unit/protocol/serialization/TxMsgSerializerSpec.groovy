@@ -19,6 +19,7 @@ import io.bitcoinsv.jcl.net.protocol.serialization.common.SerializerContext
 import io.bitcoinsv.jcl.net.unit.protocol.tools.ByteArrayArtificalStreamProducer
 import io.bitcoinsv.jcl.tools.bytes.ByteArrayReader
 import io.bitcoinsv.jcl.tools.bytes.ByteArrayWriter
+import io.bitcoinsv.bitcoinjsv.core.Sha256Hash
 import io.bitcoinsv.bitcoinjsv.core.Utils
 import io.bitcoinsv.bitcoinjsv.params.MainNetParams
 import io.bitcoinsv.bitcoinjsv.params.Net
@@ -80,6 +81,26 @@ class TxMsgSerializerSpec extends Specification {
                 10       |    15
     }
 
+    def "Testing TransactionMsg Deserialize calculating the Hash"() {
+        given:
+            ProtocolConfig config = ProtocolConfigBuilder.get(new MainNetParams(Net.MAINNET))
+            DeserializerContext context = DeserializerContext.builder()
+                    .protocolBasicConfig(config.getBasicConfig())
+                    .calculateHashes(true)
+                    .build()
+            TxMsgSerializer serializer = TxMsgSerializer.getInstance()
+            byte[] txBytes = Utils.HEX.decode(REF_MSG)
+        when:
+            ByteArrayReader byteReader = new ByteArrayReader(txBytes)
+            TxMsg message = serializer.deserialize(context, byteReader)
+        then:
+            message.getHash().isPresent()
+            message.getHash().get() == Sha256Hash.wrapReversed(Sha256Hash.twiceOf(txBytes).getBytes())
+            byteReader.size() == 0
+            message.version == REF_VERSION
+            message.lockTime == REF_LOCKTIME
+    }
+
     def "Testing TxInputMessage Serializing"() {
         given:
             ProtocolConfig config = ProtocolConfigBuilder.get(new MainNetParams(Net.MAINNET))
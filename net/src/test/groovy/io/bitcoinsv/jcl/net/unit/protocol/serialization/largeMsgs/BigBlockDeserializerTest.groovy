@@ -6,9 +6,11 @@ import io.bitcoinsv.jcl.net.protocol.messages.PartialBlockHeaderMsg
 import io.bitcoinsv.jcl.net.protocol.messages.PartialBlockTXsMsg
 import io.bitcoinsv.jcl.net.protocol.serialization.common.DeserializerContext
 import io.bitcoinsv.jcl.net.protocol.serialization.largeMsgs.BigBlockDeserializer
+import io.bitcoinsv.jcl.net.protocol.serialization.largeMsgs.InvalidMerkleRootException
 import io.bitcoinsv.jcl.net.unit.protocol.tools.MsgTest
 import io.bitcoinsv.jcl.tools.bytes.ByteArrayReader
 import io.bitcoinsv.jcl.tools.bytes.ByteArrayReaderOptimized
+import io.bitcoinsv.bitcoinjsv.core.Sha256Hash
 import io.bitcoinsv.bitcoinjsv.core.Utils
 import spock.lang.Specification
 
@@ -71,4 +73,55 @@ class BigBlockDeserializerTest extends Specification {
             !errorThrown.get()
     }
 
+    /**
+     * We test that the Merkle Root of the Block is verified while the Txs are deserialized. If it doesn't match, an
+     * error is notified INSTEAD of the last Batch of Txs.
+     */
+    def "Testing Big-Block Merkle Root verification"() {
+        given:
+            final int NUM_TXS = 2
+            String BLOCK_HEX = MsgTest.BLOCK_BODY_HEX
+            // The Merkle Root in the Header of this Block (bytes 36-68) does NOT match its Txs, so it's only used as
+            // it is for the corrupted case. Otherwise we replace it with the right one:
+            if (!corrupted) {
+                byte[] blockBytes = Utils.HEX.decode(BLOCK_HEX)
+                byte[] merkleRoot = Sha256Hash.wrap("cb531c1ad27f248371c7050d793e520cea80e4fe9388fd521c9ca509aee95bfe").getReversedBytes()
+                System.arraycopy(merkleRoot, 0, blockBytes, 36, 32)
+                BLOCK_HEX = Utils.HEX.encode(blockBytes)
+            }
+
+            ProtocolConfig protocolConfig = new ProtocolBSVMainConfig()
+            AtomicInteger numTXsReceived = new AtomicInteger()
+            List<Exception> errors = new ArrayList<>()
+
+        when:
+            ByteArrayReader reader = new ByteArrayReader(Utils.HEX.decode(BLOCK_HEX))
+            ByteArrayReader optimizedReader = new ByteArrayReaderOptimized(reader)
+            BigBlockDeserializer bigBlockDeserializer = new BigBlockDeserializer()
+            bigBlockDeserializer.setPartialMsgSize(1_000_000) // 1MB
+
+            DeserializerContext deserializedContext = DeserializerContext.builder()
+                .protocolBasicConfig(protocolConfig.getBasicConfig())
+                .maxBytesToRead(reader.size())
+                .calculateHashes(true)
+                .build()
+
+            bigBlockDeserializer.onDeserialized({ e ->
+                if (e.getData() instanceof PartialBlockTXsMsg) {
+                    numTXsReceived.addAndGet(((PartialBlockTXsMsg) e.getData()).txs.size() )
+                }
+            })
+            bigBlockDeserializer.onError({e -> errors.add(e.getException())})
+
+            bigBlockDeserializer.deserializeBody(deserializedContext, null, optimizedReader)
+
+        then:
+            numTXsReceived.get() == (corrupted ? 0 : NUM_TXS)
+            errors.size() == (corrupted ? 1 : 0)
+            !corrupted || errors.get(0) instanceof InvalidMerkleRootException
+
+        where:
+            corrupted << [false, true]
+    }
+
 }
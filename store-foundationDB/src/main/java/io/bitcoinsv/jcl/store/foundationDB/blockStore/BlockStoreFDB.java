@@ -7,8 +7,10 @@ import com.apple.foundationdb.subspace.Subspace;
 import com.apple.foundationdb.tuple.Tuple;
 import com.google.common.base.Strings;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.primitives.Bytes;
 import io.bitcoinsv.jcl.store.blockStore.BlockStore;
+import io.bitcoinsv.jcl.store.blockStore.events.BlockStoreEventsAggregator;
 import io.bitcoinsv.jcl.store.blockStore.events.BlockStoreStreamer;
 import io.bitcoinsv.jcl.store.blockStore.metadata.Metadata;
 import io.bitcoinsv.jcl.store.foundationDB.common.FDBIterator;
@@ -77,6 +79,15 @@ public class BlockStoreFDB implements BlockStoreKeyValue<KeyValue, LargeTransact
     // Executor to trigger Async Methods:
     private ExecutorService executor;
 
+    // Executor to run the Block Sweeper (only if enabled in the config):
+    private ExecutorService blockSweeperExecutor;
+
+    // Executor to read ahead the Items of the Iterators (only if enabled in the config):
+    private ExecutorService iteratorPrefetchExecutor;
+
+    // Aggregator of the Events triggered (only if enabled in the config):
+    private BlockStoreEventsAggregator eventsAggregator;
+
     // MetadataClass linked to Blocks;
     private Class<? extends Metadata> blockMetadataClass;
 
@@ -98,10 +109,21 @@ public class BlockStoreFDB implements BlockStoreKeyValue<KeyValue, LargeTransact
         this.eventBusExecutor = ThreadUtils.getCachedThreadExecutorService("BlockStore-FoundationDB");
         this.eventBus = EventBus.builder().executor(this.eventBusExecutor).build();
         this.blockStoreStreamer = new BlockStoreStreamer(this.eventBus);
+        if (config.getEventsAggregationWindow() != null)
+            this.eventsAggregator = new BlockStoreEventsAggregator(this.eventBus, config.getEventsAggregationWindow(),
+                    MAX_EVENT_ITEMS, config.isEventsCompactPayload());
 
         // Executor (to trigger async methods)
         //this.executor = Executors.newSingleThreadExecutor();
         this.executor = Executors.newFixedThreadPool(50);
+
+        // Block Sweeper:
+        if (config.isBlockSweeperEnabled())
+            this.blockSweeperExecutor = ThreadUtils.getSingleThreadExecutorService("BlockStore-FoundationDB-Sweeper");
+
+        // Iterators prefetching:
+        if (config.getIteratorPrefetchSize() > 0)
+            this.iteratorPrefetchExecutor = ThreadUtils.getCachedThreadExecutorService("BlockStore-FoundationDB-Prefetch");
     }
 
     // Convenience method:
@@ -118,6 +140,21 @@ public class BlockStoreFDB implements BlockStoreKeyValue<KeyValue, LargeTransact
         return this.executor;
     }
 
+    @Override
+    public Executor getBlockSweeperExecutor() {
+        return this.blockSweeperExecutor;
+    }
+
+    @Override
+    public Executor getIteratorPrefetchExecutor() {
+        return this.iteratorPrefetchExecutor;
+    }
+
+    @Override
+    public BlockStoreEventsAggregator getEventsAggregator() {
+        return this.eventsAggregator;
+    }
+
     /**
      * This method initializes the connection to the DB and it initialises the internal Directory structure of the Data.
      * If no cluster File is specified in the Configuration, then the default location is used (check documentation for
@@ -137,6 +174,9 @@ public class BlockStoreFDB implements BlockStoreKeyValue<KeyValue, LargeTransact
         initDirectoryStructure();
         //If the previous shutdown was unclean, it's possible that we may be left with some corrupted data.
         clearCorruptData();
+        // The Blocks pending to be swept from the last time are swept now:
+        _scheduleBlocksSweep();
+        if (this.eventsAggregator != null) this.eventsAggregator.start();
     }
 
     /* It creates the Directory Layer structure */
@@ -191,12 +231,24 @@ public class BlockStoreFDB implements BlockStoreKeyValue<KeyValue, LargeTransact
 
     @Override
     public void stop() {
+        // The Block Sweeper must be stopped before the DB is closed:
+        if (this.blockSweeperExecutor != null) {
+            this.blockSweeperExecutor.shutdownNow();
+            try {
+                this.blockSweeperExecutor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // The Events still being aggregated are published before the EventBus is shutdown:
+        if (this.eventsAggregator != null) this.eventsAggregator.stop();
         try {
             getLock().writeLock().lock();
             log.info("FDB-Store Stopping...");
             this.db.close();
             this.eventBusExecutor.shutdownNow();
             this.executor.shutdownNow();
+            if (this.iteratorPrefetchExecutor != null) this.iteratorPrefetchExecutor.shutdownNow();
             log.info("FDB-Store Stopped.");
         } finally {
             getLock().writeLock().unlock();
@@ -253,6 +305,14 @@ public class BlockStoreFDB implements BlockStoreKeyValue<KeyValue, LargeTransact
         tr.clear(itemShardDir.range());
     }
 
+    /*
+     * The whole range is cleared in a single operation. Values stored in shards are NOT removed, so this must only be
+     * used for ranges of small values (like the Tx-Links of a Block).
+     */
+    @Override public void removeRange(LargeTransaction tr, byte[] keyPreffix) {
+        tr.clear(Range.startsWith(keyPreffix));
+    }
+
     @Override public byte[] read(LargeTransaction tr, byte[] key) {
         //every entry has a main key/value, or just a key if it's a blob
         byte[] value;
@@ -287,6 +347,20 @@ public class BlockStoreFDB implements BlockStoreKeyValue<KeyValue, LargeTransact
         return byteArrayWriter.reader().getFullContent();
     }
 
+    @Override public List<byte[]> read(LargeTransaction tr, List<byte[]> keys) {
+        // All the reads are launched at once, so the FDB client resolves them concurrently. We only wait for them
+        // afterwards (blobs are read one by one, since they need a range read over their chunks):
+        List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+        for (byte[] key : keys) futures.add(tr.get(key));
+
+        List<byte[]> result = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] value = futures.get(i).join();
+            result.add((value != null && value.length == 0) ? readBlob(tr, keys.get(i)) : value);
+        }
+        return result;
+    }
+
     public CompletableFuture<byte[]> readAsync(LargeTransaction tr, byte[] key) {
         return CompletableFuture.supplyAsync(() -> read(tr, key));
     }
@@ -308,6 +382,33 @@ public class BlockStoreFDB implements BlockStoreKeyValue<KeyValue, LargeTransact
         }
     }
 
+    /*
+     * If pipelined commits are enabled, all the Txs are saved in a single LargeTransaction, each batch of Txs in a
+     * different FDB Transaction, so several batches are committed at the same time instead of one after another.
+     */
+    @Override
+    public void saveTxs(List<Tx> txs) {
+        if (config.getMaxCommitsInFlight() <= 1) {
+            BlockStoreKeyValue.super.saveTxs(txs);
+            return;
+        }
+        try {
+            getLock().writeLock().lock();
+            LargeTransaction tr = new LargeTransaction(db, incompleteTxRefDir, BlockStoreFDBConfig.TRANSACTION_MAX_SIZE_BYTES,
+                    config.getMaxCommitsInFlight());
+            List<List<Tx>> subLists = Lists.partition(txs, config.getTransactionBatchSize());
+            executeInTransaction(tr, () -> {
+                for (int i = 0; i < subLists.size(); i++) {
+                    if (i > 0) tr.next(true);
+                    _saveTxs(tr, subLists.get(i));
+                }
+            });
+            _triggerTxsStoredEvent(txs);
+        } finally {
+            getLock().writeLock().unlock();
+        }
+    }
+
     @Override public Logger getLogger()                                                          { return log;}
     @Override public byte[] keyFromItem(KeyValue item)                                           { return item.getKey();}
 
@@ -326,6 +427,7 @@ public class BlockStoreFDB implements BlockStoreKeyValue<KeyValue, LargeTransact
     @Override public byte[] fullKeyForTxs(LargeTransaction tr)                                        { return fullKey(txsDir);}
     @Override public byte[] fullKeyForTx(LargeTransaction tr, String txHash)                          { return fullKey(txsDir, keyForTx(txHash)); }
     @Override public byte[] fullKeyForTxBlock(LargeTransaction tr, String txHash, String blockHash)   { return fullKey(txsDir, keyForTxBlock(txHash, blockHash));}
+    @Override public byte[] fullKeyForTxSpender(LargeTransaction tr, String txHash, long outputIndex) { return fullKey(txsDir, keyForTxSpender(txHash, outputIndex));}
 
     @Override public byte[] fullKeyForBlockDir(LargeTransaction tr, String blockHash) {
         return fullKey(blocksDir, blockHash);
@@ -344,9 +446,6 @@ public class BlockStoreFDB implements BlockStoreKeyValue<KeyValue, LargeTransact
     @Override public Class<? extends Metadata>  getMetadataClassForBlocks()                     { return this.blockMetadataClass; }
     @Override public Class<? extends Metadata>  getMetadataClassForTxs()                     { return this.txMetadataClass; }
 
-    @Override
-    public void removeBlockDir(String blockHash) {}
-
     @Override
     public <I> KeyValueIterator<I,LargeTransaction> getIterator( byte[] startingWith,
                                                 byte[] endingWith,
@@ -402,6 +501,7 @@ public class BlockStoreFDB implements BlockStoreKeyValue<KeyValue, LargeTransact
                 byte[] value = readFutures.get(txHash).get();
                 if (value == null) {
                     save(tr, txKeys.get(txHash), bytes(tx));
+                    _indexTxSpender(tr, tx);
                     result.add(tx);
                 }
             }
@@ -5,6 +5,7 @@ import io.bitcoinsv.jcl.tools.config.RuntimeConfig;
 import io.bitcoinsv.jcl.tools.config.provided.RuntimeConfigDefault;
 
 import javax.annotation.Nonnull;
+import java.time.Duration;
 
 /**
  * @author i.fernandez@nchain.com
@@ -70,16 +71,57 @@ public class BlockStoreFDBConfig implements BlockStoreKeyValueConfig {
      */
     private int transactionBatchSize;
 
+    /** If enabled, an index from each Outpoint to the Tx spending it is kept */
+    private boolean outpointIndexEnabled;
+
+    /** Number of Items read ahead in background by the Iterators over large sets of Items (0 = disabled) */
+    private int iteratorPrefetchSize;
+
+    /** If enabled, the Tx-Links of the Blocks removed are cleaned up in background */
+    private boolean blockSweeperEnabled;
+
+    /** If specified, the Events are coalesced and published at the end of each time window */
+    private Duration eventsAggregationWindow;
+
+    /** If enabled, the Events coalesced store their Hashes in a compact format */
+    private boolean eventsCompactPayload;
+
+    /**
+     * Maximum number of FDB Transactions committed in parallel when saving Txs in bulk. If 1 (default), each FDB
+     * Transaction is committed before the next one is opened.
+     */
+    private int maxCommitsInFlight;
+
     public BlockStoreFDBConfig(RuntimeConfig runtimeConfig,
                                String clusterFile,
                                Integer apiVersion,
                                @Nonnull String networkId,
-                               Integer transactionBatchSize) {
+                               Integer transactionBatchSize,
+                               boolean outpointIndexEnabled,
+                               Integer iteratorPrefetchSize,
+                               boolean blockSweeperEnabled,
+                               Duration eventsAggregationWindow,
+                               boolean eventsCompactPayload,
+                               Integer maxCommitsInFlight) {
         this.runtimeConfig = (runtimeConfig != null) ? runtimeConfig: new RuntimeConfigDefault();
         this.clusterFile = clusterFile;
         this.apiVersion = (apiVersion != null) ? apiVersion : API_VERSION;
         this.networkId = networkId;
         this.transactionBatchSize = (transactionBatchSize != null) ? transactionBatchSize : TRANSACTION_BATCH_SIZE;
+        this.outpointIndexEnabled = outpointIndexEnabled;
+        this.iteratorPrefetchSize = (iteratorPrefetchSize != null) ? iteratorPrefetchSize : 0;
+        this.blockSweeperEnabled = blockSweeperEnabled;
+        this.eventsAggregationWindow = eventsAggregationWindow;
+        this.eventsCompactPayload = eventsCompactPayload;
+        this.maxCommitsInFlight = (maxCommitsInFlight != null) ? maxCommitsInFlight : 1;
+    }
+
+    public BlockStoreFDBConfig(RuntimeConfig runtimeConfig,
+                               String clusterFile,
+                               Integer apiVersion,
+                               @Nonnull String networkId,
+                               Integer transactionBatchSize) {
+        this(runtimeConfig, clusterFile, apiVersion, networkId, transactionBatchSize, false, null, false, null, false, null);
     }
 
     public RuntimeConfig getRuntimeConfig() { return this.runtimeConfig; }
@@ -87,6 +129,12 @@ public class BlockStoreFDBConfig implements BlockStoreKeyValueConfig {
     public int getApiVersion()              { return this.apiVersion; }
     public String getNetworkId()            { return this.networkId; }
     public int getTransactionBatchSize()    { return this.transactionBatchSize; }
+    public boolean isOutpointIndexEnabled() { return this.outpointIndexEnabled; }
+    public int getIteratorPrefetchSize()    { return this.iteratorPrefetchSize; }
+    public boolean isBlockSweeperEnabled()  { return this.blockSweeperEnabled; }
+    public Duration getEventsAggregationWindow() { return this.eventsAggregationWindow; }
+    public boolean isEventsCompactPayload() { return this.eventsCompactPayload; }
+    public int getMaxCommitsInFlight()      { return this.maxCommitsInFlight; }
 
     public static BlockStoreFDBConfigBuilder builder() {
         return new BlockStoreFDBConfigBuilder();
@@ -101,6 +149,12 @@ public class BlockStoreFDBConfig implements BlockStoreKeyValueConfig {
         private Integer apiVersion;
         private @Nonnull String networkId;
         private Integer transactionBatchSize;
+        private boolean outpointIndexEnabled;
+        private Integer iteratorPrefetchSize;
+        private boolean blockSweeperEnabled;
+        private Duration eventsAggregationWindow;
+        private boolean eventsCompactPayload;
+        private Integer maxCommitsInFlight;
 
         BlockStoreFDBConfigBuilder() {
         }
@@ -130,8 +184,40 @@ public class BlockStoreFDBConfig implements BlockStoreKeyValueConfig {
             return this;
         }
 
+        public BlockStoreFDBConfig.BlockStoreFDBConfigBuilder outpointIndexEnabled(boolean outpointIndexEnabled) {
+            this.outpointIndexEnabled = outpointIndexEnabled;
+            return this;
+        }
+
+        public BlockStoreFDBConfig.BlockStoreFDBConfigBuilder iteratorPrefetchSize(Integer iteratorPrefetchSize) {
+            this.iteratorPrefetchSize = iteratorPrefetchSize;
+            return this;
+        }
+
+        public BlockStoreFDBConfig.BlockStoreFDBConfigBuilder blockSweeperEnabled(boolean blockSweeperEnabled) {
+            this.blockSweeperEnabled = blockSweeperEnabled;
+            return this;
+        }
+
+        public BlockStoreFDBConfig.BlockStoreFDBConfigBuilder eventsAggregationWindow(Duration eventsAggregationWindow) {
+            this.eventsAggregationWindow = eventsAggregationWindow;
+            return this;
+        }
+
+        public BlockStoreFDBConfig.BlockStoreFDBConfigBuilder eventsCompactPayload(boolean eventsCompactPayload) {
+            this.eventsCompactPayload = eventsCompactPayload;
+            return this;
+        }
+
+        public BlockStoreFDBConfig.BlockStoreFDBConfigBuilder maxCommitsInFlight(Integer maxCommitsInFlight) {
+            this.maxCommitsInFlight = maxCommitsInFlight;
+            return this;
+        }
+
         public BlockStoreFDBConfig build() {
-            return new BlockStoreFDBConfig(runtimeConfig, clusterFile, apiVersion, networkId, transactionBatchSize);
+            return new BlockStoreFDBConfig(runtimeConfig, clusterFile, apiVersion, networkId, transactionBatchSize,
+                    outpointIndexEnabled, iteratorPrefetchSize, blockSweeperEnabled,
+                    eventsAggregationWindow, eventsCompactPayload, maxCommitsInFlight);
         }
     }
 }
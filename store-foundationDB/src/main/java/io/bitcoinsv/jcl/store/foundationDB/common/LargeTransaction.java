@@ -7,6 +7,7 @@ import com.apple.foundationdb.tuple.Tuple;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Distributed under the Open BSV software license, see the accompanying file LICENSE
@@ -14,6 +15,14 @@ import java.util.concurrent.CompletableFuture;
  *
  * @author m.fletcher@nchain.com
  * @date 12/01/2022
+ *
+ * By default, every time the current FDB transaction is full it's committed synchronously before the next one is
+ * opened. In "pipelined" mode (maxCommitsInFlight > 1), the intermediate transactions are committed asynchronously
+ * instead, and we only wait when the number of commits in flight reaches the maximum. The first commit that fails is
+ * re-thrown by the next call that opens a transaction or by the final commit, which waits for all the commits in
+ * flight before committing the last transaction (the one removing the reference keys).
+ * NOTE: In pipelined mode, a read might NOT see the values written in previous transactions whose commit is still in
+ * flight, so it should only be used for write-only operations, like bulk saves.
  */
 public class LargeTransaction {
 
@@ -25,6 +34,11 @@ public class LargeTransaction {
     private DirectorySubspace incompleteTxDir;
     private List<byte[]> unsavedKeys = new ArrayList<>();
 
+    // Pipelined mode: Commits of the intermediate transactions still in flight, and the first one that failed:
+    private int maxCommitsInFlight = 1;
+    private Deque<CompletableFuture<Void>> commitsInFlight = new ArrayDeque<>();
+    private Throwable commitError;
+
 
     /*
      * This should only be used for reading, writing will require a DirectorySubspace
@@ -36,6 +50,15 @@ public class LargeTransaction {
         this.incompleteTxDir = incompleteTxDir;
     }
 
+    /*
+     * Pipelined mode: Up to "maxCommitsInFlight" intermediate transactions are committed asynchronously
+     */
+    public LargeTransaction(Database db, DirectorySubspace incompleteTxDir, int maxTransactionValueSizeBytes, int maxCommitsInFlight) {
+        this(db, incompleteTxDir, maxTransactionValueSizeBytes);
+        if (maxCommitsInFlight <= 0) throw new IllegalArgumentException("Max number of commits in flight must be greater than zero");
+        this.maxCommitsInFlight = maxCommitsInFlight;
+    }
+
     public LargeTransaction(Database db, DirectorySubspace incompleteTxDir, Transaction transaction, int maxTransactionValueSizeBytes) {
         this.db = db;
         currentTransaction = transaction;
@@ -60,8 +83,12 @@ public class LargeTransaction {
             }
         }
 
-        currentTransaction.commit().join();
-        currentTransaction.close();
+        if (maxCommitsInFlight > 1) {
+            commitInFlight(currentTransaction);
+        } else {
+            currentTransaction.commit().join();
+            currentTransaction.close();
+        }
 
         currentTransaction = db.createTransaction();
 
@@ -71,6 +98,46 @@ public class LargeTransaction {
         return currentTransaction;
     }
 
+    /*
+     * It commits the transaction asynchronously. If the max number of commits in flight has been reached, it waits
+     * for the oldest one to finish first. If any commit has failed, its error is re-thrown.
+     */
+    private void commitInFlight(Transaction transaction) {
+        checkCommitsInFlight();
+        while (commitsInFlight.size() >= maxCommitsInFlight) {
+            waitForCommit(commitsInFlight.poll());
+        }
+        checkCommitsInFlight();
+        CompletableFuture<Void> commit = transaction.commit();
+        commit.whenComplete((result, error) -> transaction.close());
+        commitsInFlight.add(commit);
+    }
+
+    /* It removes the commits already finished, re-throwing the error of the first one that failed, if any */
+    private void checkCommitsInFlight() {
+        while (!commitsInFlight.isEmpty() && commitsInFlight.peek().isDone()) {
+            waitForCommit(commitsInFlight.poll());
+        }
+        if (commitError != null) throw new CompletionException(commitError);
+    }
+
+    /* It waits for the commit given, keeping its error if it's the first one to fail */
+    private void waitForCommit(CompletableFuture<Void> commit) {
+        try {
+            commit.join();
+        } catch (CompletionException e) {
+            if (commitError == null) commitError = (e.getCause() != null) ? e.getCause() : e;
+        }
+    }
+
+    /* It waits for all the commits in flight, re-throwing the error of the first one that failed, if any */
+    private void waitForCommitsInFlight() {
+        while (!commitsInFlight.isEmpty()) {
+            waitForCommit(commitsInFlight.poll());
+        }
+        if (commitError != null) throw new CompletionException(commitError);
+    }
+
     /**
      * Removes any entries saved that are references to keys that are only partly saved within this transaction. Once all reference keys are removed,
      * that is an indicator that the large transaction has been saved successfully.
@@ -85,6 +152,10 @@ public class LargeTransaction {
      */
     public synchronized CompletableFuture<Void> commit(){
         return CompletableFuture.supplyAsync(() -> {
+            // The last transaction removes the reference keys, so it can only be committed once the rest are:
+            synchronized (this) {
+                waitForCommitsInFlight();
+            }
             if(unsavedKeys.size() > 0) {
                 cleanReferenceKeys();
             }
@@ -0,0 +1,51 @@
+package io.bitcoinsv.jcl.store.foundationDB.blockStore
+
+
+import io.bitcoinsv.bitcoinjsv.bitcoin.api.base.Tx
+import io.bitcoinsv.jcl.store.foundationDB.FDBTestUtils
+import io.bitcoinsv.jcl.tools.common.TestingUtils
+import spock.lang.Ignore
+import spock.lang.Specification
+
+/**
+ * Testing class for the pipelined commits of the FoundationDB BlockStore, where the Txs saved in bulk are committed
+ * in several FDB Transactions at the same time.
+ */
+// Test Ignored. If you want to run this Test, set up a local FDB or configure FDBTestUtils.useDocker to use the
+// Docker image provided instead (not fully tested at the moment)
+@Ignore
+class BlockStorePipelinedCommitsSpec extends Specification {
+
+    // Start & Stop FoundationDB in Docker Container (check DockerTestUtils for details)...
+    def setupSpec()     { FDBTestUtils.checkFDBBefore()}
+    def cleanupSpec()   { FDBTestUtils.checkFDBAfter()}
+
+    /**
+     * We test that all the Txs saved in bulk are stored, and that no reference keys are left behind once the last
+     * FDB Transaction is committed.
+     */
+    def "testing saveTxs with pipelined commits"() {
+        given:
+            BlockStoreFDBConfig config = BlockStoreFDBConfig.builder()
+                    .networkId("BSV-Main")
+                    .clusterFile(FDBTestUtils.useDocker ? "installation/fdb.cluster" : null)
+                    .transactionBatchSize(10)
+                    .maxCommitsInFlight(4)
+                    .build()
+            BlockStoreFDB db = BlockStoreFDB.builder().config(config).build()
+            List<Tx> txs = (1..100).collect { TestingUtils.buildTx() }
+        when:
+            db.start()
+            db.saveTxs(txs)
+            long numTxs = db.getNumTxs()
+            boolean allTxsFound = txs.every { tx -> db.containsTx(tx.getHash()) }
+            long numReferenceKeys = db.numKeys(db.incompleteTxRefDir.getKey())
+        then:
+            numTxs == txs.size()
+            allTxsFound
+            numReferenceKeys == 0
+        cleanup:
+            db.clear()
+            db.stop()
+    }
+}
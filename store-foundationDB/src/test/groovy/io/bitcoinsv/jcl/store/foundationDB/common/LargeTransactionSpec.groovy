@@ -0,0 +1,76 @@
+package io.bitcoinsv.jcl.store.foundationDB.common
+
+
+import com.apple.foundationdb.Database
+import com.apple.foundationdb.Range
+import com.apple.foundationdb.Transaction
+import com.apple.foundationdb.directory.DirectoryLayer
+import com.apple.foundationdb.directory.DirectorySubspace
+import com.apple.foundationdb.tuple.Tuple
+import io.bitcoinsv.bitcoinjsv.core.Utils
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+
+/**
+ * Testing class for the LargeTransaction in pipelined mode, where the intermediate FDB Transactions are committed
+ * asynchronously. The FDB Database and Transactions are mocked, so no FoundationDB is needed.
+ */
+class LargeTransactionSpec extends Specification {
+
+    /**
+     * We test that if the commit of an intermediate Transaction fails, the error is re-thrown by the next call that
+     * opens a Transaction and by the final commit, and the last Transaction (the one removing the reference keys) is
+     * never committed, so the reference keys are kept.
+     */
+    def "testing commit failed in pipelined mode"() {
+        given:
+            DirectorySubspace incompleteTxDir = new DirectorySubspace(["incompleteTx"], Tuple.from("incompleteTx").pack(), new DirectoryLayer())
+            RuntimeException commitError = new RuntimeException("commit failed")
+            Transaction tx1 = Mock(Transaction)
+            Transaction tx2 = Mock(Transaction)
+            Transaction tx3 = Mock(Transaction)
+            Database db = Mock(Database)
+            db.createTransaction() >>> [tx1, tx2, tx3]
+            tx1.commit() >> CompletableFuture.completedFuture(null)
+            tx2.commit() >> CompletableFuture.failedFuture(commitError)
+
+            // We keep track of the keys set in each Transaction:
+            Map<Transaction, List<String>> keysSet = [(tx1): [], (tx2): [], (tx3): []]
+            [tx1, tx2, tx3].each { tx -> tx.set(_, _) >> { byte[] key, byte[] val -> keysSet[tx] << Utils.HEX.encode(key) } }
+
+            // Each Value fills up a whole FDB Transaction:
+            LargeTransaction largeTx = new LargeTransaction(db, incompleteTxDir, 100, 4)
+            byte[] value = new byte[60]
+            List<byte[]> keys = (1..4).collect { i -> ("key" + i).getBytes() }
+            List<byte[]> referenceKeys = keys.collect { key -> incompleteTxDir.subspace(Tuple.fromItems([key])).getKey() }
+        when:
+            largeTx.set(keys[0], value)
+            largeTx.set(keys[1], value)   // tx1 committed
+            largeTx.set(keys[2], value)   // tx2 committed (and failed)
+            Throwable nextError = null
+            try {
+                largeTx.set(keys[3], value)
+            } catch (CompletionException e) {
+                nextError = e.getCause()
+            }
+            Throwable commitFinalError = null
+            try {
+                largeTx.commit().join()
+            } catch (CompletionException e) {
+                commitFinalError = e.getCause()
+            }
+        then:
+            // The reference keys are saved in each Transaction before it's committed, including the reference to the
+            // key whose value goes to the next one:
+            keysSet[tx1] == [keys[0], referenceKeys[0], referenceKeys[1]].collect { k -> Utils.HEX.encode(k) }
+            keysSet[tx2] == [keys[1], referenceKeys[2]].collect { k -> Utils.HEX.encode(k) }
+
+            // The error is re-thrown, and the last Transaction is neither cleaning the reference keys nor committed:
+            nextError == commitError
+            commitFinalError == commitError
+            0 * tx3.clear(_ as Range)
+            0 * tx3.commit()
+    }
+}
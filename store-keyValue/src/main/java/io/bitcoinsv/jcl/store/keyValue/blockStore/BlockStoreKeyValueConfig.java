@@ -1,5 +1,6 @@
 package io.bitcoinsv.jcl.store.keyValue.blockStore;
 
+import java.time.Duration;
 
 /**
  * @author i.fernandez@nchain.com
@@ -24,4 +25,39 @@ public interface BlockStoreKeyValueConfig {
      * Returns the Network ID representing the Chain stored.
      */
     String getNetworkId();
+
+    /**
+     * Indicates whether the Outpoint index is enabled. If enabled, for each Input of each Tx saved, a key is stored
+     * pointing from the Outpoint it spends to the Tx spending it, so it can be looked up in a single DB read.
+     */
+    default boolean isOutpointIndexEnabled() { return false; }
+
+    /**
+     * Returns the number of Items read ahead in each batch by the Iterators used to loop over large sets of Items
+     * (like the Txs of a Block). If zero, Items are read from the DB one by one as the client asks for them.
+     */
+    default int getIteratorPrefetchSize() { return 0; }
+
+    /** Returns the maximum number of batches read ahead by the Iterators, when prefetching is enabled */
+    default int getIteratorPrefetchNumBatches() { return 4; }
+
+    /**
+     * Indicates whether the Block Sweeper is enabled. If enabled, when a Block or its Txs are removed, the references
+     * between the Block and its Txs are cleaned up later on in background, so the removal does not depend on the
+     * number of Txs in the Block.
+     */
+    default boolean isBlockSweeperEnabled() { return false; }
+
+    /**
+     * Returns the time window used to coalesce the Events triggered by the BlockStore. If specified, the Hashes of
+     * the Blocks/Txs saved or removed are aggregated and published in fewer Events, at the end of each window or
+     * when they reach the maximum size. If null, an Event is published for every operation.
+     */
+    default Duration getEventsAggregationWindow() { return null; }
+
+    /**
+     * Indicates whether the Events coalesced store their Hashes in a compact format (a single byte array), instead of
+     * one object per Hash. Only used if the Events aggregation is enabled.
+     */
+    default boolean isEventsCompactPayload() { return false; }
 }
@@ -17,7 +17,7 @@ import java.util.Iterator;
  * @param <T> Type of the DB Transaction supported by the specific implementation. If the specific implementation does
  *            Not support Transactions, this can be just an "Object".
  */
-public interface KeyValueIterator<I,T> extends Iterator<I> {
+public interface KeyValueIterator<I,T> extends Iterator<I>, AutoCloseable {
 
     /**
      * This methods returns the current DB Transaction this iterator is running with.
@@ -33,4 +33,11 @@ public interface KeyValueIterator<I,T> extends Iterator<I> {
      * @return  the current Transaction
      */
     T getCurrentTransaction();
+
+    /**
+     * It releases the DB resources this Iterator might be holding (like a DB Snapshot). Iterators release them
+     * automatically when they reach the end, so this is only needed when an Iterator is abandoned before that.
+     */
+    @Override
+    default void close() {}
 }
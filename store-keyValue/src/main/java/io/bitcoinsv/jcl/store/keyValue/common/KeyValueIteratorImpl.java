@@ -177,7 +177,10 @@ public abstract class KeyValueIteratorImpl<I,T,E> implements KeyValueIterator<I,
          */
 
 
-        return (nextValidKey() != null);
+        boolean result = (nextValidKey() != null);
+        // If there are no more Items, the DB resources can be released already:
+        if (!result) close();
+        return result;
     }
 
     @Override
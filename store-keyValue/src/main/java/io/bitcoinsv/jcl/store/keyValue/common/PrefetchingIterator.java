@@ -0,0 +1,150 @@
+package io.bitcoinsv.jcl.store.keyValue.common;
+
+
+import java.util.*;
+import java.util.concurrent.Executor;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * A KeyValueIterator that wraps another one and reads its Items ahead, in batches, in the background. While the
+ * client is processing the Items of one batch, the next ones are already being fetched (and built, so any DB read
+ * done by the "buildItemBy" or "keyVerifier" functions of the underlying Iterator is also done in the background).
+ * This hides most of the DB latency when we loop over a large number of Items, like the Txs of a big Block.
+ *
+ * Nothing is read until the client calls "hasNext()" or "next()" for the first time. The number of batches read
+ * ahead is bounded, so memory usage is bounded too. The batches are fetched by tasks submitted to the Executor given,
+ * one at a time: the underlying Iterator is never accessed by more than one Thread simultaneously, and no Thread of
+ * the Executor is ever blocked waiting for the client to consume the Items.
+ *
+ * If the underlying Iterator throws an Exception, it's re-thrown to the client once all the Items fetched before it
+ * have been consumed.
+ *
+ * @param <I> Type returned by the "next()" method
+ * @param <T> Type of the DB Transaction supported by the underlying Iterator
+ */
+public class PrefetchingIterator<I, T> implements KeyValueIterator<I, T> {
+
+    // Underlying Iterator, only accessed by the task fetching a batch:
+    private final KeyValueIterator<I, T> iterator;
+    private final Executor executor;
+    private final int batchSize;
+    private final int maxBatches;
+
+    // State shared between the Client and the fetching tasks (guarded by "this"):
+    private final Deque<List<I>> batches = new ArrayDeque<>();
+    private boolean fetching;
+    private boolean finished;
+    private boolean closed;
+    private RuntimeException error;
+
+    // Batch being consumed by the Client:
+    private Iterator<I> currentBatch = Collections.emptyIterator();
+
+    /**
+     * Constructor
+     *
+     * @param iterator      Iterator to read the Items from
+     * @param executor      Executor used to fetch the batches in the background
+     * @param batchSize     Number of Items in each batch
+     * @param maxBatches    Maximum number of batches fetched in advance
+     */
+    public PrefetchingIterator(KeyValueIterator<I, T> iterator, Executor executor, int batchSize, int maxBatches) {
+        if (iterator == null) throw new IllegalArgumentException("An Iterator must be specified");
+        if (executor == null) throw new IllegalArgumentException("An Executor must be specified");
+        if (batchSize <= 0) throw new IllegalArgumentException("Batch size must be greater than zero");
+        if (maxBatches <= 0) throw new IllegalArgumentException("Max number of batches must be greater than zero");
+        this.iterator = iterator;
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.maxBatches = maxBatches;
+    }
+
+    // It submits a task to fetch the next batch, if there is room for it and no other task is already running
+    private synchronized void fetchIfNeeded() {
+        if (fetching || finished || closed || batches.size() >= maxBatches) return;
+        fetching = true;
+        try {
+            executor.execute(this::fetchBatch);
+        } catch (RuntimeException e) {
+            fetching = false;
+            finished = true;
+            error = e;
+        }
+    }
+
+    // It reads the next batch of Items from the underlying Iterator. Only one of these tasks runs at any time.
+    private void fetchBatch() {
+        List<I> batch = new ArrayList<>(batchSize);
+        RuntimeException fetchError = null;
+        try {
+            while (batch.size() < batchSize && !isClosed() && iterator.hasNext()) batch.add(iterator.next());
+        } catch (RuntimeException e) {
+            fetchError = e;
+        }
+        boolean closeIterator;
+        synchronized (this) {
+            fetching = false;
+            if (fetchError != null) error = fetchError;
+            if (fetchError != null || batch.size() < batchSize) finished = true;
+            if (!closed && !batch.isEmpty()) batches.add(batch);
+            closeIterator = closed;
+            notifyAll();
+        }
+        // If the Client closed this Iterator while we were fetching, the underlying one is closed now:
+        if (closeIterator) iterator.close();
+        else fetchIfNeeded();
+    }
+
+    private synchronized boolean isClosed() { return closed; }
+
+    @Override
+    public boolean hasNext() {
+        if (currentBatch.hasNext()) return true;
+        synchronized (this) {
+            if (closed) return false;
+            fetchIfNeeded();
+            while (batches.isEmpty() && !finished) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                }
+            }
+            if (batches.isEmpty()) {
+                if (error != null) throw error;
+                return false;
+            }
+            currentBatch = batches.poll().iterator();
+            fetchIfNeeded();
+            return true;
+        }
+    }
+
+    @Override
+    public I next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        return currentBatch.next();
+    }
+
+    @Override
+    public T getCurrentTransaction() {
+        return iterator.getCurrentTransaction();
+    }
+
+    @Override
+    public void close() {
+        boolean closeIterator;
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            batches.clear();
+            currentBatch = Collections.emptyIterator();
+            // If a batch is being fetched, the underlying iterator will be closed by that task when it's done:
+            closeIterator = !fetching;
+        }
+        if (closeIterator) iterator.close();
+    }
+}
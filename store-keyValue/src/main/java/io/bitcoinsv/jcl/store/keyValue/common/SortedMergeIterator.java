@@ -0,0 +1,64 @@
+package io.bitcoinsv.jcl.store.keyValue.common;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * An Iterator that walks 2 SORTED Lists in lockstep (merge-join), and returns either the items present in both of
+ * them, or the ones present only in the first one. Each item of both Lists is visited only once, so the whole
+ * iteration is a single sequential pass.
+ */
+public class SortedMergeIterator<I extends Comparable<I>> implements Iterator<I> {
+
+    /** Items returned by this Iterator */
+    public enum Mode {
+        IN_COMMON,      // Items in both Lists
+        ONLY_IN_FIRST   // Items in the first List but NOT in the second one
+    }
+
+    private final List<I> first;
+    private final List<I> second;
+    private final Mode mode;
+
+    private int indexFirst;
+    private int indexSecond;
+    private I next;
+
+    /** Constructor. Both lists MUST be sorted in ascending order */
+    public SortedMergeIterator(List<I> first, List<I> second, Mode mode) {
+        this.first = first;
+        this.second = second;
+        this.mode = mode;
+        this.next = findNext();
+    }
+
+    // It moves forward until the next item to return is found (or null if there are no more)
+    private I findNext() {
+        while (indexFirst < first.size()) {
+            I item = first.get(indexFirst);
+            // We skip the items in the second list that are lower than the current one:
+            while (indexSecond < second.size() && second.get(indexSecond).compareTo(item) < 0) indexSecond++;
+            boolean inSecond = indexSecond < second.size() && second.get(indexSecond).compareTo(item) == 0;
+            indexFirst++;
+            if (inSecond == (mode == Mode.IN_COMMON)) return item;
+        }
+        return null;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    @Override
+    public I next() {
+        if (next == null) throw new NoSuchElementException();
+        I result = next;
+        next = findNext();
+        return result;
+    }
+}
@@ -0,0 +1,141 @@
+package io.bitcoinsv.jcl.store.keyValue.common;
+
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import com.google.common.hash.Funnels;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * A probabilistic filter that keeps track of the Txs stored in the DB. It can tell for sure when a Tx is NOT in the
+ * DB, so in that case the DB does not need to be read at all. If the filter says the Tx "might" be in the DB, then the
+ * DB must be checked.
+ *
+ * It's a "Scalable" Bloom Filter: It starts with one Bloom Filter of a given capacity, and when that capacity is
+ * reached a new Filter is added, with twice the capacity and half the false-positive probability of the previous
+ * one. So the filter can grow without knowing the number of Txs in advance, and the overall false-positive probability
+ * is never higher than twice the one specified.
+ *
+ * Bloom Filters do NOT support removals, so a Tx removed from the DB is still "maybe" present in the filter. That's
+ * safe (it only means a useless DB read), and the filter can be rebuilt from the DB to get rid of them.
+ *
+ * This class is thread-safe.
+ */
+public class TxExistenceFilter {
+
+    // Default values:
+    public static final long DEFAULT_INITIAL_CAPACITY   = 1_000_000;
+    public static final double DEFAULT_FPP              = 0.01;
+
+    // Each new Filter added has this factor of capacity and fpp compared to the previous one:
+    private static final int GROWTH_FACTOR          = 2;
+    private static final double TIGHTENING_RATIO    = 0.5;
+
+    private static final Funnel<CharSequence> FUNNEL = Funnels.stringFunnel(StandardCharsets.UTF_8);
+
+    private final long initialCapacity;
+    private final double fpp;
+
+    private final List<BloomFilter<CharSequence>> filters = new ArrayList<>();
+    private long currentCapacity;
+    private double currentFpp;
+    private long currentNumItems;   // Items inserted in the last Filter
+    private long numItems;          // Items inserted in total
+
+    /** Constructor */
+    public TxExistenceFilter(long initialCapacity, double fpp) {
+        if (initialCapacity <= 0) throw new IllegalArgumentException("Filter capacity must be greater than zero");
+        if (fpp <= 0 || fpp >= 1) throw new IllegalArgumentException("Filter false-positive probability must be between 0 and 1");
+        this.initialCapacity = initialCapacity;
+        this.fpp = fpp;
+        clear();
+    }
+
+    /** Constructor, using default values */
+    public TxExistenceFilter() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_FPP);
+    }
+
+    private void addFilter(long capacity, double filterFpp) {
+        filters.add(BloomFilter.create(FUNNEL, capacity, filterFpp));
+        currentCapacity = capacity;
+        currentFpp = filterFpp;
+        currentNumItems = 0;
+    }
+
+    /** It registers a Tx in the filter */
+    public synchronized void put(String txHash) {
+        if (currentNumItems >= currentCapacity) {
+            addFilter(currentCapacity * GROWTH_FACTOR, currentFpp * TIGHTENING_RATIO);
+        }
+        if (filters.get(filters.size() - 1).put(txHash)) {
+            currentNumItems++;
+            numItems++;
+        }
+    }
+
+    /**
+     * It returns false if the Tx has never been registered in this filter. If it returns true, the Tx MIGHT have been
+     * registered.
+     */
+    public synchronized boolean mightContain(String txHash) {
+        for (int i = filters.size() - 1; i >= 0; i--) {
+            if (filters.get(i).mightContain(txHash)) return true;
+        }
+        return false;
+    }
+
+    /** It resets the filter, so it's empty again */
+    public synchronized void clear() {
+        filters.clear();
+        numItems = 0;
+        addFilter(initialCapacity, fpp);
+    }
+
+    /** It returns the (approximate) number of Txs registered in this filter */
+    public synchronized long getNumItems()  { return this.numItems; }
+
+    /** It returns the number of Bloom Filters this filter is made of */
+    public synchronized int getNumFilters() { return this.filters.size(); }
+
+    /** It writes the filter into the Stream given. It can be loaded later on by "readFrom()" */
+    public synchronized void writeTo(OutputStream out) throws IOException {
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeLong(initialCapacity);
+        dataOut.writeDouble(fpp);
+        dataOut.writeLong(currentCapacity);
+        dataOut.writeDouble(currentFpp);
+        dataOut.writeLong(currentNumItems);
+        dataOut.writeLong(numItems);
+        dataOut.writeInt(filters.size());
+        for (BloomFilter<CharSequence> filter : filters) filter.writeTo(dataOut);
+        dataOut.flush();
+    }
+
+    /** It reads a filter from a Stream, previously written by "writeTo()" */
+    public static TxExistenceFilter readFrom(InputStream in) throws IOException {
+        DataInputStream dataIn = new DataInputStream(in);
+        TxExistenceFilter result = new TxExistenceFilter(dataIn.readLong(), dataIn.readDouble());
+        result.filters.clear();
+        result.currentCapacity = dataIn.readLong();
+        result.currentFpp = dataIn.readDouble();
+        result.currentNumItems = dataIn.readLong();
+        result.numItems = dataIn.readLong();
+        int numFilters = dataIn.readInt();
+        for (int i = 0; i < numFilters; i++) result.filters.add(BloomFilter.readFrom(dataIn, FUNNEL));
+        if (result.filters.isEmpty()) throw new IOException("Wrong Tx Filter format: no filters found");
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "TxExistenceFilter(" + numItems + " txs in " + filters.size() + " filters)";
+    }
+}
@@ -2,10 +2,12 @@ package io.bitcoinsv.jcl.store.levelDB.blockStore;
 
 
 import io.bitcoinsv.bitcoinjsv.core.Sha256Hash;
+import io.bitcoinsv.jcl.store.blockStore.events.BlockStoreEventsAggregator;
 import io.bitcoinsv.jcl.store.blockStore.events.BlockStoreStreamer;
 import io.bitcoinsv.jcl.store.blockStore.metadata.Metadata;
 import io.bitcoinsv.jcl.store.keyValue.blockStore.BlockStoreKeyValue;
 import io.bitcoinsv.jcl.store.keyValue.common.KeyValueIterator;
+import io.bitcoinsv.jcl.store.keyValue.common.TxExistenceFilter;
 import io.bitcoinsv.jcl.store.levelDB.common.LevelDBIterator;
 import io.bitcoinsv.jcl.tools.events.EventBus;
 import io.bitcoinsv.jcl.tools.thread.ThreadUtils;
@@ -13,16 +15,18 @@ import io.bitcoinsv.bitcoinjsv.bitcoin.api.base.Tx;
 import org.iq80.leveldb.DB;
 import org.iq80.leveldb.DBIterator;
 import org.iq80.leveldb.Options;
+import org.iq80.leveldb.WriteBatch;
 import org.slf4j.Logger;
 
 import javax.annotation.Nonnull;
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -50,6 +54,9 @@ public class BlockStoreLevelDB implements BlockStoreKeyValue<Map.Entry<byte[], b
     public static final String KEY_SEPARATOR = "\\";
     private static final Logger log = org.slf4j.LoggerFactory.getLogger(BlockStoreLevelDB.class);
 
+    // File (inside the working folder) where the Tx filter is saved when the DB stops:
+    static final String TX_FILTER_FILE = "txs.filter";
+
     // Events Configuration:
     protected final EventBus eventBus;
     private final ExecutorService executorService;
@@ -69,12 +76,24 @@ public class BlockStoreLevelDB implements BlockStoreKeyValue<Map.Entry<byte[], b
     // Executor to trigger Async Methods:
     private ExecutorService executor;
 
+    // Executor to run the Block Sweeper (only if enabled in the config):
+    private ExecutorService blockSweeperExecutor;
+
+    // Executor to read ahead the Items of the Iterators (only if enabled in the config):
+    private ExecutorService iteratorPrefetchExecutor;
+
+    // Aggregator of the Events triggered (only if enabled in the config):
+    private BlockStoreEventsAggregator eventsAggregator;
+
     // MetadataClass linked to Blocks;
     private Class<? extends Metadata> blockMetadataClass;
 
     // Metadata Class linked to Txs;
     private Class<? extends Metadata> txMetadataClass;
 
+    // Filter with the Txs stored (only if enabled in the config, and after the DB has started):
+    private TxExistenceFilter txFilter;
+
     public BlockStoreLevelDB(@Nonnull BlockStoreLevelDBConfig config,
                              boolean triggerBlockEvents,
                              boolean triggerTxEvents,
@@ -97,9 +116,20 @@ public class BlockStoreLevelDB implements BlockStoreKeyValue<Map.Entry<byte[], b
             this.executorService = ThreadUtils.getCachedThreadExecutorService("BlockStore-LevelDB");
             this.eventBus = EventBus.builder().executor(this.executorService).build();
             this.blockStoreStreamer = new BlockStoreStreamer(this.eventBus);
+            if (config.getEventsAggregationWindow() != null)
+                this.eventsAggregator = new BlockStoreEventsAggregator(this.eventBus, config.getEventsAggregationWindow(),
+                        MAX_EVENT_ITEMS, config.isEventsCompactPayload());
 
             // Executor (to trigger async methods)
             this.executor = Executors.newSingleThreadExecutor();
+
+            // Block Sweeper:
+            if (config.isBlockSweeperEnabled())
+                this.blockSweeperExecutor = ThreadUtils.getSingleThreadExecutorService("BlockStore-LevelDB-Sweeper");
+
+            // Iterators prefetching:
+            if (config.getIteratorPrefetchSize() > 0)
+                this.iteratorPrefetchExecutor = ThreadUtils.getCachedThreadExecutorService("BlockStore-LevelDB-Prefetch");
         } catch (IOException ioe) {
             log.error(ioe.getMessage());
             throw new RuntimeException(ioe);
@@ -122,6 +152,21 @@ public class BlockStoreLevelDB implements BlockStoreKeyValue<Map.Entry<byte[], b
         return this.executor;
     }
 
+    @Override
+    public Executor getBlockSweeperExecutor() {
+        return this.blockSweeperExecutor;
+    }
+
+    @Override
+    public Executor getIteratorPrefetchExecutor() {
+        return this.iteratorPrefetchExecutor;
+    }
+
+    @Override
+    public BlockStoreEventsAggregator getEventsAggregator() {
+        return this.eventsAggregator;
+    }
+
     @Override
     public byte[] fullKey(Object... subKeys) {
         if (subKeys == null) return null;
@@ -137,6 +182,31 @@ public class BlockStoreLevelDB implements BlockStoreKeyValue<Map.Entry<byte[], b
     @Override public void   save(Object tr, byte[] key, byte[] value){levelDBStore.put(key, value);}
     @Override public void   remove(Object tr, byte[] key)                                   { levelDBStore.delete(key); }
     @Override public byte[] read(Object tr, byte[] key)                                     { return levelDBStore.get(key); }
+
+    /*
+     * LevelDB does not support range deletions, so the Keys are deleted in Key order and in batches, each one of them
+     * written in a single operation.
+     */
+    @Override
+    public void removeRange(Object tr, byte[] keyPreffix) {
+        try (KeyValueIterator<byte[], Object> it = getIterator(keyPreffix, null, null, this::keyFromItem)) {
+            WriteBatch batch = levelDBStore.createWriteBatch();
+            int batchSize = 0;
+            while (it.hasNext()) {
+                batch.delete(it.next());
+                if (++batchSize == config.getTransactionBatchSize()) {
+                    levelDBStore.write(batch);
+                    batch.close();
+                    batch = levelDBStore.createWriteBatch();
+                    batchSize = 0;
+                }
+            }
+            levelDBStore.write(batch);
+            batch.close();
+        } catch (IOException ioe) {
+            throw new RuntimeException(ioe);
+        }
+    }
     @Override public Object createTransaction()                                             { return null;}
     @Override public void   commitTransaction(Object tr)                                    {}
     @Override public void   rollbackTransaction(Object tr)                                  {}
@@ -165,6 +235,7 @@ public class BlockStoreLevelDB implements BlockStoreKeyValue<Map.Entry<byte[], b
     @Override public byte[] fullKeyForTxs(Object tr)                                        { return fullKey(DIR_BLOCKCHAIN, config.getNetworkId(), DIR_TXS); }
     @Override public byte[] fullKeyForTx(Object tr, String txHash)                          { return fullKey(fullKeyForTxs(tr), keyForTx(txHash)); }
     @Override public byte[] fullKeyForTxBlock(Object tr, String txHash, String blockHash)   { return fullKey(fullKeyForTxs(tr), keyForTxBlock(txHash, blockHash)); }
+    @Override public byte[] fullKeyForTxSpender(Object tr, String txHash, long outputIndex) { return fullKey(fullKeyForTxs(tr), keyForTxSpender(txHash, outputIndex)); }
 
     @Override public byte[] fullKeyForBlocks()                                              { return fullKey(DIR_BLOCKCHAIN, config.getNetworkId(), DIR_BLOCKS);}
     @Override public byte[] fullKeyForTxs()                                                 { return fullKey(DIR_BLOCKCHAIN, config.getNetworkId(), DIR_TXS);}
@@ -215,16 +286,6 @@ public class BlockStoreLevelDB implements BlockStoreKeyValue<Map.Entry<byte[], b
         return result;
     }
 
-    @Override
-    public void removeBlockDir(String blockHash) {
-        byte[] keyPreffix = fullKeyForBlockDir(blockHash);
-        Iterator<byte[]> it = getIterator(keyPreffix, null, null, e -> keyFromItem(e));
-        while (it.hasNext()) {
-            byte[] key = it.next();
-            remove(null, key);
-        }
-    }
-
     @Override
     public void start() {
         try {
@@ -237,19 +298,69 @@ public class BlockStoreLevelDB implements BlockStoreKeyValue<Map.Entry<byte[], b
             Options options = new Options();
             Path levelDBPath = config.getWorkingFolder();
             levelDBStore = factory.open(levelDBPath.toFile(), options);
+            // The Tx filter file is only valid until the DB is modified, so it's ALWAYS removed on start. Otherwise,
+            // if the DB ran once with the filter disabled, the file left by a previous run would be out of date:
+            Path filterFile = config.getWorkingFolder().resolve(TX_FILTER_FILE);
+            if (config.isTxFilterEnabled()) loadTxFilter(filterFile);
+            Files.deleteIfExists(filterFile);
+            // The Blocks pending to be swept from the last time are swept now:
+            _scheduleBlocksSweep();
+            if (this.eventsAggregator != null) this.eventsAggregator.start();
         } catch (IOException ioe) {
             log.error(ioe.getMessage(), ioe);
             throw new RuntimeException(ioe);
         }
     }
 
+    /*
+     * It loads the Tx filter saved the last time the DB was stopped, or builds it from the Txs in the DB if there is
+     * no file. The file is removed on start, so if the DB is not stopped properly the filter is built again from
+     * the DB next time (a filter out of date would report Txs as NOT stored when they are).
+     */
+    private void loadTxFilter(Path filterFile) {
+        TxExistenceFilter filter = null;
+        if (Files.exists(filterFile)) {
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(filterFile))) {
+                filter = TxExistenceFilter.readFrom(in);
+            } catch (IOException ioe) {
+                log.warn("Tx Filter file could not be loaded, building it from the DB...", ioe);
+            }
+        }
+        if (filter == null) {
+            filter = new TxExistenceFilter(config.getTxFilterInitialCapacity(), config.getTxFilterFpp());
+            _populateTxFilter(filter);
+        }
+        log.info(" - " + filter);
+        this.txFilter = filter;
+    }
+
+    private void saveTxFilter() throws IOException {
+        Path filterFile = config.getWorkingFolder().resolve(TX_FILTER_FILE);
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(filterFile))) {
+            txFilter.writeTo(out);
+        }
+    }
+
     @Override
     public void stop() {
+        // The Block Sweeper must be stopped before the DB is closed:
+        if (this.blockSweeperExecutor != null) {
+            this.blockSweeperExecutor.shutdownNow();
+            try {
+                this.blockSweeperExecutor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // The Events still being aggregated are published before the EventBus is shutdown:
+        if (this.eventsAggregator != null) this.eventsAggregator.stop();
         try {
             getLock().writeLock().lock();
             log.info("LevelDB-Store Stopping...");
             this.executorService.shutdownNow();
             this.executor.shutdownNow();
+            if (this.iteratorPrefetchExecutor != null) this.iteratorPrefetchExecutor.shutdownNow();
+            if (this.txFilter != null) saveTxFilter();
             this.levelDBStore.close();
             log.info("LevelDB-Store Stopped.");
         } catch (IOException ioe) {
@@ -275,6 +386,7 @@ public class BlockStoreLevelDB implements BlockStoreKeyValue<Map.Entry<byte[], b
             Files.createDirectory(levelDBPath);
             Options options = new Options();
             levelDBStore = factory.open(levelDBPath.toFile(), options);
+            if (txFilter != null) txFilter.clear();
         } catch (IOException ioe) {
             getLogger().error("ERROR Clearing the DB", ioe);
         } finally {
@@ -296,6 +408,7 @@ public class BlockStoreLevelDB implements BlockStoreKeyValue<Map.Entry<byte[], b
     public boolean isTriggerBlockEvents()       { return this.triggerBlockEvents; }
     public boolean isTriggerTxEvents()          { return this.triggerTxEvents; }
     public EventBus getEventBus()               { return this.eventBus; }
+    public TxExistenceFilter getTxFilter()      { return this.txFilter; }
 
     /**
      * Builder
@@ -2,9 +2,11 @@ package io.bitcoinsv.jcl.store.levelDB.blockStore;
 
 
 import io.bitcoinsv.jcl.store.keyValue.blockStore.BlockStoreKeyValueConfig;
+import io.bitcoinsv.jcl.store.keyValue.common.TxExistenceFilter;
 import io.bitcoinsv.jcl.tools.config.RuntimeConfig;
 
 import javax.annotation.Nonnull;
+import java.time.Duration;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
@@ -43,11 +45,46 @@ public class BlockStoreLevelDBConfig implements BlockStoreKeyValueConfig {
      */
     private String networkId;
 
+    /**
+     * If enabled, a probabilistic filter with the Txs stored is kept in memory, so most of the DB reads for Txs that
+     * are NOT in the DB can be skipped. The filter is saved into the working folder when the DB stops.
+     */
+    private final boolean txFilterEnabled;
+
+    /** Initial number of Txs the Tx filter is sized for (it grows beyond that if needed) */
+    private final long txFilterInitialCapacity;
+
+    /** False-positive probability of the Tx filter */
+    private final double txFilterFpp;
+
+    /** If enabled, an index from each Outpoint to the Tx spending it is kept */
+    private final boolean outpointIndexEnabled;
+
+    /** Number of Items read ahead in background by the Iterators over large sets of Items (0 = disabled) */
+    private final int iteratorPrefetchSize;
+
+    /** If enabled, the Tx-Links of the Blocks removed are cleaned up in background */
+    private final boolean blockSweeperEnabled;
+
+    /** If specified, the Events are coalesced and published at the end of each time window */
+    private final Duration eventsAggregationWindow;
+
+    /** If enabled, the Events coalesced store their Hashes in a compact format */
+    private final boolean eventsCompactPayload;
+
     public BlockStoreLevelDBConfig( String id,
                                     Path workingFolder,
                                     RuntimeConfig runtimeConfig,
                                     Integer transactionBatchSize,
-                                    @Nonnull String networkId) {
+                                    @Nonnull String networkId,
+                                    boolean txFilterEnabled,
+                                    Long txFilterInitialCapacity,
+                                    Double txFilterFpp,
+                                    boolean outpointIndexEnabled,
+                                    Integer iteratorPrefetchSize,
+                                    boolean blockSweeperEnabled,
+                                    Duration eventsAggregationWindow,
+                                    boolean eventsCompactPayload) {
         this.runtimeConfig = runtimeConfig;
         // The working folder for this BD will be built based on a combination of different parameters:
         // The working folder has priority. If not specified, we use runtime Working folder, with a suffix that might
@@ -59,19 +96,47 @@ public class BlockStoreLevelDBConfig implements BlockStoreKeyValueConfig {
                     : Paths.get(runtimeConfig.getFileUtils().getRootPath().toString(), LEVELDB_FOLDER, DEFAULT_DB);
         this.transactionBatchSize = (transactionBatchSize != null) ? transactionBatchSize : TRANSACTION_BATCH_SIZE;
         this.networkId = networkId;
+        this.txFilterEnabled = txFilterEnabled;
+        this.txFilterInitialCapacity = (txFilterInitialCapacity != null) ? txFilterInitialCapacity : TxExistenceFilter.DEFAULT_INITIAL_CAPACITY;
+        this.txFilterFpp = (txFilterFpp != null) ? txFilterFpp : TxExistenceFilter.DEFAULT_FPP;
+        this.outpointIndexEnabled = outpointIndexEnabled;
+        this.iteratorPrefetchSize = (iteratorPrefetchSize != null) ? iteratorPrefetchSize : 0;
+        this.blockSweeperEnabled = blockSweeperEnabled;
+        this.eventsAggregationWindow = eventsAggregationWindow;
+        this.eventsCompactPayload = eventsCompactPayload;
+    }
+
+    public BlockStoreLevelDBConfig( String id,
+                                    Path workingFolder,
+                                    RuntimeConfig runtimeConfig,
+                                    Integer transactionBatchSize,
+                                    @Nonnull String networkId) {
+        this(id, workingFolder, runtimeConfig, transactionBatchSize, networkId, false, null, null, false, null, false, null, false);
     }
 
     public int getTransactionBatchSize()    { return this.transactionBatchSize; }
     public Path getWorkingFolder()          { return this.workingFolder; }
     public RuntimeConfig getRuntimeConfig() { return this.runtimeConfig; }
     public String getNetworkId()            { return this.networkId; }
+    public boolean isTxFilterEnabled()      { return this.txFilterEnabled; }
+    public long getTxFilterInitialCapacity(){ return this.txFilterInitialCapacity; }
+    public double getTxFilterFpp()          { return this.txFilterFpp; }
+    public boolean isOutpointIndexEnabled() { return this.outpointIndexEnabled; }
+    public int getIteratorPrefetchSize()    { return this.iteratorPrefetchSize; }
+    public boolean isBlockSweeperEnabled()  { return this.blockSweeperEnabled; }
+    public Duration getEventsAggregationWindow() { return this.eventsAggregationWindow; }
+    public boolean isEventsCompactPayload() { return this.eventsCompactPayload; }
 
     public static BlockStoreLevelDBConfigBuilder builder() {
         return new BlockStoreLevelDBConfigBuilder();
     }
 
     public BlockStoreLevelDBConfigBuilder toBuilder() {
-        return new BlockStoreLevelDBConfigBuilder().workingFolder(this.workingFolder).runtimeConfig(this.runtimeConfig).transactionBatchSize(this.transactionBatchSize).networkId(this.networkId);
+        return new BlockStoreLevelDBConfigBuilder().workingFolder(this.workingFolder).runtimeConfig(this.runtimeConfig).transactionBatchSize(this.transactionBatchSize).networkId(this.networkId)
+                .txFilterEnabled(this.txFilterEnabled).txFilterInitialCapacity(this.txFilterInitialCapacity).txFilterFpp(this.txFilterFpp)
+                .outpointIndexEnabled(this.outpointIndexEnabled).iteratorPrefetchSize(this.iteratorPrefetchSize)
+                .blockSweeperEnabled(this.blockSweeperEnabled).eventsAggregationWindow(this.eventsAggregationWindow)
+                .eventsCompactPayload(this.eventsCompactPayload);
     }
 
     /**
@@ -83,6 +148,14 @@ public class BlockStoreLevelDBConfig implements BlockStoreKeyValueConfig {
         private RuntimeConfig runtimeConfig;
         private Integer transactionBatchSize;
         private @Nonnull String networkId;
+        private boolean txFilterEnabled;
+        private Long txFilterInitialCapacity;
+        private Double txFilterFpp;
+        private boolean outpointIndexEnabled;
+        private Integer iteratorPrefetchSize;
+        private boolean blockSweeperEnabled;
+        private Duration eventsAggregationWindow;
+        private boolean eventsCompactPayload;
 
         BlockStoreLevelDBConfigBuilder() {
         }
@@ -112,8 +185,50 @@ public class BlockStoreLevelDBConfig implements BlockStoreKeyValueConfig {
             return this;
         }
 
+        public BlockStoreLevelDBConfig.BlockStoreLevelDBConfigBuilder txFilterEnabled(boolean txFilterEnabled) {
+            this.txFilterEnabled = txFilterEnabled;
+            return this;
+        }
+
+        public BlockStoreLevelDBConfig.BlockStoreLevelDBConfigBuilder txFilterInitialCapacity(Long txFilterInitialCapacity) {
+            this.txFilterInitialCapacity = txFilterInitialCapacity;
+            return this;
+        }
+
+        public BlockStoreLevelDBConfig.BlockStoreLevelDBConfigBuilder txFilterFpp(Double txFilterFpp) {
+            this.txFilterFpp = txFilterFpp;
+            return this;
+        }
+
+        public BlockStoreLevelDBConfig.BlockStoreLevelDBConfigBuilder outpointIndexEnabled(boolean outpointIndexEnabled) {
+            this.outpointIndexEnabled = outpointIndexEnabled;
+            return this;
+        }
+
+        public BlockStoreLevelDBConfig.BlockStoreLevelDBConfigBuilder iteratorPrefetchSize(Integer iteratorPrefetchSize) {
+            this.iteratorPrefetchSize = iteratorPrefetchSize;
+            return this;
+        }
+
+        public BlockStoreLevelDBConfig.BlockStoreLevelDBConfigBuilder blockSweeperEnabled(boolean blockSweeperEnabled) {
+            this.blockSweeperEnabled = blockSweeperEnabled;
+            return this;
+        }
+
+        public BlockStoreLevelDBConfig.BlockStoreLevelDBConfigBuilder eventsAggregationWindow(Duration eventsAggregationWindow) {
+            this.eventsAggregationWindow = eventsAggregationWindow;
+            return this;
+        }
+
+        public BlockStoreLevelDBConfig.BlockStoreLevelDBConfigBuilder eventsCompactPayload(boolean eventsCompactPayload) {
+            this.eventsCompactPayload = eventsCompactPayload;
+            return this;
+        }
+
         public BlockStoreLevelDBConfig build() {
-            return new BlockStoreLevelDBConfig(id, workingFolder, runtimeConfig, transactionBatchSize, networkId);
+            return new BlockStoreLevelDBConfig(id, workingFolder, runtimeConfig, transactionBatchSize, networkId,
+                    txFilterEnabled, txFilterInitialCapacity, txFilterFpp, outpointIndexEnabled, iteratorPrefetchSize, blockSweeperEnabled,
+                    eventsAggregationWindow, eventsCompactPayload);
         }
     }
 }
@@ -0,0 +1,339 @@
+package io.bitcoinsv.jcl.store.levelDB.blockStore;
+
+
+import io.bitcoinsv.jcl.store.keyValue.blockStore.BlockStoreKeyValue;
+import io.bitcoinsv.jcl.store.keyValue.common.KeyValueIterator;
+import org.iq80.leveldb.WriteBatch;
+import org.slf4j.Logger;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * A Tool to export the content of a LevelDB Store (a BlockStore or a BlockChainStore) into a Snapshot file, and to
+ * import it into a new Store later on. It's much faster than saving the Blocks and Txs one by one, since the raw
+ * Keys and Values are copied in order, with no DB Transactions, no Events and no chain logic involved.
+ *
+ * The Snapshot is consistent: all the Keys are read from the same DB Snapshot. The Txs themselves are optional, the
+ * rest of the info (Block headers, chain info, links between Txs and Blocks, metadata) is always exported.
+ *
+ * File Format:
+ *  - Header: Magic bytes, version, network Id and whether the Txs are included.
+ *  - Entries (sorted by Key): each Key is stored as the number of bytes it shares with the previous Key, plus the
+ *    rest of it. The Keys of a Store share long prefixes, so this makes the file much smaller.
+ *  - Trailer: The number of Entries and a CRC32 checksum of everything before it.
+ */
+public class StoreSnapshotTool {
+
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(StoreSnapshotTool.class);
+
+    private static final byte[] MAGIC       = "JCLSNAP".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION        = 1;
+    private static final int ENTRY_MARKER   = 1;
+    private static final int END_MARKER     = 0;
+    private static final int BUFFER_SIZE    = 1 << 20;
+
+    // The Entries are imported in batches of this size:
+    private static final int IMPORT_BATCH_SIZE = 10_000;
+
+    /** Information about a Snapshot file */
+    public static class SnapshotInfo {
+        private final String networkId;
+        private final boolean includesTxs;
+        private final long numEntries;
+
+        SnapshotInfo(String networkId, boolean includesTxs, long numEntries) {
+            this.networkId = networkId;
+            this.includesTxs = includesTxs;
+            this.numEntries = numEntries;
+        }
+
+        public String getNetworkId()    { return this.networkId; }
+        public boolean isIncludesTxs()  { return this.includesTxs; }
+        public long getNumEntries()     { return this.numEntries; }
+
+        @Override
+        public String toString() {
+            return "Snapshot[network: " + networkId + ", txs included: " + includesTxs + ", " + numEntries + " entries]";
+        }
+    }
+
+    // Keys prefix of all the content of the Store for this Network:
+    private static byte[] storePreffix(BlockStoreLevelDB db) {
+        return db.fullKey(BlockStoreKeyValue.DIR_BLOCKCHAIN, db.getConfig().getNetworkId(), "");
+    }
+
+    // Keys prefix of the whole Txs:
+    private static byte[] txsPreffix(BlockStoreLevelDB db) {
+        return db.fullKey(db.fullKeyForTxs(), BlockStoreKeyValue.KEY_PREFFIX_TX);
+    }
+
+    private static boolean startsWith(byte[] key, byte[] preffix) {
+        return key.length >= preffix.length && Arrays.equals(key, 0, preffix.length, preffix, 0, preffix.length);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (result < 0) throw new IOException("Wrong Snapshot format: Negative length");
+                return result;
+            }
+        }
+        throw new IOException("Wrong Snapshot format: VarInt too long");
+    }
+
+    /**
+     * It exports the content of the Store into the file given. The Store can be used while exporting, the changes
+     * made after the export started are not included.
+     *
+     * @param db            Store to export
+     * @param file          Snapshot file to create
+     * @param includeTxs    If false, the whole Txs are not exported (but their links to the Blocks are)
+     * @return              Info about the Snapshot created
+     */
+    public static SnapshotInfo exportSnapshot(BlockStoreLevelDB db, Path file, boolean includeTxs) throws IOException {
+        String networkId = db.getConfig().getNetworkId();
+        byte[] txsPreffix = txsPreffix(db);
+        log.info("Exporting Store Snapshot into " + file + "...");
+
+        CRC32 crc = new CRC32();
+        long numEntries = 0;
+        try (OutputStream fileOut = new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE);
+             KeyValueIterator<Map.Entry<byte[], byte[]>, Object> it = db.getIterator(storePreffix(db), null, null, e -> e)) {
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(fileOut, crc));
+
+            // Header:
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(networkId);
+            out.writeBoolean(includeTxs);
+
+            // Entries (the LevelDB iterator returns them sorted by Key):
+            byte[] previousKey = new byte[0];
+            while (it.hasNext()) {
+                Map.Entry<byte[], byte[]> entry = it.next();
+                byte[] key = entry.getKey();
+                if (!includeTxs && startsWith(key, txsPreffix)) continue;
+
+                int sharedLength = Arrays.mismatch(previousKey, key);
+                if (sharedLength < 0) sharedLength = key.length;
+                out.writeByte(ENTRY_MARKER);
+                writeVarInt(out, sharedLength);
+                writeVarInt(out, key.length - sharedLength);
+                out.write(key, sharedLength, key.length - sharedLength);
+                writeVarInt(out, entry.getValue().length);
+                out.write(entry.getValue());
+
+                previousKey = key;
+                numEntries++;
+            }
+
+            // Trailer (the checksum itself is not included in the checksum):
+            out.writeByte(END_MARKER);
+            out.writeLong(numEntries);
+            out.flush();
+            new DataOutputStream(fileOut).writeLong(crc.getValue());
+        }
+        SnapshotInfo result = new SnapshotInfo(networkId, includeTxs, numEntries);
+        log.info(result + " exported.");
+        return result;
+    }
+
+    /*
+     * A Reader of a Snapshot file. The Header is read first, and then the Entries, verifying the checksum at the end.
+     */
+    private static class SnapshotReader implements Closeable {
+        private final CRC32 crc = new CRC32();
+        private final InputStream fileIn;
+        private final DataInputStream in;
+        private String networkId;
+        private boolean includesTxs;
+
+        SnapshotReader(Path file) throws IOException {
+            this.fileIn = new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE);
+            this.in = new DataInputStream(new CheckedInputStream(fileIn, crc));
+        }
+
+        /* It reads the Header. It must be called before reading the Entries */
+        void readHeader() throws IOException {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) throw new IOException("Wrong Snapshot format: Not a Snapshot file");
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("Wrong Snapshot format: Version " + version + " not supported");
+            this.networkId = in.readUTF();
+            this.includesTxs = in.readBoolean();
+        }
+
+        /* It reads the Entries, passing each one to the callback given (if any), and verifies the checksum at the end */
+        SnapshotInfo readEntries(EntryConsumer entryConsumer) throws IOException {
+            byte[] previousKey = new byte[0];
+            long numEntries = 0;
+            while (in.readUnsignedByte() == ENTRY_MARKER) {
+                int sharedLength = readVarInt(in);
+                int restLength = readVarInt(in);
+                if (sharedLength > previousKey.length) throw new IOException("Wrong Snapshot format: Wrong Key");
+                byte[] key = Arrays.copyOf(previousKey, sharedLength + restLength);
+                in.readFully(key, sharedLength, restLength);
+                byte[] value = new byte[readVarInt(in)];
+                in.readFully(value);
+                if (entryConsumer != null) entryConsumer.accept(key, value);
+                previousKey = key;
+                numEntries++;
+            }
+
+            // Trailer:
+            long numEntriesExpected = in.readLong();
+            long crcCalculated = crc.getValue();
+            long crcExpected = new DataInputStream(fileIn).readLong();
+            if (numEntries != numEntriesExpected || crcCalculated != crcExpected)
+                throw new IOException("Wrong Snapshot: Checksum does not match, the file is corrupted");
+
+            return new SnapshotInfo(networkId, includesTxs, numEntries);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /** It reads the Snapshot file and verifies its checksum, without importing it */
+    public static SnapshotInfo verifySnapshot(Path file) throws IOException {
+        try (SnapshotReader reader = new SnapshotReader(file)) {
+            reader.readHeader();
+            return reader.readEntries(null);
+        }
+    }
+
+    /** It reads only the Header of the Snapshot file and returns the Network it belongs to */
+    public static String readSnapshotNetworkId(Path file) throws IOException {
+        try (SnapshotReader reader = new SnapshotReader(file)) {
+            reader.readHeader();
+            return reader.networkId;
+        }
+    }
+
+    /**
+     * It imports the Snapshot file into the Store given. The Store must be empty and NOT started yet (a
+     * BlockChainStore initializes itself with the Genesis Block when it starts, and the Tx filter, if enabled, is
+     * built from the DB then). The file is read only once: the Entries are written straight into LevelDB, in order
+     * and in batches, and the checksum is verified at the end. If the import fails half-way (the file is corrupted,
+     * for instance), the Entries already written are removed.
+     *
+     * @param db    Store to import the Snapshot into. It must be configured for the same Network as the Snapshot
+     * @param file  Snapshot file
+     * @return      Info about the Snapshot imported
+     */
+    public static SnapshotInfo importSnapshot(BlockStoreLevelDB db, Path file) throws IOException {
+        return importSnapshot(db, file, IMPORT_BATCH_SIZE);
+    }
+
+    // Same as above, with the number of Entries written in each batch
+    static SnapshotInfo importSnapshot(BlockStoreLevelDB db, Path file, int batchMaxSize) throws IOException {
+        log.info("Importing Store Snapshot from " + file + "...");
+        SnapshotInfo info;
+        try (SnapshotReader reader = new SnapshotReader(file)) {
+            reader.readHeader();
+            if (!reader.networkId.equals(db.getConfig().getNetworkId()))
+                throw new IllegalArgumentException("Snapshot network (" + reader.networkId
+                        + ") does not match the Store network (" + db.getConfig().getNetworkId() + ")");
+            // The Tx filter is only loaded when the Store starts. If it's already loaded, it would NOT contain the Txs
+            // imported, and it would be saved like that when the Store stops:
+            if (db.getTxFilter() != null)
+                throw new IllegalStateException("The Store must NOT be started to import a Snapshot");
+            try {
+                db.getLock().writeLock().lock();
+                byte[] storePreffix = storePreffix(db);
+                try (KeyValueIterator<byte[], Object> it = db.getIterator(storePreffix, null, null, db::keyFromItem)) {
+                    if (it.hasNext()) throw new IllegalStateException("The Store must be empty to import a Snapshot");
+                }
+
+                try {
+                    WriteBatch[] batch = { db.levelDBStore.createWriteBatch() };
+                    int[] batchSize = { 0 };
+                    info = reader.readEntries((key, value) -> {
+                        batch[0].put(key, value);
+                        if (++batchSize[0] == batchMaxSize) {
+                            db.levelDBStore.write(batch[0]);
+                            batch[0].close();
+                            batch[0] = db.levelDBStore.createWriteBatch();
+                            batchSize[0] = 0;
+                        }
+                    });
+                    db.levelDBStore.write(batch[0]);
+                    batch[0].close();
+                } catch (IOException | RuntimeException e) {
+                    // The Store was empty, so we leave it that way:
+                    log.error("Error importing Store Snapshot, removing the Entries already imported...", e);
+                    db.removeRange(null, storePreffix);
+                    throw e;
+                }
+
+                // The Txs have been written bypassing the Store, so a Tx filter saved by a previous run is out of date.
+                // We remove it, so the filter (if enabled) is built from the DB when the Store starts:
+                Files.deleteIfExists(db.getConfig().getWorkingFolder().resolve(BlockStoreLevelDB.TX_FILTER_FILE));
+            } finally {
+                db.getLock().writeLock().unlock();
+            }
+        }
+        log.info(info + " imported.");
+        return info;
+    }
+
+    /** Callback for each Entry read from a Snapshot */
+    private interface EntryConsumer {
+        void accept(byte[] key, byte[] value) throws IOException;
+    }
+
+    /**
+     * Command-line usage:
+     *   export [dbFolder] [networkId] [snapshotFile] [includeTxs (true/false)]
+     *   import [snapshotFile] [dbFolder]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 4 && args[0].equals("export")) {
+            BlockStoreLevelDB db = buildDB(Path.of(args[1]), args[2]);
+            exportSnapshot(db, Path.of(args[3]), args.length < 5 || Boolean.parseBoolean(args[4]));
+            db.stop();
+        } else if (args.length == 3 && args[0].equals("import")) {
+            String networkId = readSnapshotNetworkId(Path.of(args[1]));
+            BlockStoreLevelDB db = buildDB(Path.of(args[2]), networkId);
+            importSnapshot(db, Path.of(args[1]));
+            db.stop();
+        } else {
+            log.info("Usage:");
+            log.info("  StoreSnapshotTool export [dbFolder] [networkId] [snapshotFile] [includeTxs (true/false)]");
+            log.info("  StoreSnapshotTool import [snapshotFile] [dbFolder]");
+        }
+    }
+
+    private static BlockStoreLevelDB buildDB(Path workingFolder, String networkId) {
+        BlockStoreLevelDBConfig config = BlockStoreLevelDBConfig.builder()
+                .workingFolder(workingFolder)
+                .networkId(networkId)
+                .build();
+        return BlockStoreLevelDB.builder().config(config).build();
+    }
+}
@@ -3,10 +3,15 @@ package io.bitcoinsv.jcl.store.levelDB.common;
 import io.bitcoinsv.jcl.store.keyValue.common.KeyValueIteratorImpl;
 import org.iq80.leveldb.DB;
 import org.iq80.leveldb.DBIterator;
+import org.iq80.leveldb.ReadOptions;
+import org.iq80.leveldb.Snapshot;
 
 import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.lang.ref.Cleaner;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
@@ -17,12 +22,49 @@ import java.util.function.Predicate;
  * This class is an implementation of an Iterator that fetches the data from a LevelDB DataBase.
  * It extends the functionality of KeyValueIteratorIml, and provides specific implementations for those methods that
  * need to be rewritten, since they depen on specific implemenation-details.
+ *
+ * The Iterator reads from a LevelDB Snapshot taken when it's created, so it's not affected by any changes made in the
+ * DB while iterating, and it does not need to be protected by any lock. The Snapshot is released when the Iterator
+ * reaches the end, or when it's closed. The Iterators are usually returned wrapped up in an Iterable, so the Client
+ * might not be able to close them: if an Iterator is abandoned before reaching the end, its Snapshot is released
+ * once the Iterator is garbage-collected.
  */
 public class LevelDBIterator<I> extends KeyValueIteratorImpl<I, Object, Map.Entry<byte[], byte[]>> implements Iterator<I> {
 
+    // The Snapshots of the Iterators abandoned are released by this Cleaner:
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    // Number of Iterators whose Snapshot has not been released yet:
+    private static final AtomicInteger numOpenIterators = new AtomicInteger();
+
+    // The LevelDB Iterator and its Snapshot, released when the Iterator is closed or garbage-collected. It must not
+    // reference the Iterator itself, otherwise the Iterator would never be garbage-collected:
+    private static class Resources implements Runnable {
+        private final DBIterator iterator;
+        private final Snapshot snapshot;
+
+        Resources(DBIterator iterator, Snapshot snapshot) {
+            this.iterator = iterator;
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public void run() {
+            numOpenIterators.decrementAndGet();
+            try {
+                iterator.close();
+                snapshot.close();
+            } catch (IOException ioe) {
+                throw new RuntimeException(ioe);
+            }
+        }
+    }
+
     // Connection to a LevelDB Database:
     private DB levelDB;
     private DBIterator iterator;
+    private Cleaner.Cleanable resources;
+    private boolean closed;
 
     /**
      * Constructor
@@ -38,8 +80,11 @@ public class LevelDBIterator<I> extends KeyValueIteratorImpl<I, Object, Map.Entr
             // We init the basic properties:
             this.levelDB = database;
 
-            // We init the Level DB Iterator and point it to the First Key:
-            iterator = database.iterator();
+            // We init the Level DB Iterator over a Snapshot, and point it to the First Key:
+            Snapshot snapshot = database.getSnapshot();
+            iterator = database.iterator(new ReadOptions().snapshot(snapshot));
+            numOpenIterators.incrementAndGet();
+            resources = CLEANER.register(this, new Resources(iterator, snapshot));
             iterator.seek(super.keyPreffix);
         } catch (Exception e) {
             // This mit happens sometimes, when trying to use the Iterator when the Db is closing...
@@ -48,11 +93,23 @@ public class LevelDBIterator<I> extends KeyValueIteratorImpl<I, Object, Map.Entr
         }
     }
 
-    @Override protected boolean hasNextItemFromDB()                             { return iterator.hasNext(); }
+    @Override protected boolean hasNextItemFromDB()                             { return !closed && iterator.hasNext(); }
     @Override protected Map.Entry<byte[], byte[]> nextEntryFromDB()             { return iterator.next(); }
     @Override protected byte[] getKeyFromEntry(Map.Entry<byte[], byte[]> item)  { return item.getKey(); }
     @Override public Object getCurrentTransaction()                             { return null; }
 
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        resources.clean();
+    }
+
+    /** Returns the number of Iterators created and not released yet (neither closed nor garbage-collected) */
+    public static int getNumOpenIterators() {
+        return numOpenIterators.get();
+    }
+
     public static <I> LevelDBIteratorBuilder<I> builder() {
         return new LevelDBIteratorBuilder<I>();
     }
@@ -0,0 +1,91 @@
+package io.bitcoinsv.jcl.store.levelDB.blockStore
+
+
+import io.bitcoinsv.bitcoinjsv.bitcoin.api.base.HeaderReadOnly
+import io.bitcoinsv.bitcoinjsv.bitcoin.api.base.Tx
+import io.bitcoinsv.bitcoinjsv.core.Sha256Hash
+import io.bitcoinsv.jcl.store.blockStore.BlocksCompareResult
+import io.bitcoinsv.jcl.store.keyValue.blockStore.BlockStoreKeyValue
+import io.bitcoinsv.jcl.store.levelDB.StoreFactory
+import io.bitcoinsv.jcl.tools.common.TestingUtils
+import spock.lang.Ignore
+import spock.lang.Specification
+
+import java.time.Duration
+import java.time.Instant
+
+/**
+ * Performance Testing class for the comparison of Blocks. It compares the merge-join implementation of
+ * "compareBlocks()" against the previous one, based on point lookups, on the LevelDB backend.
+ * We are NOT testing functionality here (that's covered by BlockStoreCompareSpec), just making measurements.
+ *
+ * Sample run (150.000 Txs per Block, 100.000 in common):
+ *  - Point lookups: 15977 millisecs
+ *  - Merge-join:     1262 millisecs
+ */
+class BlockStoreComparePerformanceSpec extends Specification {
+
+    // It consumes the Iterable and returns its items as a Set
+    private Set<Sha256Hash> toSet(Iterable<Sha256Hash> iterable) {
+        Set<Sha256Hash> result = new HashSet<>()
+        iterable.forEach({ h -> result.add(h) })
+        return result
+    }
+
+    // It runs the comparison, consumes the results, and prints the time it took
+    private List<Set<Sha256Hash>> runComparison(String title, Closure<Optional<BlocksCompareResult>> comparison) {
+        Instant begin = Instant.now()
+        BlocksCompareResult result = comparison.call().get()
+        List<Set<Sha256Hash>> sets = [toSet(result.getTxsInCommonIt()), toSet(result.getTxsOnlyInA()), toSet(result.getTxsOnlyInB())]
+        println(" - " + title + ": " + Duration.between(begin, Instant.now()).toMillis() + " millisecs ("
+                + sets[0].size() + " in common, " + sets[1].size() + " only in A, " + sets[2].size() + " only in B)")
+        return sets
+    }
+
+    @Ignore // time-consuming
+    def "Testing compareBlocks: merge-join vs point lookups"() {
+        int NUM_TXS_ONLY = 50_000       // Num of Txs linked only to each Block
+        int NUM_TXS_IN_COMMON = 100_000 // Num of Txs linked to both Blocks
+        int BATCH_TXS_SIZE = 10_000     // Num Txs saved on each call/batch
+        given:
+            BlockStoreKeyValue db = (BlockStoreKeyValue) StoreFactory.getInstance("BV-Main", false, false)
+            HeaderReadOnly blockA = TestingUtils.buildBlock()
+            HeaderReadOnly blockB = TestingUtils.buildBlock()
+        when:
+            db.start()
+            println("Starting Performance Test...")
+            db.saveBlocks(Arrays.asList(blockA, blockB))
+
+            // Txs only in A, only in B, and in both:
+            List<Tx> txs = new ArrayList<>()
+            for (int i = 0; i < NUM_TXS_ONLY; i++) {
+                txs.add(TestingUtils.buildTx())
+                if (txs.size() == BATCH_TXS_SIZE) { db.saveBlockTxs(blockA.getHash(), txs); txs.clear() }
+            }
+            for (int i = 0; i < NUM_TXS_ONLY; i++) {
+                txs.add(TestingUtils.buildTx())
+                if (txs.size() == BATCH_TXS_SIZE) { db.saveBlockTxs(blockB.getHash(), txs); txs.clear() }
+            }
+            for (int i = 0; i < NUM_TXS_IN_COMMON; i++) {
+                txs.add(TestingUtils.buildTx())
+                if (txs.size() == BATCH_TXS_SIZE) {
+                    db.saveBlockTxs(blockA.getHash(), txs)
+                    db.linkTxsToBlock(txs.collect { tx -> tx.getHash() }, blockB.getHash())
+                    txs.clear()
+                }
+            }
+            println(" - Blocks saved: " + db.getBlockNumTxs(blockA.getHash()) + " txs in A, " + db.getBlockNumTxs(blockB.getHash()) + " txs in B")
+
+            List<Set<Sha256Hash>> lookupsResult = runComparison("Point lookups", { db.compareBlocksWithLookups(blockA.getHash(), blockB.getHash()) })
+            List<Set<Sha256Hash>> mergeResult = runComparison("Merge-join", { db.compareBlocks(blockA.getHash(), blockB.getHash()) })
+            println("Performance Test End.")
+        then:
+            mergeResult == lookupsResult
+            mergeResult[0].size() == NUM_TXS_IN_COMMON
+            mergeResult[1].size() == NUM_TXS_ONLY
+            mergeResult[2].size() == NUM_TXS_ONLY
+        cleanup:
+            db.clear()
+            db.stop()
+    }
+}
@@ -0,0 +1,79 @@
+package io.bitcoinsv.jcl.store.levelDB.blockStore
+
+
+import io.bitcoinsv.bitcoinjsv.bitcoin.api.base.Tx
+import io.bitcoinsv.bitcoinjsv.core.Sha256Hash
+import io.bitcoinsv.jcl.store.blockStore.events.CompactHashList
+import io.bitcoinsv.jcl.store.blockStore.events.TxsSavedEvent
+import io.bitcoinsv.jcl.store.levelDB.StoreFactory
+import io.bitcoinsv.jcl.tools.common.TestingUtils
+import spock.lang.Specification
+
+import java.nio.file.Path
+import java.time.Duration
+
+/**
+ * Testing class for the aggregation of the Events triggered by the LevelDB BlockStore.
+ */
+class BlockStoreEventsAggregationSpec extends Specification {
+
+    // It creates a BlockStore with the Events aggregation enabled
+    private BlockStoreLevelDB buildDB(boolean compactPayload) {
+        BlockStoreLevelDBConfig dbConfig = BlockStoreLevelDBConfig.builder()
+                .workingFolder(Path.of(StoreFactory.buildWorkingFolder()))
+                .networkId("BSV-Main")
+                .eventsAggregationWindow(Duration.ofMillis(100))
+                .eventsCompactPayload(compactPayload)
+                .build()
+        return BlockStoreLevelDB.builder().config(dbConfig).triggerTxEvents(true).build()
+    }
+
+    /**
+     * We test that the Hashes of the Txs saved in several operations are published in fewer Events, and that in
+     * compact mode they are stored in a CompactHashList.
+     */
+    def "testing Txs Saved Events aggregated"() {
+        given:
+            BlockStoreLevelDB db = buildDB(compactPayload)
+            List<TxsSavedEvent> events = Collections.synchronizedList(new ArrayList<>())
+            db.EVENTS().TXS_SAVED.forEach({ e -> events.add(e) })
+            List<Tx> txs = (1..30).collect { TestingUtils.buildTx() }
+        when:
+            db.start()
+            txs.collate(3).each { batch -> db.saveTxs(batch) }
+            // We wait for the time window to end:
+            Thread.sleep(500)
+            List<Sha256Hash> hashesPublished = events.collectMany { e -> e.getTxHashes() }
+            boolean allCompact = events.every { e -> e.getTxHashes() instanceof CompactHashList }
+        then:
+            hashesPublished == txs.collect { tx -> tx.getHash() }
+            events.size() < 10
+            allCompact == compactPayload
+        cleanup:
+            db.clear()
+            db.stop()
+        where:
+            compactPayload << [false, true]
+    }
+
+    /**
+     * We test that the Events being aggregated are published when the DB stops.
+     */
+    def "testing Events aggregated published on stop"() {
+        given:
+            BlockStoreLevelDB db = buildDB(false)
+            List<Sha256Hash> hashesPublished = Collections.synchronizedList(new ArrayList<>())
+            db.EVENTS().TXS_SAVED.forEach({ e -> hashesPublished.addAll(e.getTxHashes()) })
+            Tx tx = TestingUtils.buildTx()
+        when:
+            db.start()
+            db.saveTx(tx)
+            db.getEventsAggregator().stop()
+            Thread.sleep(100)
+        then:
+            hashesPublished == [tx.getHash()]
+        cleanup:
+            db.clear()
+            db.stop()
+    }
+}
@@ -0,0 +1,125 @@
+package io.bitcoinsv.jcl.store.levelDB.blockStore
+
+
+import io.bitcoinsv.bitcoinjsv.bitcoin.api.base.HeaderReadOnly
+import io.bitcoinsv.bitcoinjsv.bitcoin.api.base.Tx
+import io.bitcoinsv.bitcoinjsv.bitcoin.api.base.TxOutPoint
+import io.bitcoinsv.bitcoinjsv.core.Sha256Hash
+import io.bitcoinsv.jcl.store.levelDB.StoreFactory
+import io.bitcoinsv.jcl.tools.common.TestingUtils
+import spock.lang.Specification
+
+import java.nio.file.Path
+
+/**
+ * Testing class for the Outpoint index of the LevelDB BlockStore, which allows to get the Tx spending an Outpoint.
+ */
+class BlockStoreOutpointIndexSpec extends Specification {
+
+    // It creates a BlockStore with the Outpoint index enabled or disabled
+    private BlockStoreLevelDB buildDB(boolean outpointIndexEnabled) {
+        return buildDB(outpointIndexEnabled, false)
+    }
+
+    // It creates a BlockStore with the Outpoint index and the Block Sweeper enabled or disabled
+    private BlockStoreLevelDB buildDB(boolean outpointIndexEnabled, boolean blockSweeperEnabled) {
+        BlockStoreLevelDBConfig dbConfig = BlockStoreLevelDBConfig.builder()
+                .workingFolder(Path.of(StoreFactory.buildWorkingFolder()))
+                .networkId("BSV-Main")
+                .outpointIndexEnabled(outpointIndexEnabled)
+                .blockSweeperEnabled(blockSweeperEnabled)
+                .build()
+        return BlockStoreLevelDB.builder().config(dbConfig).build()
+    }
+
+    private TxOutPoint outpointOf(Tx tx) {
+        return tx.getInputs().get(0).getOutpoint()
+    }
+
+    /**
+     * We test that the Outpoint index is kept in sync when the Txs are saved (using different methods) and removed
+     */
+    def "testing getSpendingTx and getSpendingTxs"() {
+        given:
+            BlockStoreLevelDB db = buildDB(true)
+            HeaderReadOnly block = TestingUtils.buildBlock()
+            Tx parentTx = TestingUtils.buildTx()
+            Tx childTx1 = TestingUtils.buildTx(parentTx.getHash().toString())
+            Tx childTx2 = TestingUtils.buildTx()
+            Tx childTx3 = TestingUtils.buildTx()
+            Tx txNotSaved = TestingUtils.buildTx()
+        when:
+            db.start()
+            db.saveTxs(Arrays.asList(parentTx, childTx1))
+            db.saveTxsIfNotExist(Arrays.asList(childTx2))
+            db.saveBlock(block)
+            db.saveBlockTxs(block.getHash(), Arrays.asList(childTx3))
+
+            Optional<Sha256Hash> spender1 = db.getSpendingTx(outpointOf(childTx1))
+            List<Optional<Sha256Hash>> spenders = db.getSpendingTxs(Arrays.asList(
+                    outpointOf(childTx2), outpointOf(childTx3), outpointOf(parentTx), outpointOf(txNotSaved)))
+
+            // If the Tx is removed, the Outpoint is not spent anymore:
+            db.removeTx(childTx1.getHash())
+            Optional<Sha256Hash> spender1AfterRemoval = db.getSpendingTx(outpointOf(childTx1))
+        then:
+            spender1.get() == childTx1.getHash()
+            spenders.get(0).get() == childTx2.getHash()
+            spenders.get(1).get() == childTx3.getHash()
+            spenders.get(2).get() == parentTx.getHash()
+            spenders.get(3).isEmpty()
+            spender1AfterRemoval.isEmpty()
+        cleanup:
+            db.clear()
+            db.stop()
+    }
+
+    /**
+     * We test that the Outpoint index Keys of the Txs are removed when they are removed along with their Block, both
+     * right away and by the Block Sweeper, except for the Txs still linked to other Blocks.
+     */
+    def "testing getSpendingTx after removeBlockTxs"() {
+        given:
+            BlockStoreLevelDB db = buildDB(true, blockSweeperEnabled)
+            HeaderReadOnly block = TestingUtils.buildBlock()
+            HeaderReadOnly otherBlock = TestingUtils.buildBlock()
+            List<Tx> txs = (1..10).collect { TestingUtils.buildTx() }
+        when:
+            db.start()
+            db.saveBlocks(Arrays.asList(block, otherBlock))
+            db.saveBlockTxs(block.getHash(), txs)
+            db.linkTxToBlock(txs.get(0).getHash(), otherBlock.getHash())
+
+            db.removeBlockTxs(block.getHash())
+            // If the Sweeper is enabled, we sweep the Blocks now (it might have done it already in background):
+            if (blockSweeperEnabled) db._sweepBlocks()
+
+            List<Optional<Sha256Hash>> spenders = db.getSpendingTxs(txs.collect { tx -> outpointOf(tx) })
+        then:
+            spenders.get(0).get() == txs.get(0).getHash()
+            spenders.subList(1, 10).every { s -> s.isEmpty() }
+        cleanup:
+            db.clear()
+            db.stop()
+        where:
+            blockSweeperEnabled << [false, true]
+    }
+
+    /**
+     * We test that the Outpoint can not be used if it's not enabled
+     */
+    def "testing getSpendingTx with the Outpoint index disabled"() {
+        given:
+            BlockStoreLevelDB db = buildDB(false)
+            Tx tx = TestingUtils.buildTx()
+        when:
+            db.start()
+            db.saveTx(tx)
+            db.getSpendingTx(outpointOf(tx))
+        then:
+            thrown(IllegalStateException)
+        cleanup:
+            db.clear()
+            db.stop()
+    }
+}
@@ -0,0 +1,109 @@
+package io.bitcoinsv.jcl.store.levelDB.blockStore
+
+
+import io.bitcoinsv.bitcoinjsv.bitcoin.api.base.HeaderReadOnly
+import io.bitcoinsv.bitcoinjsv.bitcoin.api.base.Tx
+import io.bitcoinsv.jcl.store.keyValue.blockStore.BlockStoreKeyValue
+import io.bitcoinsv.jcl.store.levelDB.StoreFactory
+import io.bitcoinsv.jcl.tools.common.TestingUtils
+import spock.lang.Specification
+
+import java.nio.file.Path
+
+/**
+ * Testing class for the Block Sweeper of the LevelDB BlockStore, which cleans up the Tx-Links of the Blocks removed
+ * in background.
+ */
+class BlockStoreSweeperSpec extends Specification {
+
+    // It creates a BlockStore with the Block Sweeper enabled and a small Transaction batch size, so the Tx-Links are
+    // swept in several batches
+    private BlockStoreLevelDB buildDB() {
+        BlockStoreLevelDBConfig dbConfig = BlockStoreLevelDBConfig.builder()
+                .workingFolder(Path.of(StoreFactory.buildWorkingFolder()))
+                .networkId("BSV-Main")
+                .transactionBatchSize(4)
+                .blockSweeperEnabled(true)
+                .build()
+        return BlockStoreLevelDB.builder().config(dbConfig).build()
+    }
+
+    // Number of Blocks pending to be swept
+    private long numBlocksPendingSweep(BlockStoreLevelDB db) {
+        return db.numKeys(db.fullKey(db.fullKeyForBlocks(), BlockStoreKeyValue.KEY_PREFFIX_BLOCK_SWEEP))
+    }
+
+    /**
+     * We test that the Txs of a Block are no longer returned right after removing them, and that they are removed
+     * once the Block is swept, except those also linked to other Blocks.
+     */
+    def "testing removeBlockTxs with the Block Sweeper"() {
+        given:
+            BlockStoreLevelDB db = buildDB()
+            HeaderReadOnly block = TestingUtils.buildBlock()
+            HeaderReadOnly otherBlock = TestingUtils.buildBlock()
+            List<Tx> txs = (1..10).collect { TestingUtils.buildTx() }
+        when:
+            db.start()
+            db.saveBlocks(Arrays.asList(block, otherBlock))
+            db.saveBlockTxs(block.getHash(), txs)
+            db.linkTxToBlock(txs.get(0).getHash(), otherBlock.getHash())
+
+            db.removeBlockTxs(block.getHash())
+            List<Object> blockTxsAfterRemoval = db.getBlockTxs(block.getHash()).toList()
+            long blockNumTxsAfterRemoval = db.getBlockNumTxs(block.getHash())
+
+            // We sweep the Blocks now (the background Sweeper might have done it already):
+            db._sweepBlocks()
+            long numTxsAfterSweep = db.getNumTxs()
+            boolean txLinkedToOtherBlock = db.isTxLinkToblock(txs.get(0).getHash(), otherBlock.getHash())
+            long numPendingAfterSweep = numBlocksPendingSweep(db)
+        then:
+            blockTxsAfterRemoval.isEmpty()
+            blockNumTxsAfterRemoval == 0
+            numTxsAfterSweep == 1
+            txLinkedToOtherBlock
+            numPendingAfterSweep == 0
+        cleanup:
+            db.clear()
+            db.stop()
+    }
+
+    /**
+     * We test that if a Block is removed and saved again with new Txs before being swept, only the new Txs are linked
+     * to it, and that the Blocks pending to be swept are swept when the DB starts.
+     */
+    def "testing removeBlock and saving it again before being swept"() {
+        given:
+            BlockStoreLevelDB db = buildDB()
+            HeaderReadOnly block = TestingUtils.buildBlock()
+            List<Tx> oldTxs = (1..10).collect { TestingUtils.buildTx() }
+            List<Tx> newTxs = (1..5).collect { TestingUtils.buildTx() }
+        when:
+            db.start()
+            db.saveBlock(block)
+            db.saveBlockTxs(block.getHash(), oldTxs)
+            db.removeBlock(block.getHash())
+            db.saveBlock(block)
+            db.saveBlockTxs(block.getHash(), newTxs)
+            List<Object> blockTxs = db.getBlockTxs(block.getHash()).toList()
+            boolean oldTxLinked = db.isTxLinkToblock(oldTxs.get(0).getHash(), block.getHash())
+
+            // We mark the Block again, and restart the DB before it's swept:
+            db.removeBlock(block.getHash())
+            db.stop()
+            db = BlockStoreLevelDB.builder().config(db.getConfig()).build()
+            db.start()
+            db._sweepBlocks()
+            long numPendingAfterRestart = numBlocksPendingSweep(db)
+            boolean newTxLinked = db.isTxLinkToblock(newTxs.get(0).getHash(), block.getHash())
+        then:
+            blockTxs == newTxs.collect { tx -> tx.getHash() }
+            !oldTxLinked
+            numPendingAfterRestart == 0
+            !newTxLinked
+        cleanup:
+            db.clear()
+            db.stop()
+    }
+}
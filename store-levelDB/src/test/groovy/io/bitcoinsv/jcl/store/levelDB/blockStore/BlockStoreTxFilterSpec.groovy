@@ -0,0 +1,147 @@
+package io.bitcoinsv.jcl.store.levelDB.blockStore
+
+
+import io.bitcoinsv.bitcoinjsv.bitcoin.api.base.Tx
+import io.bitcoinsv.jcl.store.keyValue.common.TxExistenceFilter
+import io.bitcoinsv.jcl.store.levelDB.StoreFactory
+import io.bitcoinsv.jcl.tools.common.TestingUtils
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+/**
+ * Testing class for the Tx Filter of the LevelDB BlockStore, which allows to skip the DB reads for Txs that are
+ * definitely NOT in the DB.
+ */
+class BlockStoreTxFilterSpec extends Specification {
+
+    // It creates a BlockStore with the Tx Filter enabled, using the folder given
+    private BlockStoreLevelDB buildDB(Path dbPath) {
+        return buildDB(dbPath, true)
+    }
+
+    // It creates a BlockStore with the Tx Filter enabled or disabled, using the folder given
+    private BlockStoreLevelDB buildDB(Path dbPath, boolean txFilterEnabled) {
+        BlockStoreLevelDBConfig dbConfig = BlockStoreLevelDBConfig.builder()
+                .workingFolder(dbPath)
+                .networkId("BSV-Main")
+                .txFilterEnabled(txFilterEnabled)
+                .txFilterInitialCapacity(100)
+                .build()
+        return BlockStoreLevelDB.builder().config(dbConfig).build()
+    }
+
+    /**
+     * We test that the scalable filter never reports a Tx inserted as NOT present, even after growing beyond its
+     * initial capacity, and that it survives a write/read cycle.
+     */
+    def "testing TxExistenceFilter growth and serialization"() {
+        given:
+            TxExistenceFilter filter = new TxExistenceFilter(100, 0.01)
+            List<String> txHashes = (1..1000).collect { TestingUtils.buildTx().getHash().toString() }
+        when:
+            txHashes.forEach({ h -> filter.put(h) })
+            ByteArrayOutputStream out = new ByteArrayOutputStream()
+            filter.writeTo(out)
+            TxExistenceFilter filterLoaded = TxExistenceFilter.readFrom(new ByteArrayInputStream(out.toByteArray()))
+            int numFalsePositives = (1..1000).count { filter.mightContain(TestingUtils.buildTx().getHash().toString()) }
+        then:
+            filter.getNumFilters() > 1
+            txHashes.every { h -> filter.mightContain(h) }
+            txHashes.every { h -> filterLoaded.mightContain(h) }
+            filterLoaded.getNumItems() == filter.getNumItems()
+            numFalsePositives < 50
+    }
+
+    /**
+     * We test that saveTxsIfNotExist and containsTx return the right results with the filter enabled, and that the
+     * filter is persisted and reloaded (or rebuilt) when the DB restarts.
+     */
+    def "testing saveTxsIfNotExist and containsTx with the Tx Filter"() {
+        given:
+            Path dbPath = Path.of(StoreFactory.buildWorkingFolder())
+            BlockStoreLevelDB db = buildDB(dbPath)
+            List<Tx> txs = (1..300).collect { TestingUtils.buildTx() }
+            Tx txNotSaved = TestingUtils.buildTx()
+        when:
+            db.start()
+            db.saveTxs(txs.subList(0, 100))
+            // the first 100 Txs already exist, and the last one is repeated in the list:
+            List<Tx> txsToSave = new ArrayList<>(txs)
+            txsToSave.add(txs.get(299))
+            List<Tx> txsInserted = db.saveTxsIfNotExist(txsToSave)
+            boolean containsAllBeforeRestart = txs.every { tx -> db.containsTx(tx.getHash()) }
+            boolean containsNotSavedBeforeRestart = db.containsTx(txNotSaved.getHash())
+            db.removeTx(txs.get(0).getHash())
+            boolean containsRemoved = db.containsTx(txs.get(0).getHash())
+
+            // We restart the DB: The filter is saved on stop and loaded on start:
+            db.stop()
+            boolean filterFileSaved = Files.exists(dbPath.resolve("txs.filter"))
+            db = buildDB(dbPath)
+            db.start()
+            boolean filterFileRemovedOnLoad = !Files.exists(dbPath.resolve("txs.filter"))
+            boolean containsAllAfterRestart = txs.subList(1, 300).every { tx -> db.containsTx(tx.getHash()) }
+
+            // We restart the DB without the filter file (as if it had not been stopped properly): The filter is
+            // rebuilt from the DB:
+            db.stop()
+            Files.delete(dbPath.resolve("txs.filter"))
+            db = buildDB(dbPath)
+            db.start()
+            boolean containsAllAfterRebuild = txs.subList(1, 300).every { tx -> db.containsTx(tx.getHash()) }
+            long numTxsInFilter = db.getTxFilter().getNumItems()
+        then:
+            txsInserted == txs.subList(100, 300)
+            containsAllBeforeRestart
+            !containsNotSavedBeforeRestart
+            !containsRemoved
+            filterFileSaved
+            filterFileRemovedOnLoad
+            containsAllAfterRestart
+            containsAllAfterRebuild
+            numTxsInFilter == 299
+        cleanup:
+            db.clear()
+            db.stop()
+    }
+
+    /**
+     * We test that the filter file is removed even if the DB starts with the filter disabled, so the Txs saved in
+     * that run are NOT missing from the filter the next time it's enabled.
+     */
+    def "testing Tx Filter file removed when the filter is disabled"() {
+        given:
+            Path dbPath = Path.of(StoreFactory.buildWorkingFolder())
+            BlockStoreLevelDB db = buildDB(dbPath, true)
+            Tx txBefore = TestingUtils.buildTx()
+            Tx txWhileDisabled = TestingUtils.buildTx()
+        when:
+            db.start()
+            db.saveTx(txBefore)
+            db.stop()
+
+            // We run the DB with the filter disabled, and save a Tx:
+            db = buildDB(dbPath, false)
+            db.start()
+            boolean filterFileRemoved = !Files.exists(dbPath.resolve("txs.filter"))
+            db.saveTx(txWhileDisabled)
+            db.stop()
+
+            // We enable the filter again: It must be rebuilt from the DB:
+            db = buildDB(dbPath, true)
+            db.start()
+            boolean containsTxBefore = db.containsTx(txBefore.getHash())
+            boolean containsTxWhileDisabled = db.containsTx(txWhileDisabled.getHash())
+            List<Tx> txsInserted = db.saveTxsIfNotExist([txWhileDisabled])
+        then:
+            filterFileRemoved
+            containsTxBefore
+            containsTxWhileDisabled
+            txsInserted.isEmpty()
+        cleanup:
+            db.clear()
+            db.stop()
+    }
+}
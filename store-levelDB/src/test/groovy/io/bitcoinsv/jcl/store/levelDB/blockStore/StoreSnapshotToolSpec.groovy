@@ -0,0 +1,194 @@
+package io.bitcoinsv.jcl.store.levelDB.blockStore
+
+
+import io.bitcoinsv.bitcoinjsv.bitcoin.api.base.HeaderReadOnly
+import io.bitcoinsv.bitcoinjsv.bitcoin.api.base.Tx
+import io.bitcoinsv.bitcoinjsv.core.Sha256Hash
+import io.bitcoinsv.jcl.store.blockChainStore.BlockChainStore
+import io.bitcoinsv.jcl.store.keyValue.common.KeyValueIterator
+import io.bitcoinsv.jcl.store.levelDB.StoreFactory
+import io.bitcoinsv.jcl.tools.common.TestingUtils
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+/**
+ * Testing class for the StoreSnapshotTool, which exports a Store into a file and imports it into a new Store.
+ */
+class StoreSnapshotToolSpec extends Specification {
+
+    private BlockChainStore buildDB(HeaderReadOnly genesisBlock) {
+        return StoreFactory.getInstance("BSV-Main", false, false, genesisBlock, null, null, null, null, null)
+    }
+
+    // It creates a BlockStore with the Tx Filter enabled, using the folder given
+    private BlockStoreLevelDB buildDBWithTxFilter(Path dbPath) {
+        BlockStoreLevelDBConfig dbConfig = BlockStoreLevelDBConfig.builder()
+                .workingFolder(dbPath)
+                .networkId("BSV-Main")
+                .txFilterEnabled(true)
+                .build()
+        return BlockStoreLevelDB.builder().config(dbConfig).build()
+    }
+
+    /**
+     * We test that a Store with a chain of Blocks and Txs is exported and imported into a new Store, with and
+     * without the Txs, and that a corrupted file is rejected.
+     */
+    def "testing export and import of a Snapshot"() {
+        given:
+            HeaderReadOnly genesisBlock = TestingUtils.buildBlock(Sha256Hash.ZERO_HASH.toString())
+            BlockChainStore db = buildDB(genesisBlock)
+            BlockChainStore dbWithTxs = buildDB(genesisBlock)
+            BlockChainStore dbWithoutTxs = buildDB(genesisBlock)
+            BlockChainStore dbCorrupted = buildDB(genesisBlock)
+            Path snapshotWithTxs = Files.createTempFile("snapshot", ".txs")
+            Path snapshotWithoutTxs = Files.createTempFile("snapshot", ".noTxs")
+            HeaderReadOnly block1 = TestingUtils.buildBlock(genesisBlock.getHash().toString())
+            HeaderReadOnly block2 = TestingUtils.buildBlock(block1.getHash().toString())
+            List<Tx> txs = (1..10).collect { TestingUtils.buildTx() }
+        when:
+            db.start()
+            db.saveBlocks(Arrays.asList(block1, block2))
+            db.saveBlockTxs(block2.getHash(), txs)
+            StoreSnapshotTool.SnapshotInfo exportedWithTxs = StoreSnapshotTool.exportSnapshot((BlockStoreLevelDB) db, snapshotWithTxs, true)
+            StoreSnapshotTool.SnapshotInfo exportedWithoutTxs = StoreSnapshotTool.exportSnapshot((BlockStoreLevelDB) db, snapshotWithoutTxs, false)
+
+            // We import the Snapshots before starting the new Stores:
+            StoreSnapshotTool.importSnapshot((BlockStoreLevelDB) dbWithTxs, snapshotWithTxs)
+            dbWithTxs.start()
+            StoreSnapshotTool.importSnapshot((BlockStoreLevelDB) dbWithoutTxs, snapshotWithoutTxs)
+            dbWithoutTxs.start()
+
+            // We corrupt one byte in the middle of the file:
+            byte[] content = Files.readAllBytes(snapshotWithTxs)
+            content[(int) (content.length / 2)] ^= 0xFF
+            Files.write(snapshotWithTxs, content)
+            boolean corruptedRejected = false
+            try {
+                StoreSnapshotTool.importSnapshot((BlockStoreLevelDB) dbCorrupted, snapshotWithTxs)
+            } catch (IOException e) {
+                corruptedRejected = true
+            }
+            dbCorrupted.start()
+        then:
+            exportedWithTxs.getNumEntries() > exportedWithoutTxs.getNumEntries()
+            dbWithTxs.getNumBlocks() == 3
+            dbWithTxs.getNumTxs() == 10
+            dbWithTxs.getBlockChainInfo(block2.getHash()).get().getHeight() == 2
+            dbWithTxs.getTipsChains() == [block2.getHash()]
+            dbWithTxs.getBlockTxs(block2.getHash()).toList() == txs.collect { tx -> tx.getHash() }
+            dbWithTxs.getTx(txs.get(0).getHash()).get() == txs.get(0)
+            dbWithoutTxs.getNumBlocks() == 3
+            dbWithoutTxs.getNumTxs() == 0
+            dbWithoutTxs.getBlockTxs(block2.getHash()).toList() == txs.collect { tx -> tx.getHash() }
+            corruptedRejected
+            dbCorrupted.getNumBlocks() == 1
+        cleanup:
+            Files.deleteIfExists(snapshotWithTxs)
+            Files.deleteIfExists(snapshotWithoutTxs)
+            [db, dbWithTxs, dbWithoutTxs, dbCorrupted].each { store ->
+                store.clear()
+                store.stop()
+            }
+    }
+
+    /**
+     * We test that the Tx filter of the Store the Snapshot is imported into contains the Txs imported, even if a
+     * filter was saved by a previous run, and that the Snapshot can not be imported once the Store is started.
+     */
+    def "testing import of a Snapshot with the Tx Filter enabled"() {
+        given:
+            BlockStoreLevelDB db = buildDBWithTxFilter(Path.of(StoreFactory.buildWorkingFolder()))
+            Path importPath = Path.of(StoreFactory.buildWorkingFolder())
+            BlockStoreLevelDB dbImported = buildDBWithTxFilter(importPath)
+            Path snapshot = Files.createTempFile("snapshot", ".txs")
+            List<Tx> txs = (1..10).collect { TestingUtils.buildTx() }
+        when:
+            db.start()
+            db.saveTxs(txs)
+            StoreSnapshotTool.exportSnapshot(db, snapshot, true)
+
+            // The Store is started and stopped while empty, so an empty filter is saved:
+            dbImported.start()
+            dbImported.stop()
+            boolean emptyFilterSaved = Files.exists(importPath.resolve("txs.filter"))
+
+            dbImported = buildDBWithTxFilter(importPath)
+            StoreSnapshotTool.importSnapshot(dbImported, snapshot)
+            dbImported.start()
+            boolean containsAllTxs = txs.every { tx -> dbImported.containsTx(tx.getHash()) }
+
+            boolean startedRejected = false
+            try {
+                StoreSnapshotTool.importSnapshot(dbImported, snapshot)
+            } catch (IllegalStateException e) {
+                startedRejected = true
+            }
+        then:
+            emptyFilterSaved
+            containsAllTxs
+            dbImported.getTxFilter().getNumItems() == txs.size()
+            startedRejected
+        cleanup:
+            Files.deleteIfExists(snapshot)
+            [db, dbImported].each { store ->
+                store.clear()
+                store.stop()
+            }
+    }
+
+    /**
+     * We test that if the import fails half-way, after several batches of Entries have been written, the Entries
+     * already written are removed and the Store is left empty.
+     */
+    def "testing import of a Snapshot failed half-way"() {
+        given:
+            HeaderReadOnly genesisBlock = TestingUtils.buildBlock(Sha256Hash.ZERO_HASH.toString())
+            BlockChainStore db = buildDB(genesisBlock)
+            BlockChainStore dbImported = buildDB(genesisBlock)
+            BlockStoreLevelDB dbImportedLevelDB = (BlockStoreLevelDB) dbImported
+            Path snapshot = Files.createTempFile("snapshot", ".txs")
+            HeaderReadOnly block1 = TestingUtils.buildBlock(genesisBlock.getHash().toString())
+            List<Tx> txs = (1..10).collect { TestingUtils.buildTx() }
+        when:
+            db.start()
+            db.saveBlock(block1)
+            db.saveBlockTxs(block1.getHash(), txs)
+            StoreSnapshotTool.SnapshotInfo exported = StoreSnapshotTool.exportSnapshot((BlockStoreLevelDB) db, snapshot, true)
+
+            // We corrupt the checksum at the end of the file, so the failure is only detected once all the Entries
+            // have been read:
+            byte[] content = Files.readAllBytes(snapshot)
+            content[content.length - 1] ^= 0xFF
+            Files.write(snapshot, content)
+            boolean importFailed = false
+            try {
+                StoreSnapshotTool.importSnapshot(dbImportedLevelDB, snapshot, 5)
+            } catch (IOException e) {
+                importFailed = true
+            }
+
+            // Nothing is left in the Store, so the Snapshot can be imported again once it's fixed:
+            KeyValueIterator<byte[], Object> it = dbImportedLevelDB.getIterator(StoreSnapshotTool.storePreffix(dbImportedLevelDB), null, null, dbImportedLevelDB.&keyFromItem)
+            boolean storeEmpty = !it.hasNext()
+            it.close()
+            content[content.length - 1] ^= 0xFF
+            Files.write(snapshot, content)
+            StoreSnapshotTool.importSnapshot(dbImportedLevelDB, snapshot, 5)
+            dbImported.start()
+        then:
+            exported.getNumEntries() > 10
+            importFailed
+            storeEmpty
+            dbImported.getNumBlocks() == 2
+            dbImported.getNumTxs() == 10
+        cleanup:
+            Files.deleteIfExists(snapshot)
+            [db, dbImported].each { store ->
+                store.clear()
+                store.stop()
+            }
+    }
+}
@@ -3,10 +3,22 @@ package io.bitcoinsv.jcl.store.levelDB.common
 
 import io.bitcoinsv.jcl.store.common.IteratorSpecBase
 import io.bitcoinsv.jcl.store.levelDB.blockStore.BlockStoreLevelDB
+import io.bitcoinsv.jcl.store.levelDB.blockStore.BlockStoreLevelDBConfig
 import io.bitcoinsv.jcl.store.levelDB.StoreFactory
 import io.bitcoinsv.jcl.store.blockStore.BlockStore
 import io.bitcoinsv.jcl.store.blockStore.metadata.Metadata
+import io.bitcoinsv.jcl.store.keyValue.common.KeyValueIterator
+import io.bitcoinsv.jcl.store.keyValue.common.PrefetchingIterator
+import io.bitcoinsv.jcl.tools.common.TestingUtils
+import io.bitcoinsv.bitcoinjsv.bitcoin.api.base.HeaderReadOnly
+import io.bitcoinsv.bitcoinjsv.bitcoin.api.base.Tx
+import io.bitcoinsv.bitcoinjsv.core.Sha256Hash
 
+import java.nio.file.Path
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
 import java.util.function.Function
 
 
@@ -42,4 +54,145 @@ class LevelDBIteratorSpec extends IteratorSpecBase {
 
         return itBuilder.build()
     }
+
+    /**
+     * We test that the Iterators read from a Snapshot of the DB, so changes made while iterating are not visible,
+     * and that the Snapshot is released when the Iterator is closed.
+     */
+    def "testing Iterator over a Snapshot"() {
+        given:
+            BlockStoreLevelDB db = (BlockStoreLevelDB) getInstance("BSV-Main", false, false, null, null)
+            HeaderReadOnly block = TestingUtils.buildBlock()
+            List<Tx> txs = (1..5).collect { TestingUtils.buildTx() }
+        when:
+            db.start()
+            db.saveBlock(block)
+            db.saveBlockTxs(block.getHash(), txs.subList(0, 3))
+
+            // We create an Iterator, and save more Txs before using it:
+            Iterator<Sha256Hash> it = db.getBlockTxs(block.getHash()).iterator()
+            db.saveBlockTxs(block.getHash(), txs.subList(3, 5))
+            List<Sha256Hash> txsFromSnapshot = new ArrayList<>()
+            it.forEachRemaining({ h -> txsFromSnapshot.add(h) })
+            List<Sha256Hash> txsAfterSaving = db.getBlockTxs(block.getHash()).toList()
+
+            // An Iterator closed returns no more Items:
+            KeyValueIterator<Sha256Hash, Object> itClosed = (KeyValueIterator<Sha256Hash, Object>) db.getBlockTxs(block.getHash()).iterator()
+            itClosed.close()
+            boolean hasNextAfterClosing = itClosed.hasNext()
+        then:
+            txsFromSnapshot == txs.subList(0, 3).collect { tx -> tx.getHash() }
+            txsAfterSaving == txs.collect { tx -> tx.getHash() }
+            !hasNextAfterClosing
+        cleanup:
+            db.clear()
+            db.stop()
+    }
+
+    /**
+     * We test that the Items returned by a Prefetching Iterator are the same and in the same order as the ones
+     * returned by the underlying Iterator, and that it can be closed before reaching the end.
+     */
+    def "testing Prefetching Iterator"() {
+        given:
+            BlockStoreLevelDBConfig dbConfig = BlockStoreLevelDBConfig.builder()
+                .workingFolder(Path.of(StoreFactory.buildWorkingFolder()))
+                .networkId("BSV-Main")
+                .iteratorPrefetchSize(3)
+                .build()
+            BlockStoreLevelDB db = BlockStoreLevelDB.builder().config(dbConfig).build()
+            ExecutorService executor = Executors.newSingleThreadExecutor()
+            HeaderReadOnly block = TestingUtils.buildBlock()
+            List<Tx> txs = (1..20).collect { TestingUtils.buildTx() }
+        when:
+            db.start()
+            db.saveBlock(block)
+            db.saveBlockTxs(block.getHash(), txs)
+
+            // The Txs of the Block are returned by a Prefetching Iterator, since it's enabled in the Config:
+            Iterator<Sha256Hash> blockTxsIt = db.getBlockTxs(block.getHash()).iterator()
+            List<Sha256Hash> blockTxs = blockTxsIt.toList()
+
+            // We close an Iterator after reading a few Items:
+            KeyValueIterator<Sha256Hash, Object> it = new PrefetchingIterator<>(
+                    (KeyValueIterator<Sha256Hash, Object>) db.getBlockTxs(block.getHash()).iterator(), executor, 2, 2)
+            List<Sha256Hash> firstTxs = [it.next(), it.next(), it.next()]
+            it.close()
+            boolean hasNextAfterClosing = it.hasNext()
+        then:
+            blockTxsIt instanceof PrefetchingIterator
+            blockTxs == txs.collect { tx -> tx.getHash() }
+            firstTxs == txs.subList(0, 3).collect { tx -> tx.getHash() }
+            !hasNextAfterClosing
+        cleanup:
+            executor.shutdownNow()
+            db.clear()
+            db.stop()
+    }
+
+    /**
+     * We test that a Prefetching Iterator can be used from a task running in the Executor of the Store (like the
+     * async methods do), since the Items are read ahead in a different Executor.
+     */
+    def "testing Prefetching Iterator used from the Store Executor"() {
+        given:
+            BlockStoreLevelDBConfig dbConfig = BlockStoreLevelDBConfig.builder()
+                .workingFolder(Path.of(StoreFactory.buildWorkingFolder()))
+                .networkId("BSV-Main")
+                .iteratorPrefetchSize(3)
+                .build()
+            BlockStoreLevelDB db = BlockStoreLevelDB.builder().config(dbConfig).build()
+            HeaderReadOnly block = TestingUtils.buildBlock()
+            List<Tx> txs = (1..20).collect { TestingUtils.buildTx() }
+        when:
+            db.start()
+            db.saveBlock(block)
+            db.saveBlockTxs(block.getHash(), txs)
+            List<Sha256Hash> blockTxs = db.getExecutor()
+                .submit({ -> db.getBlockTxs(block.getHash()).toList() } as Callable<List<Sha256Hash>>)
+                .get(10, TimeUnit.SECONDS)
+        then:
+            blockTxs == txs.collect { tx -> tx.getHash() }
+        cleanup:
+            db.clear()
+            db.stop()
+    }
+
+    // It reads the first Tx of the Block, and abandons the Iterator without closing it
+    private Sha256Hash readFirstTxAndAbandon(BlockStoreLevelDB db, Sha256Hash blockHash) {
+        return db.getBlockTxs(blockHash).iterator().next()
+    }
+
+    /**
+     * We test that the Snapshot of an Iterator abandoned before reaching the end, without being closed, is released
+     * once the Iterator is garbage-collected.
+     */
+    def "testing Iterator abandoned"() {
+        given:
+            BlockStoreLevelDB db = (BlockStoreLevelDB) getInstance("BSV-Main", false, false, null, null)
+            HeaderReadOnly block = TestingUtils.buildBlock()
+            List<Tx> txs = (1..5).collect { TestingUtils.buildTx() }
+        when:
+            db.start()
+            db.saveBlock(block)
+            db.saveBlockTxs(block.getHash(), txs)
+            int numOpenBefore = LevelDBIterator.getNumOpenIterators()
+
+            Sha256Hash firstTx = readFirstTxAndAbandon(db, block.getHash())
+            int numOpenAfterAbandoning = LevelDBIterator.getNumOpenIterators()
+
+            // We wait for the Iterator to be garbage-collected:
+            for (int i = 0; i < 50 && LevelDBIterator.getNumOpenIterators() > numOpenBefore; i++) {
+                System.gc()
+                Thread.sleep(100)
+            }
+            int numOpenAfterGC = LevelDBIterator.getNumOpenIterators()
+        then:
+            firstTx == txs.get(0).getHash()
+            numOpenAfterAbandoning == numOpenBefore + 1
+            numOpenAfterGC == numOpenBefore
+        cleanup:
+            db.clear()
+            db.stop()
+    }
 }
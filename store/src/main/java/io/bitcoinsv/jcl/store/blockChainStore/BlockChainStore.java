@@ -43,7 +43,8 @@ public interface BlockChainStore extends BlockStore {
     List<Sha256Hash> getNextBlocks(Sha256Hash blockHash);
 
     /**
-     * Returns all the Orphan blocks in the DB
+     * Returns all the Orphan blocks in the DB. Like in "getBlockTxs()", the Iterator might keep some DB resources until
+     * it reaches the end, or until it's closed if it's an AutoCloseable.
      */
     Iterable<Sha256Hash> getOrphanBlocks();
 
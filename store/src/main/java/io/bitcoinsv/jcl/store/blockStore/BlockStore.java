@@ -5,6 +5,7 @@ import io.bitcoinsv.jcl.store.blockStore.events.BlockStoreStreamer;
 import io.bitcoinsv.jcl.store.blockStore.metadata.Metadata;
 import io.bitcoinsv.bitcoinjsv.bitcoin.api.base.HeaderReadOnly;
 import io.bitcoinsv.bitcoinjsv.bitcoin.api.base.Tx;
+import io.bitcoinsv.bitcoinjsv.bitcoin.api.base.TxOutPoint;
 import io.bitcoinsv.bitcoinjsv.core.Sha256Hash;
 
 
@@ -12,6 +13,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 /**
  * @author i.fernandez@nchain.com
@@ -68,6 +70,20 @@ public interface BlockStore {
      */
     Optional<HeaderReadOnly> getBlock(Sha256Hash blockHash);
 
+    /**
+     * Retrieves the Blocks given. The result contains one element for each Hash, in the same order. If a high number
+     * of Blocks is needed, this method is much faster than calling "getBlock()" for each one of them (except in
+     * this default implementation, which just does that).
+     */
+    default List<Optional<HeaderReadOnly>> getBlocks(List<Sha256Hash> blockHashes) {
+        return blockHashes.stream().map(this::getBlock).collect(Collectors.toList());
+    }
+
+    /** Asynchronous version of getBlocks */
+    default CompletableFuture<List<Optional<HeaderReadOnly>>> getBlocksAsync(List<Sha256Hash> blockHashes) {
+        return CompletableFuture.supplyAsync(() -> getBlocks(blockHashes));
+    }
+
     /**
      * Returns an Iterator over all the blocks in the DB
      */
@@ -160,6 +176,34 @@ public interface BlockStore {
      */
     Optional<Tx> getTx(Sha256Hash txHash);
 
+    /**
+     * Tells whether the Db contains each one of the Txs given. The result contains one element for each Hash, in the
+     * same order. If a high number of Txs is checked, this method is much faster than calling "containsTx()" for
+     * each one of them (except in this default implementation, which just does that).
+     */
+    default List<Boolean> containsTxs(List<Sha256Hash> txHashes) {
+        return txHashes.stream().map(this::containsTx).collect(Collectors.toList());
+    }
+
+    /** Asynchronous version of containsTxs */
+    default CompletableFuture<List<Boolean>> containsTxsAsync(List<Sha256Hash> txHashes) {
+        return CompletableFuture.supplyAsync(() -> containsTxs(txHashes));
+    }
+
+    /**
+     * Retrieves the Txs given. The result contains one element for each Hash, in the same order. If a high number of
+     * Txs is needed, this method is much faster than calling "getTx()" for each one of them (except in this default
+     * implementation, which just does that).
+     */
+    default List<Optional<Tx>> getTxs(List<Sha256Hash> txHashes) {
+        return txHashes.stream().map(this::getTx).collect(Collectors.toList());
+    }
+
+    /** Asynchronous version of getTxs */
+    default CompletableFuture<List<Optional<Tx>>> getTxsAsync(List<Sha256Hash> txHashes) {
+        return CompletableFuture.supplyAsync(() -> getTxs(txHashes));
+    }
+
     /**
      * Removes the TX with the HASH (in HEX format) given.
      * If this Tx is linked to a Block, that link is also removed.
@@ -187,6 +231,24 @@ public interface BlockStore {
      */
     List<Sha256Hash> getPreviousTxs(Sha256Hash txHash);
 
+    /**
+     * Returns the Hash of the Tx stored in the DB that spends the Outpoint given (the output of a previous Tx), if
+     * any. If several Txs stored spend the same Outpoint (double-spends), the one saved last is returned.
+     * This method requires the Outpoint index to be enabled in the configuration. The DB-specific implementations
+     * will throw an exception otherwise, and so does this default implementation, for those that have no index.
+     */
+    default Optional<Sha256Hash> getSpendingTx(TxOutPoint outpoint) {
+        throw new UnsupportedOperationException("The Outpoint index is not supported by this implementation");
+    }
+
+    /**
+     * Same as "getSpendingTx()", but for a List of Outpoints. The result contains one element for each Outpoint, in
+     * the same order.
+     */
+    default List<Optional<Sha256Hash>> getSpendingTxs(List<TxOutPoint> outpoints) {
+        return outpoints.stream().map(this::getSpendingTx).collect(Collectors.toList());
+    }
+
     /**
      * Returns the total number of Txs stored in the DB
      */
@@ -248,7 +310,10 @@ public interface BlockStore {
     List<Sha256Hash> getBlockHashLinkedToTx(Sha256Hash txHash);
 
 
-    /**  Returns an Iterable with the Tx Hashes belonging to the block given */
+    /**
+     * Returns an Iterable with the Tx Hashes belonging to the block given. Its Iterator might keep some DB resources
+     * until it reaches the end: if it's an AutoCloseable, it can be closed to release them before that.
+     */
     Iterable<Sha256Hash> getBlockTxs(Sha256Hash blockHash);
 
     /** Returns the number of TXs belonging to this block */
@@ -279,6 +344,8 @@ public interface BlockStore {
      * It compares the content of both Blocks, and return the result highlighting what Tx they both have in common, the
      * ones missing in one of them and the other, etc.
      * If any of the Blocks does not exists, it returns an Empty optional.
+     * NOTE: The order in which the Txs are returned is implementation-specific, it's not necessarily the order they
+     * have in the Blocks.
      */
     Optional<BlocksCompareResult> compareBlocks(Sha256Hash blockHashA, Sha256Hash blockHashB);
 
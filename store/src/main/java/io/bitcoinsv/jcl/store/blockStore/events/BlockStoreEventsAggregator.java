@@ -0,0 +1,139 @@
+package io.bitcoinsv.jcl.store.blockStore.events;
+
+
+import io.bitcoinsv.bitcoinjsv.bitcoin.api.base.HeaderReadOnly;
+import io.bitcoinsv.bitcoinjsv.bitcoin.api.base.Tx;
+import io.bitcoinsv.bitcoinjsv.core.Sha256Hash;
+import io.bitcoinsv.jcl.tools.events.EventBus;
+import io.bitcoinsv.jcl.tools.thread.ThreadUtils;
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * It coalesces the notifications of a BlockStore into fewer Events. Instead of publishing an Event every time some
+ * Blocks or Txs are saved or removed, the Hashes are added to the Event being aggregated, which is published when:
+ *  - it reaches the maximum number of Hashes, or
+ *  - the time window ends (the Events aggregated are published at the end of each window), or
+ *  - a notification of a different type comes in, so the order of the notifications is kept.
+ *
+ * Only the notifications for those Events with subscribers in the EventBus are aggregated, the rest are discarded
+ * right away. In "compact" mode, the Hashes are stored in a CompactHashList, instead of one object per Hash.
+ *
+ * This class is thread-safe.
+ */
+public class BlockStoreEventsAggregator {
+
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(BlockStoreEventsAggregator.class);
+
+    private final EventBus eventBus;
+    private final Duration window;
+    private final int maxItems;
+    private final boolean compactPayload;
+
+    // Executor that publishes the Events at the end of each time window:
+    private ScheduledExecutorService executor;
+
+    // Event being aggregated (guarded by "this"):
+    private Class<? extends BlockStoreEvent> currentEventClass;
+    private Function<List<Sha256Hash>, ? extends BlockStoreEvent> currentEventBuilder;
+    private List<Sha256Hash> currentHashes;
+    private CompactHashList.CompactHashListBuilder currentCompactHashes;
+
+    /**
+     * Constructor
+     *
+     * @param eventBus          EventBus the Events are published to
+     * @param window            Time window: the Events aggregated are published at the end of each one
+     * @param maxItems          Maximum number of Hashes in each Event
+     * @param compactPayload    If true, the Hashes in the Events are stored in a CompactHashList
+     */
+    public BlockStoreEventsAggregator(EventBus eventBus, Duration window, int maxItems, boolean compactPayload) {
+        if (eventBus == null) throw new IllegalArgumentException("An EventBus must be specified");
+        if (window == null || window.isZero() || window.isNegative()) throw new IllegalArgumentException("Time window must be greater than zero");
+        if (maxItems <= 0) throw new IllegalArgumentException("Max number of items must be greater than zero");
+        this.eventBus = eventBus;
+        this.window = window;
+        this.maxItems = maxItems;
+        this.compactPayload = compactPayload;
+    }
+
+    /** It starts publishing the Events aggregated at the end of each time window */
+    public synchronized void start() {
+        if (executor != null) return;
+        executor = ThreadUtils.getSingleThreadScheduledExecutorService("BlockStore-EventsAggregator");
+        executor.scheduleAtFixedRate(this::flush, window.toMillis(), window.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /** It stops the aggregator. The Event being aggregated, if any, is published right away */
+    public synchronized void stop() {
+        if (executor != null) executor.shutdownNow();
+        executor = null;
+        flush();
+    }
+
+    public void blocksSaved(List<HeaderReadOnly> blockHeaders) {
+        add(BlocksSavedEvent.class, BlocksSavedEvent::new, blockHeaders, HeaderReadOnly::getHash);
+    }
+
+    public void blocksRemoved(List<Sha256Hash> blockHashes) {
+        add(BlocksRemovedEvent.class, BlocksRemovedEvent::new, blockHashes, Function.identity());
+    }
+
+    public void txsSaved(List<Tx> txs) {
+        add(TxsSavedEvent.class, TxsSavedEvent::new, txs, Tx::getHash);
+    }
+
+    public void txsRemoved(List<Sha256Hash> txHashes) {
+        add(TxsRemovedEvent.class, TxsRemovedEvent::new, txHashes, Function.identity());
+    }
+
+    // It adds the Hashes of the items given to the Event being aggregated, publishing it whenever it's full
+    private synchronized <I> void add(Class<? extends BlockStoreEvent> eventClass,
+                                      Function<List<Sha256Hash>, ? extends BlockStoreEvent> eventBuilder,
+                                      List<I> items,
+                                      Function<I, Sha256Hash> hashOf) {
+        if (items.isEmpty() || !eventBus.hasSubscribers(eventClass)) return;
+        if (currentEventClass != eventClass) flush();
+        for (I item : items) {
+            if (currentEventClass == null) {
+                currentEventClass = eventClass;
+                currentEventBuilder = eventBuilder;
+                if (compactPayload) currentCompactHashes = CompactHashList.builder(Math.min(items.size(), maxItems));
+                else currentHashes = new ArrayList<>(Math.min(items.size(), maxItems));
+            }
+            Sha256Hash hash = hashOf.apply(item);
+            if (compactPayload) currentCompactHashes.add(hash);
+            else currentHashes.add(hash);
+            if (numCurrentHashes() >= maxItems) flush();
+        }
+    }
+
+    private int numCurrentHashes() {
+        return compactPayload ? currentCompactHashes.size() : currentHashes.size();
+    }
+
+    /** It publishes the Event being aggregated, if any */
+    public synchronized void flush() {
+        if (currentEventClass == null) return;
+        try {
+            List<Sha256Hash> hashes = compactPayload ? currentCompactHashes.build() : currentHashes;
+            eventBus.publish(currentEventBuilder.apply(hashes));
+        } catch (RuntimeException e) {
+            log.error("Error publishing " + currentEventClass.getSimpleName(), e);
+        } finally {
+            currentEventClass = null;
+            currentEventBuilder = null;
+            currentHashes = null;
+            currentCompactHashes = null;
+        }
+    }
+}
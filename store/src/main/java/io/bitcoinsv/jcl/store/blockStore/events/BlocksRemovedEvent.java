@@ -17,7 +17,8 @@ public final class BlocksRemovedEvent extends BlockStoreEvent {
     private final List<Sha256Hash> blockHashes;
 
     public BlocksRemovedEvent(List<Sha256Hash> blockHashes) {
-        this.blockHashes = new ArrayList<>(blockHashes);
+        // A CompactHashList is immutable, so there is no need to copy it:
+        this.blockHashes = (blockHashes instanceof CompactHashList) ? blockHashes : new ArrayList<>(blockHashes);
     }
 
     public List<Sha256Hash> getBlockHashes() {
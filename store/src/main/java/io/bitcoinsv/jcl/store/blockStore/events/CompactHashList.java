@@ -0,0 +1,67 @@
+package io.bitcoinsv.jcl.store.blockStore.events;
+
+
+import io.bitcoinsv.bitcoinjsv.core.Sha256Hash;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * An immutable List of Hashes, all of them stored in a single byte array. It's used as a compact payload for the
+ * Events that carry lots of Hashes: there is no object per Hash until a Hash is read.
+ */
+public final class CompactHashList extends AbstractList<Sha256Hash> implements RandomAccess {
+
+    private static final int HASH_LENGTH = Sha256Hash.LENGTH;
+
+    private final byte[] hashes;
+    private final int size;
+
+    private CompactHashList(byte[] hashes, int size) {
+        this.hashes = hashes;
+        this.size = size;
+    }
+
+    @Override
+    public Sha256Hash get(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        int from = index * HASH_LENGTH;
+        return Sha256Hash.wrap(Arrays.copyOfRange(hashes, from, from + HASH_LENGTH));
+    }
+
+    @Override
+    public int size() { return this.size; }
+
+    public static CompactHashListBuilder builder(int initialCapacity) {
+        return new CompactHashListBuilder(initialCapacity);
+    }
+
+    /**
+     * Builder
+     */
+    public static class CompactHashListBuilder {
+        private byte[] hashes;
+        private int size;
+
+        CompactHashListBuilder(int initialCapacity) {
+            this.hashes = new byte[Math.max(1, initialCapacity) * HASH_LENGTH];
+        }
+
+        public CompactHashList.CompactHashListBuilder add(Sha256Hash hash) {
+            if ((size + 1) * HASH_LENGTH > hashes.length) hashes = Arrays.copyOf(hashes, hashes.length * 2);
+            System.arraycopy(hash.getBytes(), 0, hashes, size * HASH_LENGTH, HASH_LENGTH);
+            size++;
+            return this;
+        }
+
+        public int size() { return this.size; }
+
+        public CompactHashList build() {
+            return new CompactHashList(Arrays.copyOf(hashes, size * HASH_LENGTH), size);
+        }
+    }
+}
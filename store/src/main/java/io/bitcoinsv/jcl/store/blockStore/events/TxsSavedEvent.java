@@ -16,7 +16,8 @@ public final class TxsSavedEvent extends BlockStoreEvent {
     private final List<Sha256Hash> txHashes;
 
     public TxsSavedEvent(List<Sha256Hash> txHashes) {
-        this.txHashes = new ArrayList<>(txHashes);
+        // A CompactHashList is immutable, so there is no need to copy it:
+        this.txHashes = (txHashes instanceof CompactHashList) ? txHashes : new ArrayList<>(txHashes);
     }
 
     public List<Sha256Hash> getTxHashes() {
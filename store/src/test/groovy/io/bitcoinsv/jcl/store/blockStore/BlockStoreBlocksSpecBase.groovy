@@ -2,6 +2,7 @@ package io.bitcoinsv.jcl.store.blockStore
 
 import io.bitcoinsv.jcl.tools.common.TestingUtils
 import io.bitcoinsv.bitcoinjsv.bitcoin.api.base.HeaderReadOnly
+import io.bitcoinsv.bitcoinjsv.core.Sha256Hash
 
 import java.util.concurrent.atomic.AtomicInteger
 
@@ -91,4 +92,32 @@ abstract class BlockStoreBlocksSpecBase extends BlockStoreSpecBase {
             db.stop()
             println(" - Test Done.")
     }
+
+    /**
+     * We test that the batched method 'getBlocks' (and its Async version) return one result for each Block, in the
+     * same order they are requested.
+     */
+    def "testing reading Blocks in batch"() {
+        given:
+            println(" - Connecting to the DB...")
+            BlockStore db = getInstance("BSV-Main", false, false)
+        when:
+            db.start()
+            HeaderReadOnly block1 = TestingUtils.buildBlock()
+            HeaderReadOnly block2 = TestingUtils.buildBlock()
+            HeaderReadOnly blockNotSaved = TestingUtils.buildBlock()
+            db.saveBlocks(Arrays.asList(block1, block2))
+
+            List<Sha256Hash> hashes = Arrays.asList(block2.getHash(), blockNotSaved.getHash(), block1.getHash())
+            List<Optional<HeaderReadOnly>> blocksRead = db.getBlocks(hashes)
+            List<Optional<HeaderReadOnly>> blocksReadAsync = db.getBlocksAsync(hashes).get()
+        then:
+            blocksRead == [Optional.of(block2), Optional.empty(), Optional.of(block1)]
+            blocksReadAsync == blocksRead
+        cleanup:
+            println(" - Cleanup...")
+            db.clear()
+            db.stop()
+            println(" - Test Done.")
+    }
 }
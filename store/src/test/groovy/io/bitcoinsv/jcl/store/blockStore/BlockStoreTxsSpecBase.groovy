@@ -185,6 +185,39 @@ abstract class BlockStoreTxsSpecBase extends BlockStoreSpecBase {
             println(" - Test Done.")
     }
 
+    /**
+     * We test that the batched methods 'getTxs' and 'containsTxs' (and their Async versions) return one result for
+     * each Tx, in the same order they are requested.
+     */
+    def "testing reading Txs in batch"() {
+        given:
+            println(" - Connecting to the DB...")
+            BlockStore db = getInstance("BSV-Main", false, false)
+        when:
+            db.start()
+            Tx txA = TestingUtils.buildTx()
+            Tx txB = TestingUtils.buildTx()
+            Tx txC = TestingUtils.buildTx()
+            Tx txNotSaved = TestingUtils.buildTx()
+            db.saveTxs(Arrays.asList(txA, txB, txC))
+
+            List<Sha256Hash> hashes = Arrays.asList(txC.getHash(), txNotSaved.getHash(), txA.getHash(), txB.getHash())
+            List<Optional<Tx>> txsRead = db.getTxs(hashes)
+            List<Boolean> txsFound = db.containsTxs(hashes)
+            List<Optional<Tx>> txsReadAsync = db.getTxsAsync(hashes).get()
+            List<Boolean> txsFoundAsync = db.containsTxsAsync(hashes).get()
+        then:
+            txsRead == [Optional.of(txC), Optional.empty(), Optional.of(txA), Optional.of(txB)]
+            txsFound == [true, false, true, true]
+            txsReadAsync == txsRead
+            txsFoundAsync == txsFound
+        cleanup:
+            println(" - Cleanup...")
+            db.clear()
+            db.stop()
+            println(" - Test Done.")
+    }
+
     /**
      * We test that the 'saveTxsIfNotExistAsync' methods works fine. It inserts only those Txs that do NOT exist yet,
      * and return them. This method works asynchronously, so we have to wait until the result is available. In this
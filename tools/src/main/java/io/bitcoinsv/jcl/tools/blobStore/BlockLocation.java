@@ -0,0 +1,27 @@
+package io.bitcoinsv.jcl.tools.blobStore;
+
+import java.nio.file.Path;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * Location of a serialized Block on disk: the file containing it, and the region of that file it takes. When each
+ * block is stored in its own file the region is the whole file, but in segmented mode several blocks share the
+ * same file.
+ */
+class BlockLocation {
+    private final Path path;
+    private final long offset;
+    private final long length;
+
+    BlockLocation(Path path, long offset, long length) {
+        this.path = path;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    Path getPath()      { return path; }
+    long getOffset()    { return offset; }
+    long getLength()    { return length; }
+}
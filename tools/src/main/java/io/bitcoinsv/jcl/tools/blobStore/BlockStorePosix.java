@@ -1,26 +1,47 @@
 package io.bitcoinsv.jcl.tools.blobStore;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import io.bitcoinsv.bitcoinjsv.bitcoin.api.base.HeaderReadOnly;
 import io.bitcoinsv.bitcoinjsv.bitcoin.bean.base.HeaderBean;
 import io.bitcoinsv.bitcoinjsv.core.Sha256Hash;
 import io.bitcoinsv.bitcoinjsv.core.Utils;
 import io.bitcoinsv.bitcoinjsv.core.VarInt;
 import io.bitcoinsv.jcl.tools.bytes.InputStreamReader;
+import io.bitcoinsv.jcl.tools.bytes.Sha256HashIncremental;
 import io.bitcoinsv.jcl.tools.serialization.BitcoinSerializerUtils;
 import io.bitcoinsv.jcl.tools.serialization.TransactionSerializerUtils;
+import io.bitcoinsv.jcl.tools.thread.ThreadUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import shaded.org.apache.commons.io.FileUtils;
 import shaded.org.apache.maven.wagon.ResourceDoesNotExistException;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
 import java.util.Spliterator;
 import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -35,15 +56,68 @@ public class BlockStorePosix {
 
     private static final Logger log = LoggerFactory.getLogger(BlockStorePosix.class);
 
+    // Max size of each region of the file we map into memory when calculating the checksum of a block:
+    private static final long MAX_MAPPED_REGION_SIZE = Integer.MAX_VALUE;
+
+    // Max number of block checksums kept in memory:
+    private static final long MAX_CACHED_CHECKSUMS = 10_000;
+
+    // Tx Index: For each Block, we store 2 files alongside:
+    //  - offsets file: a record per Tx (in the same order as in the block): [offset in block file (8 bytes)][length (4 bytes)]
+    //  - txIds file: a record per Tx: [txId (32 bytes)][ordinal (8 bytes)], sorted by txId once the block is committed
+    // In segmented mode, both files are appended to the segment right after the block when it's committed.
+    private static final String TX_INDEX_DIR = "index";
+    private static final String TX_OFFSETS_EXT = ".offsets";
+    private static final String TX_IDS_EXT = ".txids";
+    static final int TX_OFFSET_RECORD_SIZE = 12;
+    static final int TX_ID_RECORD_SIZE = 40;
+
+    // Max number of bytes read from the block file in a single operation when reading a range of Txs, and max number
+    // of index records loaded into memory at once (reading offsets, or sorting the TxIds):
+    private static final int MAX_TXS_READ_CHUNK_SIZE = 64_000_000; // 64MB
+    private static final int MAX_TX_INDEX_RECORDS_IN_MEMORY = 1_000_000;
+
     private BlockStorePosixConfig config;
+
+    // When the Tx Index is enabled, a batch of bytes might end with an incomplete Tx, which will be completed in the
+    // next batch. We keep those bytes here until then:
+    private Map<Sha256Hash, byte[]> pendingTxBytes = new ConcurrentHashMap<>();
+
+    // Storage of committed blocks in Segment files, only used in segmented mode:
+    private SegmentedBlockFiles segmentedFiles;
+
+    // In segmented mode, the blocks being saved are written directly to a segment until they are committed. The
+    // writers are kept between calls, so we don't need to open/lock/close any file for each batch of txs:
+    private Map<Sha256Hash, SegmentedBlockFiles.BlockWriter> blockWriters = new ConcurrentHashMap<>();
+
+    // Checksums (first 4 bytes of the double-SHA256 of the whole serialized block), calculated on demand and cached,
+    // since the same block might be served to several peers:
+    private Cache<Sha256Hash, Long> blockChecksums = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_CHECKSUMS).build();
+
+    // Write-behind pipeline used by "saveBlockAsync()". For each Block we keep the last write submitted, so the
+    // next write (or the commit) is chained after it and the batches of the same Block are written in order. The
+    // Semaphore limits the number of bytes submitted but not written yet:
+    private ExecutorService writerExecutor;
+    private Map<Sha256Hash, CompletableFuture<Void>> pendingWrites = new ConcurrentHashMap<>();
+    // First error writing each block, kept until the block is removed so it can never be committed with missing txs:
+    private Map<Sha256Hash, Throwable> failedWrites = new ConcurrentHashMap<>();
+    private final Semaphore pendingWriteBytes;
+    private final int maxPendingWriteBytes;
+
     public BlockStorePosix(BlockStorePosixConfig config) {
         this.config = config;
+        this.maxPendingWriteBytes = (int) Math.min(Integer.MAX_VALUE, Math.max(1, config.getMaxPendingWriteBytes()));
+        this.pendingWriteBytes = new Semaphore(maxPendingWriteBytes);
 
+        if (config.isSegmentedStorageEnabled()) {
+            this.segmentedFiles = new SegmentedBlockFiles(getBlocksDir().resolve("segments"), config.getSegmentSize(), config.getCompactionThreshold());
+        }
     }
 
     /**
-     * Saves the block {@literal &} txs. If the block already exists, the txs will be appended. Method will lock on each file csaved. Note: commit must be called
-     * once completed to remove the temp file created and flag that a file has been saved correctly
+     * Saves the block {@literal &} txs. If the block already exists, the txs will be appended. The block file (or its
+     * segment, in segmented mode) is locked while writing. Note: commit must be called once completed to remove the
+     * temp file created and flag that a file has been saved correctly
      *
      * @param headerReadOnly the header for the block
      * @param numberOfTxs the total txs within the block
@@ -51,6 +125,22 @@ public class BlockStorePosix {
      * @throws IllegalAccessException exception is thrown if an attempt is made to write to a committed block
      */
     public void saveBlock(HeaderReadOnly headerReadOnly, long numberOfTxs, byte[] txsBytes) throws IllegalAccessException {
+        try {
+            writeBlock(headerReadOnly, numberOfTxs, txsBytes);
+        } catch (IOException | UncheckedIOException e) {
+            log.error("Error saving block " + headerReadOnly.getHash() + ": " + e);
+        }
+    }
+
+    /**
+     * Same as "saveBlock()", but any error writing to disk is thrown to the caller
+     */
+    private void writeBlock(HeaderReadOnly headerReadOnly, long numberOfTxs, byte[] txsBytes) throws IllegalAccessException, IOException {
+        if (segmentedFiles != null) {
+            saveBlockToSegment(headerReadOnly, numberOfTxs, txsBytes);
+            return;
+        }
+
         File blockFile = getBlockPath(headerReadOnly.getHash()).toFile();
         File blockFileTemp = getTempPath(headerReadOnly.getHash()).toFile();
 
@@ -75,9 +165,12 @@ public class BlockStorePosix {
                 bos.write(new VarInt(numberOfTxs).encode());
             }
 
+            long txsOffset = bos.getChannel().size();
             bos.write(txsBytes);
-        } catch (IOException e) {
-            e.printStackTrace();
+
+            if (config.isTxIndexEnabled()) {
+                indexTxs(headerReadOnly.getHash(), txsOffset, txsBytes);
+            }
         } finally {
             try {
                 if (tbos != null)
@@ -86,22 +179,178 @@ public class BlockStorePosix {
                 if(bos != null)
                     bos.close();
             } catch (IOException e) {
-                e.printStackTrace();
+                log.warn("Error closing file of block " + headerReadOnly.getHash() + ": " + e);
+            }
+        }
+    }
+
+    /**
+     * In segmented mode, the txs are appended to the block in its segment. The segment is not written by any other
+     * block until this one is committed
+     */
+    private void saveBlockToSegment(HeaderReadOnly headerReadOnly, long numberOfTxs, byte[] txsBytes) throws IllegalAccessException, IOException {
+        Sha256Hash blockHash = headerReadOnly.getHash();
+        if (containsBlock(blockHash)) {
+            throw new IllegalAccessException("cannot write to a committed block");
+        }
+
+        SegmentedBlockFiles.BlockWriter writer = blockWriters.computeIfAbsent(blockHash, h -> openBlockWriter(h));
+        synchronized (writer) {
+            if (writer.getLength() == 0) {
+                segmentedFiles.write(writer, ByteBuffer.wrap(headerReadOnly.serialize()));
+                segmentedFiles.write(writer, ByteBuffer.wrap(new VarInt(numberOfTxs).encode()));
+            }
+
+            long txsOffset = writer.getLength();
+            segmentedFiles.write(writer, ByteBuffer.wrap(txsBytes));
+
+            if (config.isTxIndexEnabled()) {
+                indexTxs(blockHash, txsOffset, txsBytes);
             }
         }
     }
 
     /**
-     * Removes the temp file which indicates the file has been written
+     * Asynchronous version of "saveBlock()". The txs are written to disk by a pool of writer threads, so the caller
+     * (usually the thread deserializing the block from the network) is not affected by the latency of the disk.
+     *
+     * - The batches of the same block are written in the same order they are submitted.
+     * - The bytes submitted but not written yet are limited by the "maxPendingWriteBytes" property. Once that limit
+     *   is reached, this method blocks until enough bytes have been written.
+     * - "commitBlock()" and "commitBlockAsync()" only take place after all the pending writes of the block, and they
+     *   fail if any of them failed. Once a write fails, the block can't be committed until it's removed.
+     *
+     * @return a Future that completes once the txs have been written, or exceptionally if they couldn't be written
+     * or a previous batch of the same block failed
+     */
+    public CompletableFuture<Void> saveBlockAsync(HeaderReadOnly headerReadOnly, long numberOfTxs, byte[] txsBytes) {
+        int numPermits = Math.min(txsBytes.length, maxPendingWriteBytes);
+        try {
+            pendingWriteBytes.acquire(numPermits);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(ex);
+        }
+
+        Sha256Hash blockHash = headerReadOnly.getHash();
+        CompletableFuture<Void> write = pendingWrites.compute(blockHash, (hash, previousWrite) -> {
+            CompletableFuture<Void> previous = (previousWrite != null) ? previousWrite : CompletableFuture.completedFuture(null);
+            return previous.handleAsync((result, previousError) -> {
+                try {
+                    Throwable failure = (previousError != null) ? previousError : failedWrites.get(hash);
+                    if (failure != null) {
+                        throw new CompletionException("A previous write of block " + hash + " failed", failure);
+                    }
+                    writeBlock(headerReadOnly, numberOfTxs, txsBytes);
+                    return null;
+                } catch (IllegalAccessException | IOException | UncheckedIOException ex) {
+                    log.error("Error saving block " + hash + ": " + ex);
+                    throw new CompletionException(ex);
+                } finally {
+                    pendingWriteBytes.release(numPermits);
+                }
+            }, getWriterExecutor());
+        });
+        write.whenComplete((result, error) -> {
+            // The failure is recorded BEFORE the write is removed, so a commit never misses it:
+            if (error != null) failedWrites.putIfAbsent(blockHash, error);
+            pendingWrites.remove(blockHash, write);
+        });
+        return write;
+    }
+
+    /**
+     * Asynchronous version of "commitBlock()". The block is committed once all its pending writes are done.
+     *
+     * @return a Future with the result of the commit, which is FALSE if any of the writes of the block failed
+     */
+    public CompletableFuture<Boolean> commitBlockAsync(Sha256Hash blockHash) {
+        CompletableFuture<Void> pendingWrite = pendingWrites.get(blockHash);
+        CompletableFuture<Void> previous = (pendingWrite != null) ? pendingWrite : CompletableFuture.completedFuture(null);
+        return previous.handleAsync((result, error) -> {
+            if (error != null || failedWrites.containsKey(blockHash)) {
+                log.error("Block " + blockHash + " not committed, some of its txs could not be written");
+                return false;
+            }
+            return doCommitBlock(blockHash);
+        }, getWriterExecutor());
+    }
+
+    /**
+     * Removes the temp file which indicates the file has been written. In segmented mode, the block is added to the
+     * index of its segment. If there are pending writes of this block submitted by "saveBlockAsync()", it waits
+     * for them to finish, and returns FALSE if any write of the block failed.
      *
      * @param blockHash
      */
     public boolean commitBlock(Sha256Hash blockHash) {
+        if (!awaitPendingWrites(blockHash)) {
+            log.error("Block " + blockHash + " not committed, some of its txs could not be written");
+            return false;
+        }
+        return doCommitBlock(blockHash);
+    }
+
+    private boolean doCommitBlock(Sha256Hash blockHash) {
+        if (config.isTxIndexEnabled()) {
+            commitTxIndex(blockHash);
+        }
+
+        if (segmentedFiles != null) {
+            return commitBlockToSegment(blockHash);
+        }
+
         File blockFileTemp = getTempPath(blockHash).toFile();
 
         return blockFileTemp.delete();
     }
 
+    /**
+     * Appends the Tx Index of the block (if any) to its segment, right after the block, and commits it. It returns
+     * once the block is durable.
+     */
+    private boolean commitBlockToSegment(Sha256Hash blockHash) {
+        SegmentedBlockFiles.BlockWriter writer = blockWriters.remove(blockHash);
+        if (writer == null) {
+            return false;
+        }
+        synchronized (writer) {
+            try {
+                long txIndexLength = 0;
+                Path offsetsPath = getTxIndexPath(blockHash, TX_OFFSETS_EXT);
+                Path txIdsPath = getTxIndexPath(blockHash, TX_IDS_EXT);
+                if (config.isTxIndexEnabled() && offsetsPath.toFile().exists() && txIdsPath.toFile().exists()) {
+                    try (FileChannel offsetsChannel = FileChannel.open(offsetsPath, StandardOpenOption.READ);
+                         FileChannel txIdsChannel = FileChannel.open(txIdsPath, StandardOpenOption.READ)) {
+                        txIndexLength = offsetsChannel.size() + txIdsChannel.size();
+                        segmentedFiles.write(writer, offsetsChannel);
+                        segmentedFiles.write(writer, txIdsChannel);
+                    }
+                }
+                segmentedFiles.commit(writer, txIndexLength);
+                return true;
+            } catch (IOException ex) {
+                log.error("Error committing block " + blockHash + ": " + ex);
+                segmentedFiles.abort(writer);
+                return false;
+            } finally {
+                // The Tx Index is now stored in the segment:
+                removeTxIndex(blockHash);
+            }
+        }
+    }
+
+    /**
+     * Compacts the segments whose ratio of removed blocks has reached the configured threshold, and returns once it's
+     * done. This is done automatically in background when blocks are removed, so it's only needed if the threshold
+     * has been changed, or to wait for the compaction to finish.
+     */
+    public void compactSegments() {
+        if (segmentedFiles != null) {
+            segmentedFiles.compact();
+        }
+    }
+
     /**
      * Reads the block header from file
      *
@@ -109,13 +358,7 @@ public class BlockStorePosix {
      * @return the header of the block
      */
     public HeaderReadOnly readBlockHeader(Sha256Hash blockHash) throws ResourceDoesNotExistException {
-        File file = getBlockPath(blockHash).toFile();
-
-        if(!containsBlock(blockHash)){
-            throw new ResourceDoesNotExistException("block has either not been committed or does not exist");
-        }
-
-        try (FileInputStream fileInputStream = new FileInputStream(file)) {
+        try (InputStream fileInputStream = openBlockInputStream(blockHash)) {
             //read the first 80 bytes from the file, which is the header
             return new HeaderBean(fileInputStream.readNBytes(HeaderReadOnly.FIXED_MESSAGE_SIZE));
         } catch (FileNotFoundException ex) {
@@ -135,13 +378,7 @@ public class BlockStorePosix {
      * @return the header of the block
      */
     public Long readNumberOfTxs(Sha256Hash blockHash) throws ResourceDoesNotExistException {
-        File file = getBlockPath(blockHash).toFile();
-
-        if(!containsBlock(blockHash)){
-            throw new ResourceDoesNotExistException("block has either not been committed or does not exist");
-        }
-
-        try (InputStreamReader reader = new InputStreamReader(new FileInputStream(file))) {
+        try (InputStreamReader reader = new InputStreamReader(openBlockInputStream(blockHash))) {
             //read and ignore the header
             reader.read(HeaderReadOnly.FIXED_MESSAGE_SIZE);
             //next bytes are number of txs
@@ -182,14 +419,8 @@ public class BlockStorePosix {
      * @return
      */
     private Stream<byte[]> streamBlock(Sha256Hash blockHash, boolean txsOnly) throws ResourceDoesNotExistException {
-        File file = getBlockPath(blockHash).toFile();
-
-        if(!containsBlock(blockHash)){
-            throw new ResourceDoesNotExistException("block has either not been committed or does not exist");
-        }
-
         try {
-            InputStreamReader reader = new InputStreamReader(new FileInputStream(file));
+            InputStreamReader reader = new InputStreamReader(openBlockInputStream(blockHash));
 
             //ignore the header and numberOfTxs field
             if(txsOnly) {
@@ -235,15 +466,230 @@ public class BlockStorePosix {
         return Stream.empty();
     }
 
-    public Stream<byte[]> readPartiallySerializedBlockTxs(Sha256Hash blockHash) throws ResourceDoesNotExistException {
-        File file = getBlockPath(blockHash).toFile();
+    /**
+     * Opens a read-only FileChannel over the file containing the serialized block (header + numTxs + txs). This allows
+     * to send the block to a remote peer straight from the file (using "FileChannel.transferTo()"), without loading
+     * its content into the Java heap. The channel must be closed by the caller.
+     *
+     * NOTE: In segmented mode the file contains other blocks too, so only "getBlockSize()" bytes must be read from
+     * the position of the channel.
+     *
+     * @param blockHash
+     * @return a FileChannel positioned at the beginning of the block
+     */
+    public FileChannel openBlockChannel(Sha256Hash blockHash) throws ResourceDoesNotExistException {
+        try (SegmentedBlockFiles.SegmentsPin pin = pinSegments()) {
+            BlockLocation location = locateBlock(blockHash);
+            FileChannel channel = FileChannel.open(location.getPath(), StandardOpenOption.READ);
+            channel.position(location.getOffset());
+            return channel;
+        } catch (IOException ex) {
+            throw new ResourceDoesNotExistException("Unable to open block file: " + blockHash, ex);
+        }
+    }
 
-        if(!containsBlock(blockHash)){
-            throw new ResourceDoesNotExistException("block has either not been committed or does not exist");
+    /**
+     * Returns the checksum of the whole serialized block, as used in the header of a P2P message (first 4 bytes of
+     * the double-SHA256 of the payload). The file is hashed through memory-mapped regions, so the content is not
+     * loaded into the Java heap, and the result is cached until the block is removed.
+     *
+     * @param blockHash
+     * @return checksum of the block
+     */
+    public long getBlockChecksum(Sha256Hash blockHash) throws ResourceDoesNotExistException {
+        Long checksum = blockChecksums.getIfPresent(blockHash);
+        if (checksum != null) {
+            return checksum;
+        }
+
+        BlockLocation location;
+        FileChannel channel;
+        try (SegmentedBlockFiles.SegmentsPin pin = pinSegments()) {
+            location = locateBlock(blockHash);
+            channel = FileChannel.open(location.getPath(), StandardOpenOption.READ);
+        } catch (IOException ex) {
+            throw new ResourceDoesNotExistException("Unable to read block file: " + blockHash, ex);
+        }
+
+        try (channel) {
+            Sha256HashIncremental shaIncremental = new Sha256HashIncremental();
+            long blockEnd = location.getOffset() + location.getLength();
+            long position = location.getOffset();
+            while (position < blockEnd) {
+                long regionSize = Math.min(MAX_MAPPED_REGION_SIZE, blockEnd - position);
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, regionSize);
+                shaIncremental.add(region);
+                position += regionSize;
+            }
+            checksum = Utils.readUint32(shaIncremental.hashTwice(), 0);
+        } catch (IOException ex) {
+            throw new ResourceDoesNotExistException("Unable to read block file: " + blockHash, ex);
         }
 
+        blockChecksums.put(blockHash, checksum);
+        return checksum;
+    }
+
+    /**
+     * @param blockHash
+     * @return true if the block has been committed and an index of its Txs is available
+     */
+    public boolean containsTxIndex(Sha256Hash blockHash) {
+        return containsBlock(blockHash) && locateTxIndex(blockHash) != null;
+    }
+
+    /**
+     * Reads a single Tx from the block, using the Tx Index to locate it directly within the file
+     *
+     * @param blockHash
+     * @param txIndex   position of the Tx within the block (the coinbase is 0)
+     * @return the raw Tx, or null if the block does not contain that many Txs
+     */
+    public byte[] readTx(Sha256Hash blockHash, long txIndex) throws ResourceDoesNotExistException {
+        List<byte[]> txs = readTxs(blockHash, txIndex, 1);
+        return txs.isEmpty() ? null : txs.get(0);
+    }
+
+    /**
+     * Reads a single Tx from the block, using the Tx Index to locate it directly within the file
+     *
+     * @param blockHash
+     * @param txId
+     * @return the raw Tx, or null if the Tx is not in the block
+     */
+    public byte[] readTx(Sha256Hash blockHash, Sha256Hash txId) throws ResourceDoesNotExistException {
+        Long txIndex = getTxIndex(blockHash, txId);
+        return (txIndex == null) ? null : readTx(blockHash, txIndex);
+    }
+
+    /**
+     * Reads a range of consecutive Txs from the block, using the Tx Index to locate them directly within the file.
+     * All the Txs in the range are returned at once, so for big ranges "readTxs(blockHash, fromTxIndex, numTxs,
+     * txConsumer)" should be used instead.
+     *
+     * @param blockHash
+     * @param fromTxIndex   position of the first Tx to read within the block (the coinbase is 0)
+     * @param numTxs        max number of Txs to read
+     * @return the raw Txs, which might be less than requested if the end of the block is reached
+     */
+    public List<byte[]> readTxs(Sha256Hash blockHash, long fromTxIndex, int numTxs) throws ResourceDoesNotExistException {
+        List<byte[]> result = new ArrayList<>();
+        readTxs(blockHash, fromTxIndex, numTxs, result::add);
+        return result;
+    }
+
+    /**
+     * Reads a range of consecutive Txs from the block, using the Tx Index to locate them directly within the file,
+     * and feeds them one by one to the consumer. The Txs in the range are read from the file in chunks of several Txs
+     * (up to MAX_TXS_READ_CHUNK_SIZE bytes each, or a single Tx if it's bigger than that), and each chunk is released
+     * before the next one is read, so the memory used does not depend on the size of the range.
+     *
+     * @param blockHash
+     * @param fromTxIndex   position of the first Tx to read within the block (the coinbase is 0)
+     * @param numTxs        max number of Txs to read
+     * @param txConsumer    consumer of the raw Txs, which might be less than requested if the end of the block is reached
+     */
+    public void readTxs(Sha256Hash blockHash, long fromTxIndex, int numTxs, Consumer<byte[]> txConsumer) throws ResourceDoesNotExistException {
+        // The Segment containing the block is pinned while it's read, so it's not deleted by a compaction meanwhile:
+        try (SegmentedBlockFiles.SegmentsPin pin = pinSegments()) {
+            TxIndexLocation txIndex = checkTxIndex(blockHash);
+            BlockLocation location = locateBlock(blockHash);
+
+            try (FileChannel offsetsChannel = FileChannel.open(txIndex.getOffsetsPath(), StandardOpenOption.READ);
+                 FileChannel blockChannel = FileChannel.open(location.getPath(), StandardOpenOption.READ)) {
+
+                long numTxsIndexed = txIndex.getNumTxs();
+                if (fromTxIndex < 0 || fromTxIndex >= numTxsIndexed || numTxs <= 0) {
+                    return;
+                }
+                int numTxsToRead = (int) Math.min(numTxs, numTxsIndexed - fromTxIndex);
+
+                // The offsets are loaded in batches, so we never load too many records into memory:
+                int maxBatchSize = Math.min(MAX_TX_INDEX_RECORDS_IN_MEMORY, numTxsToRead);
+                ByteBuffer offsets = ByteBuffer.allocate(maxBatchSize * TX_OFFSET_RECORD_SIZE);
+                for (int batchStart = 0; batchStart < numTxsToRead; batchStart += maxBatchSize) {
+                    int batchSize = Math.min(maxBatchSize, numTxsToRead - batchStart);
+                    offsets.clear().limit(batchSize * TX_OFFSET_RECORD_SIZE);
+                    readFully(offsetsChannel, offsets, txIndex.getOffsetsPosition() + (fromTxIndex + batchStart) * TX_OFFSET_RECORD_SIZE);
+                    readTxsInChunks(blockChannel, location.getOffset(), offsets, batchSize, txConsumer);
+                }
+            } catch (IOException ex) {
+                log.error("Error reading Txs from block " + blockHash + ": " + ex);
+            }
+        }
+    }
+
+    /*
+     * It reads the Txs whose offsets are given from the block file. The Txs are contiguous in the file, so we read
+     * several of them in each operation and split them afterwards. Only one chunk is kept in memory at a time.
+     */
+    private void readTxsInChunks(FileChannel blockChannel, long blockOffset, ByteBuffer offsets, int numTxs, Consumer<byte[]> txConsumer) throws IOException {
+        int first = 0;
+        while (first < numTxs) {
+            long chunkStart = offsets.getLong(first * TX_OFFSET_RECORD_SIZE);
+            int last = first;
+            while (last + 1 < numTxs && txEnd(offsets, last + 1) - chunkStart <= MAX_TXS_READ_CHUNK_SIZE) last++;
+
+            // A single Tx is never bigger than Integer.MAX_VALUE, so this cast is safe:
+            ByteBuffer chunk = ByteBuffer.allocate((int) (txEnd(offsets, last) - chunkStart));
+            readFully(blockChannel, chunk, blockOffset + chunkStart);
+
+            for (int i = first; i <= last; i++) {
+                int start = (int) (offsets.getLong(i * TX_OFFSET_RECORD_SIZE) - chunkStart);
+                int txLength = offsets.getInt(i * TX_OFFSET_RECORD_SIZE + 8);
+                txConsumer.accept(Arrays.copyOfRange(chunk.array(), start, start + txLength));
+            }
+            first = last + 1;
+        }
+    }
+
+    // Returns the offset of the end of the Tx in the given position of the offsets buffer
+    private static long txEnd(ByteBuffer offsets, int index) {
+        return offsets.getLong(index * TX_OFFSET_RECORD_SIZE) + offsets.getInt(index * TX_OFFSET_RECORD_SIZE + 8);
+    }
+
+    /**
+     * Returns the position of the Tx within the block, using the Tx Index. The TxIds in the index are sorted, so this
+     * is a binary search over the index file.
+     *
+     * @param blockHash
+     * @param txId
+     * @return position of the Tx within the block (the coinbase is 0), or null if the Tx is not in the block
+     */
+    public Long getTxIndex(Sha256Hash blockHash, Sha256Hash txId) throws ResourceDoesNotExistException {
+        try (SegmentedBlockFiles.SegmentsPin pin = pinSegments()) {
+            TxIndexLocation txIndex = checkTxIndex(blockHash);
+
+            try (FileChannel txIdsChannel = FileChannel.open(txIndex.getTxIdsPath(), StandardOpenOption.READ)) {
+                byte[] txIdBytes = txId.getBytes();
+                ByteBuffer record = ByteBuffer.allocate(TX_ID_RECORD_SIZE);
+                byte[] recordTxId = new byte[Sha256Hash.LENGTH];
+
+                long low = 0;
+                long high = txIndex.getNumTxs() - 1;
+                while (low <= high) {
+                    long mid = (low + high) >>> 1;
+                    record.clear();
+                    readFully(txIdsChannel, record, txIndex.getTxIdsPosition() + mid * TX_ID_RECORD_SIZE);
+                    record.flip();
+                    record.get(recordTxId);
+
+                    int comparison = Arrays.compareUnsigned(recordTxId, txIdBytes);
+                    if (comparison < 0)         low = mid + 1;
+                    else if (comparison > 0)    high = mid - 1;
+                    else                        return record.getLong();
+                }
+            } catch (IOException ex) {
+                log.error("Error reading Tx Index of block " + blockHash + ": " + ex);
+            }
+        }
+
+        return null;
+    }
+
+    public Stream<byte[]> readPartiallySerializedBlockTxs(Sha256Hash blockHash) throws ResourceDoesNotExistException {
         try {
-            InputStreamReader reader = new InputStreamReader(new FileInputStream(file));
+            InputStreamReader reader = new InputStreamReader(openBlockInputStream(blockHash));
 
             //ignore the first 80 bytes
             reader.read(80);
@@ -282,7 +728,7 @@ public class BlockStorePosix {
             };
 
             return StreamSupport.stream(Spliterators.spliteratorUnknownSize(transactionIterator, Spliterator.ORDERED), false);
-        } catch (FileNotFoundException ex) {
+        } catch (IOException ex) {
             log.warn("Attempted lookup on none existent block: {}", blockHash);
         }
 
@@ -295,6 +741,17 @@ public class BlockStorePosix {
      * @param blockHash
      */
     public void removeBlock(Sha256Hash blockHash) {
+        awaitPendingWrites(blockHash);
+        failedWrites.remove(blockHash);
+        blockChecksums.invalidate(blockHash);
+        removeTxIndex(blockHash);
+
+        if (segmentedFiles != null) {
+            abortBlockWriter(blockHash);
+            segmentedFiles.remove(blockHash);
+            return;
+        }
+
         File blockFile = getBlockPath(blockHash).toFile();
         File tempFile = getTempPath(blockHash).toFile();
 
@@ -302,10 +759,33 @@ public class BlockStorePosix {
         tempFile.delete();
     }
 
+    /**
+     * Waits for the pending writes submitted by "saveBlockAsync()", stops the writer threads and closes all the files
+     * open. The blocks not committed yet are discarded. The store can still be used afterwards, the threads and files
+     * are created again when needed.
+     */
+    public void close() {
+        pendingWrites.keySet().forEach(this::awaitPendingWrites);
+        synchronized (this) {
+            if (writerExecutor != null) {
+                writerExecutor.shutdown();
+                writerExecutor = null;
+            }
+        }
+        blockWriters.keySet().forEach(this::abortBlockWriter);
+        failedWrites.clear();
+        pendingTxBytes.clear();
+        if (segmentedFiles != null) {
+            segmentedFiles.close();
+        }
+    }
+
     /**
      * clears all data within the database fs
      */
     public void clear() {
+        close();
+        blockChecksums.invalidateAll();
         try {
             FileUtils.deleteDirectory(getBlocksDir().toFile());
         } catch (IOException ex) {
@@ -318,13 +798,13 @@ public class BlockStorePosix {
      * @return block size in bytes
      */
     public long getBlockSize(Sha256Hash blockHash) throws ResourceDoesNotExistException {
-        try {
-            if(!containsBlock(blockHash)){
-                throw new ResourceDoesNotExistException("block has not been committed");
-            }
+        if(!containsBlock(blockHash)){
+            throw new ResourceDoesNotExistException("block has not been committed");
+        }
 
-            return Files.size(getBlockPath(blockHash));
-        } catch (IOException ex) {
+        try {
+            return locateBlock(blockHash).getLength();
+        } catch (ResourceDoesNotExistException ex) {
             return 0;
         }
     }
@@ -334,6 +814,10 @@ public class BlockStorePosix {
      * @return true if the block exists and has been committed
      */
     public boolean containsBlock(Sha256Hash blockHash) {
+        if (segmentedFiles != null) {
+            return segmentedFiles.contains(blockHash);
+        }
+
         File blockFileTemp = getTempPath(blockHash).toFile();
         File blockFile = getBlockPath(blockHash).toFile();
 
@@ -383,6 +867,302 @@ public class BlockStorePosix {
         return Paths.get(Utils.HEX.encode(firstByte), Utils.HEX.encode(secondByte));
     }
 
+    /**
+     * Waits until the pending writes of the block submitted by "saveBlockAsync()", if any, are done.
+     *
+     * @return FALSE if any write of the block has failed, including those already finished
+     */
+    private boolean awaitPendingWrites(Sha256Hash blockHash) {
+        CompletableFuture<Void> pendingWrite = pendingWrites.get(blockHash);
+        if (pendingWrite != null) {
+            try {
+                pendingWrite.join();
+            } catch (CompletionException ex) {
+                log.error("Error writing block " + blockHash + ": " + ex.getCause());
+                return false;
+            }
+        }
+        return !failedWrites.containsKey(blockHash);
+    }
+
+    private synchronized ExecutorService getWriterExecutor() {
+        if (writerExecutor == null) {
+            writerExecutor = ThreadUtils.getFixedThreadExecutorService("BlockStorePosix-writer", Math.max(1, config.getAsyncWriterThreads()));
+        }
+        return writerExecutor;
+    }
+
+    /**
+     * Returns the location of the committed block: the file containing it and the region of the file it takes
+     *
+     * @param blockHash
+     * @return
+     */
+    private BlockLocation locateBlock(Sha256Hash blockHash) throws ResourceDoesNotExistException {
+        if(!containsBlock(blockHash)){
+            throw new ResourceDoesNotExistException("block has either not been committed or does not exist");
+        }
+
+        if (segmentedFiles != null) {
+            BlockLocation location = segmentedFiles.locate(blockHash);
+            if (location == null) {
+                throw new ResourceDoesNotExistException("block has either not been committed or does not exist");
+            }
+            return location;
+        }
+
+        Path blockPath = getBlockPath(blockHash);
+        try {
+            return new BlockLocation(blockPath, 0, Files.size(blockPath));
+        } catch (IOException ex) {
+            throw new ResourceDoesNotExistException("Unable to read block file: " + blockHash, ex);
+        }
+    }
+
+    /**
+     * Opens an InputStream over the region of the file taken by the block
+     *
+     * @param blockHash
+     * @return
+     */
+    private InputStream openBlockInputStream(Sha256Hash blockHash) throws ResourceDoesNotExistException, IOException {
+        try (SegmentedBlockFiles.SegmentsPin pin = pinSegments()) {
+            BlockLocation location = locateBlock(blockHash);
+            FileChannel channel = FileChannel.open(location.getPath(), StandardOpenOption.READ);
+            channel.position(location.getOffset());
+            return new BoundedInputStream(Channels.newInputStream(channel), location.getLength());
+        }
+    }
+
+    /**
+     * In segmented mode, it pins the Segments so none of them is deleted by a compaction until the pin is closed.
+     * It must be held while a block is located and its file opened. Once opened, the file can still be read after
+     * the Segment is deleted.
+     */
+    private SegmentedBlockFiles.SegmentsPin pinSegments() {
+        return (segmentedFiles != null) ? segmentedFiles.pinSegments() : () -> {};
+    }
+
+    private SegmentedBlockFiles.BlockWriter openBlockWriter(Sha256Hash blockHash) {
+        try {
+            return segmentedFiles.openBlock(blockHash);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void abortBlockWriter(Sha256Hash blockHash) {
+        SegmentedBlockFiles.BlockWriter writer = blockWriters.remove(blockHash);
+        if (writer == null) return;
+        synchronized (writer) {
+            segmentedFiles.abort(writer);
+        }
+    }
+
+    /**
+     * Returns the path of one of the files of the Tx Index of the given block
+     *
+     * @param blockHash
+     * @param extension type of index file
+     * @return
+     */
+    private Path getTxIndexPath(Sha256Hash blockHash, String extension) {
+        var path = getBlocksDir().resolve(TX_INDEX_DIR);
+        return path.resolve(calculateFanoutPath(blockHash)).resolve(blockHash.toString() + extension);
+    }
+
+    /**
+     * Adds the Txs contained in the bytes given to the Tx Index of the block. The bytes might start or end in the
+     * middle of a Tx, if it's been split across batches.
+     *
+     * @param blockHash
+     * @param txsOffset position of the bytes within the block file
+     * @param txsBytes  raw Txs
+     */
+    private void indexTxs(Sha256Hash blockHash, long txsOffset, byte[] txsBytes) throws IOException {
+        byte[] bytes = txsBytes;
+        long bytesOffset = txsOffset;
+
+        // We add the bytes left in the previous batch, if any:
+        byte[] previousBytes = pendingTxBytes.remove(blockHash);
+        if (previousBytes != null) {
+            bytes = new byte[previousBytes.length + txsBytes.length];
+            System.arraycopy(previousBytes, 0, bytes, 0, previousBytes.length);
+            System.arraycopy(txsBytes, 0, bytes, previousBytes.length, txsBytes.length);
+            bytesOffset -= previousBytes.length;
+        }
+
+        File offsetsFile = getTxIndexPath(blockHash, TX_OFFSETS_EXT).toFile();
+        long txOrdinal = offsetsFile.exists() ? offsetsFile.length() / TX_OFFSET_RECORD_SIZE : 0;
+
+        ByteArrayOutputStream offsetRecords = new ByteArrayOutputStream();
+        ByteArrayOutputStream txIdRecords = new ByteArrayOutputStream();
+        ByteBuffer offsetRecord = ByteBuffer.allocate(TX_OFFSET_RECORD_SIZE);
+        ByteBuffer txIdRecord = ByteBuffer.allocate(TX_ID_RECORD_SIZE);
+
+        int pos = 0;
+        while (pos < bytes.length) {
+            long txSize = TransactionSerializerUtils.calculateTxSize(bytes, pos);
+            if (txSize < 0) break;
+
+            offsetRecord.clear();
+            offsetRecord.putLong(bytesOffset + pos).putInt((int) txSize);
+            offsetRecords.write(offsetRecord.array());
+
+            Sha256Hash txId = Sha256Hash.wrapReversed(Sha256Hash.hashTwice(bytes, pos, (int) txSize));
+            txIdRecord.clear();
+            txIdRecord.put(txId.getBytes()).putLong(txOrdinal++);
+            txIdRecords.write(txIdRecord.array());
+
+            pos += txSize;
+        }
+
+        // The incomplete Tx at the end (if any) is kept for the next batch:
+        if (pos < bytes.length) {
+            pendingTxBytes.put(blockHash, Arrays.copyOfRange(bytes, pos, bytes.length));
+        }
+
+        try (FileOutputStream offsetsOs = FileUtils.openOutputStream(offsetsFile, true);
+             FileOutputStream txIdsOs = FileUtils.openOutputStream(getTxIndexPath(blockHash, TX_IDS_EXT).toFile(), true)) {
+            offsetRecords.writeTo(offsetsOs);
+            txIdRecords.writeTo(txIdsOs);
+        }
+    }
+
+    /**
+     * Completes the Tx Index of the block, sorting the TxIds so they can be searched. If the index is not consistent
+     * (some bytes were not recognized as a complete Tx), the index is removed.
+     *
+     * The TxIds are sorted in runs of MAX_TX_INDEX_RECORDS_IN_MEMORY records, each one saved in a temporary file, and
+     * then the runs are merged into the final file, so the whole index is never loaded into memory.
+     *
+     * @param blockHash
+     */
+    private void commitTxIndex(Sha256Hash blockHash) {
+        Path txIdsPath = getTxIndexPath(blockHash, TX_IDS_EXT);
+        if (pendingTxBytes.remove(blockHash) != null || !txIdsPath.toFile().exists()) {
+            log.warn("Tx Index of block " + blockHash + " is incomplete, it will not be available");
+            removeTxIndex(blockHash);
+            return;
+        }
+
+        List<Path> runs = new ArrayList<>();
+        try {
+            try (FileChannel txIdsChannel = FileChannel.open(txIdsPath, StandardOpenOption.READ)) {
+                long numRecords = txIdsChannel.size() / TX_ID_RECORD_SIZE;
+                for (long runStart = 0; runStart < numRecords; runStart += MAX_TX_INDEX_RECORDS_IN_MEMORY) {
+                    int runSize = (int) Math.min(MAX_TX_INDEX_RECORDS_IN_MEMORY, numRecords - runStart);
+                    ByteBuffer run = ByteBuffer.allocate(runSize * TX_ID_RECORD_SIZE);
+                    readFully(txIdsChannel, run, runStart * TX_ID_RECORD_SIZE);
+                    Path runPath = txIdsPath.resolveSibling(txIdsPath.getFileName() + ".run" + runs.size());
+                    runs.add(runPath);
+                    writeSortedRun(run.array(), runSize, runPath);
+                }
+            }
+            mergeSortedRuns(runs, txIdsPath);
+        } catch (IOException ex) {
+            log.error("Error sorting Tx Index of block " + blockHash + ": " + ex);
+            removeTxIndex(blockHash);
+        } finally {
+            runs.forEach(run -> run.toFile().delete());
+        }
+    }
+
+    // It sorts the TxIds records given by TxId, and saves them into the file given
+    private static void writeSortedRun(byte[] records, int numRecords, Path runPath) throws IOException {
+        Integer[] order = new Integer[numRecords];
+        for (int i = 0; i < numRecords; i++) order[i] = i;
+        Arrays.sort(order, (r1, r2) -> Arrays.compareUnsigned(
+                records, r1 * TX_ID_RECORD_SIZE, r1 * TX_ID_RECORD_SIZE + Sha256Hash.LENGTH,
+                records, r2 * TX_ID_RECORD_SIZE, r2 * TX_ID_RECORD_SIZE + Sha256Hash.LENGTH));
+        try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(runPath))) {
+            for (int i = 0; i < numRecords; i++) os.write(records, order[i] * TX_ID_RECORD_SIZE, TX_ID_RECORD_SIZE);
+        }
+    }
+
+    // It merges the sorted runs given into the file given, reading them sequentially, one record at a time
+    private static void mergeSortedRuns(List<Path> runs, Path resultPath) throws IOException {
+        List<DataInputStream> inputs = new ArrayList<>();
+        try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(resultPath))) {
+            // Each entry in the queue is the current record of one run, along with its input stream:
+            PriorityQueue<Map.Entry<byte[], DataInputStream>> heads = new PriorityQueue<>((e1, e2) -> Arrays.compareUnsigned(
+                    e1.getKey(), 0, Sha256Hash.LENGTH, e2.getKey(), 0, Sha256Hash.LENGTH));
+            for (Path run : runs) {
+                DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(run)));
+                inputs.add(input);
+                byte[] record = new byte[TX_ID_RECORD_SIZE];
+                input.readFully(record);
+                heads.add(new AbstractMap.SimpleEntry<>(record, input));
+            }
+            while (!heads.isEmpty()) {
+                Map.Entry<byte[], DataInputStream> head = heads.poll();
+                os.write(head.getKey());
+                byte[] record = new byte[TX_ID_RECORD_SIZE];
+                try {
+                    head.getValue().readFully(record);
+                    heads.add(new AbstractMap.SimpleEntry<>(record, head.getValue()));
+                } catch (EOFException eof) {
+                    // This run is finished
+                }
+            }
+        } finally {
+            for (DataInputStream input : inputs) input.close();
+        }
+    }
+
+    /**
+     * Removes the Tx Index of the block, if any
+     *
+     * @param blockHash
+     */
+    private void removeTxIndex(Sha256Hash blockHash) {
+        pendingTxBytes.remove(blockHash);
+        getTxIndexPath(blockHash, TX_OFFSETS_EXT).toFile().delete();
+        getTxIndexPath(blockHash, TX_IDS_EXT).toFile().delete();
+    }
+
+    /**
+     * Checks that the block has been committed and its Tx Index is available
+     *
+     * @param blockHash
+     */
+    private TxIndexLocation checkTxIndex(Sha256Hash blockHash) throws ResourceDoesNotExistException {
+        TxIndexLocation location = containsBlock(blockHash) ? locateTxIndex(blockHash) : null;
+        if (location == null) {
+            throw new ResourceDoesNotExistException("block has either not been committed, does not exist or has no Tx index");
+        }
+        return location;
+    }
+
+    /**
+     * Returns the location of the Tx Index of the block: the segment containing it in segmented mode, or the 2 files
+     * stored alongside the block otherwise.
+     *
+     * @param blockHash
+     * @return the location, or null if the block has no Tx Index
+     */
+    private TxIndexLocation locateTxIndex(Sha256Hash blockHash) {
+        if (segmentedFiles != null) {
+            return segmentedFiles.locateTxIndex(blockHash);
+        }
+
+        File offsetsFile = getTxIndexPath(blockHash, TX_OFFSETS_EXT).toFile();
+        File txIdsFile = getTxIndexPath(blockHash, TX_IDS_EXT).toFile();
+        if (!offsetsFile.exists() || !txIdsFile.exists()) return null;
+        return new TxIndexLocation(offsetsFile.toPath(), 0, txIdsFile.toPath(), 0, offsetsFile.length() / TX_OFFSET_RECORD_SIZE);
+    }
+
+    /**
+     * Fills the buffer reading from the channel, starting at the given position
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int numBytesRead = channel.read(buffer, position);
+            if (numBytesRead < 0) throw new EOFException("Unexpected end of file");
+            position += numBytesRead;
+        }
+    }
+
     /**
      * Files are written to a temp path until we can confirm the file has been completely saved
      *
@@ -393,4 +1173,50 @@ public class BlockStorePosix {
         var path = getBlocksDir().resolve("tmp");
         return getBlockPath(path, blockHash);
     }
+
+    /**
+     * An InputStream that reads up to a max number of bytes from another one. Used to read a single block from a
+     * segment file, which contains other blocks after it.
+     */
+    private static class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long maxBytes) {
+            super(in);
+            this.remaining = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+            int result = super.read();
+            if (result >= 0) remaining--;
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) return -1;
+            int result = super.read(b, off, (int) Math.min(len, remaining));
+            if (result > 0) remaining -= result;
+            return result;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long result = super.skip(Math.min(n, remaining));
+            remaining -= result;
+            return result;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
 }
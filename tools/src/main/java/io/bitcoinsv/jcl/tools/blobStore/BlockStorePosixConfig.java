@@ -10,12 +10,52 @@ import java.nio.file.Path;
  * @date 16/03/2022
  */
 public class BlockStorePosixConfig{
+    // Default size of each Segment file, in segmented mode:
+    public static final long DEFAULT_SEGMENT_SIZE = 1_000_000_000L;
+    // Default ratio of removed bytes in a Segment that triggers its compaction, in segmented mode:
+    public static final double DEFAULT_COMPACTION_THRESHOLD = 0.5;
+    // Default number of Threads writing the Blocks saved asynchronously:
+    public static final int DEFAULT_ASYNC_WRITER_THREADS = 2;
+    // Default max number of bytes saved asynchronously that can be waiting to be written to disk:
+    public static final long DEFAULT_MAX_PENDING_WRITE_BYTES = 256_000_000L;
+
     private Path workingFolder;
     private int batchSize;
+    // If TRUE, an index of the Txs within each Block is stored alongside the Block, allowing random access to them
+    private boolean txIndexEnabled;
+    // If TRUE, committed Blocks are appended to large Segment files instead of being stored in a file each
+    private boolean segmentedStorageEnabled;
+    private long segmentSize = DEFAULT_SEGMENT_SIZE;
+    private double compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+    // Write-behind pipeline used by "saveBlockAsync()":
+    private int asyncWriterThreads = DEFAULT_ASYNC_WRITER_THREADS;
+    private long maxPendingWriteBytes = DEFAULT_MAX_PENDING_WRITE_BYTES;
 
-    public BlockStorePosixConfig(Path workingFolder, int batchSize) {
+    public BlockStorePosixConfig(Path workingFolder, int batchSize, boolean txIndexEnabled,
+                                 boolean segmentedStorageEnabled, long segmentSize, double compactionThreshold,
+                                 int asyncWriterThreads, long maxPendingWriteBytes) {
         this.workingFolder = workingFolder;
         this.batchSize = batchSize;
+        this.txIndexEnabled = txIndexEnabled;
+        this.segmentedStorageEnabled = segmentedStorageEnabled;
+        this.segmentSize = segmentSize;
+        this.compactionThreshold = compactionThreshold;
+        this.asyncWriterThreads = asyncWriterThreads;
+        this.maxPendingWriteBytes = maxPendingWriteBytes;
+    }
+
+    public BlockStorePosixConfig(Path workingFolder, int batchSize, boolean txIndexEnabled,
+                                 boolean segmentedStorageEnabled, long segmentSize, double compactionThreshold) {
+        this(workingFolder, batchSize, txIndexEnabled, segmentedStorageEnabled, segmentSize, compactionThreshold,
+                DEFAULT_ASYNC_WRITER_THREADS, DEFAULT_MAX_PENDING_WRITE_BYTES);
+    }
+
+    public BlockStorePosixConfig(Path workingFolder, int batchSize, boolean txIndexEnabled) {
+        this(workingFolder, batchSize, txIndexEnabled, false, DEFAULT_SEGMENT_SIZE, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    public BlockStorePosixConfig(Path workingFolder, int batchSize) {
+        this(workingFolder, batchSize, false);
     }
 
     public Path getWorkingFolder(){
@@ -24,6 +64,18 @@ public class BlockStorePosixConfig{
 
     public int getBatchSize() { return batchSize; }
 
+    public boolean isTxIndexEnabled() { return txIndexEnabled; }
+
+    public boolean isSegmentedStorageEnabled() { return segmentedStorageEnabled; }
+
+    public long getSegmentSize() { return segmentSize; }
+
+    public double getCompactionThreshold() { return compactionThreshold; }
+
+    public int getAsyncWriterThreads() { return asyncWriterThreads; }
+
+    public long getMaxPendingWriteBytes() { return maxPendingWriteBytes; }
+
     public static BlockStorePosixConfigBuilder builder() {
         return new BlockStorePosixConfigBuilder();
     }
@@ -31,6 +83,12 @@ public class BlockStorePosixConfig{
     public static class BlockStorePosixConfigBuilder {
         private Path workingFolder;
         private int batchSize;
+        private boolean txIndexEnabled;
+        private boolean segmentedStorageEnabled;
+        private long segmentSize = DEFAULT_SEGMENT_SIZE;
+        private double compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+        private int asyncWriterThreads = DEFAULT_ASYNC_WRITER_THREADS;
+        private long maxPendingWriteBytes = DEFAULT_MAX_PENDING_WRITE_BYTES;
 
         public BlockStorePosixConfig.BlockStorePosixConfigBuilder workingFolder(Path workingFolder) {
             this.workingFolder = workingFolder;
@@ -42,8 +100,39 @@ public class BlockStorePosixConfig{
             return this;
         }
 
+        public BlockStorePosixConfig.BlockStorePosixConfigBuilder txIndexEnabled(boolean txIndexEnabled) {
+            this.txIndexEnabled = txIndexEnabled;
+            return this;
+        }
+
+        public BlockStorePosixConfig.BlockStorePosixConfigBuilder segmentedStorageEnabled(boolean segmentedStorageEnabled) {
+            this.segmentedStorageEnabled = segmentedStorageEnabled;
+            return this;
+        }
+
+        public BlockStorePosixConfig.BlockStorePosixConfigBuilder segmentSize(long segmentSize) {
+            this.segmentSize = segmentSize;
+            return this;
+        }
+
+        public BlockStorePosixConfig.BlockStorePosixConfigBuilder compactionThreshold(double compactionThreshold) {
+            this.compactionThreshold = compactionThreshold;
+            return this;
+        }
+
+        public BlockStorePosixConfig.BlockStorePosixConfigBuilder asyncWriterThreads(int asyncWriterThreads) {
+            this.asyncWriterThreads = asyncWriterThreads;
+            return this;
+        }
+
+        public BlockStorePosixConfig.BlockStorePosixConfigBuilder maxPendingWriteBytes(long maxPendingWriteBytes) {
+            this.maxPendingWriteBytes = maxPendingWriteBytes;
+            return this;
+        }
+
         public BlockStorePosixConfig build() {
-            return new BlockStorePosixConfig(workingFolder, batchSize);
+            return new BlockStorePosixConfig(workingFolder, batchSize, txIndexEnabled, segmentedStorageEnabled,
+                    segmentSize, compactionThreshold, asyncWriterThreads, maxPendingWriteBytes);
         }
     }
 }
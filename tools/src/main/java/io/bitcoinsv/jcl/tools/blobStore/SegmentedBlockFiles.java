@@ -0,0 +1,738 @@
+package io.bitcoinsv.jcl.tools.blobStore;
+
+import io.bitcoinsv.bitcoinjsv.core.Sha256Hash;
+import io.bitcoinsv.jcl.tools.thread.ThreadUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * Storage of Blocks in large, append-only Segment files, used by the BlockStorePosix in segmented mode.
+ *
+ * - Each Block is written directly at the end of a Segment while it's being saved. A Segment is only written by one
+ *   Block at a time, so several Blocks can be saved at the same time, each one in a different Segment. When a Segment
+ *   is full, it's closed, and a new one is created and pre-allocated with the configured size when needed.
+ * - The Tx Index of the Block (if any) is stored in the same Segment, right after the Block.
+ * - An index (hash -> segment/offset/length) is kept in memory and persisted in an append-only log file. A Block is
+ *   only added to the index when it's committed. The log is loaded when the store is opened, and rewritten when
+ *   Segments are compacted. The bytes of the Blocks not committed before a crash are overwritten afterwards.
+ * - fsync is shared across concurrent writers (group commit): a writer that commits a Block waits until its bytes
+ *   are durable, but a single fsync covers all the Blocks committed by other writers in the meantime.
+ * - When Blocks are removed their bytes become dead. When the ratio of dead bytes in a Segment reaches the
+ *   configured threshold, the Segment is compacted in background: its live Blocks are copied to another Segment and
+ *   the Segment is deleted. The copy is done without holding the lock of the Segments, so other Blocks can be
+ *   written and committed meanwhile.
+ * - A Segment is not deleted while it's pinned by a reader (see "pinSegments()"), so the location of a Block
+ *   returned by "locate()" is still valid when its Segment is opened. No fsync is done while holding the lock of
+ *   the Segments.
+ */
+class SegmentedBlockFiles {
+
+    private static final Logger log = LoggerFactory.getLogger(SegmentedBlockFiles.class);
+
+    private static final String SEGMENT_FILE_PREFIX = "segment-";
+    private static final String SEGMENT_FILE_EXT = ".dat";
+    private static final String INDEX_FILE = "index.log";
+
+    // Index log records: [op (1 byte)][block hash (32 bytes)][segment id (4 bytes)][offset (8 bytes)][length (8 bytes)]
+    //                    [tx index length (8 bytes)]
+    private static final byte OP_PUT = 1;
+    private static final byte OP_DELETE = 2;
+    private static final int INDEX_RECORD_SIZE = 1 + 32 + 4 + 8 + 8 + 8;
+
+    // A Segment file:
+    private static class Segment {
+        final int id;
+        final Path path;
+        FileChannel channel;        // open while the Segment is not full, or is being written or synced
+        long end;                   // logical end of the Segment (the file itself might be bigger, if pre-allocated)
+        long liveBytes;
+        long deadBytes;
+        boolean inUse;              // TRUE while a Block is being written to it, or while it's being compacted
+        boolean deleted;            // TRUE once it's been compacted
+        int syncsInProgress;        // fsyncs in progress over its channel (it can't be closed meanwhile)
+        long numWrites;             // number of writes done to the Segment...
+        long numWritesSynced;       // ...and number of them already covered by a fsync
+
+        Segment(int id, Path path) {
+            this.id = id;
+            this.path = path;
+        }
+
+        boolean isDirty() { return numWrites != numWritesSynced; }
+    }
+
+    // A Block stored in a Segment. Its Tx Index (if any) is stored right after it:
+    private static class Entry {
+        final int segmentId;
+        final long offset;
+        final long length;
+        final long txIndexLength;
+
+        Entry(int segmentId, long offset, long length, long txIndexLength) {
+            this.segmentId = segmentId;
+            this.offset = offset;
+            this.length = length;
+            this.txIndexLength = txIndexLength;
+        }
+
+        long totalLength() { return length + txIndexLength; }
+    }
+
+    /**
+     * A Block being written at the end of a Segment. The Segment is only written by this Block until it's committed
+     * or aborted. It's not thread-safe, the caller must synchronize the access to it.
+     */
+    static class BlockWriter {
+        private final Sha256Hash blockHash;
+        private final Segment segment;
+        private final long offset;
+        private long length;
+        private boolean finished;
+
+        private BlockWriter(Sha256Hash blockHash, Segment segment, long offset) {
+            this.blockHash = blockHash;
+            this.segment = segment;
+            this.offset = offset;
+        }
+
+        /** Number of bytes written so far */
+        long getLength() { return length; }
+    }
+
+    private final Path segmentsDir;
+    private final long segmentSize;
+    private final double compactionThreshold;
+
+    private volatile boolean initialized = false;
+    private final Map<Sha256Hash, Entry> index = new ConcurrentHashMap<>();
+    private final Map<Integer, Segment> segments = new HashMap<>();
+    private int nextSegmentId;
+    private FileChannel indexLog;
+
+    // An index log replaced while it was being synced is closed once the sync is done:
+    private int indexLogSyncsInProgress;
+    private final List<FileChannel> retiredIndexLogs = new ArrayList<>();
+
+    // Protects the segments, the index log and the reservation of space:
+    private final Object writeLock = new Object();
+
+    // The Segments are only deleted while holding the write lock, and readers hold the read lock while they locate a
+    // Block and open its Segment. Once opened, a Segment can still be read after it's deleted:
+    private final ReadWriteLock deletionLock = new ReentrantReadWriteLock();
+
+    // Group commit: Each commit gets a sequence number. A writer waits until a fsync covering its sequence is done:
+    private final Object syncLock = new Object();
+    private long appendSeq = 0;
+    private long syncedSeq = 0;
+
+    // Compaction runs in background, one Segment at a time:
+    private final Object compactionLock = new Object();
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    private ExecutorService compactionExecutor;
+
+    SegmentedBlockFiles(Path segmentsDir, long segmentSize, double compactionThreshold) {
+        this.segmentsDir = segmentsDir;
+        this.segmentSize = segmentSize;
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    /** A pin over the Segments, released when it's closed */
+    interface SegmentsPin extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * Pins the Segments, so none of them is deleted by a compaction until the pin is closed. It must be held while a
+     * Block is located and its Segment opened, but not while it's read.
+     */
+    SegmentsPin pinSegments() {
+        Lock readLock = deletionLock.readLock();
+        readLock.lock();
+        return readLock::unlock;
+    }
+
+    /** Returns the location of the block, or null if it's not stored */
+    BlockLocation locate(Sha256Hash blockHash) {
+        init();
+        Entry entry = index.get(blockHash);
+        return (entry == null) ? null : new BlockLocation(getSegmentPath(entry.segmentId), entry.offset, entry.length);
+    }
+
+    /** Returns the location of the Tx Index of the block, or null if the block is not stored or has no Tx Index */
+    TxIndexLocation locateTxIndex(Sha256Hash blockHash) {
+        init();
+        Entry entry = index.get(blockHash);
+        if (entry == null || entry.txIndexLength == 0) return null;
+        Path path = getSegmentPath(entry.segmentId);
+        long numTxs = entry.txIndexLength / (BlockStorePosix.TX_OFFSET_RECORD_SIZE + BlockStorePosix.TX_ID_RECORD_SIZE);
+        long offsetsPosition = entry.offset + entry.length;
+        long txIdsPosition = offsetsPosition + numTxs * BlockStorePosix.TX_OFFSET_RECORD_SIZE;
+        return new TxIndexLocation(path, offsetsPosition, path, txIdsPosition, numTxs);
+    }
+
+    boolean contains(Sha256Hash blockHash) {
+        init();
+        return index.containsKey(blockHash);
+    }
+
+    /**
+     * Starts writing a new Block. Its bytes are written directly at the end of a Segment that is not used by any
+     * other Block, and it's not visible until it's committed.
+     */
+    BlockWriter openBlock(Sha256Hash blockHash) throws IOException {
+        init();
+        synchronized (writeLock) {
+            Segment segment = acquireSegment();
+            return new BlockWriter(blockHash, segment, segment.end);
+        }
+    }
+
+    /** Appends the bytes given to the Block */
+    void write(BlockWriter writer, ByteBuffer bytes) throws IOException {
+        checkNotFinished(writer);
+        int numBytes = bytes.remaining();
+        long position = writer.offset + writer.length;
+        while (bytes.hasRemaining()) {
+            position += writer.segment.channel.write(bytes, position);
+        }
+        wrote(writer, numBytes);
+    }
+
+    /** Appends the whole content of the file given to the Block. The bytes do not go through the Java heap */
+    void write(BlockWriter writer, FileChannel source) throws IOException {
+        checkNotFinished(writer);
+        long numBytes = source.size();
+        transferFully(source, 0, numBytes, writer.segment.channel, writer.offset + writer.length);
+        wrote(writer, numBytes);
+    }
+
+    private void wrote(BlockWriter writer, long numBytes) {
+        writer.length += numBytes;
+        synchronized (writeLock) {
+            writer.segment.end = writer.offset + writer.length;
+            writer.segment.numWrites++;
+        }
+    }
+
+    /**
+     * Commits the Block, and returns once it has been persisted to disk. The last "txIndexLength" bytes written are
+     * the Tx Index of the Block (0 if it has none).
+     */
+    void commit(BlockWriter writer, long txIndexLength) throws IOException {
+        checkNotFinished(writer);
+        Segment segment = writer.segment;
+        long seq;
+        boolean compactionNeeded;
+        boolean closeNeeded;
+        synchronized (writeLock) {
+            Entry entry = new Entry(segment.id, writer.offset, writer.length - txIndexLength, txIndexLength);
+            try {
+                writeIndexRecord(OP_PUT, writer.blockHash, entry);
+            } catch (IOException ex) {
+                abort(writer);
+                throw ex;
+            }
+            Entry previous = index.put(writer.blockHash, entry);
+            if (previous != null) markAsDead(previous);
+            segment.liveBytes += entry.totalLength();
+            writer.finished = true;
+            closeNeeded = releaseSegment(segment);
+            // Blocks might have been removed from this Segment while it was in use:
+            compactionNeeded = canBeCompacted(segment);
+            seq = ++appendSeq;
+        }
+        if (closeNeeded) syncAndClose(segment);
+        if (compactionNeeded) scheduleCompaction();
+        awaitSync(seq);
+    }
+
+    /** Discards the Block. Since its Segment is not written by anybody else, its bytes are reused */
+    void abort(BlockWriter writer) {
+        try {
+            boolean closeNeeded;
+            synchronized (writeLock) {
+                if (writer.finished) return;
+                writer.finished = true;
+                writer.segment.end = writer.offset;
+                closeNeeded = releaseSegment(writer.segment);
+            }
+            if (closeNeeded) syncAndClose(writer.segment);
+        } catch (IOException ex) {
+            log.warn("Error releasing segment " + writer.segment.id + ": " + ex);
+        }
+    }
+
+    private void checkNotFinished(BlockWriter writer) {
+        if (writer.finished) throw new IllegalStateException("Block " + writer.blockHash + " already committed or aborted");
+    }
+
+    /** Removes the block. Its bytes are released once its Segment is compacted, in background */
+    void remove(Sha256Hash blockHash) {
+        init();
+        boolean compactionNeeded;
+        synchronized (writeLock) {
+            Entry entry = index.remove(blockHash);
+            if (entry == null) return;
+            try {
+                writeIndexRecord(OP_DELETE, blockHash, entry);
+            } catch (IOException ex) {
+                log.error("Error writing to segments index: " + ex);
+            }
+            Segment segment = markAsDead(entry);
+            compactionNeeded = segment != null && canBeCompacted(segment);
+        }
+        if (compactionNeeded) scheduleCompaction();
+    }
+
+    /** Compacts all the Segments whose ratio of dead bytes has reached the threshold, and returns once it's done */
+    void compact() {
+        init();
+        synchronized (compactionLock) {
+            List<Integer> segmentIds = new ArrayList<>();
+            synchronized (writeLock) {
+                segments.values().stream().filter(this::canBeCompacted).forEach(s -> segmentIds.add(s.id));
+            }
+            segmentIds.forEach(this::compactSegment);
+        }
+    }
+
+    private void scheduleCompaction() {
+        if (!compactionScheduled.compareAndSet(false, true)) return;
+        synchronized (compactionLock) {
+            if (compactionExecutor == null) {
+                compactionExecutor = ThreadUtils.getSingleThreadExecutorService("BlockStorePosix-compaction");
+            }
+            compactionExecutor.submit(() -> {
+                compactionScheduled.set(false);
+                try {
+                    compact();
+                } catch (RuntimeException ex) {
+                    log.error("Error compacting block segments: " + ex);
+                }
+            });
+        }
+    }
+
+    /**
+     * Closes all the files. The object can still be used afterwards, the files are opened again when needed. The
+     * Blocks being written must be committed or aborted before.
+     */
+    void close() {
+        ExecutorService executor;
+        synchronized (compactionLock) {
+            executor = compactionExecutor;
+            compactionExecutor = null;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (writeLock) {
+            if (!initialized) return;
+            try {
+                syncDirtySegments();
+                for (Segment segment : segments.values()) {
+                    if (segment.channel != null) segment.channel.close();
+                }
+                if (indexLog != null) indexLog.close();
+                for (FileChannel retiredLog : retiredIndexLogs) retiredLog.close();
+            } catch (IOException ex) {
+                log.warn("Error closing segments: " + ex);
+            }
+            index.clear();
+            segments.clear();
+            retiredIndexLogs.clear();
+            indexLog = null;
+            initialized = false;
+        }
+    }
+
+    // It loads the index from disk, the first time it's needed:
+    private void init() {
+        if (initialized) return;
+        synchronized (writeLock) {
+            if (initialized) return;
+            try {
+                Files.createDirectories(segmentsDir);
+                Path indexPath = segmentsDir.resolve(INDEX_FILE);
+                indexLog = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                loadIndex();
+                nextSegmentId = segments.keySet().stream().max(Integer::compareTo).orElse(-1) + 1;
+                initialized = true;
+            } catch (IOException ex) {
+                throw new RuntimeException("Unable to open block segments in " + segmentsDir, ex);
+            }
+        }
+    }
+
+    // It reads the index log and rebuilds the index and the state of the segments. An incomplete record at the end
+    // of the log (after a crash) is discarded.
+    private void loadIndex() throws IOException {
+        long logSize = indexLog.size();
+        long validSize = logSize - (logSize % INDEX_RECORD_SIZE);
+        ByteBuffer record = ByteBuffer.allocate(INDEX_RECORD_SIZE);
+        byte[] hashBytes = new byte[32];
+        for (long pos = 0; pos < validSize; pos += INDEX_RECORD_SIZE) {
+            record.clear();
+            while (record.hasRemaining()) indexLog.read(record, pos + record.position());
+            record.flip();
+            byte op = record.get();
+            record.get(hashBytes);
+            Sha256Hash blockHash = Sha256Hash.wrap(hashBytes.clone());
+            Entry entry = new Entry(record.getInt(), record.getLong(), record.getLong(), record.getLong());
+
+            Segment segment = segments.computeIfAbsent(entry.segmentId, id -> new Segment(id, getSegmentPath(id)));
+            segment.end = Math.max(segment.end, entry.offset + entry.totalLength());
+            if (op == OP_PUT) {
+                Entry previous = index.put(blockHash, entry);
+                if (previous != null) markAsDead(previous);
+                segment.liveBytes += entry.totalLength();
+            } else {
+                if (index.remove(blockHash) != null) markAsDead(entry);
+            }
+        }
+        if (validSize < logSize) {
+            log.warn("Discarding incomplete record at the end of the segments index");
+            indexLog.truncate(validSize);
+        }
+        indexLog.position(validSize);
+
+        // Segments with no blocks at all might still exist if they were just created:
+        try (var files = Files.list(segmentsDir)) {
+            files.map(p -> p.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_FILE_PREFIX) && name.endsWith(SEGMENT_FILE_EXT))
+                    .map(name -> Integer.parseInt(name.substring(SEGMENT_FILE_PREFIX.length(), name.length() - SEGMENT_FILE_EXT.length())))
+                    .forEach(id -> segments.computeIfAbsent(id, i -> new Segment(i, getSegmentPath(i))));
+        }
+    }
+
+    // It returns a Segment that is not full and not used by anybody else, creating a new one if needed. The Segment
+    // is marked as used, so nobody else writes to it until it's released.
+    // NOTE: Must be called with the writeLock
+    private Segment acquireSegment() throws IOException {
+        Segment segment = segments.values().stream()
+                .filter(s -> !s.inUse && s.end < segmentSize)
+                .min(Comparator.comparingInt(s -> s.id))
+                .orElse(null);
+        if (segment == null) {
+            int id = nextSegmentId++;
+            segment = new Segment(id, getSegmentPath(id));
+            // We pre-allocate the Segment, so the file does not need to grow while it's being written:
+            try (RandomAccessFile file = new RandomAccessFile(segment.path.toFile(), "rw")) {
+                file.setLength(segmentSize);
+            }
+            segments.put(id, segment);
+        }
+        if (segment.channel == null) {
+            segment.channel = FileChannel.open(segment.path, StandardOpenOption.WRITE);
+        }
+        segment.inUse = true;
+        return segment;
+    }
+
+    // It returns TRUE if the Segment must be closed by "syncAndClose()" (see "closeIfInactive()")
+    // NOTE: Must be called with the writeLock
+    private boolean releaseSegment(Segment segment) throws IOException {
+        segment.inUse = false;
+        return closeIfInactive(segment);
+    }
+
+    // It closes the writing channel of the Segment if it's not going to be written anymore. If it has writes not
+    // synced yet, the fsync can not be done here, since it would block all the writers: the Segment is left open
+    // and counted as being synced (so nobody else closes it), and TRUE is returned. In that case the caller must call
+    // "syncAndClose()" once the writeLock is released.
+    // NOTE: Must be called with the writeLock
+    private boolean closeIfInactive(Segment segment) throws IOException {
+        if (segment.inUse || segment.syncsInProgress > 0 || segment.channel == null) return false;
+        if (segment.end < segmentSize && !segment.deleted) return false;
+        if (segment.isDirty() && !segment.deleted) {
+            segment.syncsInProgress++;
+            return true;
+        }
+        segment.channel.close();
+        segment.channel = null;
+        return false;
+    }
+
+    // It syncs the Segment and closes it, after "closeIfInactive()" has returned TRUE for it.
+    // NOTE: Must be called without the writeLock
+    private void syncAndClose(Segment segment) throws IOException {
+        boolean closeNeeded = true;
+        while (closeNeeded) {
+            long numWrites;
+            synchronized (writeLock) {
+                numWrites = segment.numWrites;
+            }
+            boolean synced = false;
+            try {
+                segment.channel.force(false);
+                synced = true;
+            } finally {
+                synchronized (writeLock) {
+                    segment.syncsInProgress--;
+                    if (synced) segment.numWritesSynced = Math.max(segment.numWritesSynced, numWrites);
+                    closeNeeded = synced && closeIfInactive(segment);
+                }
+            }
+        }
+    }
+
+    // It updates the dead bytes of the Segment containing the entry, and returns the Segment.
+    // NOTE: Must be called with the writeLock
+    private Segment markAsDead(Entry entry) {
+        Segment segment = segments.get(entry.segmentId);
+        if (segment != null) {
+            segment.liveBytes -= entry.totalLength();
+            segment.deadBytes += entry.totalLength();
+        }
+        return segment;
+    }
+
+    // NOTE: Must be called with the writeLock
+    private boolean canBeCompacted(Segment segment) {
+        long totalBytes = segment.liveBytes + segment.deadBytes;
+        return !segment.inUse && totalBytes > 0 && ((double) segment.deadBytes / totalBytes) >= compactionThreshold;
+    }
+
+    // A Block copied from the Segment being compacted to another one:
+    private static class Move {
+        final Sha256Hash blockHash;
+        final Entry from;
+        final Entry to;
+
+        Move(Sha256Hash blockHash, Entry from, Entry to) {
+            this.blockHash = blockHash;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    // It copies the live blocks of the Segment to other Segments, and deletes it. The Segment is marked as used, so
+    // nobody writes to it meanwhile, and the writeLock is only held to update the state, not while copying the
+    // blocks. The blocks removed during the process are not moved.
+    private void compactSegment(int segmentId) {
+        Segment segment;
+        List<Map.Entry<Sha256Hash, Entry>> liveEntries = new ArrayList<>();
+        synchronized (writeLock) {
+            segment = segments.get(segmentId);
+            if (segment == null || !canBeCompacted(segment)) return;
+            segment.inUse = true;
+            index.entrySet().stream().filter(e -> e.getValue().segmentId == segmentId).forEach(liveEntries::add);
+        }
+        log.debug("Compacting block segment " + segmentId + "...");
+
+        List<Segment> targets = new ArrayList<>();
+        List<Move> moves = new ArrayList<>();
+        try {
+            if (!liveEntries.isEmpty()) {
+                try (FileChannel source = FileChannel.open(segment.path, StandardOpenOption.READ)) {
+                    Segment target = null;
+                    for (Map.Entry<Sha256Hash, Entry> liveEntry : liveEntries) {
+                        Entry from = liveEntry.getValue();
+                        long offset;
+                        synchronized (writeLock) {
+                            if (index.get(liveEntry.getKey()) != from) continue; // removed in the meantime
+                            if (target == null || target.end >= segmentSize) {
+                                target = acquireSegment();
+                                targets.add(target);
+                            }
+                            offset = target.end;
+                            target.end += from.totalLength();
+                            target.numWrites++;
+                        }
+                        transferFully(source, from.offset, from.totalLength(), target.channel, offset);
+                        moves.add(new Move(liveEntry.getKey(), from, new Entry(target.id, offset, from.length, from.txIndexLength)));
+                    }
+                }
+                // The new locations must be durable before they are in the index, and before the Segment is removed:
+                for (Segment target : targets) target.channel.force(false);
+            }
+
+            // The Segment is not deleted while a reader might still be opening it, after locating a block in it:
+            List<Segment> segmentsToClose = new ArrayList<>();
+            Lock deletion = deletionLock.writeLock();
+            deletion.lock();
+            try {
+                synchronized (writeLock) {
+                    for (Segment target : targets) target.numWritesSynced = target.numWrites;
+                    for (Move move : moves) {
+                        Segment target = segments.get(move.to.segmentId);
+                        if (index.replace(move.blockHash, move.from, move.to)) {
+                            target.liveBytes += move.to.totalLength();
+                        } else {
+                            target.deadBytes += move.to.totalLength();
+                        }
+                    }
+                    rewriteIndexLog();
+                    segments.remove(segmentId);
+                    segment.deleted = true;
+                    segment.inUse = false;
+                    closeIfInactive(segment);
+                    for (Segment target : targets) {
+                        if (releaseSegment(target)) segmentsToClose.add(target);
+                    }
+                }
+                Files.deleteIfExists(segment.path);
+            } finally {
+                deletion.unlock();
+            }
+            for (Segment target : segmentsToClose) syncAndClose(target);
+        } catch (IOException ex) {
+            log.error("Error compacting block segment " + segmentId + ": " + ex);
+            List<Segment> segmentsToClose = new ArrayList<>();
+            synchronized (writeLock) {
+                if (!segment.deleted) segment.inUse = false;
+                // The blocks copied are not used, so their bytes are dead:
+                for (Move move : moves) {
+                    Segment target = segments.get(move.to.segmentId);
+                    if (target != null && index.get(move.blockHash) != move.to) target.deadBytes += move.to.totalLength();
+                }
+                for (Segment target : targets) {
+                    try {
+                        if (releaseSegment(target)) segmentsToClose.add(target);
+                    } catch (IOException e) {
+                        log.warn("Error releasing segment " + target.id + ": " + e);
+                    }
+                }
+            }
+            for (Segment target : segmentsToClose) {
+                try {
+                    syncAndClose(target);
+                } catch (IOException e) {
+                    log.warn("Error closing segment " + target.id + ": " + e);
+                }
+            }
+        }
+    }
+
+    // It rewrites the index log, keeping only the records of the blocks currently stored.
+    // NOTE: Must be called with the writeLock
+    private void rewriteIndexLog() throws IOException {
+        Path indexPath = segmentsDir.resolve(INDEX_FILE);
+        Path tempPath = segmentsDir.resolve(INDEX_FILE + ".tmp");
+        try (FileChannel tempLog = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (Map.Entry<Sha256Hash, Entry> e : index.entrySet()) {
+                ByteBuffer record = buildIndexRecord(OP_PUT, e.getKey(), e.getValue());
+                while (record.hasRemaining()) tempLog.write(record);
+            }
+            tempLog.force(true);
+        }
+        // If the current log is being synced, it's closed once the sync is done:
+        if (indexLogSyncsInProgress > 0) retiredIndexLogs.add(indexLog);
+        else indexLog.close();
+        Files.move(tempPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        indexLog = FileChannel.open(indexPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        indexLog.position(indexLog.size());
+    }
+
+    // NOTE: Must be called with the writeLock
+    private void writeIndexRecord(byte op, Sha256Hash blockHash, Entry entry) throws IOException {
+        ByteBuffer record = buildIndexRecord(op, blockHash, entry);
+        while (record.hasRemaining()) indexLog.write(record);
+    }
+
+    private ByteBuffer buildIndexRecord(byte op, Sha256Hash blockHash, Entry entry) {
+        ByteBuffer record = ByteBuffer.allocate(INDEX_RECORD_SIZE);
+        record.put(op).put(blockHash.getBytes()).putInt(entry.segmentId).putLong(entry.offset).putLong(entry.length)
+                .putLong(entry.txIndexLength);
+        record.flip();
+        return record;
+    }
+
+    // Group commit: It waits until the commits up to the given sequence are durable. Only one thread runs the fsync
+    // at a time, and it covers all the commits done so far, so the threads waiting behind it usually find their
+    // commits are already durable and return straight away.
+    // The Segments synced can not be closed until the fsync is done, and they are only marked as clean (covering
+    // the writes done before the fsync started) once it has finished successfully.
+    private void awaitSync(long seq) throws IOException {
+        synchronized (syncLock) {
+            if (syncedSeq >= seq) return;
+            long lastSeq;
+            Map<Segment, Long> segmentsToSync = new HashMap<>();
+            FileChannel indexLogToSync;
+            synchronized (writeLock) {
+                lastSeq = appendSeq;
+                for (Segment segment : segments.values()) {
+                    if (segment.isDirty() && segment.channel != null) {
+                        segment.syncsInProgress++;
+                        segmentsToSync.put(segment, segment.numWrites);
+                    }
+                }
+                indexLogToSync = indexLog;
+                indexLogSyncsInProgress++;
+            }
+            boolean synced = false;
+            List<Segment> segmentsToClose = new ArrayList<>();
+            try {
+                for (Segment segment : segmentsToSync.keySet()) segment.channel.force(false);
+                indexLogToSync.force(false);
+                synced = true;
+            } finally {
+                synchronized (writeLock) {
+                    for (Map.Entry<Segment, Long> e : segmentsToSync.entrySet()) {
+                        Segment segment = e.getKey();
+                        segment.syncsInProgress--;
+                        if (synced) segment.numWritesSynced = Math.max(segment.numWritesSynced, e.getValue());
+                        if (synced && closeIfInactive(segment)) segmentsToClose.add(segment);
+                    }
+                    if (--indexLogSyncsInProgress == 0) {
+                        for (FileChannel retiredLog : retiredIndexLogs) retiredLog.close();
+                        retiredIndexLogs.clear();
+                    }
+                }
+            }
+            for (Segment segment : segmentsToClose) syncAndClose(segment);
+            syncedSeq = lastSeq;
+        }
+    }
+
+    // NOTE: Must be called with the writeLock
+    private void syncDirtySegments() throws IOException {
+        for (Segment segment : segments.values()) {
+            if (segment.isDirty() && segment.channel != null) {
+                segment.channel.force(false);
+                segment.numWritesSynced = segment.numWrites;
+            }
+        }
+        if (indexLog != null) indexLog.force(false);
+    }
+
+    private static void transferFully(FileChannel source, long sourcePosition, long length, FileChannel target, long targetPosition) throws IOException {
+        long transferred = 0;
+        while (transferred < length) {
+            long numBytes = target.transferFrom(source.position(sourcePosition + transferred), targetPosition + transferred, length - transferred);
+            if (numBytes <= 0) throw new EOFException("Unexpected end of block file");
+            transferred += numBytes;
+        }
+    }
+
+    private Path getSegmentPath(int segmentId) {
+        return segmentsDir.resolve(String.format("%s%08d%s", SEGMENT_FILE_PREFIX, segmentId, SEGMENT_FILE_EXT));
+    }
+}
@@ -0,0 +1,33 @@
+package io.bitcoinsv.jcl.tools.blobStore;
+
+import java.nio.file.Path;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * Location of the Tx Index of a Block on disk: the offsets records and the sorted TxIds records. When each block is
+ * stored in its own file they are stored in 2 files alongside the block, but in segmented mode they are stored in
+ * the same segment, right after the block.
+ */
+class TxIndexLocation {
+    private final Path offsetsPath;
+    private final long offsetsPosition;
+    private final Path txIdsPath;
+    private final long txIdsPosition;
+    private final long numTxs;
+
+    TxIndexLocation(Path offsetsPath, long offsetsPosition, Path txIdsPath, long txIdsPosition, long numTxs) {
+        this.offsetsPath = offsetsPath;
+        this.offsetsPosition = offsetsPosition;
+        this.txIdsPath = txIdsPath;
+        this.txIdsPosition = txIdsPosition;
+        this.numTxs = numTxs;
+    }
+
+    Path getOffsetsPath()       { return offsetsPath; }
+    long getOffsetsPosition()   { return offsetsPosition; }
+    Path getTxIdsPath()         { return txIdsPath; }
+    long getTxIdsPosition()     { return txIdsPosition; }
+    long getNumTxs()            { return numTxs; }
+}
@@ -0,0 +1,74 @@
+package io.bitcoinsv.jcl.tools.bytes;
+
+import io.bitcoinsv.bitcoinjsv.core.Sha256Hash;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * An utility class to calculate the Merkle Root of a Block, feeding it with the Tx Hashes one by one, in the same
+ * order they are in the Block. It only keeps one pending Hash for each level of the tree, so the memory used is
+ * O(log n), and the Tx Hashes can be discarded once they've been added.
+ *
+ * The result is the same as building the whole tree: when a level has an odd number of nodes, the last one is
+ * paired with itself.
+ */
+public class MerkleRootIncremental {
+
+    // Pending hash (internal byte order) for each level of the tree. A level has a pending hash if the bit of the
+    // same position in "numHashes" is set:
+    private final byte[][] pending = new byte[64][];
+
+    // Number of Tx Hashes added so far:
+    private long numHashes;
+
+    /** Adds the next Tx Hash (in human-readable format, as returned by "Tx.getHash()") */
+    public MerkleRootIncremental add(Sha256Hash txHash) {
+        byte[] hash = txHash.getReversedBytes();
+        numHashes++;
+        int level = 0;
+        while ((numHashes & (1L << level)) == 0) {
+            hash = hashPair(pending[level], hash);
+            pending[level] = null;
+            level++;
+        }
+        pending[level] = hash;
+        return this;
+    }
+
+    /** Returns the number of Tx Hashes added so far */
+    public long getNumHashes() {
+        return numHashes;
+    }
+
+    /**
+     * Returns the Merkle Root of all the Tx Hashes added so far (in human-readable format, as returned by
+     * "Header.getMerkleRoot()"), or null if none has been added. It doesn't change the state, so more Tx Hashes can
+     * be added afterwards.
+     */
+    public Sha256Hash getMerkleRoot() {
+        if (numHashes == 0) return null;
+
+        // We start with the lowest level with a pending hash:
+        int level = Long.numberOfTrailingZeros(numHashes);
+        byte[] hash = pending[level];
+        long count = numHashes;
+
+        // Until we reach a single root, the last node of each level with an odd number of nodes is paired with
+        // itself, and the result is combined with the pending hashes of the levels above:
+        while (count != (1L << level)) {
+            hash = hashPair(hash, hash);
+            count += (1L << level);
+            level++;
+            while ((count & (1L << level)) == 0) {
+                hash = hashPair(pending[level], hash);
+                level++;
+            }
+        }
+        return Sha256Hash.wrapReversed(hash);
+    }
+
+    private static byte[] hashPair(byte[] left, byte[] right) {
+        return Sha256Hash.hashTwice(left, 0, left.length, right, 0, right.length);
+    }
+}
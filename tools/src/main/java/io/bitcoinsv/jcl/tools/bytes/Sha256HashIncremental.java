@@ -1,5 +1,6 @@
 package io.bitcoinsv.jcl.tools.bytes;
 
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -33,6 +34,15 @@ public class Sha256HashIncremental {
         return this;
     }
 
+    /**
+     * Adds more data to hash, taken from the remaining bytes of the buffer. If the buffer is a direct or a mapped one,
+     * its content is NOT copied into a Java byte array first
+     */
+    public Sha256HashIncremental add(ByteBuffer buffer) {
+        this.digest.update(buffer);
+        return this;
+    }
+
     /** Returns the hash of all the data fed so far */
     public byte[] hash() {
         return digest.digest();
@@ -3,6 +3,7 @@ package io.bitcoinsv.jcl.tools.config;
 
 import io.bitcoinsv.jcl.tools.bytes.ByteArrayConfig;
 import io.bitcoinsv.jcl.tools.files.FileUtils;
+import io.bitcoinsv.jcl.tools.memory.MemoryBudget;
 
 /**
  * @author i.fernandez@nchain.com
@@ -38,4 +39,11 @@ public interface RuntimeConfig {
      * system.
      */
     boolean useCachedThreadPoolForP2P();
+
+    /**
+     * Returns the Memory Budget where the components that keep data in memory (Deserializer buffers, Write queues,
+     * batches of Messages...) register their usage. If it has a limit, it applies backpressure when it's reached.
+     * Share the same instance across several P2P services to have a global limit for all of them.
+     */
+    MemoryBudget getMemoryBudget();
 }
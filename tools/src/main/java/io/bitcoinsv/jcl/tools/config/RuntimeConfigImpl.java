@@ -3,6 +3,7 @@ package io.bitcoinsv.jcl.tools.config;
 
 import io.bitcoinsv.jcl.tools.bytes.ByteArrayConfig;
 import io.bitcoinsv.jcl.tools.files.FileUtils;
+import io.bitcoinsv.jcl.tools.memory.MemoryBudget;
 
 /**
  * @author i.fernandez@nchain.com
@@ -17,17 +18,29 @@ public class RuntimeConfigImpl implements RuntimeConfig {
     protected FileUtils fileUtils;
     protected int maxNumThreadsForP2P;
     protected boolean useCachedThreadPoolForP2P;
+    protected MemoryBudget memoryBudget;
 
     public RuntimeConfigImpl(ByteArrayConfig byteArrayMemoryConfig,
                              int msgSizeInBytesForRealTimeProcessing,
                              FileUtils fileUtils,
                              int maxNumThreadsForP2P,
-                             boolean useCachedThreadPoolForP2P) {
+                             boolean useCachedThreadPoolForP2P,
+                             MemoryBudget memoryBudget) {
         this.byteArrayMemoryConfig = byteArrayMemoryConfig;
         this.msgSizeInBytesForRealTimeProcessing = msgSizeInBytesForRealTimeProcessing;
         this.fileUtils = fileUtils;
         this.maxNumThreadsForP2P = maxNumThreadsForP2P;
         this.useCachedThreadPoolForP2P = useCachedThreadPoolForP2P;
+        this.memoryBudget = (memoryBudget != null) ? memoryBudget : MemoryBudget.unlimited();
+    }
+
+    public RuntimeConfigImpl(ByteArrayConfig byteArrayMemoryConfig,
+                             int msgSizeInBytesForRealTimeProcessing,
+                             FileUtils fileUtils,
+                             int maxNumThreadsForP2P,
+                             boolean useCachedThreadPoolForP2P) {
+        this(byteArrayMemoryConfig, msgSizeInBytesForRealTimeProcessing, fileUtils, maxNumThreadsForP2P,
+                useCachedThreadPoolForP2P, null);
     }
 
     public RuntimeConfigImpl() {}
@@ -37,6 +50,7 @@ public class RuntimeConfigImpl implements RuntimeConfig {
     public FileUtils getFileUtils()                                 { return this.fileUtils; }
     public int getMaxNumThreadsForP2P()                             { return this.maxNumThreadsForP2P; }
     public boolean useCachedThreadPoolForP2P()                      { return this.useCachedThreadPoolForP2P;}
+    public MemoryBudget getMemoryBudget()                           { return this.memoryBudget; }
     public static RuntimeConfigImplBuilder builder()                { return new RuntimeConfigImplBuilder(); }
 
     public RuntimeConfigImplBuilder toBuilder() {
@@ -45,7 +59,8 @@ public class RuntimeConfigImpl implements RuntimeConfig {
                 .msgSizeInBytesForRealTimeProcessing(this.msgSizeInBytesForRealTimeProcessing)
                 .fileUtils(this.fileUtils)
                 .maxNumThreadsForP2P(this.maxNumThreadsForP2P)
-                .useCachedThreadPoolForP2P(this.useCachedThreadPoolForP2P);
+                .useCachedThreadPoolForP2P(this.useCachedThreadPoolForP2P)
+                .memoryBudget(this.memoryBudget);
     }
 
     /**
@@ -57,6 +72,7 @@ public class RuntimeConfigImpl implements RuntimeConfig {
         private FileUtils fileUtils;
         protected int maxNumThreadsForP2P;
         protected boolean useCachedThreadPoolForP2P;
+        protected MemoryBudget memoryBudget;
 
         RuntimeConfigImplBuilder() {
         }
@@ -86,8 +102,13 @@ public class RuntimeConfigImpl implements RuntimeConfig {
             return this;
         }
 
+        public RuntimeConfigImplBuilder memoryBudget(MemoryBudget memoryBudget) {
+            this.memoryBudget = memoryBudget;
+            return this;
+        }
+
         public RuntimeConfigImpl build() {
-            return new RuntimeConfigImpl(byteArrayMemoryConfig, msgSizeInBytesForRealTimeProcessing, fileUtils, maxNumThreadsForP2P, useCachedThreadPoolForP2P);
+            return new RuntimeConfigImpl(byteArrayMemoryConfig, msgSizeInBytesForRealTimeProcessing, fileUtils, maxNumThreadsForP2P, useCachedThreadPoolForP2P, memoryBudget);
         }
     }
 }
@@ -5,6 +5,7 @@ import io.bitcoinsv.jcl.tools.bytes.ByteArrayConfig;
 import io.bitcoinsv.jcl.tools.config.RuntimeConfig;
 import io.bitcoinsv.jcl.tools.config.RuntimeConfigImpl;
 import io.bitcoinsv.jcl.tools.files.FileUtilsBuilder;
+import io.bitcoinsv.jcl.tools.memory.MemoryBudget;
 
 
 /**
@@ -39,6 +40,7 @@ public final class RuntimeConfigDefault extends RuntimeConfigImpl implements Run
         super.msgSizeInBytesForRealTimeProcessing = DEF_MSG_SIZE_BYTES_REAL_TIME;
         super.maxNumThreadsForP2P = DEF_P2P_THREADS_MAX;
         super.useCachedThreadPoolForP2P = DEF_P2P_THREADS_CACHED;
+        super.memoryBudget = MemoryBudget.unlimited();
 
         try {
             FileUtilsBuilder fileUtilsBuilder = new FileUtilsBuilder().useTempFolder();
@@ -87,12 +87,20 @@ public class EventBus {
         eventHandlersOptimized.put(eventClass, consumerOptimized);
     }
 
+    /**
+     * Indicates if there is any Handler subscribed to the Event Type given. Publishers can use it to avoid building
+     * Events that nobody is listening to.
+     */
+    public boolean hasSubscribers(Class<? extends Event> eventClass) {
+        return eventHandlersOptimized.containsKey(eventClass);
+    }
+
     /**
      * It publishes a new Event to the Bus and executes the handlers subscribed to it
      */
     public void publish(Event event) {
         // We do not do anything at all if nobody is listening to this event
-        if (eventHandlersOptimized.containsKey(event.getClass())) {
+        if (hasSubscribers(event.getClass())) {
             Runnable task = () -> {eventHandlersOptimized.get(event.getClass()).accept(event);};
             if (executor != null) { // Asynchronously
                 try {
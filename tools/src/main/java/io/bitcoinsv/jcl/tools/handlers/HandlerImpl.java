@@ -24,7 +24,8 @@ import java.time.Duration;
  * the Info linked to a given key but it can also WAIT a bit if the Value is not there.
  *
  * So in case we get a Msg from a Peer but that Peer is not handhaked yet, the Blocking Map will wait a bit, enought for
- * the onPeerHandshakedEvent to arrive and regiser the Peer in the map.
+ * the onPeerHandshakedEvent to arrive and regiser the Peer in the map. The wait finishes as soon as the Peer is
+ * registered, and there is no wait at all if the Peer is registered already.
  *
  * @param <K> Key used in the Map to identity a Peer
  * @param <V> Value/class used to store info about the Peer. Different for each Handler.
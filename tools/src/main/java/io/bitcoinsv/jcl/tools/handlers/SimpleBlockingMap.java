@@ -6,7 +6,7 @@ import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.*;
 
 /**
  * @author m.fletcher@nchain.com
@@ -15,6 +15,11 @@ import java.util.concurrent.ConcurrentHashMap;
  *
  * A Blocking Map that includes an extra operation that "waits" during a timeout given if the Value to retrieve is not
  * the map yet.
+ *
+ * The waiting is signalled: each Key being waited for has a Future that is completed as soon as a Value is put for
+ * that Key, so the waiting Threads wake up at that moment instead of sleeping the whole timeout. If the Value is
+ * already in the Map, there is no waiting at all. If the Key is removed (or the Map cleared) while a Thread is waiting
+ * for it, the Thread wakes up straight away and gets a NULL Value.
  */
 public class SimpleBlockingMap<K, V> implements Map<K,V>{
 
@@ -23,20 +28,44 @@ public class SimpleBlockingMap<K, V> implements Map<K,V>{
     private Map<K, V> map = new ConcurrentHashMap<>();
     private Set<K> mapLookups = Collections.synchronizedSet(new HashSet<>());
 
+    // Futures of the Keys being waited for, completed when a Value is put for them:
+    private Map<K, CompletableFuture<V>> waiters = new ConcurrentHashMap<>();
+
     public SimpleBlockingMap() { }
 
-    /** If the element does not exist, waits the given duration and tries again */
+    /**
+     * If the element does not exist, waits until it's put in the Map or the given duration expires, whatever comes
+     * first. If the wait expires, the following calls for the same Key do not wait anymore.
+     */
     public V take(K key, Duration timeout) throws InterruptedException {
-        if(!map.containsKey(key) && !mapLookups.contains(key)){
-                try {
-                    Thread.sleep(timeout.toMillis());
-                    mapLookups.add(key);
-                } catch (InterruptedException e) {
-                    throw e;
-                }
+        V value = map.get(key);
+        if (value != null || mapLookups.contains(key)) return value;
+
+        CompletableFuture<V> waiter = waiters.computeIfAbsent(key, k -> new CompletableFuture<>());
+
+        // The Value might have been put before the Future was registered:
+        value = map.get(key);
+        if (value != null) {
+            waiters.remove(key, waiter);
+            return value;
         }
 
-        return map.get(key);
+        try {
+            return waiter.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            waiters.remove(key, waiter);
+            mapLookups.add(key);
+            return map.get(key);
+        } catch (ExecutionException e) {
+            // The Futures are never completed exceptionally:
+            throw new RuntimeException(e);
+        }
+    }
+
+    // It wakes up the Threads waiting for the Key given, if any
+    private void notifyWaiters(K key, V value) {
+        CompletableFuture<V> waiter = waiters.remove(key);
+        if (waiter != null) waiter.complete(value);
     }
 
     @Override
@@ -66,25 +95,33 @@ public class SimpleBlockingMap<K, V> implements Map<K,V>{
 
     @Override
     public V put(K key, V value) {
-        return map.put(key, value);
+        V result = map.put(key, value);
+        notifyWaiters(key, value);
+        return result;
     }
 
     @Override
     public V remove(Object key) {
         mapLookups.remove(key);
-
-        return map.remove(key);
+        V result = map.remove(key);
+        CompletableFuture<V> waiter = waiters.remove(key);
+        if (waiter != null) waiter.complete(null);
+        return result;
     }
 
     @Override
     public void putAll(Map<? extends K, ? extends V> m) {
         map.putAll(m);
+        m.forEach(this::notifyWaiters);
     }
 
     @Override
     public void clear() {
         mapLookups.clear();
         map.clear();
+        List<CompletableFuture<V>> waitersToNotify = new ArrayList<>(waiters.values());
+        waiters.clear();
+        waitersToNotify.forEach(waiter -> waiter.complete(null));
     }
 
     @Override
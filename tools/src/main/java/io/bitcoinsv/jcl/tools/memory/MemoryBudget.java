@@ -0,0 +1,296 @@
+package io.bitcoinsv.jcl.tools.memory;
+
+import io.bitcoinsv.jcl.tools.thread.ThreadUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * A central accounting of the memory used by the different components of JCL (Deserializer buffers, Write queues,
+ * batches of Messages, etc). Each component registers an "Account" here, and keeps it updated with the bytes it's
+ * using (or provides a function that returns them). Accounts are grouped by "component", so the usage can be
+ * reported per component.
+ *
+ * If a limit is set, the usage is checked periodically against it:
+ * - When the usage reaches the "high watermark", the Budget is "under pressure": the listeners are notified (so they
+ *   can stop taking more work), and the accounts that can be paused and hold the most "drainable" bytes are paused,
+ *   until those bytes are enough to bring the usage down to the "low watermark" once they are released. The
+ *   drainable bytes are the ones the account releases on its own while it's paused (a Stream holding an incomplete
+ *   message can not release it until the rest of it arrives, so pausing it would only block it forever). An account
+ *   paused that has no drainable bytes left is resumed, even if the Budget is still under pressure.
+ * - When the usage drops below the "low watermark", all the accounts paused are resumed, and the listeners notified.
+ *
+ * A limit of ZERO means no limit: the usage is still reported, but no backpressure is ever applied.
+ *
+ * NOTE: The bytes accounted are the bytes of the data kept by each component (usually its serialized size), not the
+ * real Heap used by the Java Objects, so the limit should leave some room for that difference.
+ */
+public class MemoryBudget {
+
+    private static final Logger log = LoggerFactory.getLogger(MemoryBudget.class);
+
+    /** Default percentages of the limit that switch the "under pressure" state on and off */
+    public static final double DEFAULT_HIGH_WATERMARK = 0.9;
+    public static final double DEFAULT_LOW_WATERMARK = 0.7;
+
+    /** Default frequency of the usage checks */
+    public static final Duration DEFAULT_CHECK_INTERVAL = Duration.ofMillis(100);
+
+    /**
+     * A component that can stop taking more memory for a while (like a Stream that stops reading from the Socket).
+     */
+    public interface Pausable {
+        void pause();
+        void resume();
+        /** Returns how many of the bytes used (given) are released while paused. By default, all of them */
+        default long getDrainableBytes(long usage) { return usage; }
+    }
+
+    /**
+     * A Listener notified when the Budget gets under pressure or gets back to normal.
+     */
+    public interface Listener {
+        void onPressureChanged(boolean underPressure);
+    }
+
+    /**
+     * An Account of memory. The usage is either updated manually ("add()", "release()", "set()") or taken from the
+     * function provided when the Account was registered.
+     */
+    public class Account {
+        private final String component;
+        private final String owner;
+        private final AtomicLong bytes = new AtomicLong();
+        private final LongSupplier usageSupplier;
+        private final Pausable pausable;
+        private boolean paused;
+
+        private Account(String component, String owner, LongSupplier usageSupplier, Pausable pausable) {
+            this.component = component;
+            this.owner = owner;
+            this.usageSupplier = usageSupplier;
+            this.pausable = pausable;
+        }
+
+        /** It registers some bytes allocated */
+        public void add(long numBytes)      { bytes.addAndGet(numBytes); }
+        /** It registers some bytes released */
+        public void release(long numBytes)  { bytes.addAndGet(-numBytes); }
+        /** It sets the number of bytes used */
+        public void set(long numBytes)      { bytes.set(numBytes); }
+
+        /** Returns the bytes used by this Account */
+        public long getUsage() {
+            long result = (usageSupplier != null) ? usageSupplier.getAsLong() : bytes.get();
+            return Math.max(result, 0);
+        }
+
+        /** Returns the bytes used by this Account that would be released if it's paused */
+        public long getDrainableUsage() {
+            if (pausable == null) return 0;
+            return Math.max(Math.min(pausable.getDrainableBytes(getUsage()), getUsage()), 0);
+        }
+
+        public String getComponent()        { return this.component; }
+        public String getOwner()            { return this.owner; }
+        public synchronized boolean isPaused() { return this.paused; }
+
+        /** It removes this Account from the Budget. If it was paused, it's resumed */
+        public void close() {
+            accounts.remove(this);
+            resumeAccount(this);
+        }
+
+        @Override
+        public String toString() {
+            return component + "[" + owner + "]: " + getUsage() + " bytes" + (paused ? " (paused)" : "");
+        }
+    }
+
+    private final long limitBytes;
+    private final long highWatermarkBytes;
+    private final long lowWatermarkBytes;
+    private final Duration checkInterval;
+
+    private final List<Account> accounts = new CopyOnWriteArrayList<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean underPressure;
+
+    // Executor running the periodic checks, only created if there is a limit:
+    private ScheduledExecutorService checker;
+
+    /**
+     * Constructor.
+     * @param limitBytes    Maximum number of bytes. ZERO means no limit
+     * @param highWatermark Percentage (0-1) of the limit that puts the Budget "under pressure"
+     * @param lowWatermark  Percentage (0-1) of the limit that brings the Budget back to normal
+     * @param checkInterval Frequency of the usage checks
+     */
+    public MemoryBudget(long limitBytes, double highWatermark, double lowWatermark, Duration checkInterval) {
+        if (lowWatermark > highWatermark) throw new IllegalArgumentException("The low watermark must be lower than the high one");
+        this.limitBytes = Math.max(limitBytes, 0);
+        this.highWatermarkBytes = (long) (this.limitBytes * highWatermark);
+        this.lowWatermarkBytes = (long) (this.limitBytes * lowWatermark);
+        this.checkInterval = checkInterval;
+    }
+
+    public MemoryBudget(long limitBytes) {
+        this(limitBytes, DEFAULT_HIGH_WATERMARK, DEFAULT_LOW_WATERMARK, DEFAULT_CHECK_INTERVAL);
+    }
+
+    /** Returns a Budget with no limit (it only reports the usage) */
+    public static MemoryBudget unlimited() {
+        return new MemoryBudget(0);
+    }
+
+    /** It registers an Account which usage is updated manually */
+    public Account register(String component, String owner) {
+        return register(component, owner, null, null);
+    }
+
+    /**
+     * It registers an Account.
+     * @param component     Name of the component (used to group the usage)
+     * @param owner         Owner of the Account within the component (a Peer, a Msg type, etc)
+     * @param usageSupplier If not null, function returning the bytes used
+     * @param pausable      If not null, it will be paused when the Budget is under pressure
+     */
+    public Account register(String component, String owner, LongSupplier usageSupplier, Pausable pausable) {
+        Account account = new Account(component, owner, usageSupplier, pausable);
+        accounts.add(account);
+        if (limitBytes > 0) startChecking();
+        return account;
+    }
+
+    public void addListener(Listener listener)      { listeners.add(listener); }
+    public void removeListener(Listener listener)   { listeners.remove(listener); }
+
+    private synchronized void startChecking() {
+        if (checker != null) return;
+        checker = ThreadUtils.getSingleThreadScheduledExecutorService("JclMemoryBudget");
+        checker.scheduleAtFixedRate(this::checkSafely, checkInterval.toMillis(), checkInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /** It stops the periodic checks */
+    public synchronized void stop() {
+        if (checker != null) checker.shutdownNow();
+        checker = null;
+    }
+
+    private void checkSafely() {
+        try {
+            check();
+        } catch (Throwable th) {
+            log.error("Error checking the Memory Budget", th);
+        }
+    }
+
+    /**
+     * It checks the current usage against the limit, pausing/resuming accounts and notifying the listeners if
+     * needed. It's called periodically, but it can also be called on demand.
+     */
+    public void check() {
+        if (limitBytes == 0) return;
+        Boolean pressureChanged = null;
+        synchronized (this) {
+            long usage = getUsage();
+            if (usage >= highWatermarkBytes) {
+                if (!underPressure) {
+                    underPressure = true;
+                    pressureChanged = true;
+                    log.warn("Memory Budget under pressure: " + this);
+                }
+                pauseBiggestAccounts(usage);
+            } else if (underPressure && usage <= lowWatermarkBytes) {
+                underPressure = false;
+                pressureChanged = false;
+                accounts.forEach(this::resumeAccount);
+                log.info("Memory Budget back to normal: " + this);
+            }
+        }
+        if (pressureChanged != null) {
+            for (Listener listener : listeners) listener.onPressureChanged(pressureChanged);
+        }
+    }
+
+    // It pauses the accounts (that can be paused) with the most drainable bytes, until those bytes are enough to
+    // bring the usage below the low watermark. The accounts paused with no drainable bytes left are resumed, since
+    // they won't release anything else until they are resumed:
+    private void pauseBiggestAccounts(long usage) {
+        long bytesToFree = usage - lowWatermarkBytes;
+        List<Account> pausables = new ArrayList<>();
+        for (Account account : accounts) {
+            if (account.pausable == null) continue;
+            long drainableUsage = account.getDrainableUsage();
+            if (account.isPaused()) {
+                if (drainableUsage == 0) resumeAccount(account);
+                else bytesToFree -= drainableUsage;
+            } else if (drainableUsage > 0) {
+                pausables.add(account);
+            }
+        }
+        pausables.sort(Comparator.comparingLong(Account::getDrainableUsage).reversed());
+        for (Account account : pausables) {
+            if (bytesToFree <= 0) break;
+            long drainableUsage = account.getDrainableUsage();
+            if (drainableUsage == 0) continue;
+            pauseAccount(account);
+            bytesToFree -= drainableUsage;
+        }
+    }
+
+    private void pauseAccount(Account account) {
+        synchronized (account) {
+            if (account.paused) return;
+            account.paused = true;
+        }
+        log.debug("Pausing " + account);
+        account.pausable.pause();
+    }
+
+    private void resumeAccount(Account account) {
+        synchronized (account) {
+            if (!account.paused) return;
+            account.paused = false;
+        }
+        log.debug("Resuming " + account);
+        account.pausable.resume();
+    }
+
+    /** Returns the total bytes used */
+    public long getUsage() {
+        return accounts.stream().mapToLong(Account::getUsage).sum();
+    }
+
+    /** Returns the bytes used by each component */
+    public Map<String, Long> getUsageByComponent() {
+        Map<String, Long> result = new TreeMap<>();
+        accounts.forEach(a -> result.merge(a.getComponent(), a.getUsage(), Long::sum));
+        return result;
+    }
+
+    /** Returns the number of accounts currently paused */
+    public int getNumPausedAccounts() {
+        return (int) accounts.stream().filter(Account::isPaused).count();
+    }
+
+    public long getLimit()              { return this.limitBytes; }
+    public boolean isUnderPressure()    { return this.underPressure; }
+
+    @Override
+    public String toString() {
+        return "MemoryBudget(usage=" + getUsage() + ", limit=" + ((limitBytes == 0) ? "none" : limitBytes)
+                + ", underPressure=" + underPressure + ", pausedAccounts=" + getNumPausedAccounts()
+                + ", byComponent=" + getUsageByComponent() + ")";
+    }
+}
@@ -1,5 +1,6 @@
 package io.bitcoinsv.jcl.tools.serialization;
 
+import io.bitcoinsv.bitcoinjsv.core.VarInt;
 import io.bitcoinsv.jcl.tools.bytes.IReader;
 
 public class TransactionSerializerUtils {
@@ -52,4 +53,58 @@ public class TransactionSerializerUtils {
 
         return byteReader.read(numBytesInTx);
     }
+
+    /**
+     * It calculates the size of the Tx that starts at the given offset of the byte array. If the array does not
+     * contain the whole Tx (it's been split across several batches of bytes), it returns -1.
+     */
+    public static long calculateTxSize(byte[] bytes, int offset) {
+        long pos = offset;
+
+        // Version
+        pos += 4;
+
+        // input count
+        long inputCount = readVarIntIfAvailable(bytes, pos);
+        if (inputCount < 0) return -1;
+        pos += VarInt.sizeOf(inputCount);
+
+        // txInputs
+        for (long i = 0; i < inputCount; i++) {
+            // output + script length
+            pos += 36;
+            long scriptLen = readVarIntIfAvailable(bytes, pos);
+            if (scriptLen < 0) return -1;
+            // script + sequence
+            pos += VarInt.sizeOf(scriptLen) + scriptLen + 4;
+        }
+
+        // output count
+        long outputCount = readVarIntIfAvailable(bytes, pos);
+        if (outputCount < 0) return -1;
+        pos += VarInt.sizeOf(outputCount);
+
+        // txOutputs
+        for (long i = 0; i < outputCount; i++) {
+            // Value + script length
+            pos += 8;
+            long scriptLen = readVarIntIfAvailable(bytes, pos);
+            if (scriptLen < 0) return -1;
+            // script
+            pos += VarInt.sizeOf(scriptLen) + scriptLen;
+        }
+
+        // lock time
+        pos += 4;
+
+        return (pos <= bytes.length) ? (pos - offset) : -1;
+    }
+
+    // It reads a VarInt from the given position, or returns -1 if the array does not contain the whole VarInt
+    private static long readVarIntIfAvailable(byte[] bytes, long pos) {
+        if (pos >= bytes.length) return -1;
+        int varIntSize = 1 + VarInt.bytesRequired(bytes[(int) pos]);
+        if (pos + varIntSize > bytes.length) return -1;
+        return new VarInt(bytes, (int) pos).value;
+    }
 }
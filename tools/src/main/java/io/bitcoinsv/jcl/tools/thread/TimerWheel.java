@@ -0,0 +1,115 @@
+package io.bitcoinsv.jcl.tools.thread;
+
+import java.util.*;
+
+/**
+ * Distributed under the Open BSV software license, see the accompanying file LICENSE
+ * Copyright (c) 2020 Bitcoin Association
+ *
+ * A Hashed Timer Wheel, to keep track of the deadlines of a big number of items without running a Task or a Thread
+ * for each one of them.
+ *
+ * The time is divided in "ticks", and the wheel is made of a fixed number of buckets. Each item is stored in the
+ * bucket of the tick its deadline falls into, so scheduling and cancelling an item are O(1), and checking the expired
+ * items only visits the buckets of the ticks elapsed since the last check. Deadlines further away than a whole turn of
+ * the wheel share the bucket with nearer ones, so the deadline of each item is checked before it's expired.
+ *
+ * The wheel does not run any Thread: the owner must call "expire()" periodically (ideally, once per tick).
+ *
+ * @param <T> Type of the items. They are used as keys, so they must implement "equals()" and "hashCode()".
+ */
+public class TimerWheel<T> {
+
+    private final long tickMillis;
+    private final List<Set<T>> buckets;
+
+    // Deadline of each item:
+    private final Map<T, Long> deadlines = new HashMap<>();
+
+    // Last tick already processed by "expire()":
+    private long lastTick;
+
+    /**
+     * Constructor.
+     * @param tickMillis    Duration of each tick, in millisecs. It's the precision of the deadlines
+     * @param numBuckets    Number of buckets in the wheel
+     */
+    public TimerWheel(long tickMillis, int numBuckets) {
+        if (tickMillis <= 0 || numBuckets <= 0) throw new IllegalArgumentException("tickMillis and numBuckets must be positive");
+        this.tickMillis = tickMillis;
+        this.buckets = new ArrayList<>(numBuckets);
+        for (int i = 0; i < numBuckets; i++) buckets.add(new HashSet<>());
+        this.lastTick = System.currentTimeMillis() / tickMillis;
+    }
+
+    private int bucketIndex(long tick) {
+        return (int) (tick % buckets.size());
+    }
+
+    /** Schedules the item to expire after the timeout given. If the item was already scheduled, it's re-scheduled */
+    public void schedule(T item, long timeoutMillis) {
+        scheduleAt(item, System.currentTimeMillis() + timeoutMillis);
+    }
+
+    /** Schedules the item to expire at the deadline given. If the item was already scheduled, it's re-scheduled */
+    public synchronized void scheduleAt(T item, long deadlineMillis) {
+        cancel(item);
+        // An item is never placed in a tick already processed, otherwise it would wait for a whole turn:
+        long tick = Math.max(deadlineMillis / tickMillis, lastTick + 1);
+        buckets.get(bucketIndex(tick)).add(item);
+        deadlines.put(item, deadlineMillis);
+    }
+
+    /** Cancels the item, so it won't expire. Returns TRUE if the item was scheduled */
+    public synchronized boolean cancel(T item) {
+        Long deadline = deadlines.remove(item);
+        if (deadline == null) return false;
+        // The item might be in the bucket of its deadline, or in the next one to process:
+        buckets.get(bucketIndex(deadline / tickMillis)).remove(item);
+        buckets.get(bucketIndex(lastTick + 1)).remove(item);
+        return true;
+    }
+
+    /** Removes and returns the items whose deadline has been reached */
+    public List<T> expire() {
+        return expire(System.currentTimeMillis());
+    }
+
+    /** Removes and returns the items whose deadline has been reached at the time given */
+    public synchronized List<T> expire(long nowMillis) {
+        List<T> result = new ArrayList<>();
+        long nowTick = nowMillis / tickMillis;
+        if (nowTick <= lastTick) return result;
+
+        // If more than a whole turn has elapsed, each bucket is visited only once:
+        long fromTick = Math.max(lastTick + 1, nowTick - buckets.size() + 1);
+        for (long tick = fromTick; tick <= nowTick; tick++) {
+            Iterator<T> it = buckets.get(bucketIndex(tick)).iterator();
+            while (it.hasNext()) {
+                T item = it.next();
+                if (deadlines.get(item) <= nowMillis) {
+                    it.remove();
+                    deadlines.remove(item);
+                    result.add(item);
+                }
+            }
+        }
+        lastTick = nowTick;
+        return result;
+    }
+
+    /** Indicates if the item is scheduled */
+    public synchronized boolean contains(T item) {
+        return deadlines.containsKey(item);
+    }
+
+    /** Returns the number of items scheduled */
+    public synchronized int size() {
+        return deadlines.size();
+    }
+
+    /** Returns the duration of each tick, in millisecs */
+    public long getTickMillis() {
+        return tickMillis;
+    }
+}
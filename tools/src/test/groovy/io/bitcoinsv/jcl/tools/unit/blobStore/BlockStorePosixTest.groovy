@@ -3,6 +3,8 @@ package io.bitcoinsv.jcl.tools.unit.blobStore
 import io.bitcoinsv.bitcoinjsv.bitcoin.api.base.HeaderReadOnly
 import io.bitcoinsv.bitcoinjsv.bitcoin.api.base.Tx
 import io.bitcoinsv.bitcoinjsv.bitcoin.bean.base.FullBlockBean
+import io.bitcoinsv.bitcoinjsv.core.Sha256Hash
+import io.bitcoinsv.bitcoinjsv.core.Utils
 import io.bitcoinsv.jcl.tools.blobStore.BlockStorePosix
 import io.bitcoinsv.jcl.tools.blobStore.BlockStorePosixConfig
 import io.bitcoinsv.jcl.tools.common.TestingUtils
@@ -10,7 +12,12 @@ import org.apache.groovy.json.internal.ArrayUtils
 import shaded.org.apache.maven.wagon.ResourceDoesNotExistException
 import spock.lang.Specification
 
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
 import java.nio.file.Path
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
 import java.util.concurrent.atomic.AtomicLong
 
 class BlockStorePosixTest extends Specification {
@@ -238,4 +245,287 @@ class BlockStorePosixTest extends Specification {
         blockStorePosix.clear()
     }
 
+    def "test reading block from channel and checksum"() {
+        given:
+        int batchSize = 10_000;
+        Path path = buildWorkingFolder()
+        BlockStorePosixConfig blockStorePosixConfig = BlockStorePosixConfig.builder()
+                .batchSize(batchSize)
+                .workingFolder(path)
+                .build()
+        BlockStorePosix blockStorePosix = new BlockStorePosix(blockStorePosixConfig)
+
+        Tx tx = TestingUtils.buildTx()
+        HeaderReadOnly block = TestingUtils.buildBlock()
+
+        FullBlockBean blockBean = new FullBlockBean()
+        blockBean.setHeader(block)
+        blockBean.setTransactions(List.of(tx))
+        byte[] expectedBlockBytes = blockBean.serialize()
+
+        when:
+        blockStorePosix.saveBlock(block, 1, tx.serialize())
+        blockStorePosix.commitBlock(block.getHash())
+
+        FileChannel channel = blockStorePosix.openBlockChannel(block.getHash())
+        ByteBuffer blockBytes = ByteBuffer.allocate((int) blockStorePosix.getBlockSize(block.getHash()))
+        channel.read(blockBytes, channel.position())
+        channel.close()
+
+        long checksum = blockStorePosix.getBlockChecksum(block.getHash())
+
+        then:
+        Arrays.equals(blockBytes.array(), expectedBlockBytes)
+        checksum == Utils.readUint32(Sha256Hash.hashTwice(expectedBlockBytes), 0)
+
+        cleanup:
+        blockStorePosix.clear()
+    }
+
+    def "test random access to txs using the tx index"() {
+        given:
+        int batchSize = 10_000;
+        int numTxs = 10
+        Path path = buildWorkingFolder()
+        BlockStorePosixConfig blockStorePosixConfig = BlockStorePosixConfig.builder()
+                .batchSize(batchSize)
+                .workingFolder(path)
+                .txIndexEnabled(true)
+                .build()
+        BlockStorePosix blockStorePosix = new BlockStorePosix(blockStorePosixConfig)
+
+        HeaderReadOnly block = TestingUtils.buildBlock()
+        List<Tx> txs = new ArrayList<>()
+        for (int i = 0; i < numTxs; i++) txs.add(TestingUtils.buildTx())
+
+        when:
+        // The Txs are saved in 2 batches, and the second batch starts in the middle of a Tx:
+        ByteArrayOutputStream txsBytes = new ByteArrayOutputStream()
+        txs.forEach({ tx -> txsBytes.write(tx.serialize()) })
+        byte[] allTxsBytes = txsBytes.toByteArray()
+        int splitPoint = txs.get(0).serialize().length + 10
+        blockStorePosix.saveBlock(block, numTxs, Arrays.copyOfRange(allTxsBytes, 0, splitPoint))
+        blockStorePosix.saveBlock(block, numTxs, Arrays.copyOfRange(allTxsBytes, splitPoint, allTxsBytes.length))
+        blockStorePosix.commitBlock(block.getHash())
+
+        List<byte[]> txRange = blockStorePosix.readTxs(block.getHash(), 3, 4)
+
+        // The same range, but the Txs are fed one by one instead of being returned all at once:
+        List<byte[]> txRangeStreamed = new ArrayList<>()
+        blockStorePosix.readTxs(block.getHash(), 3, 4, { tx -> txRangeStreamed.add(tx) })
+
+        then:
+        blockStorePosix.containsTxIndex(block.getHash())
+        blockStorePosix.readTx(block.getHash(), 0) == txs.get(0).serialize()
+        blockStorePosix.readTx(block.getHash(), numTxs - 1) == txs.get(numTxs - 1).serialize()
+        blockStorePosix.readTx(block.getHash(), numTxs) == null
+        blockStorePosix.readTx(block.getHash(), txs.get(5).getHash()) == txs.get(5).serialize()
+        blockStorePosix.getTxIndex(block.getHash(), txs.get(7).getHash()) == 7
+        blockStorePosix.getTxIndex(block.getHash(), TestingUtils.buildTx().getHash()) == null
+        txRange.size() == 4
+        (0..3).every({ i -> txRange.get(i) == txs.get(3 + i).serialize() })
+        txRangeStreamed.size() == 4
+        (0..3).every({ i -> txRangeStreamed.get(i) == txs.get(3 + i).serialize() })
+
+        blockStorePosix.removeBlock(block.getHash())
+        !blockStorePosix.containsTxIndex(block.getHash())
+
+        cleanup:
+        blockStorePosix.clear()
+    }
+
+    def "test segmented storage: saving, removing, compacting and reopening"() {
+        given:
+        int batchSize = 10_000;
+        int numBlocks = 4
+        Path path = buildWorkingFolder()
+        BlockStorePosixConfig blockStorePosixConfig = BlockStorePosixConfig.builder()
+                .batchSize(batchSize)
+                .workingFolder(path)
+                .txIndexEnabled(true)
+                .segmentedStorageEnabled(true)
+                .segmentSize(1_000)
+                .compactionThreshold(0.5)
+                .build()
+        BlockStorePosix blockStorePosix = new BlockStorePosix(blockStorePosixConfig)
+
+        List<HeaderReadOnly> blocks = new ArrayList<>()
+        List<Tx> txs = new ArrayList<>()
+        for (int i = 0; i < numBlocks; i++) {
+            blocks.add(TestingUtils.buildBlock())
+            txs.add(TestingUtils.buildTx())
+        }
+
+        when:
+        // Each Block is saved in 2 batches: the first one only with the header, and the second one with the Tx:
+        for (int i = 0; i < numBlocks; i++) {
+            blockStorePosix.saveBlock(blocks.get(i), 1, new byte[0])
+            blockStorePosix.saveBlock(blocks.get(i), 1, txs.get(i).serialize())
+        }
+        boolean uncommittedVisible = blockStorePosix.containsBlock(blocks.get(0).getHash())
+        for (int i = 0; i < numBlocks; i++) {
+            blockStorePosix.commitBlock(blocks.get(i).getHash())
+        }
+
+        // We remove half of the blocks, which triggers the compaction of the segments in background. We wait for it:
+        blockStorePosix.removeBlock(blocks.get(0).getHash())
+        blockStorePosix.removeBlock(blocks.get(2).getHash())
+        blockStorePosix.compactSegments()
+
+        // We open a new store over the same folder, so the segment index is reloaded from disk:
+        BlockStorePosix reopenedStore = new BlockStorePosix(blockStorePosixConfig)
+
+        FullBlockBean blockBean = new FullBlockBean()
+        blockBean.setHeader(blocks.get(3))
+        blockBean.setTransactions(List.of(txs.get(3)))
+        byte[] expectedBlockBytes = blockBean.serialize()
+
+        then:
+        !uncommittedVisible
+        !reopenedStore.containsBlock(blocks.get(0).getHash())
+        !reopenedStore.containsBlock(blocks.get(2).getHash())
+        reopenedStore.readBlockHeader(blocks.get(1).getHash()) == blocks.get(1)
+        reopenedStore.readNumberOfTxs(blocks.get(1).getHash()) == 1
+        reopenedStore.readBlockTxs(blocks.get(1).getHash()).findFirst().get() == txs.get(1).serialize()
+        reopenedStore.readTx(blocks.get(3).getHash(), 0) == txs.get(3).serialize()
+        reopenedStore.readTx(blocks.get(3).getHash(), txs.get(3).getHash()) == txs.get(3).serialize()
+        reopenedStore.getBlockSize(blocks.get(3).getHash()) == expectedBlockBytes.length
+        reopenedStore.getBlockChecksum(blocks.get(3).getHash()) == Utils.readUint32(Sha256Hash.hashTwice(expectedBlockBytes), 0)
+
+        cleanup:
+        reopenedStore?.close()
+        blockStorePosix.clear()
+    }
+
+    def "test asynchronous saving of blocks"() {
+        given:
+        int batchSize = 10_000;
+        int numTxs = 20
+        Path path = buildWorkingFolder()
+        BlockStorePosixConfig blockStorePosixConfig = BlockStorePosixConfig.builder()
+                .batchSize(batchSize)
+                .workingFolder(path)
+                .asyncWriterThreads(4)
+                .maxPendingWriteBytes(500)
+                .build()
+        BlockStorePosix blockStorePosix = new BlockStorePosix(blockStorePosixConfig)
+
+        HeaderReadOnly block = TestingUtils.buildBlock()
+        List<Tx> txs = new ArrayList<>()
+        for (int i = 0; i < numTxs; i++) txs.add(TestingUtils.buildTx())
+
+        ByteArrayOutputStream txsBytes = new ByteArrayOutputStream()
+        txs.forEach({ tx -> txsBytes.write(tx.serialize()) })
+
+        when:
+        // Each Tx is saved in a different batch, and the block is committed without waiting for them:
+        List<CompletableFuture<Void>> writes = new ArrayList<>()
+        txs.forEach({ tx -> writes.add(blockStorePosix.saveBlockAsync(block, numTxs, tx.serialize())) })
+        boolean committed = blockStorePosix.commitBlockAsync(block.getHash()).get()
+
+        then:
+        committed
+        writes.every({ w -> w.isDone() && !w.isCompletedExceptionally() })
+        blockStorePosix.readNumberOfTxs(block.getHash()) == numTxs
+        blockStorePosix.readBlockTxs(block.getHash()).findFirst().get() == txsBytes.toByteArray()
+
+        when:
+        // Writing to a committed block fails:
+        blockStorePosix.saveBlockAsync(block, numTxs, txs.get(0).serialize()).join()
+
+        then:
+        CompletionException ex = thrown()
+        ex.getCause() instanceof IllegalAccessException
+
+        cleanup:
+        blockStorePosix.clear()
+    }
+
+    def "test asynchronous saving of blocks failing to write to disk"() {
+        given:
+        Path path = buildWorkingFolder()
+        BlockStorePosixConfig blockStorePosixConfig = BlockStorePosixConfig.builder()
+                .workingFolder(path)
+                .asyncWriterThreads(2)
+                .build()
+        BlockStorePosix blockStorePosix = new BlockStorePosix(blockStorePosixConfig)
+
+        // The folder where the blocks are stored is a regular file, so nothing can be written into it:
+        Files.createDirectories(path)
+        Files.write(blockStorePosix.getBlocksDir(), new byte[0])
+
+        HeaderReadOnly block = TestingUtils.buildBlock()
+        Tx tx = TestingUtils.buildTx()
+
+        when:
+        CompletableFuture<Void> write = blockStorePosix.saveBlockAsync(block, 1, tx.serialize())
+        Throwable error = null
+        try {
+            write.join()
+        } catch (CompletionException ex) {
+            error = ex.getCause()
+        }
+        boolean committed = blockStorePosix.commitBlockAsync(block.getHash()).get()
+
+        then:
+        write.isCompletedExceptionally()
+        error instanceof IOException
+        !committed
+
+        cleanup:
+        blockStorePosix.close()
+        Files.deleteIfExists(blockStorePosix.getBlocksDir())
+    }
+
+    def "test asynchronous saving of blocks with a write failing after others succeeded"() {
+        given:
+        Path path = buildWorkingFolder()
+        BlockStorePosixConfig blockStorePosixConfig = BlockStorePosixConfig.builder()
+                .workingFolder(path)
+                .asyncWriterThreads(2)
+                .build()
+        BlockStorePosix blockStorePosix = new BlockStorePosix(blockStorePosixConfig)
+
+        HeaderReadOnly block = TestingUtils.buildBlock()
+        Tx tx1 = TestingUtils.buildTx()
+        Tx tx2 = TestingUtils.buildTx()
+
+        byte[] reversedHash = block.getHash().getReversedBytes()
+        Path blockFile = blockStorePosix.getBlocksDir()
+                .resolve(Utils.HEX.encode([reversedHash[0]] as byte[]))
+                .resolve(Utils.HEX.encode([reversedHash[1]] as byte[]))
+                .resolve(block.getHash().toString())
+
+        when:
+        blockStorePosix.saveBlockAsync(block, 2, tx1.serialize()).join()
+
+        // The block file is replaced by a folder, so the next write fails:
+        Files.delete(blockFile)
+        Files.createDirectory(blockFile)
+        CompletableFuture<Void> failedWrite = blockStorePosix.saveBlockAsync(block, 2, tx2.serialize())
+        try {
+            failedWrite.join()
+        } catch (CompletionException ex) {}
+
+        // The failed write is not pending anymore, but the block can't be committed:
+        boolean committedAsync = blockStorePosix.commitBlockAsync(block.getHash()).get()
+        boolean committed = blockStorePosix.commitBlock(block.getHash())
+        boolean contained = blockStorePosix.containsBlock(block.getHash())
+
+        // Once removed, the block can be saved and committed again:
+        Files.delete(blockFile)
+        blockStorePosix.removeBlock(block.getHash())
+        blockStorePosix.saveBlockAsync(block, 1, tx1.serialize()).join()
+        boolean committedAfterRemoval = blockStorePosix.commitBlock(block.getHash())
+
+        then:
+        failedWrite.isCompletedExceptionally()
+        !committedAsync
+        !committed
+        !contained
+        committedAfterRemoval
+
+        cleanup:
+        blockStorePosix.clear()
+    }
 }
@@ -0,0 +1,61 @@
+package io.bitcoinsv.jcl.tools.unit.bytes
+
+import io.bitcoinsv.bitcoinjsv.core.Sha256Hash
+import io.bitcoinsv.jcl.tools.bytes.MerkleRootIncremental
+import spock.lang.Specification
+
+/**
+ * Testing class for MerkleRootIncremental
+ */
+class MerkleRootIncrementalSpec extends Specification {
+
+    // Calculates the Merkle Root building the whole tree, level by level:
+    static Sha256Hash calculateMerkleRoot(List<Sha256Hash> txHashes) {
+        List<byte[]> level = txHashes.collect({ h -> h.getReversedBytes() })
+        while (level.size() > 1) {
+            List<byte[]> nextLevel = new ArrayList<>()
+            for (int i = 0; i < level.size(); i += 2) {
+                byte[] left = level.get(i)
+                byte[] right = (i + 1 < level.size()) ? level.get(i + 1) : left
+                nextLevel.add(Sha256Hash.hashTwice(left, 0, 32, right, 0, 32))
+            }
+            level = nextLevel
+        }
+        return Sha256Hash.wrapReversed(level.get(0))
+    }
+
+    /**
+     * We calculate the Merkle Root of different numbers of Txs (so we cover both complete and incomplete trees) using
+     * the whole tree and the incremental calculation. The results should be the same
+     */
+    def "calculate and compare with the whole Merkle Tree"() {
+        given:
+            List<Sha256Hash> txHashes = new ArrayList<>()
+            for (int i = 0; i < numTxs; i++) {
+                txHashes.add(Sha256Hash.of(("tx-" + i).getBytes()))
+            }
+        when:
+            MerkleRootIncremental merkleRoot = new MerkleRootIncremental()
+            txHashes.forEach({ h -> merkleRoot.add(h) })
+        then:
+            merkleRoot.getNumHashes() == numTxs
+            merkleRoot.getMerkleRoot() == calculateMerkleRoot(txHashes)
+        where:
+            numTxs << [1, 2, 3, 4, 5, 7, 8, 9, 13, 16, 17, 100]
+    }
+
+    def "Merkle Root of a real Block"() {
+        given:
+            // Block 100000 (BTC/BSV): 4 Txs
+            List<Sha256Hash> txHashes = [
+                    Sha256Hash.wrap("8c14f0db3df150123e6f3dbbf30f8b955a8249b62ac1d1ff16284aefa3d06d87"),
+                    Sha256Hash.wrap("fff2525b8931402dd09222c50775608f75787bd2b87e56995a7bdd30f79702c4"),
+                    Sha256Hash.wrap("6359f0868171b1d194cbee1af2f16ea598ae8fad666d9b012c8ed2b79a236ec4"),
+                    Sha256Hash.wrap("e9a66845e05d5abc0ad04ec80f774a7e585c6e8db975962d069a522137b80c1d")]
+        when:
+            MerkleRootIncremental merkleRoot = new MerkleRootIncremental()
+            txHashes.forEach({ h -> merkleRoot.add(h) })
+        then:
+            merkleRoot.getMerkleRoot() == Sha256Hash.wrap("f3e94742aca4b5ef85488dc37c06c3282295ffec960994b2c0d5ac2a25a95766")
+    }
+}
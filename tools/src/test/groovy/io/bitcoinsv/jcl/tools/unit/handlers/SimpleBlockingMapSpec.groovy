@@ -0,0 +1,84 @@
+package io.bitcoinsv.jcl.tools.unit.handlers
+
+import io.bitcoinsv.jcl.tools.handlers.SimpleBlockingMap
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+
+/**
+ * Testing class for the SimpleBlockingMap
+ */
+class SimpleBlockingMapSpec extends Specification {
+
+    /**
+     * We check that there is no wait if the Value is already in the Map
+     */
+    def "testing take when the Value is present"() {
+        given:
+            SimpleBlockingMap<String, String> map = new SimpleBlockingMap<>()
+            map.put("key", "value")
+        when:
+            long start = System.currentTimeMillis()
+            String value = map.take("key", Duration.ofSeconds(10))
+            long time = System.currentTimeMillis() - start
+        then:
+            value == "value"
+            time < 1000
+    }
+
+    /**
+     * We check that a Thread waiting for a Value wakes up as soon as it's put in the Map, instead of waiting for the
+     * whole timeout
+     */
+    def "testing take waking up when the Value is put"() {
+        given:
+            SimpleBlockingMap<String, String> map = new SimpleBlockingMap<>()
+        when:
+            long start = System.currentTimeMillis()
+            CompletableFuture<String> result = CompletableFuture.supplyAsync({ -> map.take("key", Duration.ofSeconds(10)) })
+            Thread.sleep(100)
+            map.put("key", "value")
+            String value = result.get()
+            long time = System.currentTimeMillis() - start
+        then:
+            value == "value"
+            time < 5000
+    }
+
+    /**
+     * We check that if the Value never arrives, the wait expires and the following calls don't wait anymore
+     */
+    def "testing take expiring"() {
+        given:
+            SimpleBlockingMap<String, String> map = new SimpleBlockingMap<>()
+        when:
+            String value1 = map.take("key", Duration.ofMillis(50))
+            long start = System.currentTimeMillis()
+            String value2 = map.take("key", Duration.ofSeconds(10))
+            long time = System.currentTimeMillis() - start
+        then:
+            value1 == null
+            value2 == null
+            time < 1000
+    }
+
+    /**
+     * We check that a Thread waiting for a Value wakes up as soon as its Key is removed from the Map, instead of
+     * waiting for the whole timeout
+     */
+    def "testing take waking up when the Key is removed"() {
+        given:
+            SimpleBlockingMap<String, String> map = new SimpleBlockingMap<>()
+        when:
+            long start = System.currentTimeMillis()
+            CompletableFuture<String> result = CompletableFuture.supplyAsync({ -> map.take("key", Duration.ofSeconds(10)) })
+            Thread.sleep(100)
+            map.remove("key")
+            String value = result.get()
+            long time = System.currentTimeMillis() - start
+        then:
+            value == null
+            time < 5000
+    }
+}
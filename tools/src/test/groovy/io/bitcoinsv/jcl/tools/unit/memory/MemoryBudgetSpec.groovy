@@ -0,0 +1,131 @@
+package io.bitcoinsv.jcl.tools.unit.memory
+
+import io.bitcoinsv.jcl.tools.memory.MemoryBudget
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Testing class for the MemoryBudget
+ */
+class MemoryBudgetSpec extends Specification {
+
+    // A Pausable that just keeps track of its state:
+    class TestPausable implements MemoryBudget.Pausable {
+        boolean paused
+        void pause()  { paused = true }
+        void resume() { paused = false }
+    }
+
+    /**
+     * We check that the usage is reported by component, both for manual Accounts and Accounts with a usage function,
+     * and that closed Accounts are not counted anymore
+     */
+    def "testing usage by component"() {
+        given:
+            MemoryBudget budget = MemoryBudget.unlimited()
+            AtomicLong bufferSize = new AtomicLong(300)
+        when:
+            MemoryBudget.Account account1 = budget.register("batches", "tx")
+            MemoryBudget.Account account2 = budget.register("batches", "block")
+            MemoryBudget.Account account3 = budget.register("buffers", "peer1", { -> bufferSize.get() }, null)
+            account1.add(100)
+            account2.add(50)
+            account2.release(20)
+            long usage = budget.getUsage()
+            Map<String, Long> usageByComponent = budget.getUsageByComponent()
+            account3.close()
+            long usageAfterClose = budget.getUsage()
+        then:
+            usage == 430
+            usageByComponent == ["batches": 130L, "buffers": 300L]
+            usageAfterClose == 130
+            !budget.isUnderPressure()
+    }
+
+    /**
+     * We check that when the usage reaches the high watermark, the biggest Accounts are paused and the listeners
+     * notified, and that everything is resumed once the usage drops below the low watermark
+     */
+    def "testing backpressure"() {
+        given:
+            MemoryBudget budget = new MemoryBudget(1000, 0.9, 0.5, Duration.ofHours(1)) // we run the checks manually
+            TestPausable bigPausable = new TestPausable()
+            TestPausable smallPausable = new TestPausable()
+            MemoryBudget.Account big = budget.register("buffers", "big", null, bigPausable)
+            MemoryBudget.Account small = budget.register("buffers", "small", null, smallPausable)
+            MemoryBudget.Account other = budget.register("queues", "other")
+            List<Boolean> notifications = []
+            budget.addListener({ underPressure -> notifications.add(underPressure) } as MemoryBudget.Listener)
+        when:
+            big.set(600)
+            small.set(100)
+            other.set(100)
+            budget.check()
+            boolean pressureBelowHigh = budget.isUnderPressure()
+
+            other.set(250)
+            budget.check()
+            boolean pressureAboveHigh = budget.isUnderPressure()
+            boolean bigPausedAboveHigh = bigPausable.paused
+            boolean smallPausedAboveHigh = smallPausable.paused
+
+            big.set(300)
+            budget.check()
+            boolean pressureAboveLow = budget.isUnderPressure()
+
+            big.set(100)
+            budget.check()
+            boolean pressureBelowLow = budget.isUnderPressure()
+            budget.stop()
+        then:
+            !pressureBelowHigh
+            pressureAboveHigh
+            bigPausedAboveHigh
+            !smallPausedAboveHigh
+            pressureAboveLow
+            !pressureBelowLow
+            !bigPausable.paused
+            notifications == [true, false]
+    }
+
+    /**
+     * We check that the Accounts whose bytes are not released while paused (like a buffer holding an incomplete
+     * message) are not paused, and that an Account paused is resumed once it has no drainable bytes left, even if
+     * the Budget is still under pressure
+     */
+    def "testing backpressure with bytes not drainable"() {
+        given:
+            MemoryBudget budget = new MemoryBudget(1000, 0.9, 0.5, Duration.ofHours(1)) // we run the checks manually
+            AtomicLong drainableBytes = new AtomicLong(0)
+            TestPausable partialPausable = new TestPausable() {
+                long getDrainableBytes(long usage) { drainableBytes.get() }
+            }
+            TestPausable drainablePausable = new TestPausable()
+            MemoryBudget.Account partial = budget.register("buffers", "partial", null, partialPausable)
+            MemoryBudget.Account drainable = budget.register("buffers", "drainable", null, drainablePausable)
+        when:
+            partial.set(800)
+            drainable.set(150)
+            budget.check()
+            boolean partialPausedWithNoDrainable = partialPausable.paused
+            boolean drainablePaused = drainablePausable.paused
+
+            drainableBytes.set(800)
+            budget.check()
+            boolean partialPausedWithDrainable = partialPausable.paused
+
+            drainableBytes.set(0)
+            budget.check()
+            boolean partialPausedOnceDrained = partialPausable.paused
+            boolean pressure = budget.isUnderPressure()
+            budget.stop()
+        then:
+            !partialPausedWithNoDrainable
+            drainablePaused
+            partialPausedWithDrainable
+            !partialPausedOnceDrained
+            pressure
+    }
+}
@@ -0,0 +1,61 @@
+package io.bitcoinsv.jcl.tools.unit.thread
+
+import io.bitcoinsv.jcl.tools.thread.TimerWheel
+import spock.lang.Specification
+
+/**
+ * Testing class for the TimerWheel
+ */
+class TimerWheelSpec extends Specification {
+
+    /**
+     * We schedule several items with different deadlines (some of them further away than a whole turn of the wheel)
+     * and we check that each one expires at the right moment, and only once.
+     */
+    def "testing items expiring in order"() {
+        given:
+            long now = System.currentTimeMillis()
+            TimerWheel<String> wheel = new TimerWheel<>(10, 8)
+            wheel.scheduleAt("A", now + 15)
+            wheel.scheduleAt("B", now + 50)
+            wheel.scheduleAt("C", now + 200) // more than a whole turn (80 ms)
+        when:
+            List<String> expired1 = wheel.expire(now + 5)
+            List<String> expired2 = wheel.expire(now + 30)
+            List<String> expired3 = wheel.expire(now + 100)
+            List<String> expired4 = wheel.expire(now + 150)
+            List<String> expired5 = wheel.expire(now + 210)
+        then:
+            expired1.isEmpty()
+            expired2 == ["A"]
+            expired3 == ["B"]
+            expired4.isEmpty()
+            expired5 == ["C"]
+            wheel.size() == 0
+    }
+
+    /**
+     * We check that cancelled items never expire, and that re-scheduled items expire at the new deadline
+     */
+    def "testing cancelling and rescheduling"() {
+        given:
+            long now = System.currentTimeMillis()
+            TimerWheel<String> wheel = new TimerWheel<>(10, 8)
+            wheel.scheduleAt("A", now + 20)
+            wheel.scheduleAt("B", now + 20)
+            wheel.scheduleAt("C", now - 1000) // already expired
+        when:
+            boolean cancelled = wheel.cancel("A")
+            boolean cancelledAgain = wheel.cancel("A")
+            wheel.scheduleAt("B", now + 60)
+            List<String> expired1 = wheel.expire(now + 30)
+            List<String> expired2 = wheel.expire(now + 70)
+        then:
+            cancelled
+            !cancelledAgain
+            expired1 == ["C"]
+            expired2 == ["B"]
+            !wheel.contains("A")
+            wheel.size() == 0
+    }
+}